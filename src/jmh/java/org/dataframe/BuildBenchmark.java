@@ -0,0 +1,107 @@
+package org.dataframe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Building dataframes from streams and from the result list of a native query
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    @Param({"10", "1000", "100000"})
+    public int cardinality;
+
+    /**
+     * streams drained and columns encoded at once by the stream build
+     */
+    @Param({"1", "4"})
+    public int threads;
+
+    /**
+     * the cells of every column, generated once so that the benchmarks only measure the build
+     */
+    private String[] keyCells;
+    private int[] groupCells;
+    private double[] chargeCells;
+    private EntityManager entityManager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] keys = IntStream.range(0, cardinality).mapToObj(key -> "K" + key).toArray(String[]::new);
+        keyCells = Dataframe.choice(new Random(42), keys).limit(rows).toArray(String[]::new);
+        groupCells = new Random(43).ints(rows, 0, cardinality).toArray();
+        chargeCells = new Random(44).doubles(rows, 0, 120.0).toArray();
+        List<Object[]> resultList = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            resultList.add(new Object[]{keyCells[row], groupCells[row], chargeCells[row]});
+        }
+        entityManager = stub(resultList);
+    }
+
+    /**
+     * @return an entity manager whose native queries return the given rows
+     */
+    private static EntityManager stub(List<Object[]> resultList) {
+        ClassLoader loader = BuildBenchmark.class.getClassLoader();
+        Query query = (Query) Proxy.newProxyInstance(loader, new Class[]{Query.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getResultList":
+                    return resultList;
+                case "setParameter":
+                    return proxy;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+        return (EntityManager) Proxy.newProxyInstance(loader, new Class[]{EntityManager.class}, (proxy, method, args) -> {
+            if (method.getName().equals("createNativeQuery")) {
+                return query;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        });
+    }
+
+    @Benchmark
+    public Dataframe streamBuild() {
+        return new Dataframe.StreamDataframeBuilder(
+                Arrays.stream(keyCells),
+                Arrays.stream(groupCells).boxed(),
+                Arrays.stream(chargeCells).boxed()
+        ).columnNames("KEY", "GROUP", "CHARGE").size(rows).parallel(threads).build();
+    }
+
+    @Benchmark
+    public Dataframe sqlBuild() {
+        return Dataframe.sql(entityManager, "SELECT KEY, GROUP, CHARGE FROM CALLS")
+                .columnNames("KEY", "GROUP", "CHARGE").build();
+    }
+}
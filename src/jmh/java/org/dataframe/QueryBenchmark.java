@@ -0,0 +1,111 @@
+package org.dataframe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Operations on a dataframe of a string key and an int key of the given cardinality and two doubles
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    @Param({"10", "1000", "100000"})
+    public int cardinality;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Dataframe dataframe;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] keys = IntStream.range(0, cardinality).mapToObj(key -> "K" + key).toArray(String[]::new);
+        dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(42), keys),
+                new Random(43).ints(0, cardinality).boxed(),
+                new Random(44).doubles(0, 120.0),
+                new Random(45).doubles(0, 1200.0)
+        ).columnNames("KEY", "GROUP", "CHARGE", "DURATION").size(rows).build().parallel(threads);
+    }
+
+    /**
+     * Sorting returns a view, the benchmarks read the sorted cells so that they measure their gathering too
+     */
+    @Benchmark
+    public void sort(Blackhole blackhole) {
+        Column charge = dataframe.sort(SortKey.asc("CHARGE")).column("CHARGE");
+        for (int row = 0; row < rows; row++) {
+            blackhole.consume(charge.getDouble(row));
+        }
+    }
+
+    @Benchmark
+    public void sortByKeys(Blackhole blackhole) {
+        Dataframe sorted = dataframe.sort(SortKey.asc("KEY"), SortKey.desc("CHARGE"));
+        Column key = sorted.column("KEY");
+        Column charge = sorted.column("CHARGE");
+        for (int row = 0; row < rows; row++) {
+            blackhole.consume(key.get(row));
+            blackhole.consume(charge.getDouble(row));
+        }
+    }
+
+    @Benchmark
+    public Dataframe select() {
+        return dataframe.select("GROUP", 0);
+    }
+
+    @Benchmark
+    public Dataframe selectByName() {
+        Integer group = 0;
+        return dataframe.selectByName(row -> group.equals(row.get("GROUP")));
+    }
+
+    @Benchmark
+    public Dataframe groupBySum() {
+        return dataframe.groupBy("KEY").sum("CHARGE", "DURATION");
+    }
+
+    @Benchmark
+    public Dataframe groupByAggregate() {
+        return dataframe.groupBy("KEY", "GROUP").aggregate("CHARGE");
+    }
+
+    @Benchmark
+    public Object[] distinct() {
+        return dataframe.distinct(0);
+    }
+
+    @Benchmark
+    public double sum() {
+        return dataframe.sum("CHARGE");
+    }
+
+    @Benchmark
+    public double average() {
+        return dataframe.average("CHARGE");
+    }
+}
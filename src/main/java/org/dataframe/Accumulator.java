@@ -0,0 +1,516 @@
+package org.dataframe;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Keeps the state of an {@link Aggregation} for every group in primitive arrays indexed by group id
+ */
+abstract class Accumulator {
+
+    protected final Column column;
+
+    Accumulator(Column column) {
+        this.column = column;
+    }
+
+    static Accumulator of(Aggregation aggregation, Column column, int groupCount) {
+        Aggregation.Function function = aggregation.getFunction();
+        switch (function) {
+            case SUM:
+                return new Sum(column, groupCount);
+            case COUNT:
+                return new Count(column, groupCount);
+            case MIN:
+                return new Extreme(column, groupCount, true);
+            case MAX:
+                return new Extreme(column, groupCount, false);
+            case MEAN:
+                return new Moments(column, groupCount, false);
+            case VARIANCE:
+                return new Moments(column, groupCount, true);
+            case FIRST:
+                return new Position(column, groupCount, true);
+            case LAST:
+                return new Position(column, groupCount, false);
+            case APPROX_DISTINCT:
+                return new Distinct(column, groupCount, (int) aggregation.getParameter());
+            case APPROX_QUANTILE:
+                return new Quantile(column, groupCount, aggregation.getParameter());
+            default:
+                throw new IllegalArgumentException(function.name());
+        }
+    }
+
+    abstract void accumulate(int group, int row);
+
+    abstract Column result();
+
+    /**
+     * Merges the state of an accumulator of the same aggregation over the rows that follow the rows of this one
+     * @param other
+     */
+    final void merge(Accumulator other) {
+        merge(other, null);
+    }
+
+    /**
+     * Merges the state of an accumulator of the same aggregation over rows that follow the rows of this one
+     * @param other
+     * @param groups the group of this accumulator of every group of the other one, null if they are the same
+     */
+    abstract void merge(Accumulator other, int[] groups);
+
+    /**
+     * Grows the state to the given number of groups, the new groups are empty
+     */
+    abstract void resize(int groupCount);
+
+    /**
+     * @return true if the state does not refer to the rows of the column, so that it can be merged
+     * into the accumulator of another column
+     */
+    boolean isDecomposable() {
+        return true;
+    }
+
+    static class Sum extends Accumulator {
+        private double[] sums;
+        private double[] compensations;
+
+        Sum(Column column, int groupCount) {
+            super(column);
+            this.sums = new double[groupCount];
+            this.compensations = new double[groupCount];
+        }
+
+        @Override
+        void accumulate(int group, int row) {
+            if (!column.isNull(row)) {
+                add(group, column.getDouble(row));
+            }
+        }
+
+        private void add(int group, double value) {
+            double y = value - compensations[group];
+            double t = sums[group] + y;
+            compensations[group] = (t - sums[group]) - y;
+            sums[group] = t;
+        }
+
+        @Override
+        Column result() {
+            double[] result = new double[sums.length];
+            for (int group = 0; group < sums.length; group++) {
+                result[group] = sums[group] - compensations[group];
+            }
+            return new DoubleColumn(result);
+        }
+
+        @Override
+        void merge(Accumulator other, int[] groups) {
+            Sum that = (Sum) other;
+            for (int group = 0; group < that.sums.length; group++) {
+                int target = groups == null ? group : groups[group];
+                add(target, that.sums[group]);
+                add(target, -that.compensations[group]);
+            }
+        }
+
+        @Override
+        void resize(int groupCount) {
+            sums = Arrays.copyOf(sums, groupCount);
+            compensations = Arrays.copyOf(compensations, groupCount);
+        }
+    }
+
+    static class Count extends Accumulator {
+        private long[] counts;
+
+        Count(Column column, int groupCount) {
+            super(column);
+            this.counts = new long[groupCount];
+        }
+
+        @Override
+        void accumulate(int group, int row) {
+            if (!column.isNull(row)) {
+                counts[group]++;
+            }
+        }
+
+        @Override
+        Column result() {
+            return new LongColumn(counts.clone());
+        }
+
+        @Override
+        void merge(Accumulator other, int[] groups) {
+            long[] otherCounts = ((Count) other).counts;
+            for (int group = 0; group < otherCounts.length; group++) {
+                counts[groups == null ? group : groups[group]] += otherCounts[group];
+            }
+        }
+
+        @Override
+        void resize(int groupCount) {
+            counts = Arrays.copyOf(counts, groupCount);
+        }
+    }
+
+    /**
+     * Minimum or maximum of every group, NaN once the group has a NaN cell and null for the groups without values.
+     * The cells of long and int columns are compared as longs and the result keeps the type of the column
+     */
+    static class Extreme extends Accumulator {
+        private Class<?> type;
+        private double[] values;
+        private long[] longs;
+        private boolean[] seen;
+        private final boolean min;
+
+        Extreme(Column column, int groupCount, boolean min) {
+            super(column);
+            this.seen = new boolean[groupCount];
+            this.min = min;
+            if (column != null) {
+                allocate(column.type());
+            }
+        }
+
+        /**
+         * Chooses the state of the given type of cells, the state of a view is chosen by the first merged accumulator
+         */
+        private void allocate(Class<?> type) {
+            this.type = type;
+            if (isIntegral(type)) {
+                longs = new long[seen.length];
+            } else {
+                values = new double[seen.length];
+            }
+        }
+
+        private static boolean isIntegral(Class<?> type) {
+            return type == Long.class || type == Integer.class;
+        }
+
+        @Override
+        void accumulate(int group, int row) {
+            if (!column.isNull(row)) {
+                if (longs != null) {
+                    add(group, column.getLong(row));
+                } else {
+                    add(group, column.getDouble(row));
+                }
+            }
+        }
+
+        private void add(int group, long value) {
+            if (!seen[group]) {
+                longs[group] = value;
+                seen[group] = true;
+            } else {
+                longs[group] = min ? Math.min(longs[group], value) : Math.max(longs[group], value);
+            }
+        }
+
+        private void add(int group, double value) {
+            if (!seen[group]) {
+                values[group] = value;
+                seen[group] = true;
+            } else {
+                values[group] = min ? Math.min(values[group], value) : Math.max(values[group], value);
+            }
+        }
+
+        @Override
+        Column result() {
+            NullBitmap nulls = NullBitmap.of(seen.length, group -> !seen[group]);
+            if (type == Integer.class) {
+                return new IntColumn(Arrays.stream(longs).mapToInt(value -> (int) value).toArray(), nulls);
+            }
+            if (longs != null) {
+                return new LongColumn(longs.clone(), nulls);
+            }
+            return new DoubleColumn(values == null ? new double[seen.length] : values.clone(), nulls);
+        }
+
+        @Override
+        void merge(Accumulator other, int[] groups) {
+            Extreme that = (Extreme) other;
+            if (type == null) {
+                allocate(that.type);
+            } else if (longs != null && that.longs == null) {
+                //the batches of a view do not have the same type, the doubles hold both
+                values = Arrays.stream(longs).asDoubleStream().toArray();
+                longs = null;
+                type = Double.class;
+            } else if (type == Integer.class && that.type == Long.class) {
+                type = Long.class;
+            }
+            for (int group = 0; group < that.seen.length; group++) {
+                if (that.seen[group]) {
+                    int target = groups == null ? group : groups[group];
+                    if (longs != null) {
+                        add(target, that.longs[group]);
+                    } else {
+                        add(target, that.longs != null ? that.longs[group] : that.values[group]);
+                    }
+                }
+            }
+        }
+
+        @Override
+        void resize(int groupCount) {
+            seen = Arrays.copyOf(seen, groupCount);
+            if (longs != null) {
+                longs = Arrays.copyOf(longs, groupCount);
+            }
+            if (values != null) {
+                values = Arrays.copyOf(values, groupCount);
+            }
+        }
+    }
+
+    /**
+     * Mean and sample variance by Welford's online algorithm, null for the groups with too few values
+     */
+    static class Moments extends Accumulator {
+        private long[] counts;
+        private double[] means;
+        private double[] squares;
+        private final boolean variance;
+
+        Moments(Column column, int groupCount, boolean variance) {
+            super(column);
+            this.counts = new long[groupCount];
+            this.means = new double[groupCount];
+            this.squares = new double[groupCount];
+            this.variance = variance;
+        }
+
+        @Override
+        void accumulate(int group, int row) {
+            if (!column.isNull(row)) {
+                double value = column.getDouble(row);
+                double delta = value - means[group];
+                means[group] += delta / ++counts[group];
+                squares[group] += delta * (value - means[group]);
+            }
+        }
+
+        @Override
+        Column result() {
+            double[] result = new double[counts.length];
+            for (int group = 0; group < counts.length; group++) {
+                if (variance) {
+                    result[group] = counts[group] > 1 ? squares[group] / (counts[group] - 1) : 0;
+                } else {
+                    result[group] = counts[group] > 0 ? means[group] : 0;
+                }
+            }
+            long minimum = variance ? 2 : 1;
+            return new DoubleColumn(result, NullBitmap.of(counts.length, group -> counts[group] < minimum));
+        }
+
+        /**
+         * Combines the moments of two partitions as proposed by Chan et al.
+         */
+        @Override
+        void merge(Accumulator other, int[] groups) {
+            Moments that = (Moments) other;
+            for (int group = 0; group < that.counts.length; group++) {
+                if (that.counts[group] == 0) {
+                    continue;
+                }
+                int target = groups == null ? group : groups[group];
+                long count = counts[target] + that.counts[group];
+                double delta = that.means[group] - means[target];
+                means[target] += delta * that.counts[group] / count;
+                squares[target] += that.squares[group] + delta * delta * counts[target] * that.counts[group] / count;
+                counts[target] = count;
+            }
+        }
+
+        @Override
+        void resize(int groupCount) {
+            counts = Arrays.copyOf(counts, groupCount);
+            means = Arrays.copyOf(means, groupCount);
+            squares = Arrays.copyOf(squares, groupCount);
+        }
+    }
+
+    /**
+     * First or last non null cell of every group, the result has the type of the aggregated column
+     */
+    static class Position extends Accumulator {
+        private int[] rows;
+        private final boolean first;
+
+        Position(Column column, int groupCount, boolean first) {
+            super(column);
+            this.rows = new int[groupCount];
+            this.first = first;
+            Arrays.fill(rows, -1);
+        }
+
+        @Override
+        void accumulate(int group, int row) {
+            if (column.isNull(row)) {
+                //a group of nulls only results to null, remembered as a negative row
+                if (rows[group] == -1) {
+                    rows[group] = -2 - row;
+                }
+            } else if (!first || rows[group] < 0) {
+                rows[group] = row;
+            }
+        }
+
+        @Override
+        Column result() {
+            return column.gather(Arrays.stream(rows).map(row -> row >= 0 ? row : -2 - row).toArray());
+        }
+
+        @Override
+        void merge(Accumulator other, int[] groups) {
+            int[] otherRows = ((Position) other).rows;
+            for (int group = 0; group < otherRows.length; group++) {
+                int row = otherRows[group];
+                int target = groups == null ? group : groups[group];
+                if (row >= 0 ? (!first || rows[target] < 0) : rows[target] == -1) {
+                    rows[target] = row;
+                }
+            }
+        }
+
+        @Override
+        void resize(int groupCount) {
+            int size = rows.length;
+            rows = Arrays.copyOf(rows, groupCount);
+            Arrays.fill(rows, size, groupCount, -1);
+        }
+
+        /**
+         * The state is a row of the column
+         */
+        @Override
+        boolean isDecomposable() {
+            return false;
+        }
+    }
+
+    /**
+     * A {@link HyperLogLog} per group, created on the first non null cell of the group. Merging takes
+     * the sketches of the other accumulator, which is not used after being merged
+     */
+    static class Distinct extends Accumulator {
+        private HyperLogLog[] sketches;
+        private final int precision;
+        private final IntToLongFunction hasher;
+
+        Distinct(Column column, int groupCount, int precision) {
+            super(column);
+            this.sketches = new HyperLogLog[groupCount];
+            this.precision = precision;
+            this.hasher = column == null ? null : HyperLogLog.hasher(column);
+        }
+
+        @Override
+        void accumulate(int group, int row) {
+            if (!column.isNull(row)) {
+                if (sketches[group] == null) {
+                    sketches[group] = new HyperLogLog(precision);
+                }
+                sketches[group].addHash(hasher.applyAsLong(row));
+            }
+        }
+
+        @Override
+        Column result() {
+            long[] estimates = new long[sketches.length];
+            for (int group = 0; group < sketches.length; group++) {
+                estimates[group] = sketches[group] == null ? 0 : sketches[group].estimate();
+            }
+            return new LongColumn(estimates);
+        }
+
+        @Override
+        void merge(Accumulator other, int[] groups) {
+            HyperLogLog[] otherSketches = ((Distinct) other).sketches;
+            for (int group = 0; group < otherSketches.length; group++) {
+                int target = groups == null ? group : groups[group];
+                if (otherSketches[group] == null) {
+                    continue;
+                }
+                if (sketches[target] == null) {
+                    sketches[target] = otherSketches[group];
+                } else {
+                    sketches[target].merge(otherSketches[group]);
+                }
+            }
+        }
+
+        @Override
+        void resize(int groupCount) {
+            sketches = Arrays.copyOf(sketches, groupCount);
+        }
+    }
+
+    /**
+     * A {@link QuantileSketch} per group, created on the first value of the group. Merging takes
+     * the sketches of the other accumulator, which is not used after being merged
+     */
+    static class Quantile extends Accumulator {
+        private QuantileSketch[] sketches;
+        private final double quantile;
+
+        Quantile(Column column, int groupCount, double quantile) {
+            super(column);
+            this.sketches = new QuantileSketch[groupCount];
+            this.quantile = quantile;
+        }
+
+        @Override
+        void accumulate(int group, int row) {
+            if (!column.isNull(row)) {
+                double value = column.getDouble(row);
+                if (value == value) {
+                    if (sketches[group] == null) {
+                        sketches[group] = new QuantileSketch();
+                    }
+                    sketches[group].add(value);
+                }
+            }
+        }
+
+        @Override
+        Column result() {
+            double[] quantiles = new double[sketches.length];
+            for (int group = 0; group < sketches.length; group++) {
+                quantiles[group] = sketches[group] == null ? 0 : sketches[group].quantile(quantile);
+            }
+            return new DoubleColumn(quantiles, NullBitmap.of(sketches.length, group -> sketches[group] == null));
+        }
+
+        @Override
+        void merge(Accumulator other, int[] groups) {
+            QuantileSketch[] otherSketches = ((Quantile) other).sketches;
+            for (int group = 0; group < otherSketches.length; group++) {
+                int target = groups == null ? group : groups[group];
+                if (otherSketches[group] == null) {
+                    continue;
+                }
+                if (sketches[target] == null) {
+                    sketches[target] = otherSketches[group];
+                } else {
+                    sketches[target].merge(otherSketches[group]);
+                }
+            }
+        }
+
+        @Override
+        void resize(int groupCount) {
+            sketches = Arrays.copyOf(sketches, groupCount);
+        }
+    }
+}
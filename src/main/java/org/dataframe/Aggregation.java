@@ -0,0 +1,176 @@
+package org.dataframe;
+
+/**
+ * An aggregate function applied on a column of every group of a {@link Dataframe.DataframeGroupBy}.
+ * Null cells are skipped by every function, NaN values of double columns by the numeric ones.
+ * MIN, MAX, MEAN, VARIANCE and APPROX_QUANTILE are null for the groups without values to aggregate
+ */
+public class Aggregation {
+
+    public enum Function {
+        SUM, COUNT, MIN, MAX, MEAN, FIRST, LAST,
+        /**
+         * sample variance
+         */
+        VARIANCE,
+        /**
+         * estimated number of distinct values, see {@link HyperLogLog}
+         */
+        APPROX_DISTINCT,
+        /**
+         * estimated quantile, see {@link QuantileSketch}
+         */
+        APPROX_QUANTILE
+    }
+
+    private final Function function;
+    private final int index;
+    private final String columnName;
+    private final String alias;
+    /**
+     * the quantile of {@link Function#APPROX_QUANTILE}, the precision of {@link Function#APPROX_DISTINCT}
+     */
+    private final double parameter;
+
+    private Aggregation(Function function, int index, String columnName, String alias, double parameter) {
+        this.function = function;
+        this.index = index;
+        this.columnName = columnName;
+        this.alias = alias;
+        this.parameter = parameter;
+    }
+
+    public static Aggregation of(Function function, int index) {
+        return new Aggregation(function, index, null, null, defaultParameter(function));
+    }
+
+    public static Aggregation of(Function function, String columnName) {
+        return new Aggregation(function, -1, columnName, null, defaultParameter(function));
+    }
+
+    private static double defaultParameter(Function function) {
+        return function == Function.APPROX_DISTINCT ? HyperLogLog.DEFAULT_PRECISION
+                : function == Function.APPROX_QUANTILE ? 0.5 : Double.NaN;
+    }
+
+    public static Aggregation sum(String columnName) {
+        return of(Function.SUM, columnName);
+    }
+
+    public static Aggregation count(String columnName) {
+        return of(Function.COUNT, columnName);
+    }
+
+    public static Aggregation min(String columnName) {
+        return of(Function.MIN, columnName);
+    }
+
+    public static Aggregation max(String columnName) {
+        return of(Function.MAX, columnName);
+    }
+
+    public static Aggregation mean(String columnName) {
+        return of(Function.MEAN, columnName);
+    }
+
+    public static Aggregation first(String columnName) {
+        return of(Function.FIRST, columnName);
+    }
+
+    public static Aggregation last(String columnName) {
+        return of(Function.LAST, columnName);
+    }
+
+    public static Aggregation variance(String columnName) {
+        return of(Function.VARIANCE, columnName);
+    }
+
+    public static Aggregation approxDistinct(String columnName) {
+        return of(Function.APPROX_DISTINCT, columnName);
+    }
+
+    /**
+     * @param columnName
+     * @param precision number of bits of the register index of the sketch of every group, see {@link HyperLogLog}
+     * @return
+     */
+    public static Aggregation approxDistinct(String columnName, int precision) {
+        if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be between " + HyperLogLog.MIN_PRECISION + " and " + HyperLogLog.MAX_PRECISION);
+        }
+        return new Aggregation(Function.APPROX_DISTINCT, -1, columnName, null, precision);
+    }
+
+    /**
+     * @param columnName
+     * @param quantile between 0 and 1, e.g. 0.95 for the 95th percentile
+     * @return
+     */
+    public static Aggregation approxQuantile(String columnName, double quantile) {
+        if (!(quantile >= 0 && quantile <= 1)) {
+            throw new IllegalArgumentException("quantile " + quantile + " is not between 0 and 1");
+        }
+        return new Aggregation(Function.APPROX_QUANTILE, -1, columnName, null, quantile);
+    }
+
+    /**
+     * @param alias name of the result column
+     * @return
+     */
+    public Aggregation as(String alias) {
+        return new Aggregation(function, index, columnName, alias, parameter);
+    }
+
+    /**
+     * @return the same aggregation, referring to its column by name
+     */
+    Aggregation withColumnName(String columnName) {
+        return new Aggregation(function, -1, columnName, alias, parameter);
+    }
+
+    public Function getFunction() {
+        return function;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    /**
+     * @return the quantile of {@link Function#APPROX_QUANTILE}, the precision of {@link Function#APPROX_DISTINCT},
+     * NaN for the other functions
+     */
+    public double getParameter() {
+        return parameter;
+    }
+
+    /**
+     * @param columnNames column names of the aggregated dataframe, may be null
+     * @return the alias or a name like SUM(CHARGE)
+     */
+    String name(String[] columnNames) {
+        if (alias != null) {
+            return alias;
+        }
+        String column = columnName != null ? columnName
+                : columnNames != null ? columnNames[index] : String.valueOf(index);
+        return function.name() + "(" + column + arguments() + ")";
+    }
+
+    /**
+     * @return the quantile of an approximate quantile, e.g. {@code , 0.95}
+     */
+    private String arguments() {
+        return function == Function.APPROX_QUANTILE ? ", " + parameter : "";
+    }
+
+    @Override
+    public String toString() {
+        return alias != null ? function.name() + "(" + (columnName != null ? columnName : index) + arguments() + ") AS " + alias
+                : name(null);
+    }
+}
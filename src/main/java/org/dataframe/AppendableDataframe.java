@@ -0,0 +1,196 @@
+package org.dataframe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A dataframe that grows by batches of rows, e.g. records that arrive continuously. Every batch is kept
+ * as a chunk of columns, appending never copies the rows appended before. {@link #snapshot()} returns
+ * a dataframe over the rows appended so far, and the group-by views created with
+ * {@link #createView(String[], Aggregation...)} are updated with the rows of every batch as it is appended
+ */
+public class AppendableDataframe {
+
+    private final String[] columnNames;
+    private final List<Column[]> chunks = new ArrayList<>();
+    private Class<?>[] types;
+    private int numberOfRows;
+    private final List<GroupByView> views = new ArrayList<>();
+
+    AppendableDataframe(String[] columnNames) {
+        this.columnNames = columnNames;
+    }
+
+    /**
+     * Appends the rows of a batch, its columns must have the names of the columns of this dataframe and
+     * the types of the batches appended before
+     * @param batch
+     * @return
+     */
+    public synchronized AppendableDataframe append(Dataframe batch) {
+        if (!Arrays.equals(columnNames, batch.getColumnNames())) {
+            throw new IllegalArgumentException("the batch has the columns " + Arrays.toString(batch.getColumnNames())
+                    + " instead of " + Arrays.toString(columnNames));
+        }
+        Column[] chunk = IntStream.range(0, columnNames.length).mapToObj(index -> batch.column(index).materialize())
+                .toArray(Column[]::new);
+        Class<?>[] chunkTypes = Stream.of(chunk).map(Column::type).toArray(Class<?>[]::new);
+        if (types == null) {
+            types = chunkTypes;
+        } else if (!Arrays.equals(types, chunkTypes)) {
+            throw new IllegalArgumentException("the batch has the types " + Arrays.toString(chunkTypes)
+                    + " instead of " + Arrays.toString(types));
+        }
+        if (batch.getNumberOfRows() == 0) {
+            return this;
+        }
+        Dataframe rows = Dataframe.of(chunk, columnNames, batch.getNumberOfRows());
+        for (GroupByView view : views) {
+            view.update(rows);
+        }
+        chunks.add(chunk);
+        numberOfRows += batch.getNumberOfRows();
+        return this;
+    }
+
+    /**
+     * @return a dataframe over the rows appended so far, later batches are not part of it
+     */
+    public synchronized Dataframe snapshot() {
+        Column[] columns = new Column[columnNames.length];
+        for (int index = 0; index < columns.length; index++) {
+            int column = index;
+            Column[] parts = chunks.stream().map(chunk -> chunk[column]).toArray(Column[]::new);
+            columns[index] = parts.length == 1 ? parts[0] : new ChunkedColumn(parts);
+        }
+        return Dataframe.of(columns, columnNames, numberOfRows);
+    }
+
+    public synchronized int getNumberOfRows() {
+        return numberOfRows;
+    }
+
+    public synchronized int getNumberOfChunks() {
+        return chunks.size();
+    }
+
+    /**
+     * Creates a group-by whose aggregates are kept up to date as batches are appended, the rows appended
+     * before are aggregated once. Only the aggregations whose state can be merged are supported, not
+     * {@link Aggregation.Function#FIRST} and {@link Aggregation.Function#LAST}
+     * @param keys columns to group by
+     * @param aggregations
+     * @return
+     */
+    public synchronized GroupByView createView(String[] keys, Aggregation... aggregations) {
+        GroupByView view = new GroupByView(keys, aggregations);
+        for (Column[] chunk : chunks) {
+            view.update(Dataframe.of(chunk, columnNames, chunk.length == 0 ? 0 : chunk[0].size()));
+        }
+        views.add(view);
+        return view;
+    }
+
+    /**
+     * Stops updating the view
+     * @param view
+     */
+    public synchronized void dropView(GroupByView view) {
+        views.remove(view);
+    }
+
+    private int findColumnIndexByName(String columnName) {
+        int index = Arrays.asList(columnNames).indexOf(columnName);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown column " + columnName);
+        }
+        return index;
+    }
+
+    /**
+     * The groups seen so far with the state of the aggregations of every group. A batch is grouped on
+     * its own and the state of its groups is merged into the state of the view, reading the aggregates
+     * only visits the groups
+     */
+    public class GroupByView {
+        private final Integer[] keys;
+        private final Aggregation[] aggregations;
+        private final Map<List<Object>, Integer> groupsByKey = new HashMap<>();
+        private final ColumnBuffer[] keyCells;
+        private final Accumulator[] accumulators;
+        private int groupCount;
+
+        GroupByView(String[] keys, Aggregation[] aggregations) {
+            this.keys = Stream.of(keys).map(AppendableDataframe.this::findColumnIndexByName).toArray(Integer[]::new);
+            Stream.of(aggregations).map(Aggregation::getColumnName).filter(name -> name != null)
+                    .forEach(AppendableDataframe.this::findColumnIndexByName);
+            this.aggregations = aggregations;
+            //the state of the view is only merged into, it does not read any column
+            this.accumulators = Stream.of(aggregations).map(aggregation -> Accumulator.of(aggregation, null, 0))
+                    .toArray(Accumulator[]::new);
+            for (int i = 0; i < aggregations.length; i++) {
+                if (!accumulators[i].isDecomposable()) {
+                    throw new IllegalArgumentException(aggregations[i].getFunction() + " cannot be maintained incrementally");
+                }
+            }
+            this.keyCells = Stream.of(this.keys).map(key -> ColumnBuffer.of(types == null ? Object.class : types[key]))
+                    .toArray(ColumnBuffer[]::new);
+        }
+
+        /**
+         * Aggregates the rows of a batch and merges the state of its groups into the state of the view
+         */
+        synchronized void update(Dataframe batch) {
+            Dataframe.DataframeGroupBy grouped = batch.groupInMemory(keys);
+            Accumulator[] batchAccumulators = grouped.accumulators(aggregations);
+            int[] firstRows = grouped.firstRows();
+            int[] groups = new int[firstRows.length];
+            for (int group = 0; group < firstRows.length; group++) {
+                List<Object> key = new ArrayList<>(keys.length);
+                for (Integer index : keys) {
+                    key.add(batch.column(index).get(firstRows[group]));
+                }
+                Integer global = groupsByKey.get(key);
+                if (global == null) {
+                    global = groupCount++;
+                    groupsByKey.put(key, global);
+                    for (int k = 0; k < keys.length; k++) {
+                        keyCells[k].add(key.get(k));
+                    }
+                }
+                groups[group] = global;
+            }
+            for (int i = 0; i < accumulators.length; i++) {
+                accumulators[i].resize(groupCount);
+                accumulators[i].merge(batchAccumulators[i], groups);
+            }
+        }
+
+        public synchronized int getNumberOfGroups() {
+            return groupCount;
+        }
+
+        /**
+         * @return the key columns followed by a column per aggregation, with a row per group in order of
+         * first appearance
+         */
+        public synchronized Dataframe result() {
+            Column[] data = new Column[keys.length + aggregations.length];
+            String[] names = new String[data.length];
+            for (int k = 0; k < keys.length; k++) {
+                data[k] = keyCells[k].build();
+                names[k] = columnNames[keys[k]];
+            }
+            for (int i = 0; i < aggregations.length; i++) {
+                data[keys.length + i] = accumulators[i].result();
+                names[keys.length + i] = aggregations[i].name(columnNames);
+            }
+            return Dataframe.of(data, names, groupCount);
+        }
+    }
+}
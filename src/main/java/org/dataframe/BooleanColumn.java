@@ -0,0 +1,149 @@
+package org.dataframe;
+
+import org.roaringbitmap.RoaringBitmap;
+
+/**
+ * Column of boolean values, the null cells are kept in a {@link NullBitmap} and hold false
+ */
+public class BooleanColumn extends Column {
+
+    private final boolean[] values;
+    /**
+     * null until a cell is null
+     */
+    private NullBitmap nulls;
+
+    public BooleanColumn(boolean[] values) {
+        this(values, null);
+    }
+
+    /**
+     * @param values false in the null cells
+     * @param nulls null if no cell is null
+     */
+    BooleanColumn(boolean[] values, NullBitmap nulls) {
+        this.values = values;
+        this.nulls = nulls;
+    }
+
+    public boolean[] values() {
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Class<?> type() {
+        return Boolean.class;
+    }
+
+    @Override
+    public Boolean get(int row) {
+        return isNull(row) ? null : values[row];
+    }
+
+    public boolean getBoolean(int row) {
+        return values[row];
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return values[row] ? 1 : 0;
+    }
+
+    @Override
+    public BooleanColumn gather(int[] rows) {
+        boolean[] gathered = new boolean[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            gathered[i] = values[rows[i]];
+        }
+        return new BooleanColumn(gathered, nulls == null ? null : NullBitmap.gather(nulls, rows));
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        return nulls != null && nulls.isNull(row);
+    }
+
+    @Override
+    int nullCount(int from, int to) {
+        return nulls == null ? 0 : nulls.count(from, to);
+    }
+
+    @Override
+    NullBitmap nullBitmap() {
+        return nulls;
+    }
+
+    @Override
+    public BooleanColumn fillNull(Object value) {
+        if (nulls == null) {
+            return this;
+        }
+        boolean[] filled = values.clone();
+        boolean fill = (Boolean) value;
+        for (int row = 0; row < filled.length; row++) {
+            if (nulls.isNull(row)) {
+                filled[row] = fill;
+            }
+        }
+        return new BooleanColumn(filled);
+    }
+
+    @Override
+    long[] sortKeys() {
+        long[] keys = new long[values.length];
+        for (int row = 0; row < values.length; row++) {
+            keys[row] = values[row] ? 1 : 0;
+        }
+        return keys;
+    }
+
+    @Override
+    int[] groupCodes() {
+        int[] codes = new int[values.length];
+        for (int row = 0; row < values.length; row++) {
+            codes[row] = isNull(row) ? 2 : values[row] ? 1 : 0;
+        }
+        return codes;
+    }
+
+    @Override
+    void selectEqual(Object value, int from, int to, RoaringBitmap rows) {
+        if (!(value instanceof Boolean)) {
+            return;
+        }
+        boolean flag = (Boolean) value;
+        for (int row = from; row < to; row++) {
+            if (values[row] == flag) {
+                rows.add(row);
+            }
+        }
+        if (nulls != null) {
+            nulls.removeFrom(rows, from, to);
+        }
+    }
+
+    @Override
+    void selectNull(int from, int to, RoaringBitmap rows) {
+        if (nulls != null) {
+            nulls.addTo(rows, from, to);
+        }
+    }
+
+    @Override
+    void set(int row, Object value) {
+        if (value == null) {
+            if (nulls == null) {
+                nulls = new NullBitmap(values.length);
+            }
+            nulls.set(row);
+            values[row] = false;
+        } else {
+            values[row] = (Boolean) value;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package org.dataframe;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Dictionary encoded column of strings, each row keeps only the code of its value in the dictionary.
+ * Codes are kept in a byte array while the dictionary has no more than 256 entries.
+ * A null cell is just another entry of the dictionary
+ */
+public class CategoricalColumn extends Column {
+
+    /**
+     * Maximum number of distinct values for which a string column is dictionary encoded
+     */
+    public static final int MAX_CARDINALITY = 1 << 16;
+
+    private final String[] dictionary;
+    private final byte[] byteCodes;
+    private final int[] codes;
+
+    public CategoricalColumn(String[] dictionary, int[] codes) {
+        this.dictionary = dictionary;
+        if (dictionary.length <= 256) {
+            this.byteCodes = new byte[codes.length];
+            for (int i = 0; i < codes.length; i++) {
+                byteCodes[i] = (byte) codes[i];
+            }
+            this.codes = null;
+        } else {
+            this.byteCodes = null;
+            this.codes = codes;
+        }
+    }
+
+    /**
+     * @param byteCodes the codes if the dictionary has no more than 256 entries, otherwise null
+     * @param codes the codes if the dictionary has more than 256 entries, otherwise null
+     */
+    CategoricalColumn(String[] dictionary, byte[] byteCodes, int[] codes) {
+        this.dictionary = dictionary;
+        this.byteCodes = byteCodes;
+        this.codes = codes;
+    }
+
+    /**
+     * @return the codes if they are kept in a byte array, otherwise null
+     */
+    byte[] byteCodes() {
+        return byteCodes;
+    }
+
+    /**
+     * @return the codes if they are kept in an int array, otherwise null
+     */
+    int[] intCodes() {
+        return codes;
+    }
+
+    /**
+     * Dictionary encodes the given cells if all of them are strings and they have a low cardinality
+     * @param cells
+     * @param size
+     * @return the encoded column or null if the cells are not suitable
+     */
+    static CategoricalColumn encode(Object[] cells, int size) {
+        int maxCardinality = Math.min(MAX_CARDINALITY, Math.max(size / 2, 1));
+        Map<Object, Integer> codeByValue = new HashMap<>();
+        int[] codes = new int[size];
+        for (int row = 0; row < size; row++) {
+            Object cell = cells[row];
+            if (cell != null && !(cell instanceof String)) {
+                return null;
+            }
+            Integer code = codeByValue.get(cell);
+            if (code == null) {
+                if (codeByValue.size() == maxCardinality) {
+                    return null;
+                }
+                code = codeByValue.size();
+                codeByValue.put(cell, code);
+            }
+            codes[row] = code;
+        }
+        String[] dictionary = new String[codeByValue.size()];
+        codeByValue.forEach((value, code) -> dictionary[code] = (String) value);
+        return new CategoricalColumn(dictionary, codes);
+    }
+
+    public String[] dictionary() {
+        return dictionary;
+    }
+
+    public int code(int row) {
+        return byteCodes != null ? byteCodes[row] & 0xFF : codes[row];
+    }
+
+    /**
+     * @param value
+     * @return the code of the value or -1 if it is not part of the dictionary
+     */
+    public int codeOf(Object value) {
+        for (int code = 0; code < dictionary.length; code++) {
+            if (Objects.equals(dictionary[code], value)) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of bits needed to hold any code of this column
+     */
+    int bitsPerCode() {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(dictionary.length - 1, 0));
+    }
+
+    @Override
+    public int size() {
+        return byteCodes != null ? byteCodes.length : codes.length;
+    }
+
+    @Override
+    public Class<?> type() {
+        return String.class;
+    }
+
+    @Override
+    public String get(int row) {
+        return dictionary[code(row)];
+    }
+
+    @Override
+    public CategoricalColumn gather(int[] rows) {
+        if (byteCodes != null) {
+            byte[] gathered = new byte[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                gathered[i] = byteCodes[rows[i]];
+            }
+            return new CategoricalColumn(dictionary, gathered, null);
+        }
+        int[] gathered = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            gathered[i] = codes[rows[i]];
+        }
+        return new CategoricalColumn(dictionary, null, gathered);
+    }
+
+    @Override
+    long[] sortKeys() {
+        Integer[] byValue = new Integer[dictionary.length];
+        for (int code = 0; code < dictionary.length; code++) {
+            byValue[code] = code;
+        }
+        Arrays.sort(byValue, Comparator.comparing(code -> dictionary[code], Comparator.nullsLast(Comparator.<String>naturalOrder())));
+        long[] ranks = new long[dictionary.length];
+        for (int rank = 0; rank < byValue.length; rank++) {
+            ranks[byValue[rank]] = rank;
+        }
+        long[] keys = new long[size()];
+        for (int row = 0; row < keys.length; row++) {
+            keys[row] = ranks[code(row)];
+        }
+        return keys;
+    }
+
+    @Override
+    int[] groupCodes() {
+        if (codes != null) {
+            return codes;
+        }
+        int[] groupCodes = new int[byteCodes.length];
+        for (int row = 0; row < groupCodes.length; row++) {
+            groupCodes[row] = byteCodes[row] & 0xFF;
+        }
+        return groupCodes;
+    }
+
+    @Override
+    void set(int row, Object value) {
+        int code = codeOf(value);
+        if (code < 0) {
+            throw new IllegalArgumentException(value + " is not part of the dictionary");
+        }
+        if (byteCodes != null) {
+            byteCodes[row] = (byte) code;
+        } else {
+            codes[row] = code;
+        }
+    }
+
+    /**
+     * Adds to the bitmap the rows of the range whose code is marked as matching
+     */
+    private void selectCodes(boolean[] matches, int from, int to, RoaringBitmap rows) {
+        if (byteCodes != null) {
+            for (int row = from; row < to; row++) {
+                if (matches[byteCodes[row] & 0xFF]) {
+                    rows.add(row);
+                }
+            }
+        } else {
+            for (int row = from; row < to; row++) {
+                if (matches[codes[row]]) {
+                    rows.add(row);
+                }
+            }
+        }
+    }
+
+    @Override
+    void selectEqual(Object value, int from, int to, RoaringBitmap rows) {
+        int code = codeOf(value);
+        if (code >= 0) {
+            boolean[] matches = new boolean[dictionary.length];
+            matches[code] = true;
+            selectCodes(matches, from, to, rows);
+        }
+    }
+
+    @Override
+    void selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive, int from, int to, RoaringBitmap rows) {
+        boolean[] matches = new boolean[dictionary.length];
+        for (int code = 0; code < dictionary.length; code++) {
+            matches[code] = dictionary[code] != null && inRange(dictionary[code], low, lowInclusive, high, highInclusive);
+        }
+        selectCodes(matches, from, to, rows);
+    }
+
+    @Override
+    void selectIn(Set<Object> values, int from, int to, RoaringBitmap rows) {
+        boolean[] matches = new boolean[dictionary.length];
+        for (int code = 0; code < dictionary.length; code++) {
+            matches[code] = dictionary[code] != null && values.contains(dictionary[code]);
+        }
+        selectCodes(matches, from, to, rows);
+    }
+
+    @Override
+    void selectNull(int from, int to, RoaringBitmap rows) {
+        int code = codeOf(null);
+        if (code >= 0) {
+            boolean[] matches = new boolean[dictionary.length];
+            matches[code] = true;
+            selectCodes(matches, from, to, rows);
+        }
+    }
+
+    @Override
+    Set<Object> distinct(int from, int to) {
+        boolean[] seen = new boolean[dictionary.length];
+        Set<Object> distinct = new LinkedHashSet<>();
+        for (int row = from; row < to && distinct.size() < dictionary.length; row++) {
+            int code = code(row);
+            if (!seen[code]) {
+                seen[code] = true;
+                distinct.add(dictionary[code]);
+            }
+        }
+        return distinct;
+    }
+}
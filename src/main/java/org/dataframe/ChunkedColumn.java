@@ -0,0 +1,200 @@
+package org.dataframe;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Concatenation of columns of the same type, the chunks are not copied. Sums and selections run chunk
+ * by chunk, the operations that need the cells in bulk (sorting, grouping, gathering) copy the chunks
+ * once into a single column
+ */
+final class ChunkedColumn extends Column {
+
+    private final Column[] chunks;
+    /**
+     * first row of every chunk followed by the size
+     */
+    private final int[] starts;
+    private volatile Column concatenated;
+
+    ChunkedColumn(Column[] chunks) {
+        this.chunks = chunks;
+        this.starts = new int[chunks.length + 1];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            starts[chunk + 1] = starts[chunk] + chunks[chunk].size();
+        }
+    }
+
+    private int chunk(int row) {
+        int chunk = Arrays.binarySearch(starts, row);
+        //rows at the start of empty chunks belong to the next non empty chunk
+        if (chunk >= 0) {
+            while (starts[chunk + 1] == row) {
+                chunk++;
+            }
+            return chunk;
+        }
+        return -chunk - 2;
+    }
+
+    @Override
+    public int size() {
+        return starts[chunks.length];
+    }
+
+    @Override
+    public Class<?> type() {
+        return chunks.length == 0 ? Object.class : chunks[0].type();
+    }
+
+    @Override
+    public boolean isNumeric() {
+        return chunks.length > 0 && chunks[0].isNumeric();
+    }
+
+    @Override
+    public Object get(int row) {
+        int chunk = chunk(row);
+        return chunks[chunk].get(row - starts[chunk]);
+    }
+
+    @Override
+    public double getDouble(int row) {
+        int chunk = chunk(row);
+        return chunks[chunk].getDouble(row - starts[chunk]);
+    }
+
+    @Override
+    public long getLong(int row) {
+        int chunk = chunk(row);
+        return chunks[chunk].getLong(row - starts[chunk]);
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        int chunk = chunk(row);
+        return chunks[chunk].isNull(row - starts[chunk]);
+    }
+
+    @Override
+    void set(int row, Object value) {
+        int chunk = chunk(row);
+        chunks[chunk].set(row - starts[chunk], value);
+    }
+
+    /**
+     * @return the cells of all the chunks in a single column, copied on first use
+     */
+    @Override
+    public Column materialize() {
+        Column concatenated = this.concatenated;
+        if (concatenated == null) {
+            synchronized (this) {
+                concatenated = this.concatenated;
+                if (concatenated == null) {
+                    ColumnBuffer buffer = ColumnBuffer.of(type());
+                    for (Column chunk : chunks) {
+                        Column cells = chunk.materialize();
+                        if (cells instanceof EncodedColumn) {
+                            cells = ((EncodedColumn) cells).decoded();
+                        }
+                        int offset = buffer.size();
+                        if (cells instanceof DoubleColumn) {
+                            buffer.addArray(((DoubleColumn) cells).values());
+                        } else if (cells instanceof LongColumn) {
+                            buffer.addArray(((LongColumn) cells).values());
+                        } else if (cells instanceof IntColumn) {
+                            buffer.addArray(((IntColumn) cells).values());
+                        } else {
+                            for (int row = 0; row < cells.size(); row++) {
+                                buffer.add(cells.get(row));
+                            }
+                        }
+                        //the arrays hold zero in the null cells of primitive columns
+                        buffer.addNulls(cells, offset);
+                    }
+                    this.concatenated = concatenated = buffer.build();
+                }
+            }
+        }
+        return concatenated;
+    }
+
+    @Override
+    public Column gather(int[] rows) {
+        return materialize().gather(rows);
+    }
+
+    @Override
+    long[] sortKeys() {
+        return materialize().sortKeys();
+    }
+
+    @Override
+    Stream<OffHeapStorage> storages() {
+        return Stream.of(chunks).flatMap(Column::storages);
+    }
+
+    @Override
+    int[] groupCodes() {
+        return materialize().groupCodes();
+    }
+
+    @FunctionalInterface
+    private interface ChunkScan {
+        void scan(Column chunk, int from, int to, RoaringBitmap rows);
+    }
+
+    /**
+     * Runs the scan on the part of every chunk that overlaps the range
+     */
+    private void scan(int from, int to, RoaringBitmap rows, ChunkScan scan) {
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            int start = starts[chunk];
+            int chunkFrom = Math.max(from, start);
+            int chunkTo = Math.min(to, starts[chunk + 1]);
+            if (chunkFrom < chunkTo) {
+                RoaringBitmap matches = new RoaringBitmap();
+                scan.scan(chunks[chunk], chunkFrom - start, chunkTo - start, matches);
+                rows.or(RoaringBitmap.addOffset(matches, start));
+            }
+        }
+    }
+
+    @Override
+    void selectEqual(Object value, int from, int to, RoaringBitmap rows) {
+        scan(from, to, rows, (chunk, chunkFrom, chunkTo, matches) -> chunk.selectEqual(value, chunkFrom, chunkTo, matches));
+    }
+
+    @Override
+    void selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive, int from, int to, RoaringBitmap rows) {
+        scan(from, to, rows, (chunk, chunkFrom, chunkTo, matches) -> chunk.selectRange(low, lowInclusive, high, highInclusive, chunkFrom, chunkTo, matches));
+    }
+
+    @Override
+    void selectIn(Set<Object> values, int from, int to, RoaringBitmap rows) {
+        scan(from, to, rows, (chunk, chunkFrom, chunkTo, matches) -> chunk.selectIn(values, chunkFrom, chunkTo, matches));
+    }
+
+    @Override
+    void selectNull(int from, int to, RoaringBitmap rows) {
+        scan(from, to, rows, Column::selectNull);
+    }
+
+    @Override
+    KahanSum sum(int from, int to) {
+        KahanSum sum = new KahanSum();
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            int start = starts[chunk];
+            int chunkFrom = Math.max(from, start);
+            int chunkTo = Math.min(to, starts[chunk + 1]);
+            if (chunkFrom < chunkTo) {
+                sum.add(chunks[chunk].sum(chunkFrom - start, chunkTo - start));
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,467 @@
+package org.dataframe;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Storage of a single column of a {@link Dataframe}.
+ * Numeric and boolean columns keep their cells in primitive arrays so that operations
+ * run on them without boxing, low cardinality strings are kept in a {@link CategoricalColumn}
+ * and {@link ObjectColumn} is the fallback for any other type
+ */
+public abstract class Column {
+
+    /**
+     * secondary indexes by {@link IndexType} ordinal, null until one is created
+     */
+    private volatile ColumnIndex[] indexes;
+    /**
+     * number of null cells, -1 until counted
+     */
+    private volatile int nullCount = -1;
+
+    public abstract int size();
+
+    /**
+     * @return the (boxed) java type of the cells
+     */
+    public abstract Class<?> type();
+
+    public abstract Object get(int row);
+
+    /**
+     * Numeric value of a cell, fails for non numeric columns
+     * @param row
+     * @return
+     */
+    public double getDouble(int row) {
+        return ((Number) get(row)).doubleValue();
+    }
+
+    /**
+     * Integral value of a cell, fails for non numeric columns
+     * @param row
+     * @return
+     */
+    public long getLong(int row) {
+        return ((Number) get(row)).longValue();
+    }
+
+    public boolean isNull(int row) {
+        return get(row) == null;
+    }
+
+    /**
+     * @return the number of null cells, counted once
+     */
+    public int nullCount() {
+        int count = nullCount;
+        if (count < 0) {
+            nullCount = count = nullCount(0, size());
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of null cells from (inclusive) to (exclusive)
+     */
+    int nullCount(int from, int to) {
+        int count = 0;
+        for (int row = from; row < to; row++) {
+            if (isNull(row)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the validity bitmap of a primitive column, null if it has none or no null cell
+     */
+    NullBitmap nullBitmap() {
+        return null;
+    }
+
+    /**
+     * Creates a column whose null cells are replaced by the given value
+     * @param value
+     * @return this column if it has no null cell
+     */
+    public Column fillNull(Object value) {
+        if (nullCount() == 0) {
+            return this;
+        }
+        ColumnBuffer buffer = ColumnBuffer.of(type());
+        for (int row = 0; row < size(); row++) {
+            buffer.add(isNull(row) ? value : get(row));
+        }
+        return buffer.build();
+    }
+
+    public boolean isNumeric() {
+        return Number.class.isAssignableFrom(type());
+    }
+
+    /**
+     * Builds an index of the given type unless the column already has one
+     * @return the index
+     */
+    synchronized ColumnIndex createIndex(IndexType type, Execution execution) {
+        ColumnIndex[] indexes = this.indexes == null ? new ColumnIndex[IndexType.values().length] : this.indexes.clone();
+        if (indexes[type.ordinal()] == null) {
+            indexes[type.ordinal()] = ColumnIndex.create(this, type, execution);
+            this.indexes = indexes;
+        }
+        return indexes[type.ordinal()];
+    }
+
+    synchronized void dropIndexes() {
+        indexes = null;
+    }
+
+    /**
+     * @param preferred type of index to return if the column has both
+     * @return an index of the column or null if it has none
+     */
+    ColumnIndex index(IndexType preferred) {
+        ColumnIndex[] indexes = this.indexes;
+        if (indexes == null) {
+            return null;
+        }
+        ColumnIndex index = indexes[preferred.ordinal()];
+        return index != null ? index : indexes[1 - preferred.ordinal()];
+    }
+
+    /**
+     * Creates a new column that contains the cells of the given rows in the given order
+     * @param rows
+     * @return
+     */
+    public abstract Column gather(int[] rows);
+
+    abstract void set(int row, Object value);
+
+    /**
+     * @return a column that holds its own cells, this column unless it is a view over another one
+     */
+    public Column materialize() {
+        return this;
+    }
+
+    /**
+     * @return the off-heap storages the cells are read from, none for the columns on the heap
+     */
+    Stream<OffHeapStorage> storages() {
+        return Stream.empty();
+    }
+
+    /**
+     * Creates views over the rows of columns, views of views are resolved to views of the underlying
+     * columns and columns that share a selection vector keep sharing the resolved one
+     * @param columns
+     * @param rows
+     * @return
+     */
+    static Column[] view(Column[] columns, int[] rows) {
+        Map<int[], int[]> resolved = new IdentityHashMap<>();
+        Map<Integer, int[]> resolvedSlices = new HashMap<>();
+        Column[] views = new Column[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            Column column = columns[i];
+            if (column instanceof ViewColumn.Indexed) {
+                int[] parentRows = ((ViewColumn.Indexed) column).rows();
+                int[] composed = resolved.computeIfAbsent(parentRows, key -> {
+                    int[] composition = new int[rows.length];
+                    for (int row = 0; row < rows.length; row++) {
+                        composition[row] = parentRows[rows[row]];
+                    }
+                    return composition;
+                });
+                views[i] = new ViewColumn.Indexed(((ViewColumn) column).parent(), composed);
+            } else if (column instanceof ViewColumn.Sliced) {
+                int offset = ((ViewColumn.Sliced) column).offset();
+                int[] composed = resolvedSlices.computeIfAbsent(offset, key -> {
+                    int[] composition = new int[rows.length];
+                    for (int row = 0; row < rows.length; row++) {
+                        composition[row] = offset + rows[row];
+                    }
+                    return composition;
+                });
+                views[i] = new ViewColumn.Indexed(((ViewColumn) column).parent(), composed);
+            } else {
+                views[i] = new ViewColumn.Indexed(column, rows);
+            }
+        }
+        return views;
+    }
+
+    /**
+     * @return a view of the rows from (inclusive) to (exclusive)
+     */
+    Column slice(int from, int to) {
+        return new ViewColumn.Sliced(this, from, to - from);
+    }
+
+    /**
+     * Adds to the bitmap the rows of the range whose cell is equal to the (non null) value
+     */
+    void selectEqual(Object value, int from, int to, RoaringBitmap rows) {
+        for (int row = from; row < to; row++) {
+            if (value.equals(get(row))) {
+                rows.add(row);
+            }
+        }
+    }
+
+    /**
+     * Adds to the bitmap the rows of the range whose cell lies between the bounds, a null bound leaves the range open
+     */
+    void selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive, int from, int to, RoaringBitmap rows) {
+        for (int row = from; row < to; row++) {
+            Object cell = get(row);
+            if (cell != null && inRange(cell, low, lowInclusive, high, highInclusive)) {
+                rows.add(row);
+            }
+        }
+    }
+
+    void selectIn(Set<Object> values, int from, int to, RoaringBitmap rows) {
+        for (int row = from; row < to; row++) {
+            Object cell = get(row);
+            if (cell != null && values.contains(cell)) {
+                rows.add(row);
+            }
+        }
+    }
+
+    void selectNull(int from, int to, RoaringBitmap rows) {
+        for (int row = from; row < to; row++) {
+            if (isNull(row)) {
+                rows.add(row);
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static boolean inRange(Object cell, Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+        if (low != null) {
+            int compare = ((Comparable) cell).compareTo(low);
+            if (compare < 0 || (compare == 0 && !lowInclusive)) {
+                return false;
+            }
+        }
+        if (high != null) {
+            int compare = ((Comparable) cell).compareTo(high);
+            return compare < 0 || (compare == 0 && highInclusive);
+        }
+        return true;
+    }
+
+    static boolean inRange(double value, double low, boolean lowInclusive, double high, boolean highInclusive) {
+        return (lowInclusive ? value >= low : value > low) && (highInclusive ? value <= high : value < high);
+    }
+
+    /**
+     * @return the numeric value of a range bound, an open bound is infinite
+     */
+    static double bound(Object bound, double unbounded) {
+        return bound == null ? unbounded : ((Number) bound).doubleValue();
+    }
+
+    /**
+     * @return the numeric values of the set that are integers, sorted
+     */
+    static long[] integralValues(Set<Object> values) {
+        return values.stream().filter(Number.class::isInstance).map(Number.class::cast)
+                .filter(value -> value.doubleValue() == Math.rint(value.doubleValue()))
+                .mapToLong(Number::longValue).sorted().toArray();
+    }
+
+    /**
+     * @return whether the value is a number without fractional part of any type
+     */
+    static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    /**
+     * Encodes every cell in a long so that comparing the longs gives the order of the cells,
+     * the encoding of null cells is undefined. The default implementation ranks {@link Comparable} cells
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    long[] sortKeys() {
+        Object[] sorted = IntStream.range(0, size()).mapToObj(this::get).filter(Objects::nonNull).distinct().toArray();
+        if (!Stream.of(sorted).allMatch(Comparable.class::isInstance)) {
+            throw new IllegalArgumentException("Cannot sort column of " + type().getName());
+        }
+        Arrays.sort(sorted);
+        Map<Object, Integer> ranks = new HashMap<>();
+        for (int rank = 0; rank < sorted.length; rank++) {
+            ranks.put(sorted[rank], rank);
+        }
+        long[] keys = new long[size()];
+        for (int row = 0; row < keys.length; row++) {
+            Object cell = get(row);
+            keys[row] = cell == null ? 0 : ranks.get(cell);
+        }
+        return keys;
+    }
+
+    /**
+     * Numbers the distinct values of the column, equal cells get the same code
+     * @return a non negative code per row
+     */
+    int[] groupCodes() {
+        Map<Object, Integer> codes = new HashMap<>();
+        int[] groupCodes = new int[size()];
+        for (int row = 0; row < groupCodes.length; row++) {
+            Object cell = get(row);
+            Integer code = codes.get(cell);
+            if (code == null) {
+                code = codes.size();
+                codes.put(cell, code);
+            }
+            groupCodes[row] = code;
+        }
+        return groupCodes;
+    }
+
+    /**
+     * Numbers distinct primitive values encoded as longs
+     */
+    static int[] groupCodes(long[] values) {
+        return groupCodes(values, null);
+    }
+
+    /**
+     * Numbers distinct primitive values encoded as longs, the null rows get a code of their own
+     */
+    static int[] groupCodes(long[] values, NullBitmap nulls) {
+        LongIntHashMap codes = new LongIntHashMap(1024);
+        int[] groupCodes = new int[values.length];
+        int count = 0;
+        int nullCode = -1;
+        for (int row = 0; row < values.length; row++) {
+            if (nulls != null && nulls.isNull(row)) {
+                if (nullCode < 0) {
+                    nullCode = count++;
+                }
+                groupCodes[row] = nullCode;
+                continue;
+            }
+            int code = codes.putIfAbsent(values[row], count);
+            groupCodes[row] = code < 0 ? count++ : code;
+        }
+        return groupCodes;
+    }
+
+    /**
+     * @return the distinct values of the column in order of first appearance
+     */
+    public Object[] distinct() {
+        return distinct(0, size()).toArray();
+    }
+
+    /**
+     * @return the distinct values of the given range of rows in order of first appearance
+     */
+    Set<Object> distinct(int from, int to) {
+        Set<Object> distinct = new LinkedHashSet<>();
+        for (int row = from; row < to; row++) {
+            distinct.add(get(row));
+        }
+        return distinct;
+    }
+
+    public double sum() {
+        return sum(0, size()).value();
+    }
+
+    /**
+     * @return the compensated sum of the non null cells of the given range of rows
+     */
+    KahanSum sum(int from, int to) {
+        KahanSum sum = new KahanSum();
+        for (int row = from; row < to; row++) {
+            if (!isNull(row)) {
+                sum.add(getDouble(row));
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Allocates an empty column able to hold cells of the given type
+     * @param type
+     * @param size
+     * @return
+     */
+    public static Column allocate(Class<?> type, int size) {
+        if (type == Double.class || type == double.class || type == Float.class || type == float.class
+                || type == BigDecimal.class || type == Number.class) {
+            return new DoubleColumn(new double[size]);
+        } else if (type == Long.class || type == long.class || type == BigInteger.class) {
+            return new LongColumn(new long[size]);
+        } else if (type == Integer.class || type == int.class || type == Short.class || type == short.class
+                || type == Byte.class || type == byte.class) {
+            return new IntColumn(new int[size]);
+        } else if (type == Boolean.class || type == boolean.class) {
+            return new BooleanColumn(new boolean[size]);
+        }
+        return new ObjectColumn<>(type, size);
+    }
+
+    /**
+     * Copies boxed cells into a column, its type is the common type of the non null cells, integral
+     * types are widened to long and mixed numeric types to double
+     * @param cells
+     * @param size
+     * @return
+     */
+    public static Column of(Object[] cells, int size) {
+        ColumnBuffer buffer = ColumnBuffer.of(ColumnBuffer.infer(cells, size));
+        for (int row = 0; row < size; row++) {
+            buffer.add(cells[row]);
+        }
+        return buffer.build();
+    }
+
+    /**
+     * Dictionary encodes low cardinality string columns, any other column is returned as is
+     * @param column
+     * @return
+     */
+    static Column compact(Column column) {
+        if (column instanceof ObjectColumn && column.type() == String.class) {
+            CategoricalColumn categorical = CategoricalColumn.encode(((ObjectColumn<?>) column).values(), column.size());
+            if (categorical != null) {
+                return categorical;
+            }
+        }
+        return column;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("[");
+        for (int row = 0; row < size(); row++) {
+            if (row > 0) {
+                s.append(", ");
+            }
+            s.append(get(row));
+        }
+        return s.append(']').toString();
+    }
+}
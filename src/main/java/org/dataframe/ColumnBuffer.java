@@ -0,0 +1,521 @@
+package org.dataframe;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Growable buffer of the cells of a column whose size is not known in advance, numeric and boolean
+ * cells are appended to primitive arrays
+ */
+abstract class ColumnBuffer {
+
+    static final int INITIAL_CAPACITY = 1024;
+
+    int size;
+    /**
+     * rows of the null cells of primitive buffers, null until there is one
+     */
+    RoaringBitmap nullRows;
+
+    /**
+     * Appends a cell
+     * @throws IllegalArgumentException if the buffer does not accept the cell
+     */
+    abstract void add(Object cell);
+
+    /**
+     * @return whether the cell is null or is added without changing its value
+     */
+    abstract boolean accepts(Object cell);
+
+    abstract Object get(int row);
+
+    /**
+     * @return a column of the buffered cells, dictionary encoded if they are low cardinality strings
+     */
+    abstract Column build();
+
+    /**
+     * Appends the cells of another buffer, the arrays are copied when both buffers are of the same kind
+     * @param other
+     */
+    void addAll(ColumnBuffer other) {
+        for (int row = 0; row < other.size; row++) {
+            add(other.nullRows != null && other.nullRows.contains(row) ? null : other.get(row));
+        }
+    }
+
+    /**
+     * Appends a batch of cells, primitive arrays of the type of the buffer are copied without boxing
+     * @param cells array of cells
+     */
+    void addArray(Object cells) {
+        int length = Array.getLength(cells);
+        for (int row = 0; row < length; row++) {
+            add(Array.get(cells, row));
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return a buffer of the buffered cells that also accepts the given cell: int cells are widened to long,
+     * integral cells to double and the rest to Object
+     */
+    ColumnBuffer widen(Object cell) {
+        boolean integral = this instanceof IntBuffer || this instanceof LongBuffer;
+        ColumnBuffer widened = of(integral && isLong(cell) ? Long.class : integral && cell instanceof Number ? Double.class : Object.class);
+        widened.addAll(this);
+        return widened;
+    }
+
+    /**
+     * Appends the cells of another buffer, widened first if this buffer does not accept all of them
+     * @return this buffer or the widened one
+     */
+    ColumnBuffer append(ColumnBuffer other) {
+        ColumnBuffer target = this;
+        if (other.getClass() != getClass() || other instanceof ObjectBuffer) {
+            for (int row = 0; row < other.size; row++) {
+                Object cell = other.get(row);
+                if (!target.accepts(cell)) {
+                    target = target.widen(cell);
+                }
+            }
+        }
+        target.addAll(other);
+        return target;
+    }
+
+    IllegalArgumentException rejected(Object cell) {
+        return new IllegalArgumentException(cell.getClass().getSimpleName() + " " + cell + " does not fit a column of "
+                + getClass().getSimpleName().replace("Buffer", "").toLowerCase() + "s");
+    }
+
+    /**
+     * @return whether the cell is an integral number within the range of a long
+     */
+    private static boolean isLong(Object cell) {
+        return Column.isIntegral(cell) || cell instanceof BigInteger && ((BigInteger) cell).bitLength() < Long.SIZE;
+    }
+
+    /**
+     * @return the capacity of an array of the given capacity that has to fit the given size
+     */
+    static int reserve(int capacity, int size) {
+        return size <= capacity ? capacity : Math.max(grow(capacity), size);
+    }
+
+    void addNull() {
+        if (nullRows == null) {
+            nullRows = new RoaringBitmap();
+        }
+        nullRows.add(size);
+    }
+
+    /**
+     * Marks the null cells of another buffer whose cells were copied from the given row on
+     */
+    void addNulls(ColumnBuffer other, int offset) {
+        if (other.nullRows != null) {
+            if (nullRows == null) {
+                nullRows = new RoaringBitmap();
+            }
+            other.nullRows.forEach((int row) -> nullRows.add(offset + row));
+        }
+    }
+
+    /**
+     * Marks the null cells of a column whose cells were copied from the given row on
+     */
+    void addNulls(Column column, int offset) {
+        NullBitmap nulls = column.nullBitmap();
+        if (nulls != null) {
+            RoaringBitmap rows = new RoaringBitmap();
+            nulls.addTo(rows, 0, column.size());
+            if (nullRows == null) {
+                nullRows = new RoaringBitmap();
+            }
+            nullRows.or(RoaringBitmap.addOffset(rows, offset));
+        }
+    }
+
+    /**
+     * @return the validity bitmap of the buffered cells, null if none is null
+     */
+    NullBitmap nulls() {
+        return NullBitmap.of(nullRows, size);
+    }
+
+    static int grow(int capacity) {
+        return capacity + (capacity >> 1) + 1;
+    }
+
+    /**
+     * @param type java type of the cells, Object if it is not known
+     * @return
+     */
+    static ColumnBuffer of(Class<?> type) {
+        if (type == Double.class || type == double.class || type == Float.class || type == float.class
+                || type == BigDecimal.class || type == Number.class) {
+            return new DoubleBuffer();
+        } else if (type == Long.class || type == long.class || type == BigInteger.class) {
+            return new LongBuffer();
+        } else if (type == Integer.class || type == int.class || type == Short.class || type == short.class
+                || type == Byte.class || type == byte.class) {
+            return new IntBuffer();
+        } else if (type == Boolean.class || type == boolean.class) {
+            return new BooleanBuffer();
+        }
+        return new ObjectBuffer(type);
+    }
+
+    /**
+     * Infers the type of a column from a sample of its cells, integral types are widened to long
+     * and mixed numeric types to double
+     * @param rows sampled rows
+     * @param count number of sampled rows
+     * @param column
+     * @return the common type of the non null cells, Object if they are all null or have no common type
+     */
+    static Class<?> infer(Object[][] rows, int count, int column) {
+        Class<?> type = null;
+        for (int row = 0; row < count; row++) {
+            type = infer(type, rows[row][column]);
+        }
+        return type == null ? Object.class : type;
+    }
+
+    /**
+     * @return the common type of the non null cells, Object if they are all null or have no common type
+     */
+    static Class<?> infer(Object[] cells, int count) {
+        Class<?> type = null;
+        for (int row = 0; row < count; row++) {
+            type = infer(type, cells[row]);
+        }
+        return type == null ? Object.class : type;
+    }
+
+    private static Class<?> infer(Class<?> type, Object cell) {
+        if (cell == null || cell.getClass() == type) {
+            return type;
+        }
+        return type == null ? cell.getClass() : widen(type, cell.getClass());
+    }
+
+    private static Class<?> widen(Class<?> left, Class<?> right) {
+        if (Number.class.isAssignableFrom(left) && Number.class.isAssignableFrom(right)) {
+            return isIntegral(left) && isIntegral(right) ? Long.class : Double.class;
+        }
+        return Object.class;
+    }
+
+    private static boolean isIntegral(Class<?> type) {
+        return type == Long.class || type == Integer.class || type == Short.class || type == Byte.class
+                || type == BigInteger.class;
+    }
+
+    /**
+     * Buffer of floating point cells, null cells are added as zero and marked in the validity bitmap
+     */
+    static class DoubleBuffer extends ColumnBuffer {
+        private double[] values = new double[INITIAL_CAPACITY];
+
+        @Override
+        void add(Object cell) {
+            if (cell == null) {
+                addNull();
+            } else if (!(cell instanceof Number)) {
+                throw rejected(cell);
+            }
+            add(cell == null ? 0 : ((Number) cell).doubleValue());
+        }
+
+        @Override
+        boolean accepts(Object cell) {
+            return cell == null || cell instanceof Number;
+        }
+
+        void add(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size));
+            }
+            values[size++] = value;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void addArray(Object cells) {
+            if (cells instanceof double[]) {
+                double[] batch = (double[]) cells;
+                if (size + batch.length > values.length) {
+                    values = Arrays.copyOf(values, reserve(values.length, size + batch.length));
+                }
+                System.arraycopy(batch, 0, values, size, batch.length);
+                size += batch.length;
+            } else {
+                super.addArray(cells);
+            }
+        }
+
+        @Override
+        void addAll(ColumnBuffer other) {
+            if (other instanceof DoubleBuffer) {
+                if (size + other.size > values.length) {
+                    values = Arrays.copyOf(values, reserve(values.length, size + other.size));
+                }
+                System.arraycopy(((DoubleBuffer) other).values, 0, values, size, other.size);
+                addNulls(other, size);
+                size += other.size;
+            } else {
+                super.addAll(other);
+            }
+        }
+
+        @Override
+        Column build() {
+            return new DoubleColumn(Arrays.copyOf(values, size), nulls());
+        }
+    }
+
+    /**
+     * Buffer of integral cells, null cells are added as zero and marked in the validity bitmap
+     */
+    static class LongBuffer extends ColumnBuffer {
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        @Override
+        void add(Object cell) {
+            if (cell == null) {
+                addNull();
+            } else if (!isLong(cell)) {
+                throw rejected(cell);
+            }
+            add(cell == null ? 0 : ((Number) cell).longValue());
+        }
+
+        @Override
+        boolean accepts(Object cell) {
+            return cell == null || isLong(cell);
+        }
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size));
+            }
+            values[size++] = value;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void addArray(Object cells) {
+            if (cells instanceof long[]) {
+                long[] batch = (long[]) cells;
+                if (size + batch.length > values.length) {
+                    values = Arrays.copyOf(values, reserve(values.length, size + batch.length));
+                }
+                System.arraycopy(batch, 0, values, size, batch.length);
+                size += batch.length;
+            } else {
+                super.addArray(cells);
+            }
+        }
+
+        @Override
+        void addAll(ColumnBuffer other) {
+            if (other instanceof LongBuffer) {
+                if (size + other.size > values.length) {
+                    values = Arrays.copyOf(values, reserve(values.length, size + other.size));
+                }
+                System.arraycopy(((LongBuffer) other).values, 0, values, size, other.size);
+                addNulls(other, size);
+                size += other.size;
+            } else {
+                super.addAll(other);
+            }
+        }
+
+        @Override
+        Column build() {
+            return new LongColumn(Arrays.copyOf(values, size), nulls());
+        }
+    }
+
+    static class IntBuffer extends ColumnBuffer {
+        private int[] values = new int[INITIAL_CAPACITY];
+
+        @Override
+        void add(Object cell) {
+            if (cell == null) {
+                addNull();
+            } else if (!accepts(cell)) {
+                throw rejected(cell);
+            }
+            add(cell == null ? 0 : ((Number) cell).intValue());
+        }
+
+        @Override
+        boolean accepts(Object cell) {
+            return cell == null || isLong(cell) && ((Number) cell).longValue() == ((Number) cell).intValue();
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size));
+            }
+            values[size++] = value;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void addArray(Object cells) {
+            if (cells instanceof int[]) {
+                int[] batch = (int[]) cells;
+                if (size + batch.length > values.length) {
+                    values = Arrays.copyOf(values, reserve(values.length, size + batch.length));
+                }
+                System.arraycopy(batch, 0, values, size, batch.length);
+                size += batch.length;
+            } else {
+                super.addArray(cells);
+            }
+        }
+
+        @Override
+        void addAll(ColumnBuffer other) {
+            if (other instanceof IntBuffer) {
+                if (size + other.size > values.length) {
+                    values = Arrays.copyOf(values, reserve(values.length, size + other.size));
+                }
+                System.arraycopy(((IntBuffer) other).values, 0, values, size, other.size);
+                addNulls(other, size);
+                size += other.size;
+            } else {
+                super.addAll(other);
+            }
+        }
+
+        @Override
+        Column build() {
+            return new IntColumn(Arrays.copyOf(values, size), nulls());
+        }
+    }
+
+    static class BooleanBuffer extends ColumnBuffer {
+        private boolean[] values = new boolean[INITIAL_CAPACITY];
+
+        @Override
+        void add(Object cell) {
+            if (cell == null) {
+                addNull();
+            } else if (!(cell instanceof Boolean)) {
+                throw rejected(cell);
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size));
+            }
+            values[size++] = cell != null && (Boolean) cell;
+        }
+
+        @Override
+        boolean accepts(Object cell) {
+            return cell == null || cell instanceof Boolean;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void addArray(Object cells) {
+            if (cells instanceof boolean[]) {
+                boolean[] batch = (boolean[]) cells;
+                if (size + batch.length > values.length) {
+                    values = Arrays.copyOf(values, reserve(values.length, size + batch.length));
+                }
+                System.arraycopy(batch, 0, values, size, batch.length);
+                size += batch.length;
+            } else {
+                super.addArray(cells);
+            }
+        }
+
+        @Override
+        Column build() {
+            return new BooleanColumn(Arrays.copyOf(values, size), nulls());
+        }
+    }
+
+    static class ObjectBuffer extends ColumnBuffer {
+        private final Class<?> type;
+        private Object[] values;
+
+        ObjectBuffer(Class<?> type) {
+            this.type = type;
+            this.values = (Object[]) Array.newInstance(type, INITIAL_CAPACITY);
+        }
+
+        @Override
+        void add(Object cell) {
+            if (!accepts(cell)) {
+                throw rejected(cell);
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, grow(size));
+            }
+            values[size++] = cell;
+        }
+
+        @Override
+        boolean accepts(Object cell) {
+            return cell == null || type.isInstance(cell);
+        }
+
+        @Override
+        IllegalArgumentException rejected(Object cell) {
+            return new IllegalArgumentException(cell.getClass().getSimpleName() + " " + cell + " does not fit a column of "
+                    + type.getSimpleName());
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Column build() {
+            if (type == Object.class) {
+                Class<?> inferred = infer(values, size);
+                if (inferred != Object.class) {
+                    ColumnBuffer typed = of(inferred);
+                    for (int row = 0; row < size; row++) {
+                        typed.add(values[row]);
+                    }
+                    return typed.build();
+                }
+            }
+            return Column.compact(new ObjectColumn<>((Class<Object>) type, Arrays.copyOf(values, size)));
+        }
+    }
+}
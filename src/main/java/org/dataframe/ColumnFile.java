@@ -0,0 +1,801 @@
+package org.dataframe;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Columnar file format of {@link Dataframe#save(Path)}.
+ * The file starts with a header (magic, version, rows, columns, rows per block and the position of the footer),
+ * followed by the cells of every column in blocks of rows and a footer that describes every column:
+ * its name, its kind, the position of its cells, the dictionary of categorical columns, the
+ * words of the validity bitmap of double, long, int and boolean columns and the minimum and maximum of every
+ * block of numeric and categorical columns.
+ * Numbers are little endian. Strings are UTF-8 bytes after their length, -1 for null.
+ * Cells of any other type are serialized, reading them back only resolves the declared class of the column,
+ * its superclasses, the boxed numbers and primitive arrays
+ */
+final class ColumnFile {
+
+    static final int MAGIC = 0x4446524D;
+    static final int VERSION = 1;
+    static final int DEFAULT_BLOCK_SIZE = 1 << 16;
+    /**
+     * Maximum size of a mapping, a column is mapped in segments of whole blocks
+     */
+    static final long SEGMENT_SIZE = 1L << 30;
+    static final int HEADER_SIZE = 4 * 5 + 8;
+
+    static final byte DOUBLE = 1;
+    static final byte LONG = 2;
+    static final byte INT = 3;
+    static final byte BOOLEAN = 4;
+    static final byte CATEGORICAL = 5;
+    /**
+     * serialized array of cells
+     */
+    static final byte OBJECT = 6;
+    static final byte STRING = 7;
+    /**
+     * classes that the cells of a serialized column may have besides its declared class
+     */
+    private static final Set<String> SERIALIZED_CLASSES = new HashSet<>(Arrays.asList(
+            Object[].class.getName(), Number.class.getName(), Boolean.class.getName(), Character.class.getName(),
+            Byte.class.getName(), Short.class.getName(), Integer.class.getName(), Long.class.getName(),
+            Float.class.getName(), Double.class.getName(), BigInteger.class.getName(), BigDecimal.class.getName(),
+            boolean[].class.getName(), byte[].class.getName(), char[].class.getName(), short[].class.getName(),
+            int[].class.getName(), long[].class.getName(), float[].class.getName(), double[].class.getName()));
+
+    private ColumnFile() {
+    }
+
+    static void write(Path path, Column[] columns, String[] columnNames, int rows) throws IOException {
+        write(path, columns, columnNames, rows, DEFAULT_BLOCK_SIZE);
+    }
+
+    static void write(Path path, Column[] columns, String[] columnNames, int rows, int blockSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output output = new Output(channel);
+            output.position(HEADER_SIZE);
+            Output footer = new Output(null);
+            for (int i = 0; i < columns.length; i++) {
+                Column column = columns[i].materialize();
+                if (column instanceof EncodedColumn) {
+                    column = ((EncodedColumn) column).decoded();
+                }
+                footer.putString(columnNames != null ? columnNames[i] : null);
+                writeColumn(column, rows, blockSize, output, footer);
+            }
+            long footerOffset = output.position();
+            output.put(footer.toBuffer());
+            output.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(columns.length).putInt(blockSize).putLong(footerOffset);
+            header.flip();
+            channel.write(header, 0);
+        }
+    }
+
+    private static void writeColumn(Column column, int rows, int blockSize, Output output, Output footer) throws IOException {
+        int blocks = (rows + blockSize - 1) / blockSize;
+        long offset = output.position();
+        double[] min = null;
+        double[] max = null;
+        if (column instanceof DoubleColumn || column instanceof LongColumn || column instanceof IntColumn) {
+            min = new double[blocks];
+            max = new double[blocks];
+            for (int block = 0; block < blocks; block++) {
+                min[block] = Double.POSITIVE_INFINITY;
+                max[block] = Double.NEGATIVE_INFINITY;
+                for (int row = block * blockSize; row < Math.min(rows, (block + 1) * blockSize); row++) {
+                    double value = column.getDouble(row);
+                    if (!column.isNull(row) && value == value) {
+                        min[block] = Math.min(min[block], value);
+                        max[block] = Math.max(max[block], value);
+                    }
+                }
+            }
+        }
+        if (column instanceof DoubleColumn) {
+            footer.put(DOUBLE);
+            for (double value : ((DoubleColumn) column).values()) {
+                output.putDouble(value);
+            }
+        } else if (column instanceof LongColumn) {
+            footer.put(LONG);
+            for (long value : ((LongColumn) column).values()) {
+                output.putLong(value);
+            }
+        } else if (column instanceof IntColumn) {
+            footer.put(INT);
+            for (int value : ((IntColumn) column).values()) {
+                output.putInt(value);
+            }
+        } else if (column instanceof BooleanColumn) {
+            footer.put(BOOLEAN);
+            for (boolean value : ((BooleanColumn) column).values()) {
+                output.put((byte) (value ? 1 : 0));
+            }
+        } else if (column instanceof CategoricalColumn) {
+            CategoricalColumn categorical = (CategoricalColumn) column;
+            footer.put(CATEGORICAL);
+            min = new double[blocks];
+            max = new double[blocks];
+            for (int block = 0; block < blocks; block++) {
+                min[block] = Double.POSITIVE_INFINITY;
+                max[block] = Double.NEGATIVE_INFINITY;
+                for (int row = block * blockSize; row < Math.min(rows, (block + 1) * blockSize); row++) {
+                    min[block] = Math.min(min[block], categorical.code(row));
+                    max[block] = Math.max(max[block], categorical.code(row));
+                }
+            }
+            if (categorical.byteCodes() != null) {
+                for (byte code : categorical.byteCodes()) {
+                    output.put(code);
+                }
+            } else {
+                for (int code : categorical.intCodes()) {
+                    output.putInt(code);
+                }
+            }
+        } else if (column.type() == String.class) {
+            footer.put(STRING);
+            for (int row = 0; row < rows; row++) {
+                output.putString((String) column.get(row));
+            }
+        } else {
+            footer.put(OBJECT);
+            footer.putString(column.type().getName());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+                Object[] cells = new Object[rows];
+                for (int row = 0; row < rows; row++) {
+                    cells[row] = column.get(row);
+                }
+                objects.writeObject(cells);
+            }
+            output.put(ByteBuffer.wrap(bytes.toByteArray()));
+        }
+        footer.putLong(offset);
+        footer.putLong(output.position() - offset);
+        if (column instanceof CategoricalColumn) {
+            String[] dictionary = ((CategoricalColumn) column).dictionary();
+            footer.putInt(dictionary.length);
+            for (String value : dictionary) {
+                footer.putString(value);
+            }
+        }
+        if (hasValidity(column)) {
+            long[] words = column.nullBitmap() == null ? new long[0] : column.nullBitmap().words();
+            footer.putInt(words.length);
+            for (long word : words) {
+                footer.putLong(word);
+            }
+        }
+        footer.putInt(min == null ? -1 : blocks);
+        for (int block = 0; min != null && block < blocks; block++) {
+            footer.putDouble(min[block]);
+            footer.putDouble(max[block]);
+        }
+    }
+
+    private static boolean hasValidity(Column column) {
+        return column instanceof DoubleColumn || column instanceof LongColumn || column instanceof IntColumn
+                || column instanceof BooleanColumn;
+    }
+
+    /**
+     * Maps the file and reads its footer, the cells of a column are read when it is first used
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    static Contents open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(path + " is not a dataframe file");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported version " + version + " of " + path);
+            }
+            int rows = header.getInt();
+            int columnCount = header.getInt();
+            int blockSize = header.getInt();
+            long footerOffset = header.getLong();
+            ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset, channel.size() - footerOffset)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            String[] columnNames = new String[columnCount];
+            Column[] columns = new Column[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                columnNames[i] = getString(footer);
+                byte kind = footer.get();
+                Class<?> type = kind == OBJECT ? loadClass(getString(footer)) : null;
+                long offset = footer.getLong();
+                long length = footer.getLong();
+                String[] dictionary = null;
+                if (kind == CATEGORICAL) {
+                    dictionary = new String[footer.getInt()];
+                    for (int code = 0; code < dictionary.length; code++) {
+                        dictionary[code] = getString(footer);
+                    }
+                }
+                NullBitmap nulls = null;
+                if (kind == DOUBLE || kind == LONG || kind == INT || kind == BOOLEAN) {
+                    long[] words = new long[footer.getInt()];
+                    for (int word = 0; word < words.length; word++) {
+                        words[word] = footer.getLong();
+                    }
+                    nulls = words.length == 0 ? null : new NullBitmap(words);
+                }
+                int blocks = footer.getInt();
+                double[] min = blocks < 0 ? null : new double[blocks];
+                double[] max = blocks < 0 ? null : new double[blocks];
+                for (int block = 0; block < blocks; block++) {
+                    min[block] = footer.getDouble();
+                    max[block] = footer.getDouble();
+                }
+                int width = width(kind, dictionary);
+                ByteBuffer[] segments = map(channel, offset, length, width == 0 ? Math.max(length, 1) : (long) blockSize * width);
+                columns[i] = new MappedColumn(kind, type, rows, blockSize, width, segments, dictionary, nulls, min, max);
+            }
+            boolean named = false;
+            for (String columnName : columnNames) {
+                named |= columnName != null;
+            }
+            return new Contents(named ? columnNames : null, columns, rows);
+        }
+    }
+
+    static class Contents {
+        /**
+         * null if the columns were not named
+         */
+        final String[] columnNames;
+        final Column[] columns;
+        final int rows;
+
+        Contents(String[] columnNames, Column[] columns, int rows) {
+            this.columnNames = columnNames;
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * @return the bytes per cell, 0 for serialized cells
+     */
+    private static int width(byte kind, String[] dictionary) {
+        switch (kind) {
+            case DOUBLE:
+            case LONG:
+                return 8;
+            case INT:
+                return 4;
+            case BOOLEAN:
+                return 1;
+            case CATEGORICAL:
+                return dictionary.length <= 256 ? 1 : 4;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Maps a region of the file in segments of whole blocks, the pages of a segment are read when they are touched
+     */
+    private static ByteBuffer[] map(FileChannel channel, long offset, long length, long blockLength) throws IOException {
+        long segmentLength = blockLength >= SEGMENT_SIZE ? blockLength : SEGMENT_SIZE / blockLength * blockLength;
+        int count = (int) Math.max((length + segmentLength - 1) / segmentLength, 1);
+        ByteBuffer[] segments = new ByteBuffer[count];
+        for (int segment = 0; segment < count; segment++) {
+            long from = offset + segment * segmentLength;
+            segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(segmentLength, offset + length - from))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return segments;
+    }
+
+    /**
+     * Resolves the declared class of a serialized column without initializing it
+     */
+    private static Class<?> loadClass(String name) throws IOException {
+        Class<?> type;
+        try {
+            type = Class.forName(name, false, ColumnFile.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        if (type != Object.class && !Serializable.class.isAssignableFrom(type)) {
+            throw new IOException("column of " + name + " is not serializable");
+        }
+        return type;
+    }
+
+    /**
+     * Reads the cells of a serialized column, classes other than the declared class of the column,
+     * its superclasses and {@link #SERIALIZED_CLASSES} are rejected before they are loaded
+     */
+    private static class CellInputStream extends ObjectInputStream {
+        private final Set<String> classNames = new HashSet<>(SERIALIZED_CLASSES);
+
+        CellInputStream(InputStream input, Class<?> type) throws IOException {
+            super(input);
+            classNames.add(Array.newInstance(type, 0).getClass().getName());
+            for (Class<?> superclass = type; superclass != null; superclass = superclass.getSuperclass()) {
+                classNames.add(superclass.getName());
+            }
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass descriptor) throws IOException, ClassNotFoundException {
+            if (!classNames.contains(descriptor.getName())) {
+                throw new InvalidClassException(descriptor.getName(), "not a class of the column");
+            }
+            return super.resolveClass(descriptor);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("proxy", "not a class of the column");
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Buffered writer of little endian numbers to a channel, or to memory if there is no channel
+     */
+    private static class Output {
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return position + buffer.position();
+        }
+
+        void position(long position) {
+            this.position = position;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            if (channel == null) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                buffer.flip();
+                buffer = grown.put(buffer);
+            } else {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+
+        void put(byte value) throws IOException {
+            ensure(1);
+            buffer.put(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        void putString(String value) throws IOException {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            put(ByteBuffer.wrap(bytes));
+        }
+
+        void put(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.remaining());
+                ByteBuffer chunk = bytes.duplicate();
+                chunk.limit(chunk.position() + length);
+                buffer.put(chunk);
+                bytes.position(bytes.position() + length);
+            }
+        }
+
+        ByteBuffer toBuffer() {
+            ByteBuffer copy = buffer.duplicate();
+            copy.flip();
+            return copy;
+        }
+    }
+
+    /**
+     * A column of a mapped file that reads its cells into a heap column when they are first needed,
+     * long and int cells are encoded if they compress.
+     * Selections on numeric and categorical columns skip the blocks whose minimum and maximum
+     * rule out any match, without reading them. Until the column is loaded they read the other blocks
+     * one at a time from the mapping, only the other operations load the whole column
+     */
+    static class MappedColumn extends Column {
+        private final byte kind;
+        private final Class<?> type;
+        private final int size;
+        private final int blockSize;
+        private final int width;
+        private final String[] dictionary;
+        private final NullBitmap nulls;
+        private final double[] min;
+        private final double[] max;
+        private ByteBuffer[] segments;
+        private volatile Column loaded;
+
+        MappedColumn(byte kind, Class<?> type, int size, int blockSize, int width, ByteBuffer[] segments,
+                     String[] dictionary, NullBitmap nulls, double[] min, double[] max) {
+            this.kind = kind;
+            this.type = type;
+            this.size = size;
+            this.blockSize = blockSize;
+            this.width = width;
+            this.segments = segments;
+            this.dictionary = dictionary;
+            this.nulls = nulls;
+            this.min = min;
+            this.max = max;
+        }
+
+        boolean isLoaded() {
+            return loaded != null;
+        }
+
+        private Column loaded() {
+            Column column = loaded;
+            if (column == null) {
+                synchronized (this) {
+                    column = loaded;
+                    if (column == null) {
+                        column = load();
+                        loaded = column;
+                        segments = null;
+                    }
+                }
+            }
+            return column;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Column load() {
+            if (kind == OBJECT) {
+                ByteBuffer segment = segments[0].duplicate();
+                byte[] bytes = new byte[segment.remaining()];
+                segment.get(bytes);
+                try (ObjectInputStream objects = new CellInputStream(new ByteArrayInputStream(bytes), type)) {
+                    Object[] cells = (Object[]) objects.readObject();
+                    Object[] typed = (Object[]) Array.newInstance(type, cells.length);
+                    System.arraycopy(cells, 0, typed, 0, cells.length);
+                    return new ObjectColumn<>((Class<Object>) type, typed);
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new UncheckedIOException(new IOException("cannot read column of " + type.getName(), e));
+                }
+            }
+            if (kind == STRING) {
+                ByteBuffer segment = segments[0].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+                String[] cells = new String[size];
+                for (int row = 0; row < size; row++) {
+                    cells[row] = getString(segment);
+                }
+                return new ObjectColumn<>(String.class, cells);
+            }
+            int rowsPerSegment = segments[0].capacity() / width;
+            switch (kind) {
+                case DOUBLE: {
+                    double[] values = new double[size];
+                    for (int segment = 0; segment < segments.length; segment++) {
+                        ByteBuffer buffer = segments[segment].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+                        buffer.asDoubleBuffer().get(values, segment * rowsPerSegment, buffer.remaining() / width);
+                    }
+                    return new DoubleColumn(values, nulls);
+                }
+                case LONG: {
+                    long[] values = new long[size];
+                    for (int segment = 0; segment < segments.length; segment++) {
+                        ByteBuffer buffer = segments[segment].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+                        buffer.asLongBuffer().get(values, segment * rowsPerSegment, buffer.remaining() / width);
+                    }
+                    return EncodedColumn.encode(new LongColumn(values, nulls));
+                }
+                case INT: {
+                    int[] values = new int[size];
+                    for (int segment = 0; segment < segments.length; segment++) {
+                        ByteBuffer buffer = segments[segment].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+                        buffer.asIntBuffer().get(values, segment * rowsPerSegment, buffer.remaining() / width);
+                    }
+                    return EncodedColumn.encode(new IntColumn(values, nulls));
+                }
+                case BOOLEAN: {
+                    boolean[] values = new boolean[size];
+                    for (int segment = 0; segment < segments.length; segment++) {
+                        ByteBuffer buffer = segments[segment].duplicate();
+                        for (int row = segment * rowsPerSegment; buffer.hasRemaining(); row++) {
+                            values[row] = buffer.get() != 0;
+                        }
+                    }
+                    return new BooleanColumn(values, nulls);
+                }
+                default: {
+                    if (width == 1) {
+                        byte[] codes = new byte[size];
+                        for (int segment = 0; segment < segments.length; segment++) {
+                            ByteBuffer buffer = segments[segment].duplicate();
+                            buffer.get(codes, segment * rowsPerSegment, buffer.remaining());
+                        }
+                        return new CategoricalColumn(dictionary, codes, null);
+                    }
+                    int[] codes = new int[size];
+                    for (int segment = 0; segment < segments.length; segment++) {
+                        ByteBuffer buffer = segments[segment].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+                        buffer.asIntBuffer().get(codes, segment * rowsPerSegment, buffer.remaining() / width);
+                    }
+                    return new CategoricalColumn(dictionary, null, codes);
+                }
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Class<?> type() {
+            switch (kind) {
+                case DOUBLE:
+                    return Double.class;
+                case LONG:
+                    return Long.class;
+                case INT:
+                    return Integer.class;
+                case BOOLEAN:
+                    return Boolean.class;
+                case CATEGORICAL:
+                case STRING:
+                    return String.class;
+                default:
+                    return type;
+            }
+        }
+
+        @Override
+        public Object get(int row) {
+            return loaded().get(row);
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return loaded().getDouble(row);
+        }
+
+        @Override
+        public long getLong(int row) {
+            return loaded().getLong(row);
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return loaded().isNull(row);
+        }
+
+        /**
+         * Counts the null cells of primitive columns without reading them
+         */
+        @Override
+        int nullCount(int from, int to) {
+            if (kind == DOUBLE || kind == LONG || kind == INT || kind == BOOLEAN) {
+                return nulls == null ? 0 : nulls.count(from, to);
+            }
+            return loaded().nullCount(from, to);
+        }
+
+        @Override
+        public Column gather(int[] rows) {
+            return loaded().gather(rows);
+        }
+
+        @Override
+        void set(int row, Object value) {
+            loaded().set(row, value);
+        }
+
+        @Override
+        public Column materialize() {
+            return loaded();
+        }
+
+        /**
+         * @return whether the block may hold values from low to high
+         */
+        private boolean overlaps(int block, double low, double high) {
+            return !(max[block] < low || min[block] > high);
+        }
+
+        /**
+         * Runs the selection only on the blocks of the range that may hold values from low to high,
+         * on the loaded column or else on a column of the cells of the block read from the mapping
+         */
+        private void selectBlocks(double low, double high, int from, int to, RoaringBitmap rows, Selection selection) {
+            Column column = loaded;
+            ByteBuffer[] mapped = column == null ? segments : null;
+            if (column == null && mapped == null) {
+                //loaded meanwhile
+                column = loaded();
+            }
+            for (int block = from / blockSize; block * blockSize < to; block++) {
+                if (!overlaps(block, low, high)) {
+                    continue;
+                }
+                int start = block * blockSize;
+                int end = Math.min(size, start + blockSize);
+                if (column != null) {
+                    selection.select(column, Math.max(from, start), Math.min(to, end), rows);
+                } else {
+                    RoaringBitmap selected = new RoaringBitmap();
+                    selection.select(block(mapped, start, end), Math.max(from, start) - start, Math.min(to, end) - start, selected);
+                    rows.or(RoaringBitmap.addOffset(selected, start));
+                }
+            }
+        }
+
+        /**
+         * @return a heap column of the cells of a block of a numeric or categorical column, read from the mapping
+         */
+        private Column block(ByteBuffer[] segments, int start, int end) {
+            int rowsPerSegment = segments[0].capacity() / width;
+            ByteBuffer buffer = segments[start / rowsPerSegment].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(start % rowsPerSegment * width);
+            int length = end - start;
+            NullBitmap blockNulls = nulls == null ? null : NullBitmap.of(length, row -> nulls.isNull(start + row));
+            switch (kind) {
+                case DOUBLE: {
+                    double[] values = new double[length];
+                    buffer.asDoubleBuffer().get(values);
+                    return new DoubleColumn(values, blockNulls);
+                }
+                case LONG: {
+                    long[] values = new long[length];
+                    buffer.asLongBuffer().get(values);
+                    return new LongColumn(values, blockNulls);
+                }
+                case INT: {
+                    int[] values = new int[length];
+                    buffer.asIntBuffer().get(values);
+                    return new IntColumn(values, blockNulls);
+                }
+                default: {
+                    if (width == 1) {
+                        byte[] codes = new byte[length];
+                        buffer.get(codes);
+                        return new CategoricalColumn(dictionary, codes, null);
+                    }
+                    int[] codes = new int[length];
+                    buffer.asIntBuffer().get(codes);
+                    return new CategoricalColumn(dictionary, null, codes);
+                }
+            }
+        }
+
+        @FunctionalInterface
+        private interface Selection {
+            void select(Column column, int from, int to, RoaringBitmap rows);
+        }
+
+        @Override
+        void selectEqual(Object value, int from, int to, RoaringBitmap rows) {
+            if (min != null && kind == CATEGORICAL) {
+                int code = -1;
+                for (int i = 0; i < dictionary.length && code < 0; i++) {
+                    code = value.equals(dictionary[i]) ? i : -1;
+                }
+                if (code >= 0) {
+                    selectBlocks(code, code, from, to, rows, (column, start, end, selected) -> column.selectEqual(value, start, end, selected));
+                }
+            } else if (min != null && value instanceof Number) {
+                double number = ((Number) value).doubleValue();
+                selectBlocks(number, number, from, to, rows, (column, start, end, selected) -> column.selectEqual(value, start, end, selected));
+            } else {
+                loaded().selectEqual(value, from, to, rows);
+            }
+        }
+
+        @Override
+        void selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive, int from, int to, RoaringBitmap rows) {
+            if (min != null && kind != CATEGORICAL && (low == null || low instanceof Number) && (high == null || high instanceof Number)) {
+                selectBlocks(bound(low, Double.NEGATIVE_INFINITY), bound(high, Double.POSITIVE_INFINITY), from, to, rows,
+                        (column, start, end, selected) -> column.selectRange(low, lowInclusive, high, highInclusive, start, end, selected));
+            } else {
+                loaded().selectRange(low, lowInclusive, high, highInclusive, from, to, rows);
+            }
+        }
+
+        @Override
+        void selectIn(Set<Object> values, int from, int to, RoaringBitmap rows) {
+            loaded().selectIn(values, from, to, rows);
+        }
+
+        @Override
+        void selectNull(int from, int to, RoaringBitmap rows) {
+            loaded().selectNull(from, to, rows);
+        }
+
+        @Override
+        long[] sortKeys() {
+            return loaded().sortKeys();
+        }
+
+        @Override
+        int[] groupCodes() {
+            return loaded().groupCodes();
+        }
+
+        @Override
+        Set<Object> distinct(int from, int to) {
+            return loaded().distinct(from, to);
+        }
+
+        @Override
+        KahanSum sum(int from, int to) {
+            return loaded().sum(from, to);
+        }
+
+        @Override
+        public String toString() {
+            return isLoaded() ? loaded.toString() : "[" + size + " mapped cells of " + type().getSimpleName() + "]";
+        }
+    }
+}
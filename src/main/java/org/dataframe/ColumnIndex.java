@@ -0,0 +1,370 @@
+package org.dataframe;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Secondary index of a column that answers selections without scanning the column. The lookups
+ * return a new bitmap that the caller may modify, or null when the index cannot answer the query
+ * (e.g. bounds that are not comparable with the cells), in which case the column is scanned
+ */
+abstract class ColumnIndex {
+
+    final Column column;
+    final boolean numeric;
+
+    ColumnIndex(Column column) {
+        this.column = column;
+        this.numeric = column.isNumeric();
+    }
+
+    static ColumnIndex create(Column column, IndexType type, Execution execution) {
+        return type == IndexType.BITMAP ? new Bitmap(column) : new Sorted(column, execution);
+    }
+
+    abstract IndexType type();
+
+    abstract RoaringBitmap selectEqual(Object value);
+
+    abstract RoaringBitmap selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive);
+
+    abstract RoaringBitmap selectNull();
+
+    RoaringBitmap selectIn(Set<Object> values) {
+        RoaringBitmap rows = new RoaringBitmap();
+        for (Object value : values) {
+            RoaringBitmap equal = value == null ? new RoaringBitmap() : selectEqual(value);
+            if (equal == null) {
+                return null;
+            }
+            rows.or(equal);
+        }
+        return rows;
+    }
+
+    /**
+     * @return the distinct values of the column in order of first appearance
+     */
+    abstract Object[] distinct();
+
+    /**
+     * @return a code per row, equal cells get the same code, see {@link Column#groupCodes()}
+     */
+    abstract int[] groupCodes();
+
+    /**
+     * Numbers that are whole are compared as longs and the others as doubles, so that cells and
+     * values of different numeric types compare like the primitive columns compare them
+     * @return the lookup key of a cell, null for null and NaN cells since NaN equals nothing
+     */
+    static Object normalize(Object cell) {
+        if (!(cell instanceof Number)) {
+            return cell;
+        }
+        if (cell instanceof Long || cell instanceof Integer || cell instanceof Short || cell instanceof Byte) {
+            return ((Number) cell).longValue();
+        }
+        double value = ((Number) cell).doubleValue();
+        if (Double.isNaN(value)) {
+            return null;
+        }
+        return value == Math.rint(value) && Math.abs(value) < 0x1p63 ? (Object) (long) value : (Object) value;
+    }
+
+    /**
+     * A bitmap of rows per distinct value of the column
+     */
+    static final class Bitmap extends ColumnIndex {
+        private final Map<Object, RoaringBitmap> rowsByValue = new HashMap<>();
+        /**
+         * the distinct cells in order of first appearance
+         */
+        private final Object[] values;
+        private final RoaringBitmap[] bitmaps;
+        private final RoaringBitmap nullRows;
+        private final int[] codes;
+
+        Bitmap(Column column) {
+            super(column);
+            int[] groupCodes = column.groupCodes();
+            int size = column.size();
+            int[] numbers = new int[Arrays.stream(groupCodes).max().orElse(-1) + 1];
+            Arrays.fill(numbers, -1);
+            List<Object> values = new ArrayList<>();
+            List<RoaringBitmap> bitmaps = new ArrayList<>();
+            int[] codes = new int[size];
+            for (int row = 0; row < size; row++) {
+                int number = numbers[groupCodes[row]];
+                if (number < 0) {
+                    number = numbers[groupCodes[row]] = values.size();
+                    values.add(column.get(row));
+                    bitmaps.add(new RoaringBitmap());
+                }
+                bitmaps.get(number).add(row);
+                codes[row] = number;
+            }
+            this.values = values.toArray();
+            this.bitmaps = bitmaps.toArray(new RoaringBitmap[0]);
+            this.codes = codes;
+            RoaringBitmap nullRows = new RoaringBitmap();
+            for (int number = 0; number < this.values.length; number++) {
+                this.bitmaps[number].runOptimize();
+                Object key = normalize(this.values[number]);
+                if (this.values[number] == null) {
+                    nullRows.or(this.bitmaps[number]);
+                } else if (key != null) {
+                    rowsByValue.put(key, this.bitmaps[number]);
+                }
+            }
+            this.nullRows = nullRows;
+        }
+
+        @Override
+        IndexType type() {
+            return IndexType.BITMAP;
+        }
+
+        @Override
+        RoaringBitmap selectEqual(Object value) {
+            Object key = normalize(value);
+            if (numeric && !(key instanceof Number)) {
+                return new RoaringBitmap();
+            }
+            RoaringBitmap rows = rowsByValue.get(key);
+            return rows == null ? new RoaringBitmap() : rows.clone();
+        }
+
+        @Override
+        RoaringBitmap selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+            RoaringBitmap rows = new RoaringBitmap();
+            double lowBound = numeric ? Column.bound(low, Double.NEGATIVE_INFINITY) : 0;
+            double highBound = numeric ? Column.bound(high, Double.POSITIVE_INFINITY) : 0;
+            try {
+                for (int number = 0; number < values.length; number++) {
+                    Object cell = values[number];
+                    if (normalize(cell) == null) {
+                        continue;
+                    }
+                    boolean inRange = numeric
+                            ? Column.inRange(((Number) cell).doubleValue(), lowBound, low == null || lowInclusive, highBound, high == null || highInclusive)
+                            : Column.inRange(cell, low, lowInclusive, high, highInclusive);
+                    if (inRange) {
+                        rows.or(bitmaps[number]);
+                    }
+                }
+            } catch (ClassCastException e) {
+                return null;
+            }
+            return rows;
+        }
+
+        @Override
+        RoaringBitmap selectNull() {
+            return nullRows.clone();
+        }
+
+        @Override
+        Object[] distinct() {
+            return values.clone();
+        }
+
+        @Override
+        int[] groupCodes() {
+            return codes;
+        }
+    }
+
+    /**
+     * The rows of the non null cells in ascending order of their values followed by the null rows,
+     * ranges are located by binary search among the cells before the NaN ones.
+     * Long and int cells are compared as longs, so that longs past 2^53 stay distinct
+     */
+    static final class Sorted extends ColumnIndex {
+        private final int[] permutation;
+        /**
+         * the sorted cells of long and int columns, from their {@link Column#sortKeys()}
+         */
+        private final long[] longs;
+        /**
+         * the sorted cells of the other numeric columns
+         */
+        private final double[] numbers;
+        private final Object[] cells;
+        private final int nonNull;
+        /**
+         * number of non null cells that are not NaN, NaN sorts after the other numbers
+         */
+        private final int ordered;
+        private int[] codes;
+
+        Sorted(Column column, Execution execution) {
+            super(column);
+            permutation = new Sorter(new Column[]{column}, new boolean[]{true}, new boolean[]{false}).sort(execution);
+            int nonNull = permutation.length;
+            while (nonNull > 0 && column.isNull(permutation[nonNull - 1])) {
+                nonNull--;
+            }
+            this.nonNull = nonNull;
+            if (column.type() == Long.class || column.type() == Integer.class) {
+                long[] keys = column.sortKeys();
+                longs = new long[nonNull];
+                for (int i = 0; i < nonNull; i++) {
+                    longs[i] = keys[permutation[i]];
+                }
+                this.ordered = nonNull;
+                numbers = null;
+                cells = null;
+            } else if (numeric) {
+                longs = null;
+                numbers = new double[nonNull];
+                for (int i = 0; i < nonNull; i++) {
+                    numbers[i] = column.getDouble(permutation[i]);
+                }
+                int ordered = nonNull;
+                while (ordered > 0 && Double.isNaN(numbers[ordered - 1])) {
+                    ordered--;
+                }
+                this.ordered = ordered;
+                cells = null;
+            } else {
+                cells = new Object[nonNull];
+                for (int i = 0; i < nonNull; i++) {
+                    cells[i] = column.get(permutation[i]);
+                }
+                this.ordered = nonNull;
+                longs = null;
+                numbers = null;
+            }
+        }
+
+        @Override
+        IndexType type() {
+            return IndexType.SORTED;
+        }
+
+        @Override
+        RoaringBitmap selectEqual(Object value) {
+            if (numeric && !(value instanceof Number)) {
+                return new RoaringBitmap();
+            }
+            return selectRange(value, true, value, true);
+        }
+
+        @Override
+        RoaringBitmap selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+            try {
+                int from = low == null ? 0 : search(low, !lowInclusive);
+                int to = high == null ? ordered : search(high, highInclusive);
+                return rows(from, to);
+            } catch (ClassCastException e) {
+                return null;
+            }
+        }
+
+        /**
+         * @param after true to find the first cell greater than the value, false for the first cell not less than it
+         * @return the position of that cell in the sorted cells
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private int search(Object value, boolean after) {
+            double number = numeric ? ((Number) value).doubleValue() : 0;
+            int low = 0;
+            int high = ordered;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int compare = longs != null ? compare(longs[middle], (Number) value)
+                        : numeric ? Double.compare(numbers[middle], number) : ((Comparable) cells[middle]).compareTo(value);
+                if (compare < 0 || (after && compare == 0)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Compares a long cell with a value of any numeric type exactly, NaN is greater than any cell
+         */
+        private static int compare(long cell, Number value) {
+            if (Column.isIntegral(value)) {
+                return Long.compare(cell, value.longValue());
+            }
+            double number = value.doubleValue();
+            if (!(number < 0x1p63)) {
+                return -1;
+            } else if (number < -0x1p63) {
+                return 1;
+            }
+            long floor = (long) Math.floor(number);
+            return cell != floor ? Long.compare(cell, floor) : floor == number ? 0 : -1;
+        }
+
+        private RoaringBitmap rows(int from, int to) {
+            if (from >= to) {
+                return new RoaringBitmap();
+            }
+            int[] rows = Arrays.copyOfRange(permutation, from, to);
+            Arrays.sort(rows);
+            return RoaringBitmap.bitmapOf(rows);
+        }
+
+        @Override
+        RoaringBitmap selectNull() {
+            return rows(nonNull, permutation.length);
+        }
+
+        @Override
+        Object[] distinct() {
+            int[] codes = groupCodes();
+            int count = Arrays.stream(codes).max().orElse(-1) + 1;
+            int[] firstRows = new int[count];
+            Arrays.fill(firstRows, Integer.MAX_VALUE);
+            for (int i = 0; i < permutation.length; i++) {
+                int row = permutation[i];
+                firstRows[codes[row]] = Math.min(firstRows[codes[row]], row);
+            }
+            Arrays.sort(firstRows);
+            Object[] distinct = new Object[count];
+            for (int i = 0; i < count; i++) {
+                distinct[i] = column.get(firstRows[i]);
+            }
+            return distinct;
+        }
+
+        /**
+         * Numbers the runs of equal cells, the null cells form the last run
+         */
+        @Override
+        synchronized int[] groupCodes() {
+            if (codes == null) {
+                int[] codes = new int[permutation.length];
+                int code = 0;
+                for (int i = 0; i < permutation.length; i++) {
+                    if (i > 0 && (i < nonNull ? !equal(i - 1, i) : i == nonNull)) {
+                        code++;
+                    }
+                    codes[permutation[i]] = code;
+                }
+                this.codes = codes;
+            }
+            return codes;
+        }
+
+        private boolean equal(int left, int right) {
+            if (longs != null) {
+                return longs[left] == longs[right];
+            }
+            if (numeric) {
+                return numbers[left] == numbers[right] || Double.isNaN(numbers[left]) && Double.isNaN(numbers[right]);
+            }
+            return cells[left].equals(cells[right]);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package org.dataframe;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A condition on the columns of a {@link Dataframe} that is evaluated a column at a time into a
+ * {@link RoaringBitmap} of the matching rows. Conditions are combined by intersecting, uniting or
+ * complementing their bitmaps. Comparisons never match null cells, see {@link Dataframe#col(String)}
+ */
+public abstract class ColumnPredicate {
+
+    ColumnPredicate() {
+    }
+
+    /**
+     * Evaluation of a condition on the cells of a range of rows of a column
+     */
+    @FunctionalInterface
+    interface Scan {
+        void scan(Column column, int from, int to, RoaringBitmap rows);
+    }
+
+    /**
+     * @param dataframe
+     * @return the rows of the dataframe that match the predicate
+     */
+    abstract RoaringBitmap evaluate(Dataframe dataframe);
+
+    /**
+     * Renders the predicate as a SQL condition with positional parameters
+     * @param parameters receives the values of the parameters
+     * @param firstParameter position of the first parameter
+     * @return
+     */
+    abstract String toSql(List<Object> parameters, int firstParameter);
+
+    /**
+     * @param columns receives the names of the columns the predicate refers to
+     */
+    abstract void collectColumns(Set<String> columns);
+
+    static String parameter(List<Object> parameters, int firstParameter, Object value) {
+        parameters.add(value);
+        return "?" + (firstParameter + parameters.size() - 1);
+    }
+
+    public ColumnPredicate and(ColumnPredicate other) {
+        return new And(this, other);
+    }
+
+    public ColumnPredicate or(ColumnPredicate other) {
+        return new Or(this, other);
+    }
+
+    public ColumnPredicate not() {
+        return new Not(this);
+    }
+
+    /**
+     * Reference to a column by name, the starting point of the predicates on it
+     */
+    public static class ColumnReference {
+        private final String columnName;
+
+        ColumnReference(String columnName) {
+            this.columnName = columnName;
+        }
+
+        public String getColumnName() {
+            return columnName;
+        }
+
+        public ColumnPredicate eq(Object value) {
+            return value == null ? isNull() : new Equal(columnName, value);
+        }
+
+        /**
+         * @param value
+         * @return the cells that are not null and differ from the value
+         */
+        public ColumnPredicate ne(Object value) {
+            return value == null ? isNotNull() : eq(value).or(isNull()).not();
+        }
+
+        public ColumnPredicate lt(Object value) {
+            return new Range(columnName, null, false, value, false);
+        }
+
+        public ColumnPredicate le(Object value) {
+            return new Range(columnName, null, false, value, true);
+        }
+
+        public ColumnPredicate gt(Object value) {
+            return new Range(columnName, value, false, null, false);
+        }
+
+        public ColumnPredicate ge(Object value) {
+            return new Range(columnName, value, true, null, false);
+        }
+
+        /**
+         * @param low inclusive lower bound
+         * @param high inclusive upper bound
+         * @return
+         */
+        public ColumnPredicate between(Object low, Object high) {
+            return new Range(columnName, low, true, high, true);
+        }
+
+        public ColumnPredicate in(Object... values) {
+            return new In(columnName, new HashSet<>(Arrays.asList(values)));
+        }
+
+        public ColumnPredicate isNull() {
+            return new IsNull(columnName);
+        }
+
+        public ColumnPredicate isNotNull() {
+            return isNull().not();
+        }
+    }
+
+    static class Equal extends ColumnPredicate {
+        final String columnName;
+        final Object value;
+
+        Equal(String columnName, Object value) {
+            this.columnName = columnName;
+            this.value = value;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Dataframe dataframe) {
+            return dataframe.scan(columnName, IndexType.BITMAP, index -> index.selectEqual(value),
+                    (column, from, to, rows) -> column.selectEqual(value, from, to, rows));
+        }
+
+        @Override
+        String toSql(List<Object> parameters, int firstParameter) {
+            return columnName + " = " + parameter(parameters, firstParameter, value);
+        }
+
+        @Override
+        void collectColumns(Set<String> columns) {
+            columns.add(columnName);
+        }
+
+        @Override
+        public String toString() {
+            return columnName + " = " + value;
+        }
+    }
+
+    /**
+     * Cells between two bounds, a null bound leaves the range open on its side
+     */
+    static class Range extends ColumnPredicate {
+        final String columnName;
+        final Object low;
+        final boolean lowInclusive;
+        final Object high;
+        final boolean highInclusive;
+
+        Range(String columnName, Object low, boolean lowInclusive, Object high, boolean highInclusive) {
+            this.columnName = columnName;
+            this.low = low;
+            this.lowInclusive = lowInclusive;
+            this.high = high;
+            this.highInclusive = highInclusive;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Dataframe dataframe) {
+            return dataframe.scan(columnName, IndexType.SORTED, index -> index.selectRange(low, lowInclusive, high, highInclusive),
+                    (column, from, to, rows) -> column.selectRange(low, lowInclusive, high, highInclusive, from, to, rows));
+        }
+
+        @Override
+        String toSql(List<Object> parameters, int firstParameter) {
+            String lower = low == null ? null : columnName + (lowInclusive ? " >= " : " > ") + parameter(parameters, firstParameter, low);
+            String upper = high == null ? null : columnName + (highInclusive ? " <= " : " < ") + parameter(parameters, firstParameter, high);
+            return lower == null ? upper : upper == null ? lower : "(" + lower + " AND " + upper + ")";
+        }
+
+        @Override
+        void collectColumns(Set<String> columns) {
+            columns.add(columnName);
+        }
+
+        @Override
+        public String toString() {
+            if (low != null && high != null && lowInclusive && highInclusive) {
+                return columnName + " BETWEEN " + low + " AND " + high;
+            }
+            String lower = low == null ? null : columnName + (lowInclusive ? " >= " : " > ") + low;
+            String upper = high == null ? null : columnName + (highInclusive ? " <= " : " < ") + high;
+            return lower == null ? upper : upper == null ? lower : "(" + lower + " AND " + upper + ")";
+        }
+    }
+
+    static class In extends ColumnPredicate {
+        final String columnName;
+        final Set<Object> values;
+
+        In(String columnName, Set<Object> values) {
+            this.columnName = columnName;
+            this.values = values;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Dataframe dataframe) {
+            return dataframe.scan(columnName, IndexType.BITMAP, index -> index.selectIn(values),
+                    (column, from, to, rows) -> column.selectIn(values, from, to, rows));
+        }
+
+        @Override
+        String toSql(List<Object> parameters, int firstParameter) {
+            if (values.isEmpty()) {
+                return "1 = 0";
+            }
+            return columnName + " IN (" + values.stream().map(value -> parameter(parameters, firstParameter, value))
+                    .collect(Collectors.joining(", ")) + ")";
+        }
+
+        @Override
+        void collectColumns(Set<String> columns) {
+            columns.add(columnName);
+        }
+
+        @Override
+        public String toString() {
+            return columnName + " IN " + values;
+        }
+    }
+
+    static class IsNull extends ColumnPredicate {
+        final String columnName;
+
+        IsNull(String columnName) {
+            this.columnName = columnName;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Dataframe dataframe) {
+            return dataframe.scan(columnName, IndexType.BITMAP, ColumnIndex::selectNull, Column::selectNull);
+        }
+
+        @Override
+        String toSql(List<Object> parameters, int firstParameter) {
+            return columnName + " IS NULL";
+        }
+
+        @Override
+        void collectColumns(Set<String> columns) {
+            columns.add(columnName);
+        }
+
+        @Override
+        public String toString() {
+            return columnName + " IS NULL";
+        }
+    }
+
+    static class And extends ColumnPredicate {
+        final ColumnPredicate left;
+        final ColumnPredicate right;
+
+        And(ColumnPredicate left, ColumnPredicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Dataframe dataframe) {
+            RoaringBitmap rows = left.evaluate(dataframe);
+            if (!rows.isEmpty()) {
+                rows.and(right.evaluate(dataframe));
+            }
+            return rows;
+        }
+
+        @Override
+        String toSql(List<Object> parameters, int firstParameter) {
+            String left = this.left.toSql(parameters, firstParameter);
+            return "(" + left + " AND " + right.toSql(parameters, firstParameter) + ")";
+        }
+
+        @Override
+        void collectColumns(Set<String> columns) {
+            left.collectColumns(columns);
+            right.collectColumns(columns);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " AND " + right + ")";
+        }
+    }
+
+    static class Or extends ColumnPredicate {
+        final ColumnPredicate left;
+        final ColumnPredicate right;
+
+        Or(ColumnPredicate left, ColumnPredicate right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Dataframe dataframe) {
+            RoaringBitmap rows = left.evaluate(dataframe);
+            rows.or(right.evaluate(dataframe));
+            return rows;
+        }
+
+        @Override
+        String toSql(List<Object> parameters, int firstParameter) {
+            String left = this.left.toSql(parameters, firstParameter);
+            return "(" + left + " OR " + right.toSql(parameters, firstParameter) + ")";
+        }
+
+        @Override
+        void collectColumns(Set<String> columns) {
+            left.collectColumns(columns);
+            right.collectColumns(columns);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " OR " + right + ")";
+        }
+    }
+
+    static class Not extends ColumnPredicate {
+        final ColumnPredicate predicate;
+
+        Not(ColumnPredicate predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        RoaringBitmap evaluate(Dataframe dataframe) {
+            return RoaringBitmap.flip(predicate.evaluate(dataframe), 0L, (long) dataframe.getNumberOfRows());
+        }
+
+        /**
+         * The complement includes the rows for which the predicate is unknown in SQL because of nulls
+         */
+        @Override
+        String toSql(List<Object> parameters, int firstParameter) {
+            return "(CASE WHEN " + predicate.toSql(parameters, firstParameter) + " THEN 0 ELSE 1 END = 1)";
+        }
+
+        @Override
+        void collectColumns(Set<String> columns) {
+            predicate.collectColumns(columns);
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + predicate;
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package org.dataframe;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser of delimited text files. The file is mapped and split at line breaks outside quoted fields into
+ * chunks that are parsed concurrently, numbers are parsed from the bytes of the file without creating strings.
+ * Fields may be quoted, with quotes escaped by doubling them, and quoted fields may contain line breaks.
+ * A cell that does not parse as the type of its column fails the read with its line and column
+ */
+final class CsvReader {
+
+    static final int CHUNK_SIZE = 1 << 25;
+
+    private static final byte DOUBLE = 1;
+    private static final byte LONG = 2;
+    private static final byte INT = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte STRING = 5;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private final Path path;
+    private final byte delimiter;
+    private final boolean header;
+    private final int sampleSize;
+    private final int chunkSize;
+    private String[] headerNames;
+
+    CsvReader(Path path, char delimiter, boolean header, int sampleSize) {
+        this(path, delimiter, header, sampleSize, CHUNK_SIZE);
+    }
+
+    CsvReader(Path path, char delimiter, boolean header, int sampleSize, int chunkSize) {
+        this.path = path;
+        this.delimiter = (byte) delimiter;
+        this.header = header;
+        this.sampleSize = sampleSize;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return the names of the header line, null if the file has no header line
+     */
+    String[] headerNames() {
+        return headerNames;
+    }
+
+    /**
+     * Parses the file
+     * @param columnTypes the types of the columns, null to infer them from the leading lines
+     * @return the columns
+     * @throws IOException
+     */
+    Column[] read(Class[] columnTypes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<Long> bounds = new ArrayList<>();
+            bounds.add(0L);
+            for (long position = chunkSize; position < size; position += chunkSize) {
+                long lineStart = nextLine(channel, bounds.get(bounds.size() - 1), position);
+                if (lineStart < size && lineStart > bounds.get(bounds.size() - 1)) {
+                    bounds.add(lineStart);
+                }
+            }
+            bounds.add(size);
+            int chunks = bounds.size() - 1;
+            ByteBuffer[] mapped = new ByteBuffer[chunks];
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                mapped[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, bounds.get(chunk), bounds.get(chunk + 1) - bounds.get(chunk));
+            }
+
+            int[] field = new int[4];
+            int start = 0;
+            if (header) {
+                List<String> names = new ArrayList<>();
+                start = readLine(mapped[0], 0, field, names);
+                headerNames = names.toArray(new String[0]);
+            }
+            byte[] kinds = columnTypes != null ? kinds(columnTypes) : infer(mapped[0], start);
+            int firstLine = start;
+            ColumnBuffer[][] parts = new ColumnBuffer[chunks][];
+            Execution.DEFAULT.forEach(chunks, chunk -> parts[chunk] = parse(mapped, chunk, chunk == 0 ? firstLine : 0, kinds));
+            ColumnBuffer[] buffers = parts[0];
+            for (int chunk = 1; chunk < chunks; chunk++) {
+                for (int column = 0; column < buffers.length; column++) {
+                    buffers[column].addAll(parts[chunk][column]);
+                }
+            }
+            Column[] columns = new Column[buffers.length];
+            Execution.DEFAULT.forEach(buffers.length, column -> columns[column] = buffers[column].build());
+            return columns;
+        }
+    }
+
+    /**
+     * Counts the quotes from the start of a line to tell the line breaks of quoted fields apart, a doubled
+     * quote toggles twice
+     * @param lineStart the start of a line, outside any quoted field
+     * @return the position after the first line break outside quotes at or after the given position
+     */
+    private static long nextLine(FileChannel channel, long lineStart, long position) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(1 << 16);
+        boolean quoted = false;
+        for (long offset = lineStart; ; ) {
+            window.clear();
+            int read = channel.read(window, offset);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = window.get(i);
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted && offset + i >= position) {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    private static byte[] kinds(Class[] columnTypes) {
+        byte[] kinds = new byte[columnTypes.length];
+        for (int column = 0; column < columnTypes.length; column++) {
+            Class<?> type = columnTypes[column];
+            if (type == Double.class || type == double.class || type == Float.class || type == float.class
+                    || type == BigDecimal.class || type == Number.class) {
+                kinds[column] = DOUBLE;
+            } else if (type == Long.class || type == long.class || type == BigInteger.class) {
+                kinds[column] = LONG;
+            } else if (type == Integer.class || type == int.class || type == Short.class || type == short.class
+                    || type == Byte.class || type == byte.class) {
+                kinds[column] = INT;
+            } else if (type == Boolean.class || type == boolean.class) {
+                kinds[column] = BOOLEAN;
+            } else {
+                kinds[column] = STRING;
+            }
+        }
+        return kinds;
+    }
+
+    /**
+     * Infers the kind of every column from the leading lines: integers are read as longs,
+     * other numbers as doubles, true and false as booleans and anything else as strings
+     */
+    private byte[] infer(ByteBuffer bytes, int position) {
+        List<String[]> sample = new ArrayList<>();
+        int[] field = new int[4];
+        int width = headerNames != null ? headerNames.length : 0;
+        while (position < bytes.limit() && sample.size() < sampleSize) {
+            List<String> cells = new ArrayList<>();
+            position = readLine(bytes, position, field, cells);
+            if (!cells.isEmpty()) {
+                sample.add(cells.toArray(new String[0]));
+                width = Math.max(width, cells.size());
+            }
+        }
+        byte[] kinds = new byte[width];
+        for (int column = 0; column < width; column++) {
+            boolean integral = true;
+            boolean numeric = true;
+            boolean bool = true;
+            boolean any = false;
+            for (String[] cells : sample) {
+                String cell = column < cells.length ? cells[column] : null;
+                if (cell == null || cell.isEmpty()) {
+                    continue;
+                }
+                any = true;
+                integral &= parses(cell, LONG);
+                numeric &= integral || parses(cell, DOUBLE);
+                bool &= cell.equalsIgnoreCase("true") || cell.equalsIgnoreCase("false");
+            }
+            kinds[column] = !any ? STRING : integral ? LONG : numeric ? DOUBLE : bool ? BOOLEAN : STRING;
+        }
+        return kinds;
+    }
+
+    private static boolean parses(String cell, byte kind) {
+        ByteBuffer bytes = ByteBuffer.wrap(cell.getBytes(StandardCharsets.UTF_8));
+        try {
+            if (kind == LONG) {
+                parseLong(bytes, 0, bytes.limit());
+            } else {
+                parseDouble(bytes, 0, bytes.limit());
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the fields of a line as strings, empty unquoted fields as null
+     * @return the position of the next line
+     */
+    private int readLine(ByteBuffer bytes, int position, int[] field, List<String> cells) {
+        int end = bytes.limit();
+        if (position < end && isLineBreak(bytes, position, end)) {
+            return skipLineBreak(bytes, position, end);
+        }
+        while (position < end) {
+            position = nextField(bytes, position, end, field);
+            cells.add(field[2] == 0 && field[0] == field[1] ? null : string(bytes, field));
+            if (field[3] == 1) {
+                break;
+            }
+        }
+        return position;
+    }
+
+    private static boolean isLineBreak(ByteBuffer bytes, int position, int end) {
+        byte b = bytes.get(position);
+        return b == '\n' || b == '\r' && position + 1 < end && bytes.get(position + 1) == '\n';
+    }
+
+    private static int skipLineBreak(ByteBuffer bytes, int position, int end) {
+        return bytes.get(position) == '\r' ? position + 2 : position + 1;
+    }
+
+    /**
+     * Parses the lines of a chunk into a buffer per column, missing fields are null and extra fields are ignored.
+     * Empty lines are skipped, unless there is a single column where they are the null cells
+     * @throws IllegalArgumentException with the line and the column of a cell that does not parse
+     */
+    private ColumnBuffer[] parse(ByteBuffer[] mapped, int chunk, int position, byte[] kinds) {
+        ByteBuffer bytes = mapped[chunk];
+        ColumnBuffer[] buffers = new ColumnBuffer[kinds.length];
+        for (int column = 0; column < kinds.length; column++) {
+            switch (kinds[column]) {
+                case DOUBLE:
+                    buffers[column] = new ColumnBuffer.DoubleBuffer();
+                    break;
+                case LONG:
+                    buffers[column] = new ColumnBuffer.LongBuffer();
+                    break;
+                case INT:
+                    buffers[column] = new ColumnBuffer.IntBuffer();
+                    break;
+                case BOOLEAN:
+                    buffers[column] = new ColumnBuffer.BooleanBuffer();
+                    break;
+                default:
+                    buffers[column] = new ColumnBuffer.ObjectBuffer(String.class);
+            }
+        }
+        int[] field = new int[4];
+        int end = bytes.limit();
+        while (position < end) {
+            if (kinds.length != 1 && isLineBreak(bytes, position, end)) {
+                position = skipLineBreak(bytes, position, end);
+                continue;
+            }
+            int lineStart = position;
+            int column = 0;
+            do {
+                position = nextField(bytes, position, end, field);
+                if (column < kinds.length) {
+                    try {
+                        append(buffers[column], kinds[column], bytes, field);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException(path + ": line " + line(mapped, chunk, lineStart) + ", column "
+                                + (headerNames != null && column < headerNames.length ? headerNames[column] : column + 1)
+                                + ": " + e.getMessage(), e);
+                    }
+                }
+                column++;
+            } while (field[3] == 0);
+            for (; column < kinds.length; column++) {
+                buffers[column].add(null);
+            }
+        }
+        return buffers;
+    }
+
+    /**
+     * @return the number of the line of the file at the given position of a chunk, counted from 1
+     */
+    private static long line(ByteBuffer[] mapped, int chunk, int position) {
+        long line = 1;
+        for (int previous = 0; previous <= chunk; previous++) {
+            ByteBuffer bytes = mapped[previous];
+            for (int i = 0, end = previous == chunk ? position : bytes.limit(); i < end; i++) {
+                if (bytes.get(i) == '\n') {
+                    line++;
+                }
+            }
+        }
+        return line;
+    }
+
+    private static void append(ColumnBuffer buffer, byte kind, ByteBuffer bytes, int[] field) {
+        boolean empty = field[0] == field[1];
+        boolean quoted = field[2] == 1;
+        if (kind == STRING) {
+            buffer.add(empty && !quoted ? null : string(bytes, field));
+        } else if (empty) {
+            buffer.add(null);
+        } else if (quoted) {
+            ByteBuffer unquoted = ByteBuffer.wrap(string(bytes, field).getBytes(StandardCharsets.UTF_8));
+            append(buffer, kind, unquoted, new int[]{0, unquoted.limit(), 0, field[3]});
+        } else if (kind == DOUBLE) {
+            ((ColumnBuffer.DoubleBuffer) buffer).add(parseDouble(bytes, field[0], field[1]));
+        } else if (kind == LONG) {
+            ((ColumnBuffer.LongBuffer) buffer).add(parseLong(bytes, field[0], field[1]));
+        } else if (kind == INT) {
+            long value = parseLong(bytes, field[0], field[1]);
+            if (value != (int) value) {
+                throw new NumberFormatException(value + " is out of the range of int");
+            }
+            ((ColumnBuffer.IntBuffer) buffer).add((int) value);
+        } else {
+            String cell = string(bytes, field);
+            if (!cell.equalsIgnoreCase("true") && !cell.equalsIgnoreCase("false")) {
+                throw new IllegalArgumentException("\"" + cell + "\" is not a boolean");
+            }
+            buffer.add(cell.equalsIgnoreCase("true"));
+        }
+    }
+
+    /**
+     * Finds the field that starts at the given position
+     * @param field receives the start and the end of the field, 1 if it is quoted and 1 if it ends the line
+     * @return the position after the delimiter or the line break that ends the field
+     */
+    private int nextField(ByteBuffer bytes, int position, int end, int[] field) {
+        boolean quoted = position < end && bytes.get(position) == '"';
+        if (quoted) {
+            field[0] = ++position;
+            while (position < end) {
+                if (bytes.get(position) == '"') {
+                    if (position + 1 < end && bytes.get(position + 1) == '"') {
+                        position += 2;
+                        continue;
+                    }
+                    break;
+                }
+                position++;
+            }
+            field[1] = position;
+            while (position < end && bytes.get(position) != delimiter && bytes.get(position) != '\n') {
+                position++;
+            }
+        } else {
+            field[0] = position;
+            while (position < end && bytes.get(position) != delimiter && bytes.get(position) != '\n') {
+                position++;
+            }
+            field[1] = position > field[0] && bytes.get(position - 1) == '\r' && (position == end || bytes.get(position) == '\n')
+                    ? position - 1 : position;
+        }
+        field[2] = quoted ? 1 : 0;
+        field[3] = position >= end || bytes.get(position) == '\n' ? 1 : 0;
+        return position + 1;
+    }
+
+    private static String string(ByteBuffer bytes, int[] field) {
+        byte[] cell = new byte[field[1] - field[0]];
+        for (int i = 0; i < cell.length; i++) {
+            cell[i] = bytes.get(field[0] + i);
+        }
+        String value = new String(cell, StandardCharsets.UTF_8);
+        return field[2] == 1 ? value.replace("\"\"", "\"") : value;
+    }
+
+    static long parseLong(ByteBuffer bytes, int from, int to) {
+        int position = from;
+        boolean negative = false;
+        if (position < to && (bytes.get(position) == '-' || bytes.get(position) == '+')) {
+            negative = bytes.get(position++) == '-';
+        }
+        if (position == to || to - position > 18) {
+            return Long.parseLong(string(bytes, new int[]{from, to, 0, 0}));
+        }
+        long value = 0;
+        for (; position < to; position++) {
+            int digit = bytes.get(position) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + string(bytes, new int[]{from, to, 0, 0}) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses decimal numbers of up to 15 significant digits and exponents of up to 22 with
+     * a single (correctly rounded) multiplication or division, any other number by {@link Double#parseDouble(String)}
+     */
+    static double parseDouble(ByteBuffer bytes, int from, int to) {
+        int position = from;
+        boolean negative = false;
+        if (position < to && (bytes.get(position) == '-' || bytes.get(position) == '+')) {
+            negative = bytes.get(position++) == '-';
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        boolean exact = true;
+        for (; position < to && isDigit(bytes.get(position)); position++) {
+            any = true;
+            if (digits < 15) {
+                mantissa = mantissa * 10 + bytes.get(position) - '0';
+                digits += mantissa == 0 ? 0 : 1;
+            } else {
+                exact = false;
+            }
+        }
+        if (position < to && bytes.get(position) == '.') {
+            for (position++; position < to && isDigit(bytes.get(position)); position++) {
+                any = true;
+                if (digits < 15) {
+                    mantissa = mantissa * 10 + bytes.get(position) - '0';
+                    digits += mantissa == 0 ? 0 : 1;
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+            }
+        }
+        if (any && position < to && (bytes.get(position) == 'e' || bytes.get(position) == 'E')) {
+            position++;
+            boolean negativeExponent = false;
+            if (position < to && (bytes.get(position) == '-' || bytes.get(position) == '+')) {
+                negativeExponent = bytes.get(position++) == '-';
+            }
+            int explicit = 0;
+            boolean exponentDigits = false;
+            for (; position < to && isDigit(bytes.get(position)) && explicit < 10000; position++) {
+                explicit = explicit * 10 + bytes.get(position) - '0';
+                exponentDigits = true;
+            }
+            exact &= exponentDigits;
+            exponent += negativeExponent ? -explicit : explicit;
+        }
+        if (!any || !exact || position != to || exponent < -22 || exponent > 22) {
+            return Double.parseDouble(string(bytes, new int[]{from, to, 0, 0}));
+        }
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
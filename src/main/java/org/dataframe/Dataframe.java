@@ -2,39 +2,191 @@ package org.dataframe;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.roaringbitmap.RoaringBitmap;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.Query;
-import javax.xml.crypto.Data;
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Array;
-import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.*;
 
-public class Dataframe {
+public class Dataframe implements AutoCloseable {
 
     private static final Logger logger = LogManager.getLogger(Dataframe.class);
 
     private final String[] columnNames;
-    private final Object[][] data;
+    /**
+     * index of every column name, the first column wins if names repeat
+     */
+    private final Map<String, Integer> indexByName = new HashMap<>();
+    private final Column[] columns;
     private final int numberOfRows;
+    private final Execution execution;
+    /**
+     * off-heap storages released by {@link #close()}, null if the dataframe does not own any
+     */
+    private final OffHeapStorage[] owned;
+    private final AtomicBoolean closed = new AtomicBoolean();
 
-
-    private Dataframe(Object[][] data, int numberOfRows) {
-        this.data = data;
-        this.columnNames = null;
-        this.numberOfRows = numberOfRows;
+    private Dataframe(Column[] columns, int numberOfRows) {
+        this(columns, null, numberOfRows);
     }
 
-    private Dataframe(Object[][] data,
+    private Dataframe(Column[] columns,
                       String[] columnNames,
                       int numberOfRows) {
-        this.data = data;
+        this(columns, columnNames, numberOfRows, Execution.DEFAULT);
+    }
+
+    private Dataframe(Column[] columns,
+                      String[] columnNames,
+                      int numberOfRows,
+                      Execution execution) {
+        this(columns, columnNames, numberOfRows, execution, null);
+    }
+
+    private Dataframe(Column[] columns,
+                      String[] columnNames,
+                      int numberOfRows,
+                      Execution execution,
+                      OffHeapStorage[] owned) {
+        this.columns = columns;
         this.columnNames = columnNames;
         this.numberOfRows = numberOfRows;
+        this.execution = execution;
+        this.owned = owned;
+        for (int index = 0; columnNames != null && index < columnNames.length; index++) {
+            indexByName.putIfAbsent(columnNames[index], index);
+        }
+    }
+
+    /**
+     * Creates a dataframe over the given columns
+     */
+    static Dataframe of(Column[] columns, String[] columnNames, int numberOfRows) {
+        return new Dataframe(columns, columnNames, numberOfRows);
+    }
+
+    /**
+     * Encodes the long and int columns whose statistics make an encoding worth it, see {@link EncodedColumn#encode(Column)}.
+     * The builders run this statistics pass on the columns they build, while their cells are fresh
+     * @return the given columns, encoded in place
+     */
+    static Column[] encode(Column[] columns, Execution execution) {
+        execution.forEach(columns.length, column -> columns[column] = EncodedColumn.encode(columns[column]));
+        return columns;
+    }
+
+    /**
+     * Starts an empty dataframe that grows by batches of rows, see {@link AppendableDataframe}
+     * @param columnNames
+     * @return
+     */
+    public static AppendableDataframe appendable(String... columnNames) {
+        return new AppendableDataframe(columnNames);
+    }
+
+    /**
+     * Creates a dataframe of this one's execution settings
+     */
+    private Dataframe derive(Column[] columns, String[] columnNames, int numberOfRows) {
+        return new Dataframe(columns, columnNames, numberOfRows, execution);
+    }
+
+    /**
+     * Returns a dataframe over the same columns whose operations, and the operations of any dataframe
+     * derived from it, split the rows in up to as many partitions as the parallelism of the given pool
+     * @param pool
+     * @return
+     */
+    public Dataframe parallel(ForkJoinPool pool) {
+        return parallel(pool, pool.getParallelism());
+    }
+
+    /**
+     * Same as {@link #parallel(ForkJoinPool)} with the given number of partitions on the common pool
+     * @param parallelism
+     * @return
+     */
+    public Dataframe parallel(int parallelism) {
+        return parallel(ForkJoinPool.commonPool(), parallelism);
+    }
+
+    public Dataframe parallel(ForkJoinPool pool, int parallelism) {
+        return new Dataframe(columns, columnNames, numberOfRows,
+                new Execution(pool, parallelism, execution.memoryBudget, execution.spillDirectory, true));
+    }
+
+    /**
+     * Returns a dataframe over the same columns whose sorts and group-bys, and those of any dataframe derived
+     * from it, spill to temporary files once their working memory would exceed the budget: sorts write
+     * sorted runs and merge them, group-bys write the rows of hash partitions of the keys and aggregate
+     * one partition at a time. The cells of the dataframe are not part of the budget
+     * @param bytes working memory of an operation, not counting its result
+     * @return
+     */
+    public Dataframe memoryBudget(long bytes) {
+        return memoryBudget(bytes, execution.spillDirectory);
+    }
+
+    /**
+     * Same as {@link #memoryBudget(long)} with the spill files in the given directory
+     * @param bytes
+     * @param spillDirectory
+     * @return
+     */
+    public Dataframe memoryBudget(long bytes, Path spillDirectory) {
+        return new Dataframe(columns, columnNames, numberOfRows,
+                new Execution(execution.pool, execution.parallelism, bytes, spillDirectory, execution.explicit));
+    }
+
+    public long getMemoryBudget() {
+        return execution.memoryBudget;
+    }
+
+    public Dataframe sequential() {
+        return parallel(1);
+    }
+
+    public int getParallelism() {
+        return execution.parallelism;
+    }
+
+    /**
+     * Installs the listener of the operations of all the dataframes, see {@link DataframeMetrics}
+     * @param metrics the listener, or null to stop listening
+     */
+    public static void setMetrics(DataframeMetrics metrics) {
+        Metrics.setListener(metrics);
+    }
+
+    public static DataframeMetrics getMetrics() {
+        return Metrics.getListener();
+    }
+
+    /**
+     * @return the names of the given columns, or their indices if the columns are unnamed
+     */
+    private String[] names(Integer... indices) {
+        return Stream.of(indices).map(index -> columnNames != null ? columnNames[index] : "#" + index).toArray(String[]::new);
     }
 
     public static Stream<String> choice(Random random, String... choices) {
@@ -45,97 +197,934 @@ public class Dataframe {
         return new SqlDataframeBuilder(entityManager, select_);
     }
 
+    /**
+     * Starts reading a comma separated file with a header line, see {@link CsvDataframeBuilder}
+     * @param path
+     * @return
+     */
+    public static CsvDataframeBuilder csv(Path path) {
+        return new CsvDataframeBuilder(path);
+    }
+
     public Dataframe sort(int index) {
         return sort(index, true);
     }
 
 
     public Dataframe sort(int index, boolean ascending) {
-        UnbalancedBTreeIndex root = new UnbalancedBTreeIndex(0, index);
-        for (int i = 1; i<data[index].length; i++) {
-            new UnbalancedBTreeIndex(i, index).insert(root);
+        return sort(ascending ? SortKey.asc(index) : SortKey.desc(index));
+    }
+
+    /**
+     * Sorts by multiple columns, rows with equal keys keep their relative order
+     * @param keys
+     * @return a view of the rows in sorted order
+     */
+    public Dataframe sort(SortKey... keys) {
+        int[] permutation = argsort(keys);
+        return view(permutation);
+    }
+
+    public int[] argsort(int index, boolean ascending) {
+        return argsort(ascending ? SortKey.asc(index) : SortKey.desc(index));
+    }
+
+    /**
+     * Computes the order of the rows without copying any column
+     * @param keys
+     * @return the row indices in sorted order
+     */
+    public int[] argsort(SortKey... keys) {
+        return pinned(() -> {
+            Metrics.Timer timer = Metrics.start("sort");
+            Column[] sortColumns = new Column[keys.length];
+            boolean[] ascending = new boolean[keys.length];
+            boolean[] nullsFirst = new boolean[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                sortColumns[i] = columns[keys[i].getColumnName() != null ? findColumnIndexByName(keys[i].getColumnName()) : keys[i].getIndex()];
+                ascending[i] = keys[i].isAscending();
+                nullsFirst[i] = keys[i].isNullsFirst();
+            }
+            if (keys.length == 0) {
+                return IntStream.range(0, numberOfRows).toArray();
+            }
+            int[] permutation;
+            if (ExternalSorter.exceedsBudget(keys.length, numberOfRows, execution)) {
+                try (Spill spill = new Spill(execution.spillDirectory)) {
+                    permutation = new ExternalSorter(sortColumns, ascending, nullsFirst, numberOfRows, execution).sort(spill);
+                    timer.spilled(spill);
+                }
+            } else {
+                permutation = new Sorter(sortColumns, ascending, nullsFirst).sort(execution);
+            }
+            timer.stop(numberOfRows, permutation.length, Stream.of(keys)
+                    .map(key -> key.getColumnName() != null ? key.getColumnName() : names(key.getIndex())[0]).toArray(String[]::new),
+                    execution.partitions(numberOfRows));
+            return permutation;
+        });
+    }
+
+    /**
+     * Same as {@code sort(...).slice(0, n)} without sorting: every partition of the rows keeps its first
+     * rows in a bounded heap and the heaps are merged, in O(rows * log(n)) time and O(n) memory per partition
+     * @param columnName
+     * @param n maximum number of rows
+     * @param ascending false for the rows of the largest cells
+     * @return a view of the first n rows in sorted order, nulls last and equal cells in row order
+     */
+    public Dataframe topN(String columnName, int n, boolean ascending) {
+        return pinned(() -> {
+            if (n < 0) {
+                throw new IllegalArgumentException("negative number of rows " + n);
+            }
+            Metrics.Timer timer = Metrics.start("topN");
+            Column column = column(columnName);
+            IntToLongFunction keys = TopN.keys(column, ascending);
+            int[] rows = execution.reduce(numberOfRows, (from, to) -> new TopN(n).offer(column, keys, from, to), TopN::merge).rows();
+            timer.stop(numberOfRows, rows.length, new String[]{columnName}, execution.partitions(numberOfRows));
+            return view(rows);
+        });
+    }
+
+    /**
+     * Creates a view of the given rows in the given order, the rows are not copied
+     * @param rows selection vector or permutation of the rows of this dataframe
+     * @return
+     */
+    public Dataframe view(int[] rows) {
+        return derive(Column.view(columns, rows), columnNames, rows.length);
+    }
+
+    /**
+     * @param from inclusive
+     * @param to exclusive
+     * @return a view of a range of rows
+     */
+    public Dataframe slice(int from, int to) {
+        if (from < 0 || to > numberOfRows || from > to) {
+            throw new IndexOutOfBoundsException("slice " + from + "-" + to + " of " + numberOfRows + " rows");
+        }
+        return derive(Stream.of(columns).map(column -> column.slice(from, to)).toArray(Column[]::new), columnNames, to - from);
+    }
+
+    public Dataframe project(String... columnNames) {
+        return project(Stream.of(columnNames).map(this::findColumnIndexByName).toArray(Integer[]::new));
+    }
+
+    /**
+     * @param indices
+     * @return a dataframe of only the given columns, sharing their storage
+     */
+    public Dataframe project(Integer... indices) {
+        Column[] projected = Stream.of(indices).map(index -> columns[index]).toArray(Column[]::new);
+        String[] projectedNames = columnNames == null ? null : Stream.of(indices).map(index -> columnNames[index]).toArray(String[]::new);
+        return derive(projected, projectedNames, numberOfRows);
+    }
+
+    /**
+     * Copies the cells of the columns that are views over other columns, so that the dataframe
+     * no longer holds on the storage of the dataframe it was derived from
+     * @return
+     */
+    public Dataframe materialize() {
+        Column[] materialized = new Column[columns.length];
+        execution.forEach(columns.length, column -> materialized[column] = columns[column].materialize());
+        return derive(materialized, columnNames, numberOfRows);
+    }
+
+    /**
+     * Writes the dataframe in a columnar file, see {@link #open(Path)}
+     * @param path
+     * @throws IOException
+     */
+    public void save(Path path) throws IOException {
+        ColumnFile.write(path, columns, columnNames, numberOfRows);
+    }
+
+    /**
+     * Maps a file written by {@link #save(Path)}, only the footer of the file is read up front and
+     * the cells of a column are read when an operation first uses the column
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static Dataframe open(Path path) throws IOException {
+        ColumnFile.Contents file = ColumnFile.open(path);
+        return new Dataframe(file.columns, file.columnNames, file.rows);
+    }
+
+    /**
+     * Copies the double, long and int columns outside the java heap, encoded columns are decoded into their copy.
+     * The other columns are shared, the validity bitmaps of the copies stay on the heap.
+     * Operations on the returned dataframe, and on the dataframes derived from it, read the cells in place.
+     * The memory is freed by {@link #close()}, derived dataframes must not be used afterwards
+     * @return a dataframe that owns its off-heap columns
+     */
+    public Dataframe offHeap() {
+        Column[] copies = new Column[columns.length];
+        execution.forEach(columns.length, column -> {
+            OffHeapColumn copy = OffHeapColumn.copyOf(columns[column]);
+            copies[column] = copy != null ? copy : columns[column];
+        });
+        OffHeapStorage[] storages = Stream.of(copies).filter(OffHeapColumn.class::isInstance)
+                .map(column -> ((OffHeapColumn) column).storage).toArray(OffHeapStorage[]::new);
+        return new Dataframe(copies, columnNames, numberOfRows, execution, storages);
+    }
+
+    /**
+     * Encodes the long and int columns whose statistics make run-length, bit-packed or delta encoding
+     * at least twice smaller than the plain cells, see {@link EncodedColumn}. Sums, null counts, group-bys
+     * and equality selections of the returned dataframe run on the encoded cells, string columns are
+     * already dictionary encoded and the other columns are shared. The builders and {@link #open(Path)}
+     * already encode the columns they create with run-length or bit-packing, this encodes the plain columns
+     * of derived dataframes, e.g. of joins or sorts, and is the only one that chooses delta encoding, whose
+     * cells are decoded a block at a time by cursors, gathers and window functions
+     * @return a dataframe over the encoded columns
+     */
+    public Dataframe compress() {
+        Metrics.Timer timer = Metrics.start("compress");
+        Column[] encoded = new Column[columns.length];
+        execution.forEach(columns.length, column -> {
+            Column cells = EncodedColumn.encode(columns[column].materialize(), true);
+            encoded[column] = cells instanceof EncodedColumn ? cells : columns[column];
+        });
+        timer.stop(numberOfRows, numberOfRows, columnNames, Math.min(columns.length, execution.parallelism));
+        return derive(encoded, columnNames, numberOfRows);
+    }
+
+    /**
+     * Shares the off-heap columns of this dataframe with another owner, their memory is freed once
+     * both dataframes are closed
+     * @return a dataframe over the same columns that has to be closed as well
+     */
+    public Dataframe retain() {
+        return new Dataframe(columns, columnNames, numberOfRows, execution, pin());
+    }
+
+    /**
+     * Releases the off-heap columns owned by this dataframe, see {@link #offHeap()} and {@link #retain()}.
+     * Does nothing for dataframes that do not own any, or that are already closed. The sorts, selections,
+     * aggregates, group-bys, windows, joins and CSV writes of this dataframe and of the dataframes derived
+     * from it hold the columns while they run and finish first. Cells read one at a time afterwards, through
+     * {@link #column(String)} or {@link #cursor()}, fail: a thread that may outlive the owner reads through its
+     * own {@link #retain()}
+     */
+    @Override
+    public void close() {
+        if (owned != null && closed.compareAndSet(false, true)) {
+            release(owned, owned.length);
+        }
+    }
+
+    /**
+     * Holds a reference to the off-heap storages of the columns, those of the parents of views included
+     * @return the storages to release
+     * @throws IllegalStateException if a storage was already released
+     */
+    private OffHeapStorage[] pin() {
+        OffHeapStorage[] storages = Stream.of(columns).flatMap(Column::storages).distinct().toArray(OffHeapStorage[]::new);
+        for (int i = 0; i < storages.length; i++) {
+            try {
+                storages[i].retain();
+            } catch (IllegalStateException e) {
+                release(storages, i);
+                throw e;
+            }
+        }
+        return storages;
+    }
+
+    private static void release(OffHeapStorage[] storages, int count) {
+        for (int i = 0; i < count; i++) {
+            storages[i].release();
+        }
+    }
+
+    /**
+     * Runs an operation while holding the off-heap storages of the columns, so that closing their owner
+     * meanwhile does not free the cells the operation reads one at a time
+     */
+    private <T> T pinned(Supplier<T> operation) {
+        OffHeapStorage[] storages = pin();
+        try {
+            return operation.get();
+        } finally {
+            release(storages, storages.length);
+        }
+    }
+
+    /**
+     * @return the off-heap bytes of the columns of this dataframe
+     */
+    public long getOffHeapBytes() {
+        return Stream.of(columns).filter(OffHeapColumn.class::isInstance)
+                .mapToLong(column -> ((OffHeapColumn) column).storage.bytes()).sum();
+    }
+
+    /**
+     * @return the off-heap bytes of all the dataframes that have not been closed
+     */
+    public static long getAllocatedOffHeapBytes() {
+        return OffHeapStorage.allocatedBytes();
+    }
+
+    /**
+     * @return the bytes written to spill files by the operations that exceeded their memory budget,
+     * see {@link #memoryBudget(long)}
+     */
+    public static long getSpilledBytes() {
+        return Spill.getSpilledBytes();
+    }
+
+    public void writeCsv(Path path) throws IOException {
+        writeCsv(path, ',');
+    }
+
+    public void writeCsv(Path path, char delimiter) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writeCsv(writer, delimiter);
+        }
+    }
+
+    /**
+     * Writes the rows one at a time, with a header line if the columns are named.
+     * Null cells and column names are written as empty fields, so the null cells of a single column are
+     * empty lines, and fields that are empty or contain the delimiter, quotes or line breaks are quoted
+     * @param writer
+     * @param delimiter
+     * @throws IOException
+     */
+    public void writeCsv(Writer writer, char delimiter) throws IOException {
+        if (columnNames != null && columnNames.length > 0) {
+            for (int column = 0; column < columnNames.length; column++) {
+                if (column > 0) {
+                    writer.write(delimiter);
+                }
+                writeField(writer, columnNames[column], delimiter);
+            }
+            writer.write('\n');
+        }
+        boolean[] decimal = new boolean[columns.length];
+        boolean[] integral = new boolean[columns.length];
+        for (int column = 0; column < columns.length; column++) {
+            decimal[column] = columns[column].type() == Double.class;
+            integral[column] = columns[column].type() == Long.class || columns[column].type() == Integer.class;
+        }
+        OffHeapStorage[] storages = pin();
+        try {
+            RowCursor cursor = cursor();
+            while (cursor.next()) {
+                for (int column = 0; column < columns.length; column++) {
+                    if (column > 0) {
+                        writer.write(delimiter);
+                    }
+                    if (cursor.isNull(column)) {
+                        continue;
+                    }
+                    if (decimal[column]) {
+                        writer.write(Double.toString(cursor.getDouble(column)));
+                    } else if (integral[column]) {
+                        writer.write(Long.toString(cursor.getLong(column)));
+                    } else {
+                        writeField(writer, cursor.getString(column), delimiter);
+                    }
+                }
+                writer.write('\n');
+            }
+        } finally {
+            release(storages, storages.length);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes null as an empty field, which is read back as null
+     */
+    private static void writeField(Writer writer, String field, char delimiter) throws IOException {
+        if (field == null) {
+            return;
         }
-        Object[][] data = new Object[Dataframe.this.data.length][];
-        for (int i = 0; i< Dataframe.this.data.length ; i++) {
-            data[i] = ofType(Dataframe.this.data[i][0].getClass(), Dataframe.this.data[i].length);
+        if (field.isEmpty() || field.indexOf(delimiter) >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+            writer.write('"');
+            writer.write(field.replace("\"", "\"\""));
+            writer.write('"');
+        } else {
+            writer.write(field);
         }
+    }
 
-        root.sort(ascending, data);
-        return new Dataframe(data, columnNames, numberOfRows);
+    public boolean isView() {
+        return Stream.of(columns).anyMatch(column -> column instanceof ViewColumn);
     }
 
-    private static <T> T[] ofType(Class<T> type, int length) {
-        return (T[]) Array.newInstance(type, length);
+    public Column column(int index) {
+        return columns[index];
     }
 
+    public Column column(String columnName) {
+        return columns[findColumnIndexByName(columnName)];
+    }
+
+    /**
+     * Builds a dataframe from a stream per column, primitive streams are copied into primitive columns
+     * without boxing. The streams are drained one after the other, in the order of the columns, unless
+     * {@link #parallel()} is requested. The long and int columns are then encoded if they compress,
+     * see {@link EncodedColumn}
+     */
     public static class StreamDataframeBuilder {
+        /**
+         * rows taken from every stream unless a size is set
+         */
+        private static final int DEFAULT_SIZE = 100;
+
         private BaseStream[] stream;
         private String[] columnNames;
-        private int numberOfRows = 100;
+        private int numberOfRows = DEFAULT_SIZE;
+        private boolean sized;
+        private Execution execution = Execution.DEFAULT;
+
+        public StreamDataframeBuilder(BaseStream... stream) {
+            this.stream = stream;
+        }
+
+        public StreamDataframeBuilder columnNames(String... columnNames) {
+            this.columnNames = columnNames;
+            return this;
+        }
+
+        /**
+         * @param numberOfRows the number of rows taken from every stream, a negative size drains every
+         *                     stream, which must then be finite. Unless it is set up to 100 rows are taken
+         * @return
+         */
+        public StreamDataframeBuilder size(int numberOfRows) {
+            this.numberOfRows = numberOfRows;
+            this.sized = true;
+            return this;
+        }
+
+        /**
+         * Drains the streams concurrently on the common pool, a task per stream. The streams must then be
+         * independent: streams that share state, e.g. a {@link java.util.Random} or an iterator, would be
+         * read from several threads at once and their cells would depend on the scheduling of the tasks
+         * @return
+         */
+        public StreamDataframeBuilder parallel() {
+            return parallel(ForkJoinPool.getCommonPoolParallelism());
+        }
+
+        /**
+         * Same as {@link #parallel()} with up to the given number of streams drained and columns encoded at once
+         * @param parallelism
+         * @return
+         */
+        public StreamDataframeBuilder parallel(int parallelism) {
+            this.execution = new Execution(ForkJoinPool.commonPool(), parallelism, true);
+            return this;
+        }
+
+        /**
+         * @return
+         * @throws IllegalArgumentException if the streams do not have the same number of rows,
+         * or fewer rows than the requested size
+         */
+        public Dataframe build() {
+            if ((columnNames!=null && columnNames.length>0)&&columnNames.length!=stream.length) {
+                throw new IllegalArgumentException();
+            }
+            Metrics.Timer timer = Metrics.start("stream.build");
+            Column[] data = new Column[stream.length];
+            Execution drain = execution.forUserCode();
+            drain.forEach(stream.length, column -> data[column] = ingest(column, stream[column]));
+            int size = data.length == 0 ? Math.max(numberOfRows, 0) : data[0].size();
+            for (int column = 1; column < data.length; column++) {
+                if (data[column].size() != size) {
+                    throw new IllegalArgumentException("stream " + column + " has " + data[column].size()
+                            + " rows while stream 0 has " + size);
+                }
+            }
+            encode(data, execution);
+            timer.stop(-1, size, columnNames, Math.min(stream.length, drain.parallelism));
+
+            if ((columnNames!=null && columnNames.length>0)) {
+                return new Dataframe(data, columnNames, size);
+            } else {
+                return new Dataframe(data, size);
+            }
+        }
+
+        private Column ingest(int column, BaseStream columnStream) {
+            Iterator<?> iterator = columnStream.iterator();
+            if (!sized || numberOfRows < 0) {
+                //without an exact size the streams may end before the limit
+                int limit = numberOfRows < 0 ? Integer.MAX_VALUE : numberOfRows;
+                int row = 0;
+                ColumnBuffer buffer = columnStream instanceof DoubleStream ? new ColumnBuffer.DoubleBuffer()
+                        : columnStream instanceof LongStream ? new ColumnBuffer.LongBuffer()
+                        : columnStream instanceof IntStream ? new ColumnBuffer.IntBuffer()
+                        : new ColumnBuffer.ObjectBuffer(Object.class);
+                if (buffer instanceof ColumnBuffer.DoubleBuffer) {
+                    PrimitiveIterator.OfDouble values = (PrimitiveIterator.OfDouble) iterator;
+                    for (; row < limit && values.hasNext(); row++) {
+                        ((ColumnBuffer.DoubleBuffer) buffer).add(values.nextDouble());
+                    }
+                } else if (buffer instanceof ColumnBuffer.LongBuffer) {
+                    PrimitiveIterator.OfLong values = (PrimitiveIterator.OfLong) iterator;
+                    for (; row < limit && values.hasNext(); row++) {
+                        ((ColumnBuffer.LongBuffer) buffer).add(values.nextLong());
+                    }
+                } else if (buffer instanceof ColumnBuffer.IntBuffer) {
+                    PrimitiveIterator.OfInt values = (PrimitiveIterator.OfInt) iterator;
+                    for (; row < limit && values.hasNext(); row++) {
+                        ((ColumnBuffer.IntBuffer) buffer).add(values.nextInt());
+                    }
+                } else {
+                    for (; row < limit && iterator.hasNext(); row++) {
+                        buffer.add(iterator.next());
+                    }
+                }
+                return buffer.build();
+            }
+
+            int row = 0;
+            Column data;
+            if (columnStream instanceof DoubleStream) {
+                PrimitiveIterator.OfDouble values = (PrimitiveIterator.OfDouble) iterator;
+                double[] cells = new double[numberOfRows];
+                for (; row < numberOfRows && values.hasNext(); row++) {
+                    cells[row] = values.nextDouble();
+                }
+                data = new DoubleColumn(cells);
+            } else if (columnStream instanceof LongStream) {
+                PrimitiveIterator.OfLong values = (PrimitiveIterator.OfLong) iterator;
+                long[] cells = new long[numberOfRows];
+                for (; row < numberOfRows && values.hasNext(); row++) {
+                    cells[row] = values.nextLong();
+                }
+                data = new LongColumn(cells);
+            } else if (columnStream instanceof IntStream) {
+                PrimitiveIterator.OfInt values = (PrimitiveIterator.OfInt) iterator;
+                int[] cells = new int[numberOfRows];
+                for (; row < numberOfRows && values.hasNext(); row++) {
+                    cells[row] = values.nextInt();
+                }
+                data = new IntColumn(cells);
+            } else {
+                Object[] cells = new Object[numberOfRows];
+                for (; row < numberOfRows && iterator.hasNext(); row++) {
+                    cells[row] = iterator.next();
+                }
+                data = Column.of(cells, row);
+            }
+            if (row < numberOfRows) {
+                throw new IllegalArgumentException("stream " + column + " ended after " + row + " of " + numberOfRows + " rows");
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Builds a dataframe from batches of rows that arrive over time, possibly from other threads.
+     * A batch holds an array per column, primitive arrays are appended to primitive columns without boxing
+     * and encoded on build if they compress
+     */
+    public static class BatchDataframeBuilder {
+        private String[] columnNames;
+        private Class[] columnTypes;
+        private ColumnBuffer[] buffers;
+
+        public BatchDataframeBuilder columnNames(String... columnNames) {
+            this.columnNames = columnNames;
+            return this;
+        }
+
+        /**
+         * @param columnTypes the types of the columns, by default they are decided by the arrays of the first batch
+         * @return
+         */
+        public BatchDataframeBuilder types(Class... columnTypes) {
+            this.columnTypes = columnTypes;
+            return this;
+        }
+
+        /**
+         * Appends a batch of rows
+         * @param columns an array per column, e.g. {@code double[]} or {@code String[]}, all of the same length
+         * @return
+         * @throws IllegalArgumentException if the number or the lengths of the arrays do not match
+         */
+        public synchronized BatchDataframeBuilder add(Object... columns) {
+            if (buffers == null) {
+                buffers = new ColumnBuffer[columns.length];
+                for (int column = 0; column < columns.length; column++) {
+                    buffers[column] = ColumnBuffer.of(columnTypes != null ? columnTypes[column]
+                            : columns[column].getClass().getComponentType());
+                }
+            }
+            if (columns.length != buffers.length) {
+                throw new IllegalArgumentException("batch of " + columns.length + " columns, expected " + buffers.length);
+            }
+            int length = Array.getLength(columns[0]);
+            for (int column = 1; column < columns.length; column++) {
+                if (Array.getLength(columns[column]) != length) {
+                    throw new IllegalArgumentException("column " + column + " of the batch has "
+                            + Array.getLength(columns[column]) + " rows, expected " + length);
+                }
+            }
+            for (int column = 0; column < columns.length; column++) {
+                buffers[column].addArray(columns[column]);
+            }
+            return this;
+        }
+
+        public synchronized Dataframe build() {
+            Column[] data = buffers == null ? new Column[0] : Stream.of(buffers).map(ColumnBuffer::build).toArray(Column[]::new);
+            encode(data, Execution.DEFAULT);
+            int size = buffers == null || buffers.length == 0 ? 0 : buffers[0].size();
+            if ((columnNames!=null && columnNames.length>0)) {
+                return new Dataframe(data, columnNames, size);
+            } else {
+                return new Dataframe(data, size);
+            }
+        }
+    }
+
+    /**
+     * Builds a dataframe from a delimited text file. The file is memory mapped and split at line breaks
+     * into chunks that are parsed concurrently straight into typed columns.
+     * Unless they are given, the types of the columns are inferred from the leading lines
+     * and the names of the columns are taken from the header line
+     */
+    public static class CsvDataframeBuilder {
+        private final Path path;
+        private String[] columnNames;
+        private Class[] columnTypes;
+        private char delimiter = ',';
+        private boolean header = true;
+        private int sampleSize = SqlDataframeBuilder.DEFAULT_SAMPLE_SIZE;
+
+        public CsvDataframeBuilder(Path path) {
+            this.path = path;
+        }
+
+        public CsvDataframeBuilder columnNames(String... columnNames) {
+            this.columnNames = columnNames;
+            return this;
+        }
+
+        public CsvDataframeBuilder types(Class... columnTypes) {
+            this.columnTypes = columnTypes;
+            return this;
+        }
+
+        /**
+         * @param delimiter e.g. a tab for tab separated files
+         * @return
+         */
+        public CsvDataframeBuilder delimiter(char delimiter) {
+            this.delimiter = delimiter;
+            return this;
+        }
+
+        /**
+         * @param header whether the first line holds the names of the columns
+         * @return
+         */
+        public CsvDataframeBuilder header(boolean header) {
+            this.header = header;
+            return this;
+        }
+
+        public CsvDataframeBuilder sampleSize(int sampleSize) {
+            this.sampleSize = Math.max(sampleSize, 1);
+            return this;
+        }
+
+        /**
+         * @return
+         * @throws IOException
+         * @throws NumberFormatException if a cell does not parse as the type of its column
+         */
+        public Dataframe build() throws IOException {
+            Metrics.Timer timer = Metrics.start("csv.read");
+            CsvReader reader = new CsvReader(path, delimiter, header, sampleSize);
+            Column[] data = encode(reader.read(columnTypes), Execution.DEFAULT);
+            String[] names = columnNames != null ? columnNames : reader.headerNames();
+            int size = data.length == 0 ? 0 : data[0].size();
+            timer.stop(-1, size, names, Execution.DEFAULT.parallelism);
+            if (names != null && names.length > 0) {
+                return new Dataframe(data, names, size);
+            } else {
+                return new Dataframe(data, size);
+            }
+        }
+    }
+
+    public static class SqlDataframeBuilder {
+        /**
+         * Number of leading rows the types of the columns are inferred from, unless they are given
+         */
+        public static final int DEFAULT_SAMPLE_SIZE = 1000;
+
+        private final EntityManager entityManager;
+        private final String sql;
+        private String[] columnNames;
+        private Class[] columnTypes;
+        private int fetchSize;
+        private int sampleSize = DEFAULT_SAMPLE_SIZE;
+        private String partitionColumn;
+        private long partitionMin;
+        private long partitionMax;
+        private int partitions = 1;
+        int parameterCount = 1;
+        private final Map<Integer, Object> parameters = new TreeMap<>();
+        private final Map<String, Object> namedParameters = new LinkedHashMap<>();
+        Map<Integer, Class> types = new TreeMap<>();
+        Map<String, Class> typesByName = new TreeMap<>();
+
+
+        public SqlDataframeBuilder(EntityManager entityManager, String sql) {
+            this.entityManager = entityManager;
+            this.sql = sql;
+        }
+
+        public SqlDataframeBuilder addParameter(Object parameter) {
+            parameters.put(parameterCount++, parameter);
+            return this;
+        }
+
+        public SqlDataframeBuilder setParameter(String parameterName, Object parameter) {
+            namedParameters.put(parameterName, parameter);
+            return this;
+        }
+
+        String getSql() {
+            return sql;
+        }
+
+        String[] getColumnNames() {
+            return columnNames;
+        }
+
+        /**
+         * Records the query instead of running it, so that filters and projections applied to the
+         * resulting {@link LazyDataframe} can be pushed into the native query.
+         * The column names given to the builder must be the labels of the columns of the query
+         * @return
+         */
+        public LazyDataframe lazy() {
+            if (columnNames == null) {
+                throw new IllegalStateException("column names are required to refer to the columns of the query");
+            }
+            return new LazyDataframe(new LogicalPlan.SqlScan(this));
+        }
 
-        public StreamDataframeBuilder(BaseStream... stream) {
-            this.stream = stream;
+        /**
+         * Streams the rows of the query through a forward only cursor that fetches the given number
+         * of rows per round trip, instead of loading the whole result list before copying it into columns
+         * @param fetchSize
+         * @return
+         */
+        public SqlDataframeBuilder fetchSize(int fetchSize) {
+            this.fetchSize = fetchSize;
+            return this;
         }
 
-        public StreamDataframeBuilder columnNames(String... columnNames) {
-            this.columnNames = columnNames;
+        /**
+         * @param sampleSize number of leading rows the types of the columns are inferred from
+         *                   when they are not given with {@link #types(Class[])}
+         * @return
+         */
+        public SqlDataframeBuilder sampleSize(int sampleSize) {
+            this.sampleSize = Math.max(sampleSize, 1);
             return this;
         }
 
-        public StreamDataframeBuilder size(int numberOfRows) {
-            this.numberOfRows = numberOfRows;
+        /**
+         * Splits the query into the given number of queries on ranges of an integral column that run
+         * concurrently, each on its own entity manager of the factory of the builder's entity manager.
+         * Rows outside the range are read by the first and the last query and null keys by the first one
+         * @param columnName partitioning column of the query
+         * @param min expected minimum of the column
+         * @param max expected maximum of the column
+         * @param partitions
+         * @return
+         */
+        public SqlDataframeBuilder partitionBy(String columnName, long min, long max, int partitions) {
+            this.partitionColumn = columnName;
+            this.partitionMin = min;
+            this.partitionMax = max;
+            this.partitions = Math.max(partitions, 1);
             return this;
         }
 
-        public Dataframe build() {
-            if ((columnNames!=null && columnNames.length>0)&&columnNames.length!=stream.length) {
-                throw new IllegalArgumentException();
+        /**
+         * Creates a builder for a query that selects the given columns of the rows of this query
+         * that satisfy the given condition
+         * @param projection null for all the columns
+         * @param predicate may be null
+         * @return
+         */
+        SqlDataframeBuilder pushdown(String[] projection, ColumnPredicate predicate) {
+            List<Object> predicateParameters = new ArrayList<>();
+            String where = predicate == null ? null : predicate.toSql(predicateParameters, parameterCount);
+            SqlDataframeBuilder pushed = new SqlDataframeBuilder(entityManager, "SELECT " + (projection == null ? "*" : String.join(", ", projection))
+                    + " FROM (" + sql + ") q" + (where == null ? "" : " WHERE " + where));
+            pushed.parameters.putAll(parameters);
+            pushed.namedParameters.putAll(namedParameters);
+            pushed.parameterCount = parameterCount;
+            predicateParameters.forEach(pushed::addParameter);
+            pushed.types.putAll(types);
+            pushed.typesByName.putAll(typesByName);
+            pushed.fetchSize = fetchSize;
+            pushed.sampleSize = sampleSize;
+            pushed.partitionColumn = partitionColumn;
+            pushed.partitionMin = partitionMin;
+            pushed.partitionMax = partitionMax;
+            pushed.partitions = partitions;
+            pushed.columnNames = projection == null ? columnNames : projection;
+            if (columnTypes != null && projection != null) {
+                List<String> names = Arrays.asList(columnNames);
+                pushed.columnTypes = Stream.of(projection).map(name -> columnTypes[names.indexOf(name)]).toArray(Class[]::new);
+            } else {
+                pushed.columnTypes = columnTypes;
             }
-            Object[][] data = new Object[stream.length][];
-            AtomicInteger streamIndex = new AtomicInteger();
-            for (BaseStream columnStream : stream) {
-                int columnIndex = streamIndex.getAndIncrement();
-                Iterator iterator = columnStream.iterator();
-                ArrayList temp = new ArrayList<>();
-                int count = 0;
-                while (iterator.hasNext() && count<numberOfRows) {
-                    Object cell = iterator.next();
-                    temp.add(cell);
-                    count++;
-                }
-                numberOfRows = temp.size();
-                data[columnIndex] = temp.toArray(ofType(temp.get(0).getClass(), numberOfRows));
+            return pushed;
+        }
+
+        private Query createQuery(EntityManager entityManager) {
+            Query query = entityManager.createNativeQuery(sql);
+            parameters.forEach(query::setParameter);
+            namedParameters.forEach(query::setParameter);
+            return query;
+        }
+
+        /**
+         * Runs the query on the given entity manager
+         * @return a buffer per column
+         */
+        private ColumnBuffer[] read(EntityManager entityManager) {
+            Query query = createQuery(entityManager);
+            if (fetchSize <= 0) {
+                Metrics.Timer timer = Metrics.start("sql.query");
+                List<?> resultList = query.getResultList();
+                timer.stop(-1, resultList.size(), columnNames, 1);
+                return read(resultList.stream().map(row -> row instanceof Object[] ? (Object[]) row : new Object[]{row}).iterator());
             }
+            org.hibernate.query.Query<?> scrollable = query.unwrap(org.hibernate.query.Query.class);
+            scrollable.setFetchSize(fetchSize);
+            try (ScrollableResults results = scrollable.scroll(ScrollMode.FORWARD_ONLY)) {
+                return read(new Iterator<Object[]>() {
+                    private Boolean hasNext;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (hasNext == null) {
+                            hasNext = results.next();
+                        }
+                        return hasNext;
+                    }
 
-            if ((columnNames!=null && columnNames.length>0)) {
-                return new Dataframe(data, columnNames, numberOfRows);
-            } else {
-                return new Dataframe(data, numberOfRows);
+                    @Override
+                    public Object[] next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        hasNext = null;
+                        return results.get();
+                    }
+                });
             }
         }
-    }
 
-    public static class SqlDataframeBuilder {
-        private Query query;
-        private String[] columnNames;
-        private Class[] columnTypes;
-        int parameterCount = 1;
-        Map<Integer, Class> types = new TreeMap<>();
-        Map<String, Class> typesByName = new TreeMap<>();
+        /**
+         * Appends the rows to a buffer per column, the types of the columns are inferred from
+         * a sample of the leading rows unless they are given. An inferred type is widened by a later
+         * cell it does not hold
+         * @throws IllegalArgumentException with the row and the column of a cell that does not fit the given type
+         */
+        private ColumnBuffer[] read(Iterator<Object[]> rows) {
+            Object[][] sample = new Object[sampleSize][];
+            int sampled = 0;
+            while (sampled < sampleSize && rows.hasNext()) {
+                sample[sampled++] = rows.next();
+            }
+            int width = columnTypes != null ? columnTypes.length
+                    : sampled > 0 ? sample[0].length
+                    : columnNames != null ? columnNames.length : 0;
+            ColumnBuffer[] buffers = new ColumnBuffer[width];
+            for (int column = 0; column < width; column++) {
+                buffers[column] = ColumnBuffer.of(columnTypes != null ? columnTypes[column] : ColumnBuffer.infer(sample, sampled, column));
+            }
+            int row = 0;
+            for (; row < sampled; row++) {
+                append(buffers, sample[row], row);
+            }
+            for (; rows.hasNext(); row++) {
+                append(buffers, rows.next(), row);
+            }
+            return buffers;
+        }
 
+        private void append(ColumnBuffer[] buffers, Object[] cells, int row) {
+            for (int column = 0; column < buffers.length; column++) {
+                Object cell = cells[column];
+                if (!buffers[column].accepts(cell)) {
+                    if (columnTypes != null) {
+                        throw new IllegalArgumentException("row " + row + ", column " + (columnNames != null ? columnNames[column] : column)
+                                + ": " + buffers[column].rejected(cell).getMessage());
+                    }
+                    buffers[column] = buffers[column].widen(cell);
+                }
+                buffers[column].add(cell);
+            }
+        }
 
-        public SqlDataframeBuilder(EntityManager entityManager, String sql) {
-            query = entityManager.createNativeQuery(sql);
+        /**
+         * Runs a query per range of the partitioning column concurrently and concatenates their
+         * buffers in the order of the ranges. The columns are those of the first query that returned rows,
+         * their types are widened to hold the cells of every query, a query without rows only knows the
+         * names and types given to the builder
+         */
+        private ColumnBuffer[] readPartitions() {
+            long step = Math.max((partitionMax - partitionMin) / partitions + 1, 1);
+            ColumnBuffer[][] parts = new ColumnBuffer[partitions][];
+            EntityManagerFactory factory = entityManager.getEntityManagerFactory();
+            Execution.DEFAULT.forEach(partitions, partition -> {
+                ColumnPredicate range = range(partitionMin + partition * step, partitionMin + (partition + 1) * step, partition);
+                EntityManager partitionEntityManager = factory.createEntityManager();
+                try {
+                    parts[partition] = pushdown(null, range).read(partitionEntityManager);
+                } finally {
+                    partitionEntityManager.close();
+                }
+            });
+            int first = 0;
+            while (first < partitions - 1 && rows(parts[first]) == 0) {
+                first++;
+            }
+            ColumnBuffer[] buffers = parts[first];
+            for (int partition = first + 1; partition < partitions; partition++) {
+                if (rows(parts[partition]) == 0) {
+                    continue;
+                }
+                for (int column = 0; column < buffers.length; column++) {
+                    buffers[column] = buffers[column].append(parts[partition][column]);
+                }
+            }
+            return buffers;
         }
 
-        public SqlDataframeBuilder addParameter(Object parameter) {
-            query.setParameter(parameterCount++, parameter);
-            return this;
+        private static int rows(ColumnBuffer[] buffers) {
+            return buffers.length == 0 ? 0 : buffers[0].size();
         }
 
-        public SqlDataframeBuilder setParameter(String parameterName, Object parameter) {
-            query.setParameter(parameterName, parameter);
-            return this;
+        private ColumnPredicate range(long from, long to, int partition) {
+            ColumnPredicate.ColumnReference column = col(partitionColumn);
+            if (partition == 0) {
+                return column.lt(to).or(column.isNull());
+            }
+            return partition == partitions - 1 ? column.ge(from) : column.ge(from).and(column.lt(to));
         }
 
         public SqlDataframeBuilder columnNames(String... columnNames) {
@@ -158,37 +1147,18 @@ public class Dataframe {
             return this;
         }
 
+        /**
+         * Runs the query, or the partitioned queries, and copies the rows into primitive columns
+         * where the types allow
+         * @return
+         */
         public Dataframe build() {
-            Object[][] data = null;
-
-            List<Object[]> resultList = query.getResultList();
-            int size = resultList.size();
-            if (columnTypes!=null) {
-                data = new Object[columnTypes.length][];
-                for (int i = 0; i< columnTypes.length; i++) {
-                    data[i] = ofType(columnTypes[i], size);
-                }
-            }
-            for (int rowCount = 0; rowCount < size; rowCount++) {
-                Object[] row = resultList.get(rowCount);
-                //TODO problematic on cases where first row contains null even if rest data is ok
-                if (data == null) {
-                    data = new Object[row.length][];
-                    for (int columnCount = 0; columnCount < row.length; columnCount++) {
-                        Object cell = row[columnCount];
-                        if (cell instanceof String) {
-                            data[columnCount] = new String[size];
-                        } else if (cell instanceof BigDecimal) {
-                            data[columnCount] = new Number[size];
-                        }
-                    }
-                }
-                for (int columnCount = 0; columnCount < row.length; columnCount++) {
-                    Object cell = row[columnCount];
-                    data[columnCount][rowCount] = cell;
-                }
-
-            }
+            Metrics.Timer timer = Metrics.start("sql.build");
+            boolean partitioned = partitionColumn != null && partitions > 1;
+            ColumnBuffer[] buffers = partitioned ? readPartitions() : read(entityManager);
+            Column[] data = encode(Stream.of(buffers).map(ColumnBuffer::build).toArray(Column[]::new), Execution.DEFAULT);
+            int size = buffers.length == 0 ? 0 : buffers[0].size();
+            timer.stop(-1, size, columnNames, partitioned ? partitions : 1);
             if (columnNames==null) {
                 return new Dataframe(data, size);
             } else {
@@ -197,35 +1167,43 @@ public class Dataframe {
         }
     }
 
-    public class DataframeGroupBy<T extends Iterable<Integer>> {
-        Map<CompositeKey, T> map;
-        int keySize;
-        String[] columnNames;
+    public class DataframeGroupBy implements AutoCloseable {
+        private final Integer[] indices;
+        private final String[] columnNames;
+        private final Grouping grouping;
+        private final int[] rows;
+        private final int size;
 
-        void initialize(Object[][] data, int counter, CompositeKey compositeKey) {
-            IntStream.range(0, keySize)
-                    .forEach(i -> {
-                        if (data[i]==null) {
-                            data[i] = new String[map.size()];
-                        }
-                        data[i][counter] = compositeKey.keys[i];
-                    });
+        DataframeGroupBy(Grouping grouping, String[] columnNames, Integer[] indices) {
+            this(grouping, columnNames, indices, null);
+        }
+
+        /**
+         * @param rows the grouped rows in ascending order, or null to group all the rows
+         */
+        DataframeGroupBy(Grouping grouping, String[] columnNames, Integer[] indices, int[] rows) {
+            this.grouping = grouping;
+            this.columnNames = columnNames;
+            this.indices = indices;
+            this.rows = rows;
+            this.size = rows == null ? numberOfRows : rows.length;
         }
 
-        DataframeGroupBy(Map<CompositeKey, T> map, int keySize) {
-            this.map = map;
-            this.keySize = keySize;
+        public int getNumberOfGroups() {
+            return grouping.groupCount;
         }
 
-        DataframeGroupBy(Map<CompositeKey, T> map, String[] columnNames, int keySize) {
-            this.map = map;
-            this.columnNames = columnNames;
-            this.keySize = keySize;
+        /**
+         * Deletes the spill files of a group-by past the memory budget, see {@link #groupBy(Integer...)}.
+         * Groups in memory have nothing to release
+         */
+        @Override
+        public void close() {
         }
 
         /**
-         * Returns an aggregate
-         * the type of aggregated values is {@link DoubleSummaryStatistics}, it is not supported by second aggregate now
+         * Returns the summary statistics of every given column per group,
+         * as typed COUNT, SUM, MIN, MEAN and MAX columns
          * @param columnName
          * @return
          */
@@ -235,134 +1213,587 @@ public class Dataframe {
         }
 
         /**
-         * Creates a new dataframe that contains grouped by indexed columns once per
+         * Creates a new dataframe that contains grouped by indexed columns once per group
+         * and the summary statistics of the given columns
          * @param indices
          * @return
          */
         public Dataframe aggregate(Integer... indices) {
-            String[] newColumnNames = generateColumnNames(indices);
-
-            Object[][] data = new Object[map.keySet().iterator().next().keys.length+indices.length][];
-            AtomicInteger counter = new AtomicInteger(0);
-            map.forEach((compositeKey, value) -> {
-                int rowIndex = counter.getAndIncrement();
-                initialize(data, rowIndex, compositeKey);
-                IntStream.range(0, indices.length).forEach(indexIndex -> {
-                    if (data[keySize+indexIndex]==null) {
-                        data[keySize+indexIndex] = new DoubleSummaryStatistics[map.size()];
+            return agg(Stream.of(indices)
+                    .flatMap(index -> Stream.of(Aggregation.Function.COUNT, Aggregation.Function.SUM,
+                            Aggregation.Function.MIN, Aggregation.Function.MEAN, Aggregation.Function.MAX)
+                            .map(function -> Aggregation.of(function, index)))
+                    .toArray(Aggregation[]::new));
+        }
+
+        public Dataframe sum(String... columnName) {
+            Integer[] indexes = Stream.of(columnName).map(Dataframe.this::findColumnIndexByName).toArray(Integer[]::new);
+            return sum(indexes);
+        }
+
+        /**
+         * Creates a new dataframe that contains grouped by indexed columns once per group and the sums
+         * of the given columns, named after the summed columns
+         * @param indices
+         * @return
+         */
+        public Dataframe sum(Integer... indices) {
+            return agg(Stream.of(indices)
+                    .map(index -> Aggregation.of(Aggregation.Function.SUM, index)
+                            .as(Dataframe.this.columnNames != null ? Dataframe.this.columnNames[index] : null))
+                    .toArray(Aggregation[]::new));
+        }
+
+        /**
+         * Computes all the given aggregations in a single scan of the rows, accumulating
+         * in primitive arrays indexed by group id
+         * @param aggregations
+         * @return a dataframe with the grouped by columns followed by a column per aggregation
+         */
+        public Dataframe agg(Aggregation... aggregations) {
+            return pinned(() -> {
+                Metrics.Timer timer = Metrics.start("aggregate");
+                int keySize = indices.length;
+                Accumulator[] accumulators = accumulators(aggregations);
+
+                int[] firstRows = firstRows();
+                Column[] data = new Column[keySize + aggregations.length];
+                for (int i = 0; i < keySize; i++) {
+                    data[i] = columns[indices[i]].gather(firstRows);
+                }
+                for (int i = 0; i < aggregations.length; i++) {
+                    data[keySize + i] = accumulators[i].result();
+                }
+                timer.stop(size, grouping.groupCount, Stream.of(aggregations).map(aggregation -> names(columnIndex(aggregation))[0])
+                        .toArray(String[]::new), execution.partitions(size));
+                return derive(data, generateColumnNames(aggregations), grouping.groupCount);
+            });
+        }
+
+        /**
+         * The first rows of every group in the order of a column, see {@link Dataframe#topN(String, int, boolean)}
+         * @param columnName
+         * @param n maximum number of rows per group
+         * @param ascending false for the rows of the largest cells
+         * @return a view of the first rows of every group in sorted order, the groups in order of first appearance
+         */
+        public Dataframe topN(String columnName, int n, boolean ascending) {
+            return pinned(() -> {
+                if (n < 0) {
+                    throw new IllegalArgumentException("negative number of rows " + n);
+                }
+                Metrics.Timer timer = Metrics.start("topN");
+                int[] selected = Stream.of(topN(column(columnName), n, ascending)).flatMapToInt(IntStream::of).toArray();
+                timer.stop(size, selected.length, new String[]{columnName}, execution.partitions(size));
+                return view(selected);
+            });
+        }
+
+        /**
+         * @return the first rows of every group in sorted order
+         */
+        int[][] topN(Column column, int n, boolean ascending) {
+            IntToLongFunction keys = TopN.keys(column, ascending);
+            TopN[] heaps;
+            if ((long) grouping.groupCount * execution.partitions(size) <= size) {
+                heaps = execution.reduce(size, (from, to) -> topN(column, keys, n, from, to), (left, right) -> {
+                    for (int group = 0; group < left.length; group++) {
+                        if (left[group] == null) {
+                            left[group] = right[group];
+                        } else if (right[group] != null) {
+                            left[group].merge(right[group]);
+                        }
+                    }
+                    return left;
+                });
+            } else {
+                //too many groups to keep heaps per partition
+                heaps = topN(column, keys, n, 0, size);
+            }
+            return Stream.of(heaps).map(heap -> heap == null ? new int[0] : heap.rows()).toArray(int[][]::new);
+        }
+
+        private TopN[] topN(Column column, IntToLongFunction keys, int n, int from, int to) {
+            TopN[] heaps = new TopN[grouping.groupCount];
+            int[] groupIds = grouping.groupIds;
+            for (int i = from; i < to; i++) {
+                int group = groupIds[i];
+                int row = rows == null ? i : rows[i];
+                if (heaps[group] == null) {
+                    heaps[group] = new TopN(n);
+                }
+                boolean isNull = column.isNull(row);
+                heaps[group].offer(isNull, isNull ? 0 : keys.applyAsLong(row), row);
+            }
+            return heaps;
+        }
+
+        /**
+         * @return the accumulated state of every aggregation
+         */
+        Accumulator[] accumulators(Aggregation... aggregations) {
+            if ((long) grouping.groupCount * execution.partitions(size) <= size) {
+                return execution.reduce(size, (from, to) -> accumulate(aggregations, from, to), (left, right) -> {
+                    for (int i = 0; i < left.length; i++) {
+                        left[i].merge(right[i]);
+                    }
+                    return left;
+                });
+            }
+            //too many groups to keep accumulators per partition
+            return accumulate(aggregations, 0, size);
+        }
+
+        /**
+         * @return the first row of every group
+         */
+        int[] firstRows() {
+            return rows == null ? grouping.firstRows : IntStream.of(grouping.firstRows).map(first -> rows[first]).toArray();
+        }
+
+        private Accumulator[] accumulate(Aggregation[] aggregations, int from, int to) {
+            Accumulator[] accumulators = Stream.of(aggregations)
+                    .map(aggregation -> Accumulator.of(aggregation, columns[columnIndex(aggregation)], grouping.groupCount))
+                    .toArray(Accumulator[]::new);
+            int[] groupIds = grouping.groupIds;
+            for (int i = from; i < to; i++) {
+                int group = groupIds[i];
+                int row = rows == null ? i : rows[i];
+                for (Accumulator accumulator : accumulators) {
+                    accumulator.accumulate(group, row);
+                }
+            }
+            return accumulators;
+        }
+
+        int columnIndex(Aggregation aggregation) {
+            return aggregation.getColumnName() != null ? findColumnIndexByName(aggregation.getColumnName()) : aggregation.getIndex();
+        }
+
+        String[] generateColumnNames(Aggregation[] aggregations) {
+            String[] newColumnNames = null;
+            if (Dataframe.this.columnNames!=null && Dataframe.this.columnNames.length>0
+                    && columnNames!=null && columnNames.length>0) {
+                String[] aggregates = Stream.of(aggregations).map(aggregation -> aggregation.name(Dataframe.this.columnNames)).toArray(String[]::new);
+                newColumnNames = Arrays.copyOf(columnNames, aggregates.length+columnNames.length);
+                System.arraycopy(aggregates, 0, newColumnNames, columnNames.length, aggregates.length);
+            }
+            return newColumnNames;
+        }
+    }
+
+    /**
+     * Groups of rows whose grouping would exceed the memory budget. The first operation writes the row ids
+     * to spill files, one per hash partition of the keys so that all the rows of a group are in the same
+     * partition, then every operation reads the partitions back one at a time and groups their rows in
+     * memory. The results of the partitions are put back in the order of first appearance of the groups.
+     * The files are deleted by {@link #close()}, or on exit
+     */
+    class SpilledGroupBy extends DataframeGroupBy {
+        private static final int MAX_PARTITIONS = 1 << 10;
+
+        private final Integer[] indices;
+        /**
+         * the files of the hash partitions, null until they are spilled
+         */
+        private Spill spill;
+        private int[] partitionSizes;
+        private int bufferSize;
+        private volatile int groupCount = -1;
+
+        SpilledGroupBy(String[] columnNames, Integer[] indices) {
+            super(null, columnNames, indices);
+            this.indices = indices;
+        }
+
+        /**
+         * @return enough partitions for the grouping of every partition to fit in the memory budget
+         */
+        private int partitions() {
+            long bytes = Grouping.bytesPerRow(indices.length) * numberOfRows;
+            return (int) Math.max(2, Math.min(MAX_PARTITIONS, bytes / execution.memoryBudget + 1));
+        }
+
+        /**
+         * Writes the rows of every hash partition of the keys to a spill file, once: every operation then
+         * reads the partitions back
+         * @param timer reports the volume and time of the spill, if it happens now
+         */
+        private synchronized Spill spill(Metrics.Timer timer) {
+            if (spill != null) {
+                return spill;
+            }
+            int partitions = partitions();
+            IntToLongFunction[] hashers = Stream.of(indices).map(index -> HyperLogLog.hasher(columns[index]))
+                    .toArray(IntToLongFunction[]::new);
+            int[] counts = new int[partitions];
+            Spill spill = new Spill(execution.spillDirectory);
+            try {
+                Spill.Output[] outputs = new Spill.Output[partitions];
+                int bufferSize = Spill.bufferSize(execution.memoryBudget / 2, partitions);
+                for (int partition = 0; partition < partitions; partition++) {
+                    outputs[partition] = spill.create(bufferSize);
+                }
+                for (int row = 0; row < numberOfRows; row++) {
+                    long hash = 0;
+                    for (int k = 0; k < indices.length; k++) {
+                        Column key = columns[indices[k]];
+                        hash = 31 * hash + (key.isNull(row) ? 0 : hashers[k].applyAsLong(row));
+                    }
+                    int partition = (int) Long.remainderUnsigned(HyperLogLog.mix(hash), partitions);
+                    outputs[partition].putInt(row);
+                    counts[partition]++;
+                }
+                for (Spill.Output output : outputs) {
+                    output.close();
+                }
+            } catch (RuntimeException e) {
+                spill.close();
+                throw e;
+            }
+            timer.spilled(spill);
+            this.partitionSizes = counts;
+            this.bufferSize = Spill.bufferSize(execution.memoryBudget / 2, partitions);
+            this.spill = spill;
+            return spill;
+        }
+
+        /**
+         * Groups the rows of every partition in turn
+         * @param timer reports the volume and time of the spill
+         */
+        private void forEachPartition(Metrics.Timer timer, Consumer<DataframeGroupBy> action) {
+            Spill spill = spill(timer);
+            for (int partition = 0; partition < partitionSizes.length; partition++) {
+                if (partitionSizes[partition] == 0) {
+                    continue;
+                }
+                int[] rows = new int[partitionSizes[partition]];
+                try (Spill.Input input = spill.open(partition, bufferSize)) {
+                    for (int i = 0; i < rows.length; i++) {
+                        rows[i] = input.getInt();
                     }
-                    Stream<Integer> stream = StreamSupport.stream(Spliterators.spliterator(value.iterator(), numberOfRows / map.size(), Spliterator.ORDERED), false);
-                    data[keySize+indexIndex][rowIndex] = stream.map(val -> Dataframe.this.data[indices[indexIndex]][val])
-                            .filter(Number.class::isInstance).map(Number.class::cast)
-                            .collect(Collectors.summarizingDouble(Number::doubleValue));
+                }
+                action.accept(groupBy(rows, indices));
+            }
+        }
+
+        /**
+         * Deletes the spill files of the partitions, a later operation spills them again
+         */
+        @Override
+        public synchronized void close() {
+            if (spill != null) {
+                spill.close();
+                spill = null;
+            }
+        }
+
+        /**
+         * @param firstRows the first rows of the groups of every partition
+         * @return the groups of all the partitions, numbered in order of the partitions, in order of first appearance
+         */
+        private int[] order(List<int[]> firstRows) {
+            long[] groups = new long[firstRows.stream().mapToInt(rows -> rows.length).sum()];
+            int group = 0;
+            for (int[] rows : firstRows) {
+                for (int row : rows) {
+                    groups[group] = (long) row << 32 | group;
+                    group++;
+                }
+            }
+            Arrays.sort(groups);
+            return LongStream.of(groups).mapToInt(packed -> (int) packed).toArray();
+        }
+
+        @Override
+        public int getNumberOfGroups() {
+            if (groupCount >= 0) {
+                return groupCount;
+            }
+            Metrics.Timer timer = Metrics.start("groupBy");
+            int[] groupCount = new int[1];
+            forEachPartition(timer, grouped -> groupCount[0] += grouped.getNumberOfGroups());
+            timer.stop(numberOfRows, groupCount[0], names(indices), execution.partitions(numberOfRows));
+            this.groupCount = groupCount[0];
+            return groupCount[0];
+        }
+
+        /**
+         * Accumulators of all the groups, in order of first appearance
+         */
+        private final class Merged {
+            private final Accumulator[] accumulators;
+            private final int[] firstRows;
+
+            private Merged(Accumulator[] accumulators, int[] firstRows) {
+                this.accumulators = accumulators;
+                this.firstRows = firstRows;
+            }
+        }
+
+        /**
+         * Accumulates the groups of every partition, then merges the accumulators of the partitions into
+         * accumulators of all the groups in order of first appearance
+         */
+        private Merged accumulate(Metrics.Timer timer, Aggregation[] aggregations) {
+            List<Accumulator[]> partials = new ArrayList<>();
+            List<int[]> partitionFirstRows = new ArrayList<>();
+            forEachPartition(timer, grouped -> {
+                partials.add(grouped.accumulators(aggregations));
+                partitionFirstRows.add(grouped.firstRows());
+            });
+            int[] order = order(partitionFirstRows);
+            int[] rows = partitionFirstRows.stream().flatMapToInt(IntStream::of).toArray();
+            //position of every group of the partitions in order of first appearance
+            int[] positions = new int[order.length];
+            int[] firstRows = new int[order.length];
+            for (int position = 0; position < order.length; position++) {
+                positions[order[position]] = position;
+                firstRows[position] = rows[order[position]];
+            }
+            Accumulator[] accumulators = Stream.of(aggregations)
+                    .map(aggregation -> Accumulator.of(aggregation, columns[columnIndex(aggregation)], order.length))
+                    .toArray(Accumulator[]::new);
+            int offset = 0;
+            for (int partition = 0; partition < partials.size(); partition++) {
+                int groupCount = partitionFirstRows.get(partition).length;
+                int[] groups = Arrays.copyOfRange(positions, offset, offset + groupCount);
+                for (int i = 0; i < accumulators.length; i++) {
+                    accumulators[i].merge(partials.get(partition)[i], groups);
+                }
+                offset += groupCount;
+            }
+            return new Merged(accumulators, firstRows);
+        }
+
+        @Override
+        public Dataframe agg(Aggregation... aggregations) {
+            return pinned(() -> {
+                Metrics.Timer timer = Metrics.start("aggregate");
+                Merged merged = accumulate(timer, aggregations);
+                int[] rows = merged.firstRows;
+                Column[] data = new Column[indices.length + aggregations.length];
+                for (int i = 0; i < indices.length; i++) {
+                    data[i] = columns[indices[i]].gather(rows);
+                }
+                for (int i = 0; i < aggregations.length; i++) {
+                    data[indices.length + i] = merged.accumulators[i].result();
+                }
+                timer.stop(numberOfRows, rows.length, Stream.of(aggregations).map(aggregation -> names(columnIndex(aggregation))[0])
+                        .toArray(String[]::new), execution.partitions(numberOfRows));
+                return derive(data, generateColumnNames(aggregations), rows.length);
+            });
+        }
+
+        @Override
+        public Dataframe topN(String columnName, int n, boolean ascending) {
+            return pinned(() -> {
+                if (n < 0) {
+                    throw new IllegalArgumentException("negative number of rows " + n);
+                }
+                Metrics.Timer timer = Metrics.start("topN");
+                Column column = column(columnName);
+                List<int[]> groups = new ArrayList<>();
+                List<int[]> firstRows = new ArrayList<>();
+                forEachPartition(timer, grouped -> {
+                    groups.addAll(Arrays.asList(grouped.topN(column, n, ascending)));
+                    firstRows.add(grouped.firstRows());
                 });
+                int[] selected = IntStream.of(order(firstRows)).mapToObj(groups::get).flatMapToInt(IntStream::of).toArray();
+                timer.stop(numberOfRows, selected.length, new String[]{columnName}, execution.partitions(numberOfRows));
+                return view(selected);
+            });
+        }
+
+        @Override
+        Accumulator[] accumulators(Aggregation... aggregations) {
+            Metrics.Timer timer = Metrics.start("aggregate");
+            Merged merged = accumulate(timer, aggregations);
+            timer.stop(numberOfRows, merged.firstRows.length, Stream.of(aggregations).map(aggregation -> names(columnIndex(aggregation))[0])
+                    .toArray(String[]::new), execution.partitions(numberOfRows));
+            return merged.accumulators;
+        }
+
+        @Override
+        int[] firstRows() {
+            Metrics.Timer timer = Metrics.start("groupBy");
+            List<int[]> firstRows = new ArrayList<>();
+            forEachPartition(timer, grouped -> firstRows.add(grouped.firstRows()));
+            int[] rows = firstRows.stream().flatMapToInt(IntStream::of).toArray();
+            int[] ordered = IntStream.of(order(firstRows)).map(group -> rows[group]).toArray();
+            timer.stop(numberOfRows, ordered.length, names(indices), execution.partitions(numberOfRows));
+            return ordered;
+        }
+    }
+
+    /**
+     * Window functions over the rows of a dataframe, grouped in partitions and sorted within every
+     * partition. Every function returns this dataframe, in its original row order, with the result of
+     * the function appended as a column. The aggregates (sum, mean, min, max) are computed over the
+     * frame of every row: the row and the rows that precede it in its partition, all of them unless
+     * a rolling frame is set
+     */
+    public class DataframeWindow {
+        private final String[] partitionBy;
+        private final SortKey[] orderBy;
+        private final int frame;
+        private Window window;
+
+        DataframeWindow(String[] partitionBy, SortKey[] orderBy, int frame) {
+            this.partitionBy = partitionBy;
+            this.orderBy = orderBy;
+            this.frame = frame;
+        }
+
+        /**
+         * @param rows number of rows of the frame of every row, the row included
+         * @return the same window with a frame of the row and the {@code rows - 1} rows before it
+         */
+        public DataframeWindow rolling(int rows) {
+            if (rows < 1) {
+                throw new IllegalArgumentException("a rolling frame needs at least one row");
+            }
+            DataframeWindow rolling = new DataframeWindow(partitionBy, orderBy, rows);
+            rolling.window = window;
+            return rolling;
+        }
+
+        /**
+         * @return the rows in window order, computed on first use
+         */
+        private synchronized Window window() {
+            if (window == null) {
+                Column[] partitionColumns = Stream.of(partitionBy).map(Dataframe.this::column).toArray(Column[]::new);
+                Column[] orderColumns = Stream.of(orderBy).map(key -> key.getColumnName() != null ? column(key.getColumnName())
+                        : columns[key.getIndex()]).toArray(Column[]::new);
+                boolean[] ascending = new boolean[orderBy.length];
+                boolean[] nullsFirst = new boolean[orderBy.length];
+                for (int i = 0; i < orderBy.length; i++) {
+                    ascending[i] = orderBy[i].isAscending();
+                    nullsFirst[i] = orderBy[i].isNullsFirst();
+                }
+                window = Window.of(partitionColumns, orderColumns, ascending, nullsFirst, numberOfRows, execution);
+            }
+            return window;
+        }
+
+        /**
+         * @return the position of every row in its partition, starting at one, as ROW_NUMBER
+         */
+        public Dataframe rowNumber() {
+            return pinned(() -> {
+                Metrics.Timer timer = Metrics.start("window");
+                Column numbers = window().rowNumber();
+                timer.stop(numberOfRows, numberOfRows, partitionBy, execution.partitions(numberOfRows));
+                return append(numbers, "ROW_NUMBER");
+            });
+        }
+
+        /**
+         * @return the rank of every row in its partition as RANK, rows with equal order keys share a rank
+         * and leave a gap after them
+         */
+        public Dataframe rank() {
+            return pinned(() -> {
+                Metrics.Timer timer = Metrics.start("window");
+                Column ranks = window().rank();
+                timer.stop(numberOfRows, numberOfRows, partitionBy, execution.partitions(numberOfRows));
+                return append(ranks, "RANK");
             });
-            return new Dataframe(data, newColumnNames, map.values().size());
         }
 
-        private String[] generateColumnNames(Integer[] indices) {
-            String[] newColumnNames = null;
-            if (Dataframe.this.columnNames!=null && Dataframe.this.columnNames.length>0
-                    && columnNames!=null && columnNames.length>0) {
-                String[] aggregates = Stream.of(indices).map(index -> Dataframe.this.columnNames[index]).toArray(String[]::new);
-                newColumnNames = Arrays.copyOf(columnNames, aggregates.length+columnNames.length);
-                System.arraycopy(aggregates, 0, newColumnNames, columnNames.length, aggregates.length);
-            }
-            return newColumnNames;
+        /**
+         * @param columnName
+         * @param offset
+         * @return the cell of the row {@code offset} rows before every row in its partition, null if there
+         * is none, as LAG(column)
+         */
+        public Dataframe lag(String columnName, int offset) {
+            return shift(columnName, offset, "LAG");
         }
 
+        /**
+         * @param columnName
+         * @param offset
+         * @return the cell of the row {@code offset} rows after every row in its partition, null if there
+         * is none, as LEAD(column)
+         */
+        public Dataframe lead(String columnName, int offset) {
+            return shift(columnName, -offset, "LEAD");
+        }
 
-        public Dataframe sum(String... columnName) {
-            Integer[] indexes = Stream.of(columnName).map(Dataframe.this::findColumnIndexByName).toArray(Integer[]::new);
-            return sum(indexes);
+        private Dataframe shift(String columnName, int offset, String function) {
+            return pinned(() -> {
+                Column column = column(columnName);
+                Metrics.Timer timer = Metrics.start("window");
+                Column shifted = Join.gather(column, window().shift(offset));
+                timer.stop(numberOfRows, numberOfRows, new String[]{columnName}, execution.partitions(numberOfRows));
+                return append(shifted, function + "(" + columnName + ")");
+            });
         }
 
         /**
-         * Creates a new dataframe that contains grouped by indexed columns once per
-         * @param indices
-         * @return
+         * @param columnName a numeric column
+         * @return the running sum of the column over the whole partition up to every row, regardless of
+         * the frame, as CUMSUM(column)
          */
-        public Dataframe sum(Integer... indices) {
-            String[] newColumnNames = generateColumnNames(indices);
-
-            Object[][] data = new Object[map.keySet().iterator().next().keys.length+indices.length][];
-            AtomicInteger counter = new AtomicInteger(0);
-            map.forEach((compositeKey, value) -> {
-                int rowIndex = counter.getAndIncrement();
-                initialize(data, rowIndex, compositeKey);
-                IntStream.range(0, indices.length).forEach(indexIndex -> {
-                    if (data[keySize+indexIndex]==null) {
-                        data[keySize+indexIndex] = new Double[map.size()];
-                    }
-                    Stream<Integer> stream = StreamSupport.stream(Spliterators.spliterator(value.iterator(), numberOfRows / map.size(), Spliterator.ORDERED), false);
-                    data[keySize+indexIndex][rowIndex] = stream.map(val -> Dataframe.this.data[indices[indexIndex]][val])
-                            .filter(Number.class::isInstance).map(Number.class::cast)
-                            .collect(Collectors.summarizingDouble(Number::doubleValue)).getSum();
-                });
-            });
-            return new Dataframe(data, newColumnNames, map.values().size());
+        public Dataframe cumsum(String columnName) {
+            return aggregate(columnName, "CUMSUM", Window.UNBOUNDED, (column, frame) -> window().sum(column, frame, false));
         }
-    }
 
-    public class UnbalancedBTreeIndex {
-        private UnbalancedBTreeIndex asc;
-        private UnbalancedBTreeIndex desc;
-        private int columnIndex;
-        private int index;
-
-        private UnbalancedBTreeIndex(int index, int columnIndex) {
-            this.index = index;
-            this.columnIndex = columnIndex;
+        /**
+         * @param columnName a numeric column
+         * @return the sum of the non null cells of the frame of every row, as SUM(column)
+         */
+        public Dataframe sum(String columnName) {
+            return aggregate(columnName, "SUM", frame, (column, frame) -> window().sum(column, frame, false));
         }
 
-        public UnbalancedBTreeIndex asc() {
-            return asc;
+        /**
+         * @param columnName a numeric column
+         * @return the mean of the non null cells of the frame of every row, as MEAN(column)
+         */
+        public Dataframe mean(String columnName) {
+            return aggregate(columnName, "MEAN", frame, (column, frame) -> window().sum(column, frame, true));
         }
 
-        public UnbalancedBTreeIndex desc() {
-            return desc;
+        /**
+         * @param columnName a numeric column
+         * @return the minimum of the non null cells of the frame of every row, as MIN(column)
+         */
+        public Dataframe min(String columnName) {
+            return aggregate(columnName, "MIN", frame, (column, frame) -> window().extreme(column, frame, false));
         }
 
-        public UnbalancedBTreeIndex insert(UnbalancedBTreeIndex root) {
-            if (((Number) data[columnIndex][index]).doubleValue() >
-                    ((Number) data[root.columnIndex][root.index]).doubleValue()) {
-                if (root.asc==null) {
-                    root.asc = this;
-                } else {
-                    insert(root.asc);
-                }
-            } else {
-                if (root.desc==null) {
-                    root.desc = this;
-                } else {
-                    insert(root.desc);
-                }
-            }
-            return asc;
+        /**
+         * @param columnName a numeric column
+         * @return the maximum of the non null cells of the frame of every row, as MAX(column)
+         */
+        public Dataframe max(String columnName) {
+            return aggregate(columnName, "MAX", frame, (column, frame) -> window().extreme(column, frame, true));
         }
 
-        public void sort(boolean ascending, Object[][] data) {
-            sort(ascending, data, new AtomicInteger());
+        private Dataframe aggregate(String columnName, String function, int frame, Window.FrameAggregate aggregate) {
+            return pinned(() -> {
+                Column column = column(columnName);
+                Metrics.Timer timer = Metrics.start("window");
+                Column aggregated = aggregate.apply(column, frame);
+                timer.stop(numberOfRows, numberOfRows, new String[]{columnName}, execution.partitions(numberOfRows));
+                return append(aggregated, function + "(" + columnName + ")");
+            });
         }
 
-
-        public void sort(boolean ascending, Object[][] data, AtomicInteger counter) {
-            if (!ascending && this.asc != null) {
-                this.asc.sort(ascending, data, counter);
-            } else if (ascending && this.desc != null) {
-                this.desc.sort(ascending, data, counter);
-            }
-            int counterIndex = counter.getAndIncrement();
-            for (int i = 0; i<data.length;i++) {
-                data[i][counterIndex] = Dataframe.this.data[i][index];
-            }
-            if (!ascending && this.desc != null) {
-                this.desc.sort(ascending, data, counter);
-            } else if (ascending && this.asc != null) {
-                this.asc.sort(ascending, data, counter);
+        private Dataframe append(Column column, String name) {
+            Column[] appended = Arrays.copyOf(columns, columns.length + 1);
+            appended[columns.length] = column;
+            String[] appendedNames = null;
+            if (columnNames != null) {
+                appendedNames = Arrays.copyOf(columnNames, columnNames.length + 1);
+                appendedNames[columnNames.length] = name;
             }
+            return derive(appended, appendedNames, numberOfRows);
         }
-
     }
 
     public static class IndexEntry<T> implements Map.Entry<Integer, T> {
@@ -391,101 +1822,365 @@ public class Dataframe {
     }
 
     private Integer findColumnIndexByName(String columnName) {
-        Optional<IndexEntry> match = IntStream.range(0, this.columnNames.length)
-                .mapToObj(ind -> new IndexEntry(ind, this.columnNames[ind]))
-                .filter(indexEntry -> indexEntry.getValue().equals(columnName)).findFirst();
-        return match.isPresent() ? match.get().getKey() : -1;//will break subsequent method
+        return indexByName.getOrDefault(columnName, -1);//will break subsequent method
     }
 
-    public DataframeGroupBy groupBy(boolean bitmap, String... columnNames) {
+    /**
+     * Indexes a column so that equality, range and null selections, {@link #distinct(int)} and group-by
+     * on it no longer scan its cells. The index belongs to the column, it is shared by the dataframes
+     * that share the column, such as projections, but not by views or copies of its rows
+     * @param columnName
+     * @param type
+     * @return this dataframe
+     */
+    public Dataframe createIndex(String columnName, IndexType type) {
+        columns[findColumnIndexByName(columnName)].createIndex(type, execution);
+        return this;
+    }
+
+    /**
+     * Drops the indexes of a column
+     * @param columnName
+     */
+    public void dropIndex(String columnName) {
+        columns[findColumnIndexByName(columnName)].dropIndexes();
+    }
+
+    public Dataframe join(Dataframe other, JoinType type, String... keys) {
+        return join(other, keys, keys, type);
+    }
+
+    /**
+     * Joins the rows of both dataframes whose keys are equal, null keys never match.
+     * The result has the columns of this dataframe followed by the columns of the other one except its
+     * keys, whose cells are merged into the left keys. Right columns whose name is already taken get
+     * a {@code _right} suffix. Semi and anti joins return a view of the rows of this dataframe
+     * @param other right side of the join, its keys are hashed
+     * @param leftKeys columns of this dataframe
+     * @param rightKeys columns of the other dataframe, compared in the same order
+     * @param type
+     * @return
+     */
+    public Dataframe join(Dataframe other, String[] leftKeys, String[] rightKeys, JoinType type) {
+        if (leftKeys.length == 0 || leftKeys.length != rightKeys.length) {
+            throw new IllegalArgumentException("both sides of a join need the same number of keys");
+        }
+        int[] leftIndices = Stream.of(leftKeys).mapToInt(this::findColumnIndexByName).toArray();
+        int[] rightIndices = Stream.of(rightKeys).mapToInt(other::findColumnIndexByName).toArray();
+        if (IntStream.of(leftIndices).anyMatch(index -> index < 0) || IntStream.of(rightIndices).anyMatch(index -> index < 0)) {
+            throw new IllegalArgumentException("Unknown key column in " + Arrays.toString(leftKeys) + " or " + Arrays.toString(rightKeys));
+        }
+        return pinned(() -> other.pinned(() -> join(other, leftKeys, leftIndices, rightIndices, type)));
+    }
+
+    private Dataframe join(Dataframe other, String[] leftKeys, int[] leftIndices, int[] rightIndices, JoinType type) {
+        Metrics.Timer timer = Metrics.start("join");
+        Join join = Join.of(IntStream.of(leftIndices).mapToObj(index -> columns[index]).toArray(Column[]::new), numberOfRows,
+                IntStream.of(rightIndices).mapToObj(index -> other.columns[index]).toArray(Column[]::new), other.numberOfRows,
+                type, execution);
+        timer.stop((long) numberOfRows + other.numberOfRows, join.leftRows.length, leftKeys, execution.partitions(numberOfRows));
+        if (!type.keepsRightColumns()) {
+            return view(join.leftRows);
+        }
+
+        List<Integer> rightColumns = IntStream.range(0, other.columns.length)
+                .filter(index -> IntStream.of(rightIndices).noneMatch(key -> key == index)).boxed().collect(Collectors.toList());
+        Column[] joined = new Column[columns.length + rightColumns.size()];
+        String[] joinedNames = new String[joined.length];
+        Set<String> names = new HashSet<>(Arrays.asList(columnNames));
+        execution.forEach(joined.length, column -> {
+            if (column >= columns.length) {
+                joined[column] = Join.gather(other.columns[rightColumns.get(column - columns.length)], join.rightRows);
+                return;
+            }
+            int key = IntStream.range(0, leftIndices.length).filter(k -> leftIndices[k] == column).findFirst().orElse(-1);
+            joined[column] = key < 0 ? Join.gather(columns[column], join.leftRows)
+                    : Join.coalesce(columns[column], join.leftRows, other.columns[rightIndices[key]], join.rightRows);
+        });
+        System.arraycopy(columnNames, 0, joinedNames, 0, columns.length);
+        for (int i = 0; i < rightColumns.size(); i++) {
+            String name = other.columnNames[rightColumns.get(i)];
+            joinedNames[columns.length + i] = names.add(name) ? name : name + "_right";
+        }
+        return derive(joined, joinedNames, join.leftRows.length);
+    }
+
+    public DataframeGroupBy groupBy(String... columnNames) {
         Integer[] indices = Stream.of(columnNames).map(this::findColumnIndexByName)
                 .toArray(Integer[]::new);
-        return groupBy(bitmap, indices);
+        return groupBy(indices);
+    }
+
+    /**
+     * @deprecated grouping no longer keeps the row ids of every group in a bitmap or a list,
+     * the flag is ignored, use {@link #groupBy(String...)}
+     */
+    @Deprecated
+    public DataframeGroupBy groupBy(boolean bitmap, String... columnNames) {
+        return groupBy(columnNames);
+    }
+
+    /**
+     * @deprecated the flag is ignored, use {@link #groupBy(Integer...)}
+     */
+    @Deprecated
+    public DataframeGroupBy groupBy(boolean bitmap, Integer... indices) {
+        return groupBy(indices);
     }
 
     /**
-     *
+     * Assigns a group id to every row, groups are numbered in order of first appearance. Past the memory
+     * budget the rows are only split in hash partitions of their keys, every operation on the groups then
+     * groups and aggregates one partition at a time
      * @param indices column indices to group by
      * @return
      */
-    public DataframeGroupBy groupBy(boolean bitmap, Integer... indices) {
+    public DataframeGroupBy groupBy(Integer... indices) {
+        return pinned(() -> {
+            if (execution.exceedsBudget(Grouping.bytesPerRow(indices.length) * numberOfRows)) {
+                return new SpilledGroupBy(groupedBy(indices), indices);
+            }
+            return groupInMemory(indices);
+        });
+    }
+
+    /**
+     * Same as {@link #groupBy(Integer...)} whatever the memory budget
+     */
+    DataframeGroupBy groupInMemory(Integer... indices) {
+        String[] groupedBy = groupedBy(indices);
+        Metrics.Timer timer = Metrics.start("groupBy");
+        Column[] keys = Stream.of(indices).map(index -> columns[index]).toArray(Column[]::new);
+        int[][] codes = Stream.of(keys).map(key -> key.index(IndexType.BITMAP))
+                .map(index -> index == null ? null : index.groupCodes()).toArray(int[][]::new);
+        Grouping grouping = Grouping.of(keys, codes, numberOfRows, execution);
+        timer.stop(numberOfRows, grouping.groupCount, names(indices), execution.partitions(numberOfRows));
+        return new DataframeGroupBy(grouping, groupedBy, indices);
+    }
+
+    /**
+     * Groups only the given rows, so that a selection is aggregated without copying or viewing
+     * the aggregated columns
+     * @param rows selected rows in ascending order
+     * @param indices column indices to group by
+     * @return
+     */
+    DataframeGroupBy groupBy(int[] rows, Integer... indices) {
+        String[] groupedBy = groupedBy(indices);
+        Metrics.Timer timer = Metrics.start("groupBy");
+        Column[] keys = Column.view(Stream.of(indices).map(index -> columns[index]).toArray(Column[]::new), rows);
+        Grouping grouping = Grouping.of(keys, rows.length, execution);
+        timer.stop(rows.length, grouping.groupCount, names(indices), execution.partitions(rows.length));
+        return new DataframeGroupBy(grouping, groupedBy, indices, rows);
+    }
+
+    private String[] groupedBy(Integer[] indices) {
         String[] groupedBy = null;
         if (columnNames!=null && columnNames.length>0) {
             groupedBy = Stream.of(indices).map(index -> columnNames[index]).toArray(String[]::new);
         }
+        return groupedBy;
+    }
 
-        if (bitmap) {
-            Collector<Integer, RoaringBitmap, RoaringBitmap> bitmapCollector = Collector.of(RoaringBitmap::new, (x,y)-> x.add(y), (left, right) -> {
-                right.forEach((Integer x) -> left.add(x));
-                return left;
-            }, Collector.Characteristics.IDENTITY_FINISH);
-            Map<CompositeKey, RoaringBitmap> collect = IntStream.range(0, numberOfRows)
-                    .parallel()
-                    .mapToObj(rowC -> {
-                        Object[] keys = IntStream.range(0, indices.length)
-                                .mapToObj(i -> data[indices[i]][rowC]).toArray(Object[]::new);
-                        return new IndexEntry<>(rowC, new CompositeKey(keys));
-                    })
-                    .collect(Collectors.groupingBy(IndexEntry::getValue, Collectors.mapping(IndexEntry::getKey, bitmapCollector)));
-            return new DataframeGroupBy(collect, groupedBy, indices.length);
-        } else {
-            Map<CompositeKey, List<Integer>> collect = IntStream.range(0, numberOfRows)
-                    .parallel()
-                    .mapToObj(rowC -> {
-                        Object[] keys = IntStream.range(0, indices.length)
-                                .mapToObj(i -> data[indices[i]][rowC]).toArray(Object[]::new);
-                        return new IndexEntry<>(rowC, new CompositeKey(keys));
-                    })
-                    .collect(Collectors.groupingBy(IndexEntry::getValue, Collectors.mapping(IndexEntry::getKey, Collectors.toList())));
-            return new DataframeGroupBy(collect, groupedBy, indices.length);
-        }
+    /**
+     * Window functions over frames of consecutive rows in the order of this dataframe,
+     * e.g. {@code rolling(7).mean("CHARGE")}
+     * @param rows number of rows of the frame of every row, the row included
+     * @return
+     */
+    public DataframeWindow rolling(int rows) {
+        return over(new String[0]).rolling(rows);
+    }
+
+    /**
+     * Window functions over partitions of the rows, see {@link DataframeWindow}
+     * @param partitionBy columns whose equal values form a partition, none for a single partition
+     * @param orderBy order of the rows within every partition, the order of this dataframe if none
+     * @return
+     */
+    public DataframeWindow over(String[] partitionBy, SortKey... orderBy) {
+        return new DataframeWindow(partitionBy, orderBy, Window.UNBOUNDED);
+    }
+
+    /**
+     * Starts a lazily evaluated query over this dataframe, see {@link LazyDataframe}
+     * @return
+     */
+    public LazyDataframe lazy() {
+        return new LazyDataframe(new LogicalPlan.Scan(this));
+    }
+
+    /**
+     * @return the names of the columns, or null for unnamed columns
+     */
+    String[] getColumnNames() {
+        return columnNames;
     }
 
 
     public double sum(int index) {
-        Stream<Object> data = Stream.of(this.data[index]);
-        DoubleSummaryStatistics collect = data.collect(Collectors.summarizingDouble(row -> ((Number) row).doubleValue()));
-        return collect.getSum();
+        return partialSums(index).value();
+    }
+
+    /**
+     * @return the sum of the partial sums of the partitions of a column
+     */
+    private KahanSum partialSums(int index) {
+        return pinned(() -> {
+            Metrics.Timer timer = Metrics.start("sum");
+            Column column = columns[index];
+            KahanSum sum = execution.reduce(numberOfRows, column::sum, KahanSum::add);
+            timer.stop(numberOfRows, 1, names(index), execution.partitions(numberOfRows));
+            return sum;
+        });
     }
 
     public double sum(String columnName) {
-        Stream<Object> data = Stream.of(this.data[findColumnIndexByName(columnName)]);
-        DoubleSummaryStatistics collect = data.collect(Collectors.summarizingDouble(row -> ((Number) row).doubleValue()));
-        return collect.getSum();
+        return sum(findColumnIndexByName(columnName));
     }
 
+    /**
+     * @param index
+     * @return the mean of the non null cells of the column, NaN if a cell is NaN
+     */
     public double average(int index) {
-        Stream<Object> data = Stream.of(this.data[index]);
-        DoubleSummaryStatistics collect = data.collect(Collectors.summarizingDouble(row -> ((Number) row).doubleValue()));
-        return collect.getAverage();
+        KahanSum sum = partialSums(index);
+        int count = numberOfRows - columns[index].nullCount();
+        return count > 0 ? sum.value() / count : 0.0d;
     }
 
     public double average(String columnName) {
-        Stream<Object> data = Stream.of(this.data[findColumnIndexByName(columnName)]);
-        DoubleSummaryStatistics collect = data.collect(Collectors.summarizingDouble(row -> ((Number) row).doubleValue()));
-        return collect.getAverage();
+        return average(findColumnIndexByName(columnName));
+    }
+
+    /**
+     * @param columnName
+     * @return the number of null cells of the column, counted once per column
+     */
+    public int nullCount(String columnName) {
+        return column(columnName).nullCount();
+    }
+
+    /**
+     * Replaces the null cells of a column
+     * @param columnName
+     * @param value the cell of the null rows, of the type of the column
+     * @return a dataframe that shares the other columns
+     */
+    public Dataframe fillNull(String columnName, Object value) {
+        Metrics.Timer timer = Metrics.start("fillNull");
+        int index = findColumnIndexByName(columnName);
+        Column column = columns[index];
+        Column[] filled = columns.clone();
+        filled[index] = column.nullCount() == 0 ? column : column.materialize().fillNull(value);
+        timer.stop(numberOfRows, numberOfRows, new String[]{columnName}, 1);
+        return derive(filled, columnNames, numberOfRows);
+    }
+
+    /**
+     * Keeps the rows that have no null cell in the given columns, the null rows of every column
+     * are collected from its validity bitmap a word at a time
+     * @param columnNames all the columns if none is given
+     * @return a view of the rows without null cells
+     */
+    public Dataframe dropNull(String... columnNames) {
+        Metrics.Timer timer = Metrics.start("dropNull");
+        Integer[] indices = columnNames.length == 0 ? IntStream.range(0, columns.length).boxed().toArray(Integer[]::new)
+                : Stream.of(columnNames).map(this::findColumnIndexByName).toArray(Integer[]::new);
+        RoaringBitmap nullRows = new RoaringBitmap();
+        for (int index : indices) {
+            if (columns[index].nullCount() > 0) {
+                columns[index].selectNull(0, numberOfRows, nullRows);
+            }
+        }
+        int[] rows = RoaringBitmap.flip(nullRows, 0L, (long) numberOfRows).toArray();
+        timer.stop(numberOfRows, rows.length, names(indices), 1);
+        return view(rows);
     }
 
     public int getNumberOfRows() {
         return numberOfRows;
     }
 
+    /**
+     * Computes an exact quantile by introselect on a copy of the non null cells, without sorting them.
+     * NaN cells are skipped
+     * @param columnName a numeric column
+     * @param quantile between 0 and 1
+     * @return the quantile, interpolated between the cells around it, NaN if the column has only nulls and NaN
+     */
+    public double quantile(String columnName, double quantile) {
+        return quantiles(columnName, quantile)[0];
+    }
+
+    public double median(String columnName) {
+        return quantile(columnName, 0.5);
+    }
+
+    /**
+     * Same as {@link #quantile(String, double)} for several quantiles over a single copy of the cells
+     * @param columnName a numeric column
+     * @param quantiles between 0 and 1
+     * @return
+     */
+    public double[] quantiles(String columnName, double... quantiles) {
+        return pinned(() -> {
+            for (double quantile : quantiles) {
+                if (!(quantile >= 0 && quantile <= 1)) {
+                    throw new IllegalArgumentException("quantile " + quantile + " is not between 0 and 1");
+                }
+            }
+            Metrics.Timer timer = Metrics.start("quantile");
+            Column column = column(columnName);
+            if (!column.isNumeric()) {
+                throw new IllegalArgumentException("Cannot compute quantiles of column of " + column.type().getName());
+            }
+            double[] values = new double[numberOfRows];
+            int size = 0;
+            for (int row = 0; row < numberOfRows; row++) {
+                if (!column.isNull(row)) {
+                    double value = column.getDouble(row);
+                    if (value == value) {
+                        values[size++] = value;
+                    }
+                }
+            }
+            double[] results = new double[quantiles.length];
+            for (int i = 0; i < quantiles.length; i++) {
+                results[i] = Selection.quantile(values, size, quantiles[i]);
+            }
+            timer.stop(numberOfRows, quantiles.length, new String[]{columnName}, 1);
+            return results;
+        });
+    }
+
+    /**
+     * The cells of a row by column name, prefer {@link RowCursor} that reads them without boxing
+     */
     public class RowMap extends Dictionary<String, Object> {
 
         private Object[] data;
+        /**
+         * reads the cells of its current row when there is no data
+         */
+        private RowCursor cursor;
 
         public RowMap(Object[] data) {
             this.data = data;
         }
 
+        RowMap(RowCursor cursor) {
+            this.cursor = cursor;
+        }
+
         @Override
         public int size() {
-            return data.length;
+            return data != null ? data.length : columns.length;
         }
 
         @Override
         public boolean isEmpty() {
-            return data!=null&&data.length>0;
+            return size() == 0;
         }
 
         @Override
@@ -495,13 +2190,21 @@ public class Dataframe {
 
         @Override
         public Enumeration<Object> elements() {
-            return Collections.enumeration(Arrays.asList(data));
+            return Collections.enumeration(Arrays.asList(data != null ? data : row(cursor.getRow())));
         }
 
         @Override
         public Object get(Object key) {
-            return Optional.ofNullable(key).filter(String.class::isInstance).map(String.class::cast)
-                    .map(Dataframe.this::findColumnIndexByName).map(i->data[i]).orElse(null);
+            Integer index = indexByName.get(key);
+            if (index == null) {
+                return null;
+            }
+            return data != null ? data[index] : cursor.get(index);
+        }
+
+        RowMap moveTo(int row) {
+            cursor.moveTo(row);
+            return this;
         }
 
         @Override
@@ -515,20 +2218,194 @@ public class Dataframe {
         }
     }
 
+    private Object[] row(int row) {
+        return IntStream.range(0, columns.length).mapToObj(column -> columns[column].get(row)).toArray();
+    }
+
+    /**
+     * Tests the rows of every partition into a bitmap, the bitmaps of the partitions are merged by union
+     * @param select
+     * @return the selected rows in ascending order
+     */
+    private int[] selectRows(IntPredicate select) {
+        return selectRows(() -> select);
+    }
+
+    /**
+     * The predicates are code of the caller, partitions are only tested concurrently if the dataframe was
+     * made {@link #parallel(int)}
+     * @param predicates creates the predicate of every partition, so that partitions do not share a cursor
+     */
+    private int[] selectRows(Supplier<IntPredicate> predicates) {
+        return pinned(() -> {
+            Metrics.Timer timer = Metrics.start("select");
+            Execution execution = this.execution.forUserCode();
+            int[] selected = execution.reduce(numberOfRows, (from, to) -> {
+                IntPredicate select = predicates.get();
+                RoaringBitmap rows = new RoaringBitmap();
+                for (int row = from; row < to; row++) {
+                    if (select.test(row)) {
+                        rows.add(row);
+                    }
+                }
+                return rows;
+            }, (left, right) -> {
+                left.or(right);
+                return left;
+            }).toArray();
+            timer.stop(numberOfRows, selected.length, columnNames, execution.partitions(numberOfRows));
+            return selected;
+        });
+    }
+
+    /**
+     * Selects the rows that pass the predicate, partitions of the rows are tested concurrently
+     * if the dataframe was made {@link #parallel(int)}, so that the predicate has to be thread safe
+     * @param select
+     * @return
+     */
     public Dataframe select(Predicate<Object[]> select) {
-        List<Integer> collect = IntStream.range(0, numberOfRows)
-                .filter(row -> select.test(IntStream.range(0, data.length).mapToObj(column -> data[column][row]).toArray()))
-                .mapToObj(Integer::valueOf).collect(Collectors.toList());
-        Object[][] objects = IntStream.range(0, data.length).mapToObj(column -> collect.stream().map(row -> data[column][row]).toArray()).toArray(Object[][]::new);
-        return new Dataframe(objects, columnNames, collect.size());
+        int[] rows = selectRows(row -> select.test(row(row)));
+        return view(rows);
     }
 
     public Dataframe selectByName(Predicate<RowMap> select) {
-        List<Integer> collect = IntStream.range(0, numberOfRows)
-                .filter(row -> select.test(new RowMap(IntStream.range(0, data.length).mapToObj(column -> data[column][row]).toArray())))
-                .mapToObj(Integer::valueOf).collect(Collectors.toList());
-        Object[][] objects = IntStream.range(0, data.length).mapToObj(column -> collect.stream().map(row -> data[column][row]).toArray()).toArray(Object[][]::new);
-        return new Dataframe(objects, columnNames, collect.size());
+        int[] rows = selectRows(() -> {
+            RowCursor cursor = cursor();
+            RowMap map = new RowMap(cursor);
+            return row -> select.test(map.moveTo(row));
+        });
+        return view(rows);
+    }
+
+    /**
+     * Same as {@link #select(Predicate)} with a {@link RowCursor} that allocates nothing per row, e.g.
+     * {@code filter(row -> row.getDouble("CHARGE") > 10)}
+     * @param select
+     * @return
+     */
+    public Dataframe filter(Predicate<RowCursor> select) {
+        int[] rows = selectRows(() -> {
+            RowCursor cursor = cursor();
+            return row -> select.test(cursor.moveTo(row));
+        });
+        return view(rows);
+    }
+
+    /**
+     * @return a cursor before the first row
+     */
+    public RowCursor cursor() {
+        return new RowCursor(columns, indexByName, 0, numberOfRows);
+    }
+
+    /**
+     * Visits the rows in order with a single cursor
+     * @param action
+     */
+    public void forEachRow(Consumer<RowCursor> action) {
+        OffHeapStorage[] storages = pin();
+        try {
+            RowCursor cursor = cursor();
+            while (cursor.next()) {
+                action.accept(cursor);
+            }
+        } finally {
+            release(storages, storages.length);
+        }
+    }
+
+    /**
+     * Custom aggregation of the rows: every partition accumulates its rows into its own container
+     * through its own cursor, the containers are then combined in order of the partitions
+     * @param supplier creates an empty container
+     * @param accumulator adds the current row of the cursor to a container
+     * @param combiner merges the second container into the first one and returns the result
+     * @return the container of all the rows
+     */
+    public <R> R collect(Supplier<R> supplier, BiConsumer<R, RowCursor> accumulator, BinaryOperator<R> combiner) {
+        return pinned(() -> {
+            Metrics.Timer timer = Metrics.start("collect");
+            R result = execution.reduce(numberOfRows, (from, to) -> {
+                R container = supplier.get();
+                RowCursor cursor = new RowCursor(columns, indexByName, from, to);
+                while (cursor.next()) {
+                    accumulator.accept(container, cursor);
+                }
+                return container;
+            }, combiner);
+            timer.stop(numberOfRows, 1, columnNames, execution.partitions(numberOfRows));
+            return result;
+        });
+    }
+
+    /**
+     * Selects the rows whose column is equal to the given value, dictionary encoded columns
+     * are compared on their codes
+     * @param columnName
+     * @param value
+     * @return
+     */
+    public Dataframe select(String columnName, Object value) {
+        return select(col(columnName).eq(value));
+    }
+
+    /**
+     * Starts a predicate on a column, e.g. {@code col("TYPE").eq("VOICE").and(col("CHARGE").between(1, 10))}
+     * @param columnName
+     * @return
+     */
+    public static ColumnPredicate.ColumnReference col(String columnName) {
+        return new ColumnPredicate.ColumnReference(columnName);
+    }
+
+    /**
+     * Evaluates the predicate a column at a time
+     * @param predicate
+     * @return the matching rows
+     */
+    public RoaringBitmap selection(ColumnPredicate predicate) {
+        return pinned(() -> {
+            Metrics.Timer timer = Metrics.start("select");
+            RoaringBitmap rows = predicate.evaluate(this);
+            Set<String> touched = new LinkedHashSet<>();
+            predicate.collectColumns(touched);
+            timer.stop(numberOfRows, rows.getLongCardinality(), touched.toArray(new String[0]), execution.partitions(numberOfRows));
+            return rows;
+        });
+    }
+
+    public Dataframe select(ColumnPredicate predicate) {
+        int[] rows = selection(predicate).toArray();
+        return view(rows);
+    }
+
+    /**
+     * Answers the condition from an index of the column if it has one, see {@link #createIndex(String, IndexType)}
+     * @param preferred type of index to use if the column has both
+     * @param lookup evaluation of the condition on the index, null if it cannot answer
+     * @param scan evaluation of the condition on the cells
+     * @return the rows that satisfy the condition
+     */
+    RoaringBitmap scan(String columnName, IndexType preferred, Function<ColumnIndex, RoaringBitmap> lookup, ColumnPredicate.Scan scan) {
+        ColumnIndex index = columns[findColumnIndexByName(columnName)].index(preferred);
+        RoaringBitmap rows = index == null ? null : lookup.apply(index);
+        return rows != null ? rows : scan(columnName, scan);
+    }
+
+    /**
+     * Scans the partitions of a column into bitmaps that are merged by union
+     */
+    RoaringBitmap scan(String columnName, ColumnPredicate.Scan scan) {
+        Column column = columns[findColumnIndexByName(columnName)];
+        return execution.reduce(numberOfRows, (from, to) -> {
+            RoaringBitmap rows = new RoaringBitmap();
+            scan.scan(column, from, to, rows);
+            return rows;
+        }, (left, right) -> {
+            left.or(right);
+            return left;
+        });
     }
 
     public long count() {
@@ -536,40 +2413,92 @@ public class Dataframe {
     }
 
     public Object[] distinct(int index) {
-        return Stream.of(data[index]).distinct().toArray();
+        return pinned(() -> {
+            Metrics.Timer timer = Metrics.start("distinct");
+            Column column = columns[index];
+            ColumnIndex columnIndex = column.index(IndexType.BITMAP);
+            Object[] distinct = columnIndex != null ? columnIndex.distinct()
+                    : execution.reduce(numberOfRows, column::distinct, (left, right) -> {
+                        left.addAll(right);
+                        return left;
+                    }).toArray();
+            timer.stop(numberOfRows, distinct.length, names(index), columnIndex != null ? 1 : execution.partitions(numberOfRows));
+            return distinct;
+        });
+    }
+
+    /**
+     * Estimates the number of distinct values of a column without keeping the values, see {@link HyperLogLog}
+     * @param columnName
+     * @return
+     */
+    public long approxDistinct(String columnName) {
+        return distinctSketch(columnName).estimate();
+    }
+
+    /**
+     * @param columnName
+     * @return a sketch of the distinct values of the column, to be merged with the sketches of other dataframes
+     */
+    public HyperLogLog distinctSketch(String columnName) {
+        return pinned(() -> {
+            Metrics.Timer timer = Metrics.start("approxDistinct");
+            Column column = column(columnName);
+            IntToLongFunction hasher = HyperLogLog.hasher(column);
+            HyperLogLog sketch = execution.reduce(numberOfRows, (from, to) -> {
+                HyperLogLog partial = new HyperLogLog();
+                for (int row = from; row < to; row++) {
+                    if (!column.isNull(row)) {
+                        partial.addHash(hasher.applyAsLong(row));
+                    }
+                }
+                return partial;
+            }, HyperLogLog::merge);
+            timer.stop(numberOfRows, 1, new String[]{columnName}, execution.partitions(numberOfRows));
+            return sketch;
+        });
+    }
+
+    /**
+     * Estimates quantiles of a numeric column in a single scan, see {@link QuantileSketch}
+     * @param columnName
+     * @param quantiles between 0 and 1, e.g. 0.5, 0.95 and 0.99
+     * @return the estimated value of every quantile, NaN if the column has only nulls
+     */
+    public double[] approxQuantile(String columnName, double... quantiles) {
+        return quantileSketch(columnName).quantiles(quantiles);
+    }
+
+    /**
+     * @param columnName a numeric column
+     * @return a sketch of the distribution of the column, to be merged with the sketches of other dataframes
+     */
+    public QuantileSketch quantileSketch(String columnName) {
+        return pinned(() -> {
+            Metrics.Timer timer = Metrics.start("approxQuantile");
+            Column column = column(columnName);
+            QuantileSketch sketch = execution.reduce(numberOfRows, (from, to) -> {
+                QuantileSketch partial = new QuantileSketch();
+                for (int row = from; row < to; row++) {
+                    if (!column.isNull(row)) {
+                        partial.add(column.getDouble(row));
+                    }
+                }
+                return partial;
+            }, QuantileSketch::merge);
+            timer.stop(numberOfRows, 1, new String[]{columnName}, execution.partitions(numberOfRows));
+            return sketch;
+        });
     }
 
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
-        Stream.of(data)
-                .forEach(row -> s.append(Arrays.toString(row)).append("\n"));
+        Stream.of(columns)
+                .forEach(column -> s.append(column).append("\n"));
 
         return "Dataframe{" +
                 "data=" + s.toString() +
                 '}';
     }
-
-    private static class CompositeKey {
-        private Object[] keys;
-
-        CompositeKey(Object... keys) {
-            this.keys = keys;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-
-            CompositeKey that = (CompositeKey) o;
-
-            return Arrays.equals(keys, that.keys);
-        }
-
-        @Override
-        public int hashCode() {
-            return Arrays.hashCode(keys);
-        }
-    }
 }
@@ -0,0 +1,17 @@
+package org.dataframe;
+
+/**
+ * Listener of the operations of all the dataframes, installed with {@link Dataframe#setMetrics(DataframeMetrics)}.
+ * Listeners are called on the thread that ran the operation, possibly concurrently, and must be thread safe.
+ * See {@link Log4jMetrics} and {@link HistogramMetrics}
+ */
+public interface DataframeMetrics {
+
+    /**
+     * The default listener, operations are not timed while it is installed
+     */
+    DataframeMetrics NONE = event -> {
+    };
+
+    void onOperation(OperationEvent event);
+}
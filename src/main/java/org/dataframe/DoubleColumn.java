@@ -0,0 +1,195 @@
+package org.dataframe;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Column of double values, the null cells are kept in a {@link NullBitmap} and hold zero.
+ * {@link Double#NaN} is a value and not a null, the numeric aggregates of a NaN cell are NaN
+ */
+public class DoubleColumn extends Column {
+
+    private final double[] values;
+    /**
+     * null until a cell is null
+     */
+    private NullBitmap nulls;
+
+    public DoubleColumn(double[] values) {
+        this(values, null);
+    }
+
+    /**
+     * @param values zero in the null cells
+     * @param nulls null if no cell is null
+     */
+    DoubleColumn(double[] values, NullBitmap nulls) {
+        this.values = values;
+        this.nulls = nulls;
+    }
+
+    public double[] values() {
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Class<?> type() {
+        return Double.class;
+    }
+
+    @Override
+    public Double get(int row) {
+        return isNull(row) ? null : values[row];
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return values[row];
+    }
+
+    @Override
+    public DoubleColumn gather(int[] rows) {
+        double[] gathered = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            gathered[i] = values[rows[i]];
+        }
+        return new DoubleColumn(gathered, nulls == null ? null : NullBitmap.gather(nulls, rows));
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        return nulls != null && nulls.isNull(row);
+    }
+
+    @Override
+    int nullCount(int from, int to) {
+        return nulls == null ? 0 : nulls.count(from, to);
+    }
+
+    @Override
+    NullBitmap nullBitmap() {
+        return nulls;
+    }
+
+    @Override
+    public DoubleColumn fillNull(Object value) {
+        if (nulls == null) {
+            return this;
+        }
+        double[] filled = values.clone();
+        double fill = ((Number) value).doubleValue();
+        for (int row = 0; row < filled.length; row++) {
+            if (nulls.isNull(row)) {
+                filled[row] = fill;
+            }
+        }
+        return new DoubleColumn(filled);
+    }
+
+    @Override
+    long[] sortKeys() {
+        long[] keys = new long[values.length];
+        for (int row = 0; row < values.length; row++) {
+            long bits = Double.doubleToLongBits(values[row]);
+            keys[row] = bits ^ ((bits >> 63) & Long.MAX_VALUE);
+        }
+        return keys;
+    }
+
+    @Override
+    int[] groupCodes() {
+        long[] bits = new long[values.length];
+        for (int row = 0; row < values.length; row++) {
+            bits[row] = Double.doubleToLongBits(values[row]);
+        }
+        return groupCodes(bits, nulls);
+    }
+
+    @Override
+    void selectEqual(Object value, int from, int to, RoaringBitmap rows) {
+        if (!(value instanceof Number)) {
+            return;
+        }
+        double number = ((Number) value).doubleValue();
+        for (int row = from; row < to; row++) {
+            if (values[row] == number) {
+                rows.add(row);
+            }
+        }
+        removeNulls(rows, from, to);
+    }
+
+    @Override
+    void selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive, int from, int to, RoaringBitmap rows) {
+        double lowBound = bound(low, Double.NEGATIVE_INFINITY);
+        double highBound = bound(high, Double.POSITIVE_INFINITY);
+        boolean includeLow = low == null || lowInclusive;
+        boolean includeHigh = high == null || highInclusive;
+        for (int row = from; row < to; row++) {
+            if (inRange(values[row], lowBound, includeLow, highBound, includeHigh)) {
+                rows.add(row);
+            }
+        }
+        removeNulls(rows, from, to);
+    }
+
+    @Override
+    void selectIn(Set<Object> values, int from, int to, RoaringBitmap rows) {
+        double[] sorted = values.stream().filter(Number.class::isInstance)
+                .mapToDouble(value -> ((Number) value).doubleValue()).sorted().toArray();
+        for (int row = from; row < to; row++) {
+            if (Arrays.binarySearch(sorted, this.values[row]) >= 0) {
+                rows.add(row);
+            }
+        }
+        removeNulls(rows, from, to);
+    }
+
+    /**
+     * Removes from a selection the null rows of the range, whose zero cells may have been selected
+     */
+    private void removeNulls(RoaringBitmap rows, int from, int to) {
+        if (nulls != null) {
+            nulls.removeFrom(rows, from, to);
+        }
+    }
+
+    @Override
+    void selectNull(int from, int to, RoaringBitmap rows) {
+        if (nulls != null) {
+            nulls.addTo(rows, from, to);
+        }
+    }
+
+    @Override
+    void set(int row, Object value) {
+        if (value == null) {
+            if (nulls == null) {
+                nulls = new NullBitmap(values.length);
+            }
+            nulls.set(row);
+            values[row] = 0;
+        } else {
+            values[row] = ((Number) value).doubleValue();
+        }
+    }
+
+    /**
+     * The null cells hold zero and add nothing
+     */
+    @Override
+    KahanSum sum(int from, int to) {
+        KahanSum sum = new KahanSum();
+        for (int row = from; row < to; row++) {
+            sum.add(values[row]);
+        }
+        return sum;
+    }
+}
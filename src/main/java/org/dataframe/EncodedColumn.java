@@ -0,0 +1,606 @@
+package org.dataframe;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Long or int column kept in a lightweight encoding chosen from the statistics of its cells, see
+ * {@link #encode(Column, boolean)}: run-length for sorted or repetitive cells, bit-packed offsets from the minimum
+ * for cells of a small range and bit-packed deltas for non decreasing sequences. Sums, null counts,
+ * group codes and equality selections run on the encoded cells, the other operations decode the cells
+ * they read. Null cells are kept in a {@link NullBitmap} and encoded as zero
+ */
+abstract class EncodedColumn extends Column {
+
+    /**
+     * An encoding is only kept if it takes at most this fraction of the plain array
+     */
+    private static final double MAX_RATIO = 0.5;
+
+    private final Class<?> type;
+    final int size;
+    final NullBitmap nulls;
+
+    EncodedColumn(Class<?> type, int size, NullBitmap nulls) {
+        this.type = type;
+        this.size = size;
+        this.nulls = nulls;
+    }
+
+    /**
+     * Encodes a column with run-length or bit-packing, as the builders do. Delta encoded cells are decoded
+     * from the start of their block on random access, so they are only chosen on request
+     * @param column
+     * @return the encoded column, or the column itself if it is not a long or int column or does not compress
+     */
+    static Column encode(Column column) {
+        return encode(column, false);
+    }
+
+    /**
+     * Computes the minimum, maximum, number of runs and deltas of the cells in a single pass and keeps the
+     * smallest encoding, if it is small enough
+     * @param column
+     * @param allowDelta whether delta encoding may be chosen
+     * @return the encoded column, or the column itself if it is not a long or int column or does not compress
+     */
+    static Column encode(Column column, boolean allowDelta) {
+        long[] values;
+        int width;
+        if (column instanceof LongColumn) {
+            values = ((LongColumn) column).values();
+            width = Long.BYTES;
+        } else if (column instanceof IntColumn) {
+            values = column.sortKeys();
+            width = Integer.BYTES;
+        } else {
+            return column;
+        }
+        int size = values.length;
+        if (size == 0) {
+            return column;
+        }
+        long min = values[0], max = values[0];
+        long minDelta = Long.MAX_VALUE, maxDelta = Long.MIN_VALUE;
+        int runs = 1;
+        boolean sorted = true;
+        for (int row = 1; row < size; row++) {
+            long value = values[row];
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            if (value != values[row - 1]) {
+                runs++;
+            }
+            if (value < values[row - 1]) {
+                sorted = false;
+            } else {
+                long delta = value - values[row - 1];
+                minDelta = Math.min(minDelta, delta);
+                maxDelta = Math.max(maxDelta, delta);
+            }
+        }
+        long plain = (long) size * width;
+        long runLength = runs * (long) (Long.BYTES + Integer.BYTES);
+        int packedBits = bits(min, max);
+        long packed = packedBits > 63 ? Long.MAX_VALUE : ((long) size * packedBits + 7) / 8;
+        int deltaBits = allowDelta && sorted && size > 1 ? bits(minDelta, maxDelta) : 64;
+        long delta = deltaBits > 63 ? Long.MAX_VALUE
+                : ((long) size * deltaBits + 7) / 8 + ((size >>> Delta.BLOCK_SHIFT) + 1L) * Long.BYTES;
+        long smallest = Math.min(runLength, Math.min(packed, delta));
+        if (smallest > plain * MAX_RATIO) {
+            return column;
+        }
+        Class<?> type = column.type();
+        NullBitmap nulls = column.nullBitmap();
+        if (smallest == runLength) {
+            return new RunLength(type, values, runs, nulls);
+        } else if (smallest == packed) {
+            return new BitPacked(type, values, min, packedBits, nulls);
+        }
+        return new Delta(type, values, minDelta, deltaBits, nulls);
+    }
+
+    /**
+     * @return the number of bits of the offsets of values between min and max, 64 if they do not fit in 63 bits
+     */
+    private static int bits(long min, long max) {
+        long range = max - min;
+        return range < 0 ? 64 : 64 - Long.numberOfLeadingZeros(range);
+    }
+
+    static long[] pack(long[] values, long base, int bits) {
+        long[] words = new long[(int) (((long) values.length * bits + 63) >>> 6) + 1];
+        for (int index = 0; index < values.length; index++) {
+            long offset = values[index] - base;
+            long bit = (long) index * bits;
+            int word = (int) (bit >>> 6);
+            int shift = (int) (bit & 63);
+            words[word] |= offset << shift;
+            if (shift + bits > 64) {
+                words[word + 1] |= offset >>> (64 - shift);
+            }
+        }
+        return words;
+    }
+
+    static long unpack(long[] words, int bits, int index) {
+        if (bits == 0) {
+            return 0;
+        }
+        long bit = (long) index * bits;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        long value = words[word] >>> shift;
+        if (shift + bits > 64) {
+            value |= words[word + 1] << (64 - shift);
+        }
+        return value & (-1L >>> (64 - bits));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Class<?> type() {
+        return type;
+    }
+
+    @Override
+    public abstract long getLong(int row);
+
+    @Override
+    public Object get(int row) {
+        return isNull(row) ? null : box(getLong(row));
+    }
+
+    /**
+     * @return a decoded cell as an Integer or a Long, depending on the type of the column
+     */
+    Object box(long value) {
+        return type == Integer.class ? (Object) (int) value : (Object) value;
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return getLong(row);
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        return nulls != null && nulls.isNull(row);
+    }
+
+    @Override
+    int nullCount(int from, int to) {
+        return nulls == null ? 0 : nulls.count(from, to);
+    }
+
+    @Override
+    NullBitmap nullBitmap() {
+        return nulls;
+    }
+
+    /**
+     * @return the cells, zero in the null rows
+     */
+    long[] decode() {
+        long[] values = new long[size];
+        decode(0, size, values);
+        return values;
+    }
+
+    /**
+     * Decodes the cells of a range of rows into the start of an array, for readers that visit the rows in order
+     */
+    void decode(int from, int to, long[] cells) {
+        for (int row = from; row < to; row++) {
+            cells[row - from] = getLong(row);
+        }
+    }
+
+    /**
+     * @return a plain long or int column of the cells
+     */
+    Column decoded() {
+        return plain(decode(), nulls);
+    }
+
+    /**
+     * @return the cells of the given rows, zero in the null rows
+     */
+    long[] decode(int[] rows) {
+        long[] values = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            values[i] = getLong(rows[i]);
+        }
+        return values;
+    }
+
+    @Override
+    public Column gather(int[] rows) {
+        return plain(decode(rows), nulls == null ? null : NullBitmap.gather(nulls, rows));
+    }
+
+    private Column plain(long[] values, NullBitmap nulls) {
+        if (type == Integer.class) {
+            int[] ints = new int[values.length];
+            for (int row = 0; row < values.length; row++) {
+                ints[row] = (int) values[row];
+            }
+            return new IntColumn(ints, nulls);
+        }
+        return new LongColumn(values, nulls);
+    }
+
+    @Override
+    void set(int row, Object value) {
+        throw new UnsupportedOperationException("encoded columns are read only");
+    }
+
+    @Override
+    long[] sortKeys() {
+        return decode();
+    }
+
+    @Override
+    int[] groupCodes() {
+        return groupCodes(decode(), nulls);
+    }
+
+    /**
+     * Removes from a selection the null rows of the range, whose zero cells may have been selected
+     */
+    void removeNulls(RoaringBitmap rows, int from, int to) {
+        if (nulls != null) {
+            nulls.removeFrom(rows, from, to);
+        }
+    }
+
+    @Override
+    void selectEqual(Object value, int from, int to, RoaringBitmap rows) {
+        if (value instanceof Number) {
+            selectRange(value, true, value, true, from, to, rows);
+        }
+    }
+
+    @Override
+    void selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive, int from, int to, RoaringBitmap rows) {
+        double lowBound = bound(low, Double.NEGATIVE_INFINITY);
+        double highBound = bound(high, Double.POSITIVE_INFINITY);
+        boolean includeLow = low == null || lowInclusive;
+        boolean includeHigh = high == null || highInclusive;
+        for (int row = from; row < to; row++) {
+            if (inRange(getLong(row), lowBound, includeLow, highBound, includeHigh)) {
+                rows.add(row);
+            }
+        }
+        removeNulls(rows, from, to);
+    }
+
+    @Override
+    void selectIn(Set<Object> values, int from, int to, RoaringBitmap rows) {
+        long[] sorted = integralValues(values);
+        for (int row = from; row < to; row++) {
+            if (Arrays.binarySearch(sorted, getLong(row)) >= 0) {
+                rows.add(row);
+            }
+        }
+        removeNulls(rows, from, to);
+    }
+
+    @Override
+    void selectNull(int from, int to, RoaringBitmap rows) {
+        if (nulls != null) {
+            nulls.addTo(rows, from, to);
+        }
+    }
+
+    /**
+     * Runs of equal cells as the value and the end of every run
+     */
+    static final class RunLength extends EncodedColumn {
+        private final long[] values;
+        /**
+         * end of every run (exclusive), in ascending order
+         */
+        private final int[] ends;
+
+        RunLength(Class<?> type, long[] cells, int runs, NullBitmap nulls) {
+            super(type, cells.length, nulls);
+            this.values = new long[runs];
+            this.ends = new int[runs];
+            int run = 0;
+            for (int row = 1; row <= cells.length; row++) {
+                if (row == cells.length || cells[row] != cells[row - 1]) {
+                    values[run] = cells[row - 1];
+                    ends[run++] = row;
+                }
+            }
+        }
+
+        /**
+         * @return the run of the row
+         */
+        private int run(int row) {
+            int run = Arrays.binarySearch(ends, row);
+            return run >= 0 ? run + 1 : -run - 1;
+        }
+
+        private int start(int run) {
+            return run == 0 ? 0 : ends[run - 1];
+        }
+
+        @Override
+        public long getLong(int row) {
+            return values[run(row)];
+        }
+
+        @Override
+        long[] decode() {
+            long[] cells = new long[size];
+            for (int run = 0; run < values.length; run++) {
+                Arrays.fill(cells, start(run), ends[run], values[run]);
+            }
+            return cells;
+        }
+
+        /**
+         * Adds every run once, as its value times the number of its rows in the range
+         */
+        @Override
+        KahanSum sum(int from, int to) {
+            KahanSum sum = new KahanSum();
+            for (int run = from < to ? run(from) : values.length; run < values.length && start(run) < to; run++) {
+                sum.add((double) values[run] * (Math.min(ends[run], to) - Math.max(start(run), from)));
+            }
+            return sum;
+        }
+
+        @Override
+        int[] groupCodes() {
+            if (nulls != null) {
+                return super.groupCodes();
+            }
+            int[] runCodes = groupCodes(values);
+            int[] codes = new int[size];
+            for (int run = 0; run < values.length; run++) {
+                Arrays.fill(codes, start(run), ends[run], runCodes[run]);
+            }
+            return codes;
+        }
+
+        /**
+         * Adds the rows of the matching runs as ranges
+         */
+        @Override
+        void selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive, int from, int to, RoaringBitmap rows) {
+            double lowBound = bound(low, Double.NEGATIVE_INFINITY);
+            double highBound = bound(high, Double.POSITIVE_INFINITY);
+            boolean includeLow = low == null || lowInclusive;
+            boolean includeHigh = high == null || highInclusive;
+            for (int run = from < to ? run(from) : values.length; run < values.length && start(run) < to; run++) {
+                if (inRange(values[run], lowBound, includeLow, highBound, includeHigh)) {
+                    rows.add((long) Math.max(start(run), from), (long) Math.min(ends[run], to));
+                }
+            }
+            removeNulls(rows, from, to);
+        }
+    }
+
+    /**
+     * Offsets of the cells from the minimum cell, in as many bits as the largest offset needs
+     */
+    static final class BitPacked extends EncodedColumn {
+        /**
+         * Offsets of up to this many bits are group codes as they are
+         */
+        private static final int MAX_CODE_BITS = 20;
+
+        private final long min;
+        private final int bits;
+        private final long[] words;
+
+        BitPacked(Class<?> type, long[] cells, long min, int bits, NullBitmap nulls) {
+            super(type, cells.length, nulls);
+            this.min = min;
+            this.bits = bits;
+            this.words = pack(cells, min, bits);
+        }
+
+        @Override
+        public long getLong(int row) {
+            return min + unpack(words, bits, row);
+        }
+
+        /**
+         * Adds the offsets as longs and the minimum once per row
+         */
+        @Override
+        KahanSum sum(int from, int to) {
+            KahanSum sum = new KahanSum();
+            if (from >= to) {
+                return sum;
+            }
+            sum.add((double) min * (to - from));
+            //offsets of up to 31 bits of up to 2^31 rows fit in a long
+            long offsets = 0;
+            for (int row = from; row < to; row++) {
+                if (bits <= 31) {
+                    offsets += unpack(words, bits, row);
+                } else {
+                    sum.add(unpack(words, bits, row));
+                }
+            }
+            sum.add(offsets);
+            return sum;
+        }
+
+        /**
+         * The offsets are the codes when they are few, the null rows get the code after the largest offset
+         */
+        @Override
+        int[] groupCodes() {
+            if (bits > MAX_CODE_BITS) {
+                return super.groupCodes();
+            }
+            int[] codes = new int[size];
+            int nullCode = 1 << bits;
+            for (int row = 0; row < size; row++) {
+                codes[row] = isNull(row) ? nullCode : (int) unpack(words, bits, row);
+            }
+            return codes;
+        }
+
+        /**
+         * Compares the packed offsets to the offset of the value without decoding the cells
+         */
+        @Override
+        void selectEqual(Object value, int from, int to, RoaringBitmap rows) {
+            if (!isIntegral(value)) {
+                super.selectEqual(value, from, to, rows);
+                return;
+            }
+            long offset = ((Number) value).longValue() - min;
+            if (offset < 0 || (bits < 64 && offset >>> bits != 0)) {
+                return;
+            }
+            for (int row = from; row < to; row++) {
+                if (unpack(words, bits, row) == offset) {
+                    rows.add(row);
+                }
+            }
+            removeNulls(rows, from, to);
+        }
+    }
+
+    /**
+     * Non decreasing cells as the differences between consecutive cells, packed as offsets from the smallest
+     * difference, and the first cell of every block of rows so that a cell is decoded from the start of its block
+     */
+    static final class Delta extends EncodedColumn {
+        static final int BLOCK_SHIFT = 7;
+        static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+        private final long[] starts;
+        private final long minDelta;
+        private final int bits;
+        private final long[] words;
+
+        Delta(Class<?> type, long[] cells, long minDelta, int bits, NullBitmap nulls) {
+            super(type, cells.length, nulls);
+            this.minDelta = minDelta;
+            this.bits = bits;
+            this.starts = new long[((cells.length - 1) >>> BLOCK_SHIFT) + 1];
+            long[] deltas = new long[cells.length];
+            for (int row = 0; row < cells.length; row++) {
+                if ((row & (BLOCK_SIZE - 1)) == 0) {
+                    starts[row >>> BLOCK_SHIFT] = cells[row];
+                    deltas[row] = minDelta;
+                } else {
+                    deltas[row] = cells[row] - cells[row - 1];
+                }
+            }
+            this.words = pack(deltas, minDelta, bits);
+        }
+
+        @Override
+        public long getLong(int row) {
+            int first = row & -BLOCK_SIZE;
+            long value = starts[row >>> BLOCK_SHIFT];
+            for (int next = first + 1; next <= row; next++) {
+                value += minDelta + unpack(words, bits, next);
+            }
+            return value;
+        }
+
+        /**
+         * Decodes the cells of a range from the start of the block of its first row, then every cell from the previous one
+         */
+        @Override
+        void decode(int from, int to, long[] cells) {
+            if (from >= to) {
+                return;
+            }
+            long value = getLong(from);
+            cells[0] = value;
+            for (int row = from + 1; row < to; row++) {
+                value = (row & (BLOCK_SIZE - 1)) == 0 ? starts[row >>> BLOCK_SHIFT] : value + minDelta + unpack(words, bits, row);
+                cells[row - from] = value;
+            }
+        }
+
+        /**
+         * Decodes a row that follows the previous one in its block from the previous cell, so that the rows
+         * of a selection decode every block once
+         */
+        @Override
+        long[] decode(int[] rows) {
+            long[] values = new long[rows.length];
+            int previous = -1;
+            long value = 0;
+            for (int i = 0; i < rows.length; i++) {
+                int row = rows[i];
+                if (previous >= 0 && row >= previous && row >>> BLOCK_SHIFT == previous >>> BLOCK_SHIFT) {
+                    for (int next = previous + 1; next <= row; next++) {
+                        value += minDelta + unpack(words, bits, next);
+                    }
+                } else {
+                    value = getLong(row);
+                }
+                values[i] = value;
+                previous = row;
+            }
+            return values;
+        }
+
+        @Override
+        KahanSum sum(int from, int to) {
+            KahanSum sum = new KahanSum();
+            long[] cells = new long[BLOCK_SIZE];
+            for (int start = from; start < to; start += cells.length) {
+                int end = Math.min(to, start + cells.length);
+                long value = 0;
+                for (int row = start; row < end; row++) {
+                    value = row == start ? getLong(row)
+                            : (row & (BLOCK_SIZE - 1)) == 0 ? starts[row >>> BLOCK_SHIFT] : value + minDelta + unpack(words, bits, row);
+                    sum.add(value);
+                }
+            }
+            return sum;
+        }
+
+        /**
+         * @return the first row of the range whose cell is at least (or above) the value, the cells being sorted
+         */
+        private int search(double value, boolean above, int from, int to) {
+            int low = from, high = to;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                double cell = getLong(middle);
+                if (cell < value || (above && cell == value)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Locates the matching rows by binary search on the sorted cells
+         */
+        @Override
+        void selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive, int from, int to, RoaringBitmap rows) {
+            int start = low == null ? from : search(((Number) low).doubleValue(), !lowInclusive, from, to);
+            int end = high == null ? to : search(((Number) high).doubleValue(), highInclusive, from, to);
+            if (start < end) {
+                rows.add((long) start, (long) end);
+            }
+            removeNulls(rows, from, to);
+        }
+    }
+}
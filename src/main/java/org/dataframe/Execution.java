@@ -0,0 +1,187 @@
+package org.dataframe;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits the rows of a dataframe in contiguous partitions that are processed by the tasks of a
+ * {@link ForkJoinPool}, the results of the partitions are merged in the order of the partitions
+ */
+final class Execution {
+
+    /**
+     * Frames with less rows than this are never split
+     */
+    static final int MIN_PARTITION_SIZE = 1 << 14;
+
+    static final Execution DEFAULT = new Execution(ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism(), false);
+
+    final ForkJoinPool pool;
+    final int parallelism;
+    /**
+     * bytes of working memory an operation may use before it spills to disk, see {@link Spill}
+     */
+    final long memoryBudget;
+    /**
+     * directory of the spill files, null for the default temporary directory
+     */
+    final Path spillDirectory;
+    /**
+     * true if the parallelism was requested by {@link Dataframe#parallel(ForkJoinPool, int)}
+     */
+    final boolean explicit;
+
+    Execution(ForkJoinPool pool, int parallelism, boolean explicit) {
+        this(pool, parallelism, Long.MAX_VALUE, null, explicit);
+    }
+
+    Execution(ForkJoinPool pool, int parallelism, long memoryBudget, Path spillDirectory, boolean explicit) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        if (memoryBudget < 1) {
+            throw new IllegalArgumentException("memory budget must be positive");
+        }
+        this.pool = pool;
+        this.parallelism = parallelism;
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+        this.explicit = explicit;
+    }
+
+    /**
+     * @return the execution of the operations that run code of the caller, which may not be thread safe:
+     * sequential unless the parallelism was requested explicitly
+     */
+    Execution forUserCode() {
+        return explicit || parallelism == 1 ? this : new Execution(pool, 1, memoryBudget, spillDirectory, false);
+    }
+
+    /**
+     * @return true if an operation that needs the given bytes of working memory has to spill to disk
+     */
+    boolean exceedsBudget(long bytes) {
+        return bytes > memoryBudget;
+    }
+
+    @FunctionalInterface
+    interface RangeFunction<R> {
+        R apply(int from, int to);
+    }
+
+    int partitions(int size) {
+        return Math.max(1, Math.min(parallelism, (size + MIN_PARTITION_SIZE - 1) / MIN_PARTITION_SIZE));
+    }
+
+    /**
+     * @param size
+     * @return the start of every partition followed by the size
+     */
+    int[] bounds(int size) {
+        int partitions = partitions(size);
+        int[] bounds = new int[partitions + 1];
+        for (int partition = 0; partition <= partitions; partition++) {
+            bounds[partition] = (int) ((long) size * partition / partitions);
+        }
+        return bounds;
+    }
+
+    /**
+     * Applies the function on every partition of the rows
+     * @return the results of the partitions in order
+     */
+    <R> List<R> map(int size, RangeFunction<R> function) {
+        int[] bounds = bounds(size);
+        Object[] results = new Object[bounds.length - 1];
+        forEach(results.length, partition -> results[partition] = function.apply(bounds[partition], bounds[partition + 1]));
+        @SuppressWarnings("unchecked")
+        List<R> list = (List<R>) new ArrayList<>(Arrays.asList(results));
+        return list;
+    }
+
+    /**
+     * Applies the function on every partition of the rows and merges the results pairwise,
+     * the left argument of the merge always precedes the right one
+     */
+    <R> R reduce(int size, RangeFunction<R> function, BinaryOperator<R> merge) {
+        int[] bounds = bounds(size);
+        if (bounds.length == 2) {
+            return function.apply(0, size);
+        }
+        return pool.invoke(new ReduceTask<>(bounds, 0, bounds.length - 1, function, merge));
+    }
+
+    /**
+     * Runs the action for every index from 0 to count, in parallel when there is more than one
+     */
+    void forEach(int count, IntConsumer action) {
+        if (count == 1 || parallelism == 1) {
+            for (int i = 0; i < count; i++) {
+                action.accept(i);
+            }
+        } else if (count > 1) {
+            pool.invoke(new ForEachTask(0, count, action));
+        }
+    }
+
+    private static class ReduceTask<R> extends RecursiveTask<R> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] bounds;
+        private final int from;
+        private final int to;
+        private final RangeFunction<R> function;
+        private final BinaryOperator<R> merge;
+
+        ReduceTask(int[] bounds, int from, int to, RangeFunction<R> function, BinaryOperator<R> merge) {
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.function = function;
+            this.merge = merge;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from == 1) {
+                return function.apply(bounds[from], bounds[to]);
+            }
+            int middle = (from + to) >>> 1;
+            ReduceTask<R> left = new ReduceTask<>(bounds, from, middle, function, merge);
+            left.fork();
+            R right = new ReduceTask<>(bounds, middle, to, function, merge).compute();
+            return merge.apply(left.join(), right);
+        }
+    }
+
+    private static class ForEachTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final IntConsumer action;
+
+        ForEachTask(int from, int to, IntConsumer action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                action.accept(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ForEachTask(from, middle, action), new ForEachTask(middle, to, action));
+        }
+    }
+}
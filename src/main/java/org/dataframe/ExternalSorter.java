@@ -0,0 +1,270 @@
+package org.dataframe;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Sorts rows whose sort keys do not fit in the memory budget: contiguous runs of rows that fit are sorted
+ * by a {@link Sorter} and written to a spill file as records of the row, its null flags and its encoded
+ * keys, the runs are then merged through a heap of their current records. Equal keys are taken from the
+ * earlier run first, so that the sort stays stable. Primitive and categorical cells are encoded alike in
+ * every run, the other cells are ranked among the cells of their run and compared by value across runs
+ */
+final class ExternalSorter {
+
+    /**
+     * Runs are never smaller than this, whatever the budget
+     */
+    private static final int MIN_RUN_SIZE = 1 << 12;
+
+    private final Column[] columns;
+    private final boolean[] ascending;
+    private final boolean[] nullsFirst;
+    private final int size;
+    private final Execution execution;
+    /**
+     * bytes of the null flags of a record
+     */
+    private final int flagBytes;
+    /**
+     * the encoder of every key, null for the keys ranked within the runs
+     */
+    private final IntToLongFunction[] encoders;
+
+    ExternalSorter(Column[] columns, boolean[] ascending, boolean[] nullsFirst, int size, Execution execution) {
+        this.columns = columns;
+        this.ascending = ascending;
+        this.nullsFirst = nullsFirst;
+        this.size = size;
+        this.execution = execution;
+        this.flagBytes = (columns.length + 7) / 8;
+        this.encoders = new IntToLongFunction[columns.length];
+        for (int k = 0; k < columns.length; k++) {
+            encoders[k] = encoder(columns[k], ascending[k]);
+        }
+    }
+
+    /**
+     * @return the encoded key of a non null row that compares alike in every run, see {@link Column#sortKeys()},
+     * null if the cells are ranked within every run
+     */
+    private static IntToLongFunction encoder(Column column, boolean ascending) {
+        if (column instanceof CategoricalColumn) {
+            CategoricalColumn categorical = (CategoricalColumn) column;
+            long[] ranks = ranks(categorical.dictionary());
+            return ascending ? row -> ranks[categorical.code(row)] : row -> ~ranks[categorical.code(row)];
+        }
+        return TopN.isPrimitive(column) ? TopN.keys(column, ascending) : null;
+    }
+
+    /**
+     * @return the rank of every non null value in sorted order
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static long[] ranks(Object[] values) {
+        Integer[] order = new Integer[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null && !(values[i] instanceof Comparable)) {
+                throw new IllegalArgumentException("Cannot sort column of " + values[i].getClass().getName());
+            }
+            order[i] = i;
+        }
+        Arrays.sort(order, (left, right) -> values[left] == null || values[right] == null
+                ? Boolean.compare(values[left] == null, values[right] == null)
+                : ((Comparable) values[left]).compareTo(values[right]));
+        long[] ranks = new long[values.length];
+        for (int rank = 0; rank < order.length; rank++) {
+            ranks[order[rank]] = rank;
+        }
+        return ranks;
+    }
+
+    /**
+     * @return true if sorting the rows in memory needs more than the memory budget
+     */
+    static boolean exceedsBudget(int keys, int size, Execution execution) {
+        return execution.exceedsBudget(Sorter.bytesPerRow(keys) * size);
+    }
+
+    /**
+     * @param spill the files of the runs
+     * @return the permutation of the rows in sorted order
+     */
+    int[] sort(Spill spill) {
+        long runSize = Math.max(MIN_RUN_SIZE, execution.memoryBudget / Sorter.bytesPerRow(columns.length));
+        int runs = (int) ((size + runSize - 1) / runSize);
+        for (int run = 0; run < runs; run++) {
+            writeRun(spill, (int) (run * runSize), (int) Math.min(size, (run + 1) * runSize));
+        }
+        return merge(spill, runs);
+    }
+
+    private void writeRun(Spill spill, int from, int to) {
+        long[][] keys = new long[columns.length][to - from];
+        boolean[][] nulls = new boolean[columns.length][];
+        execution.forEach(columns.length, k -> {
+            Column column = columns[k];
+            //the rank of the cells among the cells of the run
+            long[] ranks = encoders[k] == null ? column.gather(IntStream.range(from, to).toArray()).sortKeys() : null;
+            for (int row = from; row < to; row++) {
+                if (column.isNull(row)) {
+                    if (nulls[k] == null) {
+                        nulls[k] = new boolean[to - from];
+                    }
+                    nulls[k][row - from] = true;
+                } else if (ranks != null) {
+                    keys[k][row - from] = ascending[k] ? ranks[row - from] : ~ranks[row - from];
+                } else {
+                    keys[k][row - from] = encoders[k].applyAsLong(row);
+                }
+            }
+        });
+        Sorter sorter = new Sorter(keys, nulls, nullsFirst);
+        int[] permutation = sorter.sort(execution);
+        try (Spill.Output output = spill.create(Spill.bufferSize(execution.memoryBudget / 4, 1))) {
+            for (int row : permutation) {
+                output.putInt(from + row);
+                for (int flags = 0; flags < flagBytes; flags++) {
+                    int bits = 0;
+                    for (int k = flags * 8; k < Math.min(columns.length, flags * 8 + 8); k++) {
+                        if (sorter.isNull(k, row)) {
+                            bits |= 1 << (k & 7);
+                        }
+                    }
+                    output.put((byte) bits);
+                }
+                for (int k = 0; k < columns.length; k++) {
+                    output.putLong(sorter.key(k, row));
+                }
+            }
+        }
+    }
+
+    /**
+     * The current record of every run
+     */
+    private final class Cursors {
+        private final Spill.Input[] inputs;
+        private final int[] rows;
+        private final long[][] keys;
+        private final boolean[][] nulls;
+
+        Cursors(Spill spill, int runs) {
+            inputs = new Spill.Input[runs];
+            rows = new int[runs];
+            keys = new long[runs][columns.length];
+            nulls = new boolean[runs][columns.length];
+            int bufferSize = Spill.bufferSize(execution.memoryBudget / 2, runs);
+            for (int run = 0; run < runs; run++) {
+                inputs[run] = spill.open(run, bufferSize);
+            }
+        }
+
+        /**
+         * @return false if the run has no more records
+         */
+        boolean next(int run) {
+            Spill.Input input = inputs[run];
+            if (!input.hasRemaining()) {
+                input.close();
+                return false;
+            }
+            rows[run] = input.getInt();
+            for (int flags = 0; flags < flagBytes; flags++) {
+                int bits = input.get();
+                for (int k = flags * 8; k < Math.min(columns.length, flags * 8 + 8); k++) {
+                    nulls[run][k] = (bits & (1 << (k & 7))) != 0;
+                }
+            }
+            for (int k = 0; k < columns.length; k++) {
+                keys[run][k] = input.getLong();
+            }
+            return true;
+        }
+
+        /**
+         * Compares the current records of two runs like {@link Sorter#compare(int, int)}, then by run.
+         * The keys ranked within their runs are compared by the cells of the rows
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        int compare(int left, int right) {
+            for (int k = 0; k < columns.length; k++) {
+                boolean leftNull = nulls[left][k];
+                if (leftNull || nulls[right][k]) {
+                    if (leftNull == nulls[right][k]) {
+                        continue;
+                    }
+                    return leftNull == nullsFirst[k] ? -1 : 1;
+                }
+                int compare;
+                if (encoders[k] == null) {
+                    compare = ((Comparable) columns[k].get(rows[left])).compareTo(columns[k].get(rows[right]));
+                    compare = ascending[k] ? compare : -compare;
+                } else {
+                    compare = Long.compare(keys[left][k], keys[right][k]);
+                }
+                if (compare != 0) {
+                    return compare;
+                }
+            }
+            return Integer.compare(left, right);
+        }
+    }
+
+    private int[] merge(Spill spill, int runs) {
+        Cursors cursors = new Cursors(spill, runs);
+        //binary min heap of the runs that have records left
+        int[] heap = new int[runs];
+        int heapSize = 0;
+        for (int run = 0; run < runs; run++) {
+            if (cursors.next(run)) {
+                heap[heapSize] = run;
+                siftUp(cursors, heap, heapSize++);
+            }
+        }
+        int[] permutation = new int[size];
+        for (int index = 0; heapSize > 0; index++) {
+            int run = heap[0];
+            permutation[index] = cursors.rows[run];
+            if (!cursors.next(run)) {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(cursors, heap, heapSize);
+        }
+        return permutation;
+    }
+
+    private static void siftUp(Cursors cursors, int[] heap, int child) {
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (cursors.compare(heap[parent], heap[child]) <= 0) {
+                return;
+            }
+            int run = heap[parent];
+            heap[parent] = heap[child];
+            heap[child] = run;
+            child = parent;
+        }
+    }
+
+    private static void siftDown(Cursors cursors, int[] heap, int size) {
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && cursors.compare(heap[child + 1], heap[child]) < 0) {
+                child++;
+            }
+            if (cursors.compare(heap[parent], heap[child]) <= 0) {
+                return;
+            }
+            int run = heap[parent];
+            heap[parent] = heap[child];
+            heap[child] = run;
+            parent = child;
+        }
+    }
+}
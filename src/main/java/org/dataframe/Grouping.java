@@ -0,0 +1,173 @@
+package org.dataframe;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assignment of a dense group id to every row of a dataframe according to the values of its key columns.
+ * Every key column is turned into int codes (see {@link Column#groupCodes()}), the codes of all key columns
+ * of a row are packed in a long and the packed keys are numbered in order of first appearance, through an
+ * array when they are few enough or through a {@link LongIntHashMap} otherwise.
+ * Partitions of the rows are numbered in parallel
+ */
+final class Grouping {
+
+    /**
+     * Packed keys of up to this many bits are numbered through an array instead of a hash map
+     */
+    private static final int DIRECT_BITS = 16;
+
+    final int[] groupIds;
+    final int groupCount;
+    /**
+     * the first row of every group, used to copy the key values of the group
+     */
+    final int[] firstRows;
+
+    private Grouping(int[] groupIds, int groupCount, int[] firstRows) {
+        this.groupIds = groupIds;
+        this.groupCount = groupCount;
+        this.firstRows = firstRows;
+    }
+
+    /**
+     * @return bytes of working memory per grouped row for the given number of keys: the codes of every key,
+     * the packed key and the group id
+     */
+    static long bytesPerRow(int keys) {
+        return 4L * keys + 12;
+    }
+
+    static Grouping of(Column[] keys, int size, Execution execution) {
+        return of(keys, new int[keys.length][], size, execution);
+    }
+
+    /**
+     * @param indexed codes of the keys that are already known, null for the others
+     */
+    static Grouping of(Column[] keys, int[][] indexed, int size, Execution execution) {
+        int[][] codes = new int[keys.length][];
+        int[] bits = new int[keys.length];
+        execution.forEach(keys.length, k -> {
+            codes[k] = indexed[k] != null ? indexed[k] : keys[k].groupCodes();
+            bits[k] = bits(codes[k]);
+        });
+        if (keys.length == 0) {
+            return new Grouping(new int[size], size > 0 ? 1 : 0, size > 0 ? new int[1] : new int[0]);
+        }
+        int columns = keys.length;
+        //keys that do not fit in a long are reduced by numbering the combinations of the last two key columns
+        while (Arrays.stream(bits, 0, columns).sum() >= Long.SIZE) {
+            Grouping pair = number(new int[][]{codes[columns - 2], codes[columns - 1]},
+                    new int[]{bits[columns - 2], bits[columns - 1]}, size, execution);
+            codes[columns - 2] = pair.groupIds;
+            bits[columns - 2] = bits(pair.groupCount - 1);
+            columns--;
+        }
+        return number(Arrays.copyOf(codes, columns), Arrays.copyOf(bits, columns), size, execution);
+    }
+
+    private static int bits(int[] codes) {
+        int max = 0;
+        for (int code : codes) {
+            max = Math.max(max, code);
+        }
+        return bits(max);
+    }
+
+    private static int bits(int max) {
+        return 32 - Integer.numberOfLeadingZeros(max);
+    }
+
+    /**
+     * Every partition numbers its own packed keys, the local numbers are then mapped to global ones
+     * by visiting the keys of the partitions in order, so groups keep the order of their first appearance
+     */
+    private static Grouping number(int[][] codes, int[] bits, int size, Execution execution) {
+        int[] shifts = new int[codes.length];
+        int totalBits = 0;
+        for (int k = 0; k < codes.length; k++) {
+            shifts[k] = totalBits;
+            totalBits += bits[k];
+        }
+        int keyBits = totalBits;
+        int[] groupIds = new int[size];
+        List<Partition> partitions = execution.map(size, (from, to) -> new Partition(codes, shifts, keyBits, groupIds, from, to));
+        if (partitions.size() == 1) {
+            Partition partition = partitions.get(0);
+            return new Grouping(groupIds, partition.groupCount, Arrays.copyOf(partition.firstRows, partition.groupCount));
+        }
+
+        LongIntHashMap global = new LongIntHashMap(1024);
+        int[] firstRows = new int[16];
+        int groupCount = 0;
+        int[][] mappings = new int[partitions.size()][];
+        for (int p = 0; p < mappings.length; p++) {
+            Partition partition = partitions.get(p);
+            mappings[p] = new int[partition.groupCount];
+            for (int local = 0; local < partition.groupCount; local++) {
+                int groupId = global.putIfAbsent(partition.keys[local], groupCount);
+                if (groupId < 0) {
+                    if (groupCount == firstRows.length) {
+                        firstRows = Arrays.copyOf(firstRows, groupCount * 2);
+                    }
+                    firstRows[groupCount] = partition.firstRows[local];
+                    groupId = groupCount++;
+                }
+                mappings[p][local] = groupId;
+            }
+        }
+        int[] bounds = execution.bounds(size);
+        execution.forEach(mappings.length, p -> {
+            int[] mapping = mappings[p];
+            for (int row = bounds[p]; row < bounds[p + 1]; row++) {
+                groupIds[row] = mapping[groupIds[row]];
+            }
+        });
+        return new Grouping(groupIds, groupCount, Arrays.copyOf(firstRows, groupCount));
+    }
+
+    private static class Partition {
+        private long[] keys = new long[16];
+        private int[] firstRows = new int[16];
+        private int groupCount;
+
+        Partition(int[][] codes, int[] shifts, int totalBits, int[] groupIds, int from, int to) {
+            int[] direct = null;
+            LongIntHashMap map = null;
+            if (totalBits <= DIRECT_BITS) {
+                direct = new int[1 << totalBits];
+                Arrays.fill(direct, -1);
+            } else {
+                map = new LongIntHashMap(1024);
+            }
+            for (int row = from; row < to; row++) {
+                long packed = 0;
+                for (int k = 0; k < codes.length; k++) {
+                    packed |= (long) codes[k][row] << shifts[k];
+                }
+                int groupId;
+                if (direct != null) {
+                    groupId = direct[(int) packed];
+                    if (groupId < 0) {
+                        groupId = direct[(int) packed] = groupCount;
+                    }
+                } else {
+                    groupId = map.putIfAbsent(packed, groupCount);
+                    if (groupId < 0) {
+                        groupId = groupCount;
+                    }
+                }
+                if (groupId == groupCount) {
+                    if (groupCount == keys.length) {
+                        keys = Arrays.copyOf(keys, groupCount * 2);
+                        firstRows = Arrays.copyOf(firstRows, groupCount * 2);
+                    }
+                    keys[groupCount] = packed;
+                    firstRows[groupCount++] = row;
+                }
+                groupIds[row] = groupId;
+            }
+        }
+    }
+}
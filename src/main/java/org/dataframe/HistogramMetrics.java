@@ -0,0 +1,186 @@
+package org.dataframe;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a histogram of the wall time of every operation in memory, with power of two buckets of
+ * nanoseconds, along with the rows and bytes the operations processed. The histograms accumulate
+ * until {@link #reset()} and can be read with {@link #snapshot()} or scraped in the Prometheus text format
+ */
+public class HistogramMetrics implements DataframeMetrics {
+
+    static final int BUCKETS = 48;
+
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    @Override
+    public void onOperation(OperationEvent event) {
+        histograms.computeIfAbsent(event.getOperation(), operation -> new Histogram()).record(event);
+    }
+
+    public void reset() {
+        histograms.clear();
+    }
+
+    /**
+     * @return the statistics of every operation by name
+     */
+    public Map<String, Snapshot> snapshot() {
+        Map<String, Snapshot> snapshot = new TreeMap<>();
+        histograms.forEach((operation, histogram) -> snapshot.put(operation, histogram.snapshot()));
+        return snapshot;
+    }
+
+    /**
+     * @return the histograms in the Prometheus text exposition format
+     */
+    public String scrape() {
+        StringBuilder text = new StringBuilder();
+        text.append("# TYPE dataframe_operation_seconds histogram\n");
+        snapshot().forEach((operation, snapshot) -> {
+            long cumulative = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                cumulative += snapshot.buckets[bucket];
+                if (snapshot.buckets[bucket] > 0 || bucket == BUCKETS - 1) {
+                    text.append("dataframe_operation_seconds_bucket{operation=\"").append(operation).append("\",le=\"")
+                            .append(bucket == BUCKETS - 1 ? "+Inf" : String.valueOf(upperBound(bucket) / 1e9))
+                            .append("\"} ").append(cumulative).append('\n');
+                }
+            }
+            text.append("dataframe_operation_seconds_sum{operation=\"").append(operation).append("\"} ")
+                    .append(snapshot.totalNanos / 1e9).append('\n');
+            text.append("dataframe_operation_seconds_count{operation=\"").append(operation).append("\"} ")
+                    .append(snapshot.count).append('\n');
+        });
+        text.append("# TYPE dataframe_operation_rows_total counter\n");
+        snapshot().forEach((operation, snapshot) -> {
+            text.append("dataframe_operation_rows_total{operation=\"").append(operation).append("\",side=\"input\"} ")
+                    .append(snapshot.inputRows).append('\n');
+            text.append("dataframe_operation_rows_total{operation=\"").append(operation).append("\",side=\"output\"} ")
+                    .append(snapshot.outputRows).append('\n');
+        });
+        return text.toString();
+    }
+
+    /**
+     * @return the largest wall time counted in the bucket
+     */
+    static long upperBound(int bucket) {
+        return (1L << bucket) - 1;
+    }
+
+    private static int bucket(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0)));
+    }
+
+    private static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder inputRows = new LongAdder();
+        private final LongAdder outputRows = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+
+        void record(OperationEvent event) {
+            buckets.incrementAndGet(bucket(event.getWallNanos()));
+            count.increment();
+            totalNanos.add(event.getWallNanos());
+            maxNanos.accumulate(event.getWallNanos());
+            inputRows.add(Math.max(event.getInputRows(), 0));
+            outputRows.add(event.getOutputRows());
+            allocatedBytes.add(Math.max(event.getAllocatedBytes(), 0));
+        }
+
+        Snapshot snapshot() {
+            long[] counts = new long[BUCKETS];
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                counts[bucket] = buckets.get(bucket);
+            }
+            return new Snapshot(counts, count.sum(), totalNanos.sum(), maxNanos.get(), inputRows.sum(),
+                    outputRows.sum(), allocatedBytes.sum());
+        }
+    }
+
+    /**
+     * Statistics of an operation at the time of the snapshot
+     */
+    public static final class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long inputRows;
+        private final long outputRows;
+        private final long allocatedBytes;
+
+        Snapshot(long[] buckets, long count, long totalNanos, long maxNanos, long inputRows, long outputRows, long allocatedBytes) {
+            this.buckets = buckets;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.inputRows = inputRows;
+            this.outputRows = outputRows;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0 : (double) totalNanos / count;
+        }
+
+        public long getInputRows() {
+            return inputRows;
+        }
+
+        public long getOutputRows() {
+            return outputRows;
+        }
+
+        /**
+         * @return the bytes allocated by the operations that could be measured
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * @param quantile between 0 and 1
+         * @return an upper bound of the wall time of the quantile, within a factor of two
+         */
+        public long percentileNanos(double quantile) {
+            long rank = (long) Math.ceil(quantile * count);
+            long cumulative = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                cumulative += buckets[bucket];
+                if (cumulative >= Math.max(rank, 1)) {
+                    return Math.min(upperBound(bucket), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "count " + count + " mean " + (long) getMeanNanos() + " ns p50 " + percentileNanos(0.5)
+                    + " ns p99 " + percentileNanos(0.99) + " ns max " + maxNanos + " ns";
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package org.dataframe;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Estimates the number of distinct values in bounded memory (Flajolet et al., HyperLogLog). Every value
+ * is hashed to 64 bits, the first {@code precision} bits select one of the registers, which keeps the
+ * longest run of leading zeros of the remaining bits. The standard error is {@code 1.04 / sqrt(2^precision)},
+ * 0.8% with the default precision.
+ * Until the distinct hashes would take as much memory as the registers they are kept as they are, so that
+ * small sets of values are counted exactly and groups with few values stay small.
+ * Sketches of the same precision merge into the sketch of the union of their values, and are written to
+ * bytes with {@link #toByteArray()} so that partial results can be combined elsewhere
+ */
+public final class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 14;
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private static final byte SPARSE = 0;
+    private static final byte DENSE = 1;
+
+    private final int precision;
+    /**
+     * the registers, null while the hashes are kept in the sparse set
+     */
+    private byte[] registers;
+    /**
+     * open addressing set of the distinct hashes, 0 marks an empty slot and stands for the hash 0 in {@link #zero}
+     */
+    private long[] hashes;
+    private boolean zero;
+    private int size;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+        }
+        this.precision = precision;
+        this.hashes = new long[8];
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @param value ignored if null
+     * @return this sketch
+     */
+    public HyperLogLog add(Object value) {
+        Object key = ColumnIndex.normalize(value);
+        if (key != null) {
+            addHash(hash(key));
+        }
+        return this;
+    }
+
+    void addHash(long hash) {
+        if (registers != null) {
+            update(hash);
+        } else if (hash == 0) {
+            if (!zero) {
+                zero = true;
+                size++;
+                densifyIfFull();
+            }
+        } else if (insert(hash)) {
+            size++;
+            densifyIfFull();
+        }
+    }
+
+    private void update(long hash) {
+        int register = (int) (hash >>> (Long.SIZE - precision));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), Long.SIZE - precision) + 1;
+        if (registers[register] < rank) {
+            registers[register] = (byte) rank;
+        }
+    }
+
+    /**
+     * @return true if the hash was not in the sparse set
+     */
+    private boolean insert(long hash) {
+        int mask = hashes.length - 1;
+        for (int slot = (int) (hash ^ (hash >>> 32)) & mask; ; slot = (slot + 1) & mask) {
+            if (hashes[slot] == 0) {
+                hashes[slot] = hash;
+                if ((size + 1) * 4 > hashes.length * 3) {
+                    hashes = rehash(hashes, hashes.length * 2);
+                }
+                return true;
+            } else if (hashes[slot] == hash) {
+                return false;
+            }
+        }
+    }
+
+    private static long[] rehash(long[] hashes, int capacity) {
+        long[] rehashed = new long[capacity];
+        int mask = capacity - 1;
+        for (long hash : hashes) {
+            if (hash != 0) {
+                int slot = (int) (hash ^ (hash >>> 32)) & mask;
+                while (rehashed[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                rehashed[slot] = hash;
+            }
+        }
+        return rehashed;
+    }
+
+    /**
+     * Switches to the registers once the sparse set would take about as many bytes as them
+     */
+    private void densifyIfFull() {
+        if ((long) size * Long.BYTES * 2 >= 1 << precision) {
+            registers = new byte[1 << precision];
+            for (long hash : hashes) {
+                if (hash != 0) {
+                    update(hash);
+                }
+            }
+            if (zero) {
+                update(0);
+            }
+            hashes = null;
+        }
+    }
+
+    /**
+     * Adds the values of another sketch of the same precision
+     * @param other
+     * @return this sketch
+     */
+    public HyperLogLog merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("cannot merge sketches of precision " + precision + " and " + other.precision);
+        }
+        if (other.registers == null) {
+            for (long hash : other.hashes) {
+                if (hash != 0) {
+                    addHash(hash);
+                }
+            }
+            if (other.zero) {
+                addHash(0);
+            }
+            return this;
+        }
+        if (registers == null) {
+            long[] sparse = hashes;
+            boolean sparseZero = zero;
+            registers = other.registers.clone();
+            hashes = null;
+            for (long hash : sparse) {
+                if (hash != 0) {
+                    update(hash);
+                }
+            }
+            if (sparseZero) {
+                update(0);
+            }
+            return this;
+        }
+        for (int register = 0; register < registers.length; register++) {
+            registers[register] = (byte) Math.max(registers[register], other.registers[register]);
+        }
+        return this;
+    }
+
+    /**
+     * @return the estimated number of distinct values, exact while the sketch is sparse
+     */
+    public long estimate() {
+        if (registers == null) {
+            return size;
+        }
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Double.longBitsToDouble((1023L - register) << 52);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            //linear counting is more accurate for small cardinalities
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return the sketch as bytes, see {@link #fromByteArray(byte[])}
+     */
+    public byte[] toByteArray() {
+        if (registers != null) {
+            return ByteBuffer.allocate(2 + registers.length).put(DENSE).put((byte) precision).put(registers).array();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(7 + size * Long.BYTES).put(SPARSE).put((byte) precision)
+                .put((byte) (zero ? 1 : 0)).putInt(zero ? size - 1 : size);
+        for (long hash : hashes) {
+            if (hash != 0) {
+                buffer.putLong(hash);
+            }
+        }
+        return buffer.array();
+    }
+
+    public static HyperLogLog fromByteArray(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte mode = buffer.get();
+        HyperLogLog sketch = new HyperLogLog(buffer.get());
+        if (mode == DENSE) {
+            sketch.registers = new byte[1 << sketch.precision];
+            buffer.get(sketch.registers);
+            sketch.hashes = null;
+        } else if (mode == SPARSE) {
+            if (buffer.get() != 0) {
+                sketch.addHash(0);
+            }
+            for (int i = buffer.getInt(); i > 0; i--) {
+                sketch.addHash(buffer.getLong());
+            }
+        } else {
+            throw new IllegalArgumentException("not a HyperLogLog sketch");
+        }
+        return sketch;
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreads the bits of a key over the whole hash
+     */
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * @param key a normalized cell, see {@link ColumnIndex#normalize(Object)}
+     * @return a 64 bits hash, numbers equal as longs or doubles hash alike whatever their type
+     */
+    static long hash(Object key) {
+        if (key instanceof Long) {
+            return mix((Long) key);
+        } else if (key instanceof Double) {
+            return mix(Double.doubleToLongBits((Double) key) ^ 0x5DEECE66DL);
+        } else if (key instanceof String) {
+            return hash((String) key);
+        }
+        return mix((key.hashCode() & 0xFFFFFFFFL) ^ ((long) key.getClass().getName().hashCode() << 32));
+    }
+
+    private static long hash(String key) {
+        //FNV-1a over the UTF-8 bytes, the 32 bits hash code of strings collides too often for large cardinalities
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long hash(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 0x1p63) {
+            return mix((long) value);
+        }
+        return mix(Double.doubleToLongBits(value) ^ 0x5DEECE66DL);
+    }
+
+    /**
+     * @return the hash of the cell of every non null row of a column, without boxing primitive cells and
+     * hashing the entries of a dictionary once
+     */
+    static IntToLongFunction hasher(Column column) {
+        if (column instanceof CategoricalColumn) {
+            CategoricalColumn categorical = (CategoricalColumn) column;
+            long[] hashes = Arrays.stream(categorical.dictionary()).mapToLong(entry -> entry == null ? 0 : hash(entry)).toArray();
+            return row -> hashes[categorical.code(row)];
+        } else if (column instanceof LongColumn || column instanceof EncodedColumn && column.type() == Long.class) {
+            return row -> mix(column.getLong(row));
+        } else if (column.type() == Double.class || column.type() == Integer.class) {
+            return row -> hash(column.getDouble(row));
+        }
+        return row -> hash(ColumnIndex.normalize(column.get(row)));
+    }
+}
@@ -0,0 +1,15 @@
+package org.dataframe;
+
+/**
+ * Kinds of secondary indexes of a column, see {@link Dataframe#createIndex(String, IndexType)}
+ */
+public enum IndexType {
+    /**
+     * a bitmap of rows per distinct value, for low cardinality columns filtered on equality
+     */
+    BITMAP,
+    /**
+     * the rows in the order of their values, for range queries on high cardinality columns
+     */
+    SORTED
+}
@@ -0,0 +1,512 @@
+package org.dataframe;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Matches the rows of two dataframes on equal keys and records the result as two index vectors,
+ * so that the columns of both sides are gathered once. The keys of the right (build) side are numbered
+ * densely by partition like {@link Grouping} does and its rows bucketed by key number, the left (probe)
+ * side looks up its keys in parallel and keeps its order. Single primitive keys that are already sorted on both sides are merged instead
+ */
+final class Join {
+
+    /**
+     * encoded key of NaN double cells, the largest encoded double. NaN keys match nothing, like null keys
+     */
+    private static final long NAN_KEY = encode(Double.NaN);
+
+    /**
+     * left row of every output row, -1 where only the right row is kept
+     */
+    final int[] leftRows;
+    /**
+     * right row of every output row, -1 where only the left row is kept, null for semi and anti joins
+     */
+    final int[] rightRows;
+
+    private Join(int[] leftRows, int[] rightRows) {
+        this.leftRows = leftRows;
+        this.rightRows = rightRows;
+    }
+
+    static Join of(Column[] leftKeys, int leftSize, Column[] rightKeys, int rightSize, JoinType type, Execution execution) {
+        Column[] left = new Column[leftKeys.length];
+        Column[] right = new Column[rightKeys.length];
+        execution.forEach(leftKeys.length, k -> {
+            left[k] = leftKeys[k].materialize();
+            right[k] = rightKeys[k].materialize();
+        });
+        if (left.length == 1 && isFloating(left[0]) == isFloating(right[0])
+                && (isFloating(left[0]) || isIntegral(left[0])) && (isFloating(right[0]) || isIntegral(right[0]))) {
+            boolean floating = isFloating(left[0]);
+            long[] leftValues = keys(left[0], floating);
+            if (isSorted(leftValues) && left[0].nullBitmap() == null && right[0].nullBitmap() == null) {
+                long[] rightValues = keys(right[0], floating);
+                if (isSorted(rightValues)) {
+                    return merge(leftValues, rightValues, floating, type);
+                }
+                return hash(codes(leftValues, null, rightValues, null, floating, execution), leftSize, rightSize, type, execution);
+            }
+        }
+        Codes codes = null;
+        for (int k = 0; k < left.length; k++) {
+            Codes key = codes(left[k], right[k], execution);
+            codes = codes == null ? key : combine(codes, key, execution);
+        }
+        return hash(codes, leftSize, rightSize, type, execution);
+    }
+
+    /**
+     * Gathers the cells of the given rows, -1 gives a null cell
+     */
+    static Column gather(Column column, int[] rows) {
+        if (Arrays.stream(rows).allMatch(row -> row >= 0)) {
+            return column.gather(rows);
+        }
+        ColumnBuffer buffer = ColumnBuffer.of(column.type());
+        for (int row : rows) {
+            buffer.add(row < 0 ? null : column.get(row));
+        }
+        return buffer.build();
+    }
+
+    /**
+     * Gathers a key column of the output, taking the key of the right row where there is no left row
+     */
+    static Column coalesce(Column left, int[] leftRows, Column right, int[] rightRows) {
+        if (Arrays.stream(leftRows).allMatch(row -> row >= 0)) {
+            return left.gather(leftRows);
+        }
+        ColumnBuffer buffer = ColumnBuffer.of(left.type() == right.type() ? left.type() : Object.class);
+        for (int i = 0; i < leftRows.length; i++) {
+            buffer.add(leftRows[i] >= 0 ? left.get(leftRows[i]) : right.get(rightRows[i]));
+        }
+        return buffer.build();
+    }
+
+    private static boolean isIntegral(Column column) {
+        return column instanceof LongColumn || column instanceof IntColumn
+                || column instanceof OffHeapColumn.Longs || column instanceof OffHeapColumn.Ints
+                || column instanceof EncodedColumn;
+    }
+
+    private static boolean isFloating(Column column) {
+        return column instanceof DoubleColumn || column instanceof OffHeapColumn.Doubles;
+    }
+
+    /**
+     * Same encoding as the sort keys of double columns, with negative zero folded into zero
+     */
+    private static long encode(double value) {
+        long bits = Double.doubleToLongBits(value == 0 ? 0.0 : value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * @return order preserving keys of the cells of a primitive column, encoded as doubles if floating
+     */
+    private static long[] keys(Column column, boolean floating) {
+        if (!floating || isFloating(column)) {
+            long[] keys = column.sortKeys();
+            if (floating) {
+                for (int row = 0; row < keys.length; row++) {
+                    if (keys[row] == -1L) {
+                        keys[row] = 0;
+                    }
+                }
+            }
+            return keys;
+        }
+        long[] keys = new long[column.size()];
+        for (int row = 0; row < keys.length; row++) {
+            keys[row] = encode(column.getDouble(row));
+        }
+        return keys;
+    }
+
+    private static boolean isSorted(long[] keys) {
+        for (int row = 1; row < keys.length; row++) {
+            if (keys[row - 1] > keys[row]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Dense numbers of the keys of both sides, assigned to the right keys in order of first appearance.
+     * Null keys and left keys absent from the right side are -1
+     */
+    private static final class Codes {
+        final int[] left;
+        final int[] right;
+        final int count;
+
+        Codes(int[] left, int[] right, int count) {
+            this.left = left;
+            this.right = right;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Keys numbered by a partition of the right rows
+     */
+    private static final class Numbering {
+        final LongIntHashMap numbers = new LongIntHashMap(1024);
+        long[] keys = new long[16];
+
+        int number(long key) {
+            int number = numbers.putIfAbsent(key, numbers.size());
+            if (number >= 0) {
+                return number;
+            }
+            number = numbers.size() - 1;
+            if (number == keys.length) {
+                keys = Arrays.copyOf(keys, number * 2);
+            }
+            keys[number] = key;
+            return number;
+        }
+    }
+
+    /**
+     * Every partition of the right rows numbers its own keys, the local numbers are then mapped to global ones
+     * by visiting the keys of the partitions in order, so the keys keep the order of their first appearance
+     * @param right receives the number of every right row, -1 for the rows without key
+     * @return the numbers of the keys
+     */
+    private static LongIntHashMap number(int[] right, IntPredicate absent, IntToLongFunction keys, Execution execution) {
+        List<Numbering> partitions = execution.map(right.length, (from, to) -> {
+            Numbering partition = new Numbering();
+            for (int row = from; row < to; row++) {
+                right[row] = absent.test(row) ? -1 : partition.number(keys.applyAsLong(row));
+            }
+            return partition;
+        });
+        if (partitions.size() == 1) {
+            return partitions.get(0).numbers;
+        }
+        Numbering global = new Numbering();
+        int[][] mappings = new int[partitions.size()][];
+        for (int p = 0; p < mappings.length; p++) {
+            Numbering partition = partitions.get(p);
+            mappings[p] = new int[partition.numbers.size()];
+            for (int local = 0; local < mappings[p].length; local++) {
+                mappings[p][local] = global.number(partition.keys[local]);
+            }
+        }
+        remap(right, mappings, execution);
+        return global.numbers;
+    }
+
+    /**
+     * Same as {@link #number(int[], IntPredicate, IntToLongFunction, Execution)} for boxed keys, null cells
+     * have no key
+     */
+    private static Map<Object, Integer> number(int[] right, IntFunction<Object> cells, Execution execution) {
+        //the numbers of a partition follow the order of insertion of its keys
+        List<Map<Object, Integer>> partitions = execution.map(right.length, (from, to) -> {
+            Map<Object, Integer> numbers = new LinkedHashMap<>();
+            for (int row = from; row < to; row++) {
+                Object cell = cells.apply(row);
+                right[row] = cell == null ? -1 : numbers.computeIfAbsent(cell, key -> numbers.size());
+            }
+            return numbers;
+        });
+        if (partitions.size() == 1) {
+            return partitions.get(0);
+        }
+        Map<Object, Integer> global = new HashMap<>();
+        int[][] mappings = new int[partitions.size()][];
+        for (int p = 0; p < mappings.length; p++) {
+            Map<Object, Integer> partition = partitions.get(p);
+            mappings[p] = new int[partition.size()];
+            int local = 0;
+            for (Object key : partition.keySet()) {
+                mappings[p][local++] = global.computeIfAbsent(key, absent -> global.size());
+            }
+        }
+        remap(right, mappings, execution);
+        return global;
+    }
+
+    /**
+     * Maps the local numbers of every partition of the right rows to global ones
+     */
+    private static void remap(int[] right, int[][] mappings, Execution execution) {
+        int[] bounds = execution.bounds(right.length);
+        execution.forEach(mappings.length, p -> {
+            int[] mapping = mappings[p];
+            for (int row = bounds[p]; row < bounds[p + 1]; row++) {
+                if (right[row] >= 0) {
+                    right[row] = mapping[right[row]];
+                }
+            }
+        });
+    }
+
+    /**
+     * @param leftNulls validity of the left keys, null if none is null
+     * @param rightNulls validity of the right keys, null if none is null
+     */
+    private static Codes codes(long[] leftValues, NullBitmap leftNulls, long[] rightValues, NullBitmap rightNulls,
+                               boolean floating, Execution execution) {
+        int[] right = new int[rightValues.length];
+        LongIntHashMap numbers = number(right,
+                row -> floating && rightValues[row] == NAN_KEY || rightNulls != null && rightNulls.isNull(row),
+                row -> rightValues[row], execution);
+        int[] left = new int[leftValues.length];
+        execution.map(left.length, (from, to) -> {
+            for (int row = from; row < to; row++) {
+                left[row] = floating && leftValues[row] == NAN_KEY || leftNulls != null && leftNulls.isNull(row)
+                        ? -1 : numbers.get(leftValues[row]);
+            }
+            return null;
+        });
+        return new Codes(left, right, numbers.size());
+    }
+
+    private static Codes codes(Column left, Column right, Execution execution) {
+        boolean leftNumeric = isFloating(left) || isIntegral(left);
+        boolean rightNumeric = isFloating(right) || isIntegral(right);
+        if (leftNumeric && rightNumeric) {
+            boolean floating = isFloating(left) || isFloating(right);
+            return codes(keys(left, floating), left.nullBitmap(), keys(right, floating), right.nullBitmap(), floating, execution);
+        }
+        if (left instanceof CategoricalColumn && right instanceof CategoricalColumn) {
+            return dictionaryCodes((CategoricalColumn) left, (CategoricalColumn) right, execution);
+        }
+        int[] rightCodes = new int[right.size()];
+        Map<Object, Integer> numbers = number(rightCodes, row -> normalize(right.get(row)), execution);
+        int[] leftCodes = new int[left.size()];
+        execution.map(leftCodes.length, (from, to) -> {
+            for (int row = from; row < to; row++) {
+                Object cell = normalize(left.get(row));
+                leftCodes[row] = cell == null ? -1 : numbers.getOrDefault(cell, -1);
+            }
+            return null;
+        });
+        return new Codes(leftCodes, rightCodes, numbers.size());
+    }
+
+    /**
+     * Numbers the entries of the dictionaries, the rows are then mapped through their codes
+     */
+    private static Codes dictionaryCodes(CategoricalColumn left, CategoricalColumn right, Execution execution) {
+        Map<String, Integer> numbers = new HashMap<>();
+        String[] rightDictionary = right.dictionary();
+        int[] rightNumbers = new int[rightDictionary.length];
+        for (int code = 0; code < rightDictionary.length; code++) {
+            rightNumbers[code] = rightDictionary[code] == null ? -1 : numbers.computeIfAbsent(rightDictionary[code], entry -> numbers.size());
+        }
+        String[] leftDictionary = left.dictionary();
+        int[] leftNumbers = new int[leftDictionary.length];
+        for (int code = 0; code < leftDictionary.length; code++) {
+            leftNumbers[code] = leftDictionary[code] == null ? -1 : numbers.getOrDefault(leftDictionary[code], -1);
+        }
+        int[] rightCodes = new int[right.size()];
+        for (int row = 0; row < rightCodes.length; row++) {
+            rightCodes[row] = rightNumbers[right.code(row)];
+        }
+        int[] leftCodes = new int[left.size()];
+        execution.map(leftCodes.length, (from, to) -> {
+            for (int row = from; row < to; row++) {
+                leftCodes[row] = leftNumbers[left.code(row)];
+            }
+            return null;
+        });
+        return new Codes(leftCodes, rightCodes, numbers.size());
+    }
+
+    /**
+     * Boxed integral numbers are compared as longs and other numbers as doubles
+     */
+    private static Object normalize(Object cell) {
+        if (cell instanceof Long || cell instanceof Integer || cell instanceof Short || cell instanceof Byte) {
+            return ((Number) cell).longValue();
+        } else if (cell instanceof Float) {
+            return ((Number) cell).doubleValue();
+        } else if (cell instanceof Double && Double.isNaN((Double) cell)) {
+            return null;
+        }
+        return cell;
+    }
+
+    /**
+     * Numbers the pairs of numbers of two key columns
+     */
+    private static Codes combine(Codes first, Codes second, Execution execution) {
+        int[] right = new int[first.right.length];
+        LongIntHashMap numbers = number(right, row -> first.right[row] < 0 || second.right[row] < 0,
+                row -> ((long) first.right[row] << 32) | second.right[row], execution);
+        int[] left = new int[first.left.length];
+        execution.map(left.length, (from, to) -> {
+            for (int row = from; row < to; row++) {
+                left[row] = first.left[row] < 0 || second.left[row] < 0 ? -1
+                        : numbers.get(((long) first.left[row] << 32) | second.left[row]);
+            }
+            return null;
+        });
+        return new Codes(left, right, numbers.size());
+    }
+
+    /**
+     * Growable pairs of rows
+     */
+    private static final class Pairs {
+        int[] left = new int[ColumnBuffer.INITIAL_CAPACITY];
+        int[] right;
+        int size;
+
+        Pairs(boolean pairs) {
+            right = pairs ? new int[ColumnBuffer.INITIAL_CAPACITY] : null;
+        }
+
+        void add(int leftRow, int rightRow) {
+            if (size == left.length) {
+                left = Arrays.copyOf(left, ColumnBuffer.grow(size));
+                if (right != null) {
+                    right = Arrays.copyOf(right, left.length);
+                }
+            }
+            left[size] = leftRow;
+            if (right != null) {
+                right[size] = rightRow;
+            }
+            size++;
+        }
+
+        Join toJoin() {
+            return new Join(Arrays.copyOf(left, size), right == null ? null : Arrays.copyOf(right, size));
+        }
+    }
+
+    private static Join hash(Codes codes, int leftSize, int rightSize, JoinType type, Execution execution) {
+        //buckets the right rows by key number, keeping their order
+        int[] offsets = new int[codes.count + 1];
+        for (int code : codes.right) {
+            if (code >= 0) {
+                offsets[code + 1]++;
+            }
+        }
+        for (int code = 0; code < codes.count; code++) {
+            offsets[code + 1] += offsets[code];
+        }
+        int[] buckets = new int[offsets[codes.count]];
+        int[] positions = Arrays.copyOf(offsets, codes.count);
+        for (int row = 0; row < rightSize; row++) {
+            if (codes.right[row] >= 0) {
+                buckets[positions[codes.right[row]]++] = row;
+            }
+        }
+
+        boolean pairs = type.keepsRightColumns();
+        List<Pairs> partitions = execution.map(leftSize, (from, to) -> {
+            Pairs partition = new Pairs(pairs);
+            for (int row = from; row < to; row++) {
+                int code = codes.left[row];
+                if (type == JoinType.SEMI || type == JoinType.ANTI) {
+                    if ((code >= 0) == (type == JoinType.SEMI)) {
+                        partition.add(row, -1);
+                    }
+                } else if (code >= 0) {
+                    for (int match = offsets[code]; match < offsets[code + 1]; match++) {
+                        partition.add(row, buckets[match]);
+                    }
+                } else if (type.keepsUnmatchedLeft()) {
+                    partition.add(row, -1);
+                }
+            }
+            return partition;
+        });
+
+        Pairs result = partitions.get(0);
+        for (int p = 1; p < partitions.size(); p++) {
+            Pairs partition = partitions.get(p);
+            for (int i = 0; i < partition.size; i++) {
+                result.add(partition.left[i], pairs ? partition.right[i] : -1);
+            }
+        }
+        if (type.keepsUnmatchedRight()) {
+            boolean[] matched = new boolean[codes.count];
+            for (int code : codes.left) {
+                if (code >= 0) {
+                    matched[code] = true;
+                }
+            }
+            for (int row = 0; row < rightSize; row++) {
+                if (codes.right[row] < 0 || !matched[codes.right[row]]) {
+                    result.add(-1, row);
+                }
+            }
+        }
+        return result.toJoin();
+    }
+
+    /**
+     * Merges keys sorted in ascending order, the unmatched right rows follow the other rows
+     * like they do in the hash join
+     */
+    private static Join merge(long[] left, long[] right, boolean floating, JoinType type) {
+        Pairs result = new Pairs(type.keepsRightColumns());
+        Pairs unmatchedRight = new Pairs(true);
+        int i = 0;
+        int j = 0;
+        while (i < left.length || j < right.length) {
+            if (j == right.length || (i < left.length && left[i] < right[j])) {
+                addUnmatchedLeft(result, i++, type);
+            } else if (i == left.length || left[i] > right[j]) {
+                unmatchedRight.add(-1, j++);
+            } else {
+                long key = left[i];
+                int leftEnd = i;
+                while (leftEnd < left.length && left[leftEnd] == key) {
+                    leftEnd++;
+                }
+                int rightEnd = j;
+                while (rightEnd < right.length && right[rightEnd] == key) {
+                    rightEnd++;
+                }
+                if (floating && key == NAN_KEY) {
+                    for (; i < leftEnd; i++) {
+                        addUnmatchedLeft(result, i, type);
+                    }
+                    for (; j < rightEnd; j++) {
+                        unmatchedRight.add(-1, j);
+                    }
+                    continue;
+                }
+                for (; i < leftEnd; i++) {
+                    if (type == JoinType.SEMI) {
+                        result.add(i, -1);
+                    } else if (type != JoinType.ANTI) {
+                        for (int match = j; match < rightEnd; match++) {
+                            result.add(i, match);
+                        }
+                    }
+                }
+                j = rightEnd;
+            }
+        }
+        if (type.keepsUnmatchedRight()) {
+            for (int k = 0; k < unmatchedRight.size; k++) {
+                result.add(-1, unmatchedRight.right[k]);
+            }
+        }
+        return result.toJoin();
+    }
+
+    private static void addUnmatchedLeft(Pairs result, int row, JoinType type) {
+        if (type.keepsUnmatchedLeft() || type == JoinType.ANTI) {
+            result.add(row, -1);
+        }
+    }
+}
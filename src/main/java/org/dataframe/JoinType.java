@@ -0,0 +1,43 @@
+package org.dataframe;
+
+/**
+ * Rows kept by {@link Dataframe#join(Dataframe, String[], String[], JoinType)}. Null keys never match
+ */
+public enum JoinType {
+    /**
+     * pairs of matching rows
+     */
+    INNER,
+    /**
+     * pairs of matching rows and the left rows without a match, with null right cells
+     */
+    LEFT,
+    /**
+     * pairs of matching rows and the right rows without a match, with null left cells
+     */
+    RIGHT,
+    /**
+     * pairs of matching rows and the rows of either side without a match
+     */
+    FULL,
+    /**
+     * left rows that have a match, without the right columns
+     */
+    SEMI,
+    /**
+     * left rows that have no match, without the right columns
+     */
+    ANTI;
+
+    boolean keepsRightColumns() {
+        return this != SEMI && this != ANTI;
+    }
+
+    boolean keepsUnmatchedLeft() {
+        return this == LEFT || this == FULL;
+    }
+
+    boolean keepsUnmatchedRight() {
+        return this == RIGHT || this == FULL;
+    }
+}
@@ -0,0 +1,30 @@
+package org.dataframe;
+
+/**
+ * Compensated (Kahan) summation, used by every sum so that partial sums of groups or partitions
+ * add up to the same value as the sum of the whole column
+ */
+final class KahanSum {
+    private double sum;
+    private double compensation;
+
+    void add(double value) {
+        double y = value - compensation;
+        double t = sum + y;
+        compensation = (t - sum) - y;
+        sum = t;
+    }
+
+    /**
+     * Adds a partial sum, keeping its compensation
+     */
+    KahanSum add(KahanSum partial) {
+        add(partial.sum);
+        add(-partial.compensation);
+        return this;
+    }
+
+    double value() {
+        return sum - compensation;
+    }
+}
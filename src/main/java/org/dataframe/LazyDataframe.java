@@ -0,0 +1,91 @@
+package org.dataframe;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A query over a {@link Dataframe} or a native SQL query that is recorded instead of run.
+ * On {@link #collect()} filters are pushed below sorts and projections (and into the native query),
+ * filters are fused into the aggregations above them and the columns that no operation refers to are not read.
+ * {@link #explain()} shows the optimized plan
+ */
+public class LazyDataframe {
+
+    private final LogicalPlan plan;
+
+    LazyDataframe(LogicalPlan plan) {
+        this.plan = plan;
+    }
+
+    public LazyDataframe select(ColumnPredicate predicate) {
+        return new LazyDataframe(new LogicalPlan.Filter(plan, predicate));
+    }
+
+    public LazyDataframe project(String... columnNames) {
+        return new LazyDataframe(new LogicalPlan.Project(plan, Arrays.asList(columnNames)));
+    }
+
+    public LazyDataframe sort(SortKey... keys) {
+        List<String> columns = plan.outputColumns();
+        SortKey[] named = Stream.of(keys).map(key -> {
+            if (key.getColumnName() != null) {
+                return key;
+            }
+            SortKey byName = key.isAscending() ? SortKey.asc(columns.get(key.getIndex())) : SortKey.desc(columns.get(key.getIndex()));
+            return key.isNullsFirst() ? byName.nullsFirst() : byName;
+        }).toArray(SortKey[]::new);
+        return new LazyDataframe(new LogicalPlan.Sort(plan, named));
+    }
+
+    public LazyGroupBy groupBy(String... columnNames) {
+        return new LazyGroupBy(Arrays.asList(columnNames));
+    }
+
+    /**
+     * Optimizes and runs the plan
+     * @return
+     */
+    public Dataframe collect() {
+        return plan.optimize().execute();
+    }
+
+    /**
+     * @return the optimized plan, one operation per line, the inputs of an operation are indented below it
+     */
+    public String explain() {
+        return plan.optimize().explain();
+    }
+
+    @Override
+    public String toString() {
+        return plan.explain();
+    }
+
+    public class LazyGroupBy {
+        private final List<String> keys;
+
+        LazyGroupBy(List<String> keys) {
+            this.keys = keys;
+        }
+
+        public LazyDataframe agg(Aggregation... aggregations) {
+            List<String> columns = plan.outputColumns();
+            Aggregation[] named = Stream.of(aggregations)
+                    .map(aggregation -> aggregation.getColumnName() != null ? aggregation
+                            : aggregation.withColumnName(columns.get(aggregation.getIndex())))
+                    .toArray(Aggregation[]::new);
+            return new LazyDataframe(new LogicalPlan.Aggregate(plan, keys, named));
+        }
+
+        /**
+         * Sums the given columns per group, the sums are named after the summed columns
+         * @param columnNames
+         * @return
+         */
+        public LazyDataframe sum(String... columnNames) {
+            return agg(Stream.of(columnNames).map(columnName -> Aggregation.sum(columnName).as(columnName))
+                    .toArray(Aggregation[]::new));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.dataframe;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Logs every operation on the {@code org.dataframe.metrics} logger
+ */
+public class Log4jMetrics implements DataframeMetrics {
+
+    private final Logger logger;
+    private final Level level;
+
+    /**
+     * Logs at debug level
+     */
+    public Log4jMetrics() {
+        this(LogManager.getLogger("org.dataframe.metrics"), Level.DEBUG);
+    }
+
+    public Log4jMetrics(Logger logger, Level level) {
+        this.logger = logger;
+        this.level = level;
+    }
+
+    @Override
+    public void onOperation(OperationEvent event) {
+        if (logger.isEnabled(level)) {
+            logger.log(level, "{} rows {} -> {} columns {} {} ms partitions {} allocated {} bytes",
+                    event.getOperation(), event.getInputRows(), event.getOutputRows(), event.getColumns(),
+                    event.getWallNanos() / 1e6, event.getPartitions(), event.getAllocatedBytes());
+        }
+    }
+}
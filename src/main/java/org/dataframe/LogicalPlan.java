@@ -0,0 +1,430 @@
+package org.dataframe;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A node of the plan of a {@link LazyDataframe}. Columns are referred to by name, plans are
+ * rewritten by {@link #optimize()} before they are executed
+ */
+abstract class LogicalPlan {
+
+    /**
+     * @return the names of the columns the plan produces
+     */
+    abstract List<String> outputColumns();
+
+    abstract List<LogicalPlan> children();
+
+    abstract Dataframe execute();
+
+    /**
+     * @return a one line description of the node, without its children
+     */
+    abstract String describe();
+
+    /**
+     * @return the plan as an indented tree, one node per line
+     */
+    String explain() {
+        StringBuilder s = new StringBuilder();
+        explain(s, 0);
+        return s.toString();
+    }
+
+    private void explain(StringBuilder s, int depth) {
+        for (int i = 0; i < depth; i++) {
+            s.append("  ");
+        }
+        s.append(describe()).append('\n');
+        for (LogicalPlan child : children()) {
+            child.explain(s, depth + 1);
+        }
+    }
+
+    /**
+     * Merges adjacent filters, pushes filters below sorts and projections and into native queries,
+     * fuses filters into the aggregations above them and finally prunes the columns no node refers to
+     * @return an equivalent plan
+     */
+    LogicalPlan optimize() {
+        LogicalPlan plan = this;
+        LogicalPlan rewritten = plan.rewrite();
+        while (rewritten != plan) {
+            plan = rewritten;
+            rewritten = plan.rewrite();
+        }
+        return plan.prune(new LinkedHashSet<>(plan.outputColumns()));
+    }
+
+    /**
+     * Applies the rewrite rules to the children and then to this node
+     * @return this node if no rule applies
+     */
+    abstract LogicalPlan rewrite();
+
+    /**
+     * @param required the columns that the parent of this node refers to
+     * @return a plan that produces at least the required columns
+     */
+    abstract LogicalPlan prune(Set<String> required);
+
+    static int[] indices(Dataframe dataframe, Collection<String> columnNames) {
+        List<String> names = Arrays.asList(dataframe.getColumnNames());
+        return columnNames.stream().mapToInt(names::indexOf).toArray();
+    }
+
+    static class Scan extends LogicalPlan {
+        final Dataframe dataframe;
+
+        Scan(Dataframe dataframe) {
+            if (dataframe.getColumnNames() == null) {
+                throw new IllegalStateException("lazy evaluation requires named columns");
+            }
+            this.dataframe = dataframe;
+        }
+
+        @Override
+        List<String> outputColumns() {
+            return Arrays.asList(dataframe.getColumnNames());
+        }
+
+        @Override
+        List<LogicalPlan> children() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        Dataframe execute() {
+            return dataframe;
+        }
+
+        @Override
+        String describe() {
+            return "Scan" + outputColumns() + " rows=" + dataframe.getNumberOfRows();
+        }
+
+        @Override
+        LogicalPlan rewrite() {
+            return this;
+        }
+
+        @Override
+        LogicalPlan prune(Set<String> required) {
+            List<String> columns = outputColumns().stream().filter(required::contains).collect(Collectors.toList());
+            return columns.size() < outputColumns().size() ? new Project(this, columns) : this;
+        }
+    }
+
+    static class SqlScan extends LogicalPlan {
+        final Dataframe.SqlDataframeBuilder builder;
+        /**
+         * pushed projection, null for all the columns of the query
+         */
+        final List<String> projection;
+        /**
+         * pushed condition, may be null
+         */
+        final ColumnPredicate predicate;
+
+        SqlScan(Dataframe.SqlDataframeBuilder builder) {
+            this(builder, null, null);
+        }
+
+        SqlScan(Dataframe.SqlDataframeBuilder builder, List<String> projection, ColumnPredicate predicate) {
+            this.builder = builder;
+            this.projection = projection;
+            this.predicate = predicate;
+        }
+
+        @Override
+        List<String> outputColumns() {
+            return projection != null ? projection : Arrays.asList(builder.getColumnNames());
+        }
+
+        @Override
+        List<LogicalPlan> children() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        Dataframe execute() {
+            if (projection == null && predicate == null) {
+                return builder.build();
+            }
+            return builder.pushdown(outputColumns().toArray(new String[0]), predicate).build();
+        }
+
+        @Override
+        String describe() {
+            return "SqlScan" + outputColumns() + (predicate != null ? " where " + predicate : "");
+        }
+
+        @Override
+        LogicalPlan rewrite() {
+            return this;
+        }
+
+        @Override
+        LogicalPlan prune(Set<String> required) {
+            List<String> columns = outputColumns().stream().filter(required::contains).collect(Collectors.toList());
+            return columns.size() < outputColumns().size() ? new SqlScan(builder, columns, predicate) : this;
+        }
+    }
+
+    static class Filter extends LogicalPlan {
+        final LogicalPlan child;
+        final ColumnPredicate predicate;
+
+        Filter(LogicalPlan child, ColumnPredicate predicate) {
+            this.child = child;
+            this.predicate = predicate;
+        }
+
+        @Override
+        List<String> outputColumns() {
+            return child.outputColumns();
+        }
+
+        @Override
+        List<LogicalPlan> children() {
+            return Collections.singletonList(child);
+        }
+
+        @Override
+        Dataframe execute() {
+            return child.execute().select(predicate);
+        }
+
+        @Override
+        String describe() {
+            return "Filter " + predicate;
+        }
+
+        @Override
+        LogicalPlan rewrite() {
+            LogicalPlan child = this.child.rewrite();
+            if (child instanceof Filter) {
+                Filter filter = (Filter) child;
+                return new Filter(filter.child, filter.predicate.and(predicate));
+            }
+            if (child instanceof Sort) {
+                Sort sort = (Sort) child;
+                return new Sort(new Filter(sort.child, predicate), sort.keys);
+            }
+            if (child instanceof Project) {
+                Project project = (Project) child;
+                return new Project(new Filter(project.child, predicate), project.columns);
+            }
+            if (child instanceof SqlScan) {
+                SqlScan scan = (SqlScan) child;
+                return new SqlScan(scan.builder, scan.projection, scan.predicate == null ? predicate : scan.predicate.and(predicate));
+            }
+            return child == this.child ? this : new Filter(child, predicate);
+        }
+
+        @Override
+        LogicalPlan prune(Set<String> required) {
+            Set<String> columns = new LinkedHashSet<>(required);
+            predicate.collectColumns(columns);
+            return new Filter(child.prune(columns), predicate);
+        }
+    }
+
+    static class Project extends LogicalPlan {
+        final LogicalPlan child;
+        final List<String> columns;
+
+        Project(LogicalPlan child, List<String> columns) {
+            this.child = child;
+            this.columns = columns;
+        }
+
+        @Override
+        List<String> outputColumns() {
+            return columns;
+        }
+
+        @Override
+        List<LogicalPlan> children() {
+            return Collections.singletonList(child);
+        }
+
+        @Override
+        Dataframe execute() {
+            return child.execute().project(columns.toArray(new String[0]));
+        }
+
+        @Override
+        String describe() {
+            return "Project" + columns;
+        }
+
+        @Override
+        LogicalPlan rewrite() {
+            LogicalPlan child = this.child.rewrite();
+            if (child instanceof Project) {
+                return new Project(((Project) child).child, columns);
+            }
+            if (child instanceof SqlScan) {
+                SqlScan scan = (SqlScan) child;
+                return new SqlScan(scan.builder, columns, scan.predicate);
+            }
+            return child == this.child ? this : new Project(child, columns);
+        }
+
+        @Override
+        LogicalPlan prune(Set<String> required) {
+            LogicalPlan child = this.child instanceof Scan ? this.child : this.child.prune(new LinkedHashSet<>(columns));
+            return new Project(child, columns);
+        }
+    }
+
+    static class Sort extends LogicalPlan {
+        final LogicalPlan child;
+        /**
+         * keys referring to columns by name
+         */
+        final SortKey[] keys;
+
+        Sort(LogicalPlan child, SortKey[] keys) {
+            this.child = child;
+            this.keys = keys;
+        }
+
+        @Override
+        List<String> outputColumns() {
+            return child.outputColumns();
+        }
+
+        @Override
+        List<LogicalPlan> children() {
+            return Collections.singletonList(child);
+        }
+
+        @Override
+        Dataframe execute() {
+            return child.execute().sort(keys);
+        }
+
+        @Override
+        String describe() {
+            return "Sort" + Arrays.toString(keys);
+        }
+
+        @Override
+        LogicalPlan rewrite() {
+            LogicalPlan child = this.child.rewrite();
+            return child == this.child ? this : new Sort(child, keys);
+        }
+
+        @Override
+        LogicalPlan prune(Set<String> required) {
+            Set<String> columns = new LinkedHashSet<>(required);
+            Stream.of(keys).forEach(key -> columns.add(key.getColumnName()));
+            return new Sort(child.prune(columns), keys);
+        }
+    }
+
+    static class Aggregate extends LogicalPlan {
+        final LogicalPlan child;
+        final List<String> keys;
+        /**
+         * aggregations referring to columns by name
+         */
+        final Aggregation[] aggregations;
+
+        Aggregate(LogicalPlan child, List<String> keys, Aggregation[] aggregations) {
+            this.child = child;
+            this.keys = keys;
+            this.aggregations = aggregations;
+        }
+
+        @Override
+        List<String> outputColumns() {
+            List<String> columns = new ArrayList<>(keys);
+            Stream.of(aggregations).forEach(aggregation -> columns.add(aggregation.name(null)));
+            return columns;
+        }
+
+        @Override
+        List<LogicalPlan> children() {
+            return Collections.singletonList(child);
+        }
+
+        @Override
+        Dataframe execute() {
+            return child.execute().groupBy(keys.toArray(new String[0])).agg(aggregations);
+        }
+
+        @Override
+        String describe() {
+            return "Aggregate by " + keys + " " + Arrays.toString(aggregations);
+        }
+
+        @Override
+        LogicalPlan rewrite() {
+            LogicalPlan child = this.child.rewrite();
+            if (child instanceof Filter) {
+                Filter filter = (Filter) child;
+                return new FusedAggregate(filter.child, filter.predicate, keys, aggregations);
+            }
+            return child == this.child ? this : new Aggregate(child, keys, aggregations);
+        }
+
+        @Override
+        LogicalPlan prune(Set<String> required) {
+            return new Aggregate(child.prune(referencedColumns(keys, aggregations)), keys, aggregations);
+        }
+
+        static Set<String> referencedColumns(List<String> keys, Aggregation[] aggregations) {
+            Set<String> columns = new LinkedHashSet<>(keys);
+            Stream.of(aggregations).forEach(aggregation -> columns.add(aggregation.getColumnName()));
+            return columns;
+        }
+    }
+
+    /**
+     * Aggregation of the rows of a selection, the selected rows are grouped and accumulated in place
+     * instead of being filtered into a dataframe first
+     */
+    static class FusedAggregate extends Aggregate {
+        final ColumnPredicate predicate;
+
+        FusedAggregate(LogicalPlan child, ColumnPredicate predicate, List<String> keys, Aggregation[] aggregations) {
+            super(child, keys, aggregations);
+            this.predicate = predicate;
+        }
+
+        @Override
+        Dataframe execute() {
+            Dataframe dataframe = child.execute();
+            int[] rows = dataframe.selection(predicate).toArray();
+            Integer[] indices = Arrays.stream(indices(dataframe, keys)).boxed().toArray(Integer[]::new);
+            return dataframe.groupBy(rows, indices).agg(aggregations);
+        }
+
+        @Override
+        String describe() {
+            return "FusedAggregate by " + keys + " " + Arrays.toString(aggregations) + " where " + predicate;
+        }
+
+        @Override
+        LogicalPlan rewrite() {
+            LogicalPlan child = this.child.rewrite();
+            if (child instanceof Filter) {
+                Filter filter = (Filter) child;
+                return new FusedAggregate(filter.child, filter.predicate.and(predicate), keys, aggregations);
+            }
+            return child == this.child ? this : new FusedAggregate(child, predicate, keys, aggregations);
+        }
+
+        @Override
+        LogicalPlan prune(Set<String> required) {
+            Set<String> columns = referencedColumns(keys, aggregations);
+            predicate.collectColumns(columns);
+            return new FusedAggregate(child.prune(columns), predicate, keys, aggregations);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.dataframe;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Column of long values, the null cells are kept in a {@link NullBitmap} and hold zero
+ */
+public class LongColumn extends Column {
+
+    private final long[] values;
+    /**
+     * null until a cell is null
+     */
+    private NullBitmap nulls;
+
+    public LongColumn(long[] values) {
+        this(values, null);
+    }
+
+    /**
+     * @param values zero in the null cells
+     * @param nulls null if no cell is null
+     */
+    LongColumn(long[] values, NullBitmap nulls) {
+        this.values = values;
+        this.nulls = nulls;
+    }
+
+    public long[] values() {
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Class<?> type() {
+        return Long.class;
+    }
+
+    @Override
+    public Long get(int row) {
+        return isNull(row) ? null : values[row];
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return values[row];
+    }
+
+    @Override
+    public long getLong(int row) {
+        return values[row];
+    }
+
+    @Override
+    public LongColumn gather(int[] rows) {
+        long[] gathered = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            gathered[i] = values[rows[i]];
+        }
+        return new LongColumn(gathered, nulls == null ? null : NullBitmap.gather(nulls, rows));
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        return nulls != null && nulls.isNull(row);
+    }
+
+    @Override
+    int nullCount(int from, int to) {
+        return nulls == null ? 0 : nulls.count(from, to);
+    }
+
+    @Override
+    NullBitmap nullBitmap() {
+        return nulls;
+    }
+
+    @Override
+    public LongColumn fillNull(Object value) {
+        if (nulls == null) {
+            return this;
+        }
+        long[] filled = values.clone();
+        long fill = ((Number) value).longValue();
+        for (int row = 0; row < filled.length; row++) {
+            if (nulls.isNull(row)) {
+                filled[row] = fill;
+            }
+        }
+        return new LongColumn(filled);
+    }
+
+    @Override
+    long[] sortKeys() {
+        return values.clone();
+    }
+
+    @Override
+    int[] groupCodes() {
+        return groupCodes(values, nulls);
+    }
+
+    @Override
+    void selectEqual(Object value, int from, int to, RoaringBitmap rows) {
+        if (isIntegral(value)) {
+            long number = ((Number) value).longValue();
+            for (int row = from; row < to; row++) {
+                if (values[row] == number) {
+                    rows.add(row);
+                }
+            }
+        } else if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            for (int row = from; row < to; row++) {
+                if (values[row] == number) {
+                    rows.add(row);
+                }
+            }
+        }
+        removeNulls(rows, from, to);
+    }
+
+    @Override
+    void selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive, int from, int to, RoaringBitmap rows) {
+        double lowBound = bound(low, Double.NEGATIVE_INFINITY);
+        double highBound = bound(high, Double.POSITIVE_INFINITY);
+        boolean includeLow = low == null || lowInclusive;
+        boolean includeHigh = high == null || highInclusive;
+        for (int row = from; row < to; row++) {
+            if (inRange(values[row], lowBound, includeLow, highBound, includeHigh)) {
+                rows.add(row);
+            }
+        }
+        removeNulls(rows, from, to);
+    }
+
+    @Override
+    void selectIn(Set<Object> values, int from, int to, RoaringBitmap rows) {
+        long[] sorted = integralValues(values);
+        for (int row = from; row < to; row++) {
+            if (Arrays.binarySearch(sorted, this.values[row]) >= 0) {
+                rows.add(row);
+            }
+        }
+        removeNulls(rows, from, to);
+    }
+
+    /**
+     * Removes from a selection the null rows of the range, whose zero cells may have been selected
+     */
+    private void removeNulls(RoaringBitmap rows, int from, int to) {
+        if (nulls != null) {
+            nulls.removeFrom(rows, from, to);
+        }
+    }
+
+    @Override
+    void selectNull(int from, int to, RoaringBitmap rows) {
+        if (nulls != null) {
+            nulls.addTo(rows, from, to);
+        }
+    }
+
+    @Override
+    void set(int row, Object value) {
+        if (value == null) {
+            if (nulls == null) {
+                nulls = new NullBitmap(values.length);
+            }
+            nulls.set(row);
+            values[row] = 0;
+        } else {
+            values[row] = ((Number) value).longValue();
+        }
+    }
+
+    /**
+     * The null cells hold zero and add nothing
+     */
+    @Override
+    KahanSum sum(int from, int to) {
+        KahanSum sum = new KahanSum();
+        for (int row = from; row < to; row++) {
+            sum.add(values[row]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,88 @@
+package org.dataframe;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from primitive long keys to non negative int values,
+ * used to assign dense ids to group keys without allocating an object per row
+ */
+final class LongIntHashMap {
+    private static final int ABSENT = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, ABSENT);
+        mask = capacity - 1;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param key
+     * @return the value of the key or -1 if it is absent
+     */
+    int get(long key) {
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (values[slot] == ABSENT) {
+                return ABSENT;
+            } else if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+    }
+
+    /**
+     * @param key
+     * @param value non negative value to associate with the key if it is absent
+     * @return the existing value of the key or -1 if the value was inserted
+     */
+    int putIfAbsent(long key, int value) {
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (values[slot] == ABSENT) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size * 2 > keys.length) {
+                    resize();
+                }
+                return ABSENT;
+            } else if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(values, ABSENT);
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != ABSENT) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] != ABSENT) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
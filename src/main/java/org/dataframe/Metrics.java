@@ -0,0 +1,97 @@
+package org.dataframe;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Times the operations of dataframes for the installed {@link DataframeMetrics}. While no listener is
+ * installed {@link #start(String)} returns a timer that does nothing
+ */
+final class Metrics {
+
+    private static volatile DataframeMetrics listener = DataframeMetrics.NONE;
+
+    /**
+     * allocation counters of the threads of the jvm, null if they are not available
+     */
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private Metrics() {
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        try {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled()) {
+                return (com.sun.management.ThreadMXBean) threads;
+            }
+        } catch (LinkageError | RuntimeException e) {
+            //not a hotspot jvm
+        }
+        return null;
+    }
+
+    static void setListener(DataframeMetrics metrics) {
+        listener = metrics == null ? DataframeMetrics.NONE : metrics;
+    }
+
+    static DataframeMetrics getListener() {
+        return listener;
+    }
+
+    static Timer start(String operation) {
+        DataframeMetrics metrics = listener;
+        return metrics == DataframeMetrics.NONE ? Timer.NONE : new Timer(metrics, operation);
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static class Timer {
+        static final Timer NONE = new Timer(null, null);
+
+        private final DataframeMetrics metrics;
+        private final String operation;
+        private final long start;
+        private final long allocated;
+        private long spilledBytes;
+        private long spillNanos;
+
+        private Timer(DataframeMetrics metrics, String operation) {
+            this.metrics = metrics;
+            this.operation = operation;
+            this.start = metrics == null ? 0 : System.nanoTime();
+            this.allocated = metrics == null ? 0 : allocatedBytes();
+        }
+
+        /**
+         * Adds the volume and the time of the spill files of the operation
+         */
+        void spilled(Spill spill) {
+            if (metrics != null) {
+                spilledBytes += spill.bytes();
+                spillNanos += spill.nanos();
+            }
+        }
+
+        /**
+         * Reports the operation to the listener that was installed when it started
+         * @param inputRows rows read, -1 if unknown
+         * @param outputRows rows produced
+         * @param columns names of the columns read
+         * @param partitions number of partitions the rows were split in
+         */
+        void stop(long inputRows, long outputRows, String[] columns, int partitions) {
+            if (metrics == null) {
+                return;
+            }
+            long wallNanos = System.nanoTime() - start;
+            long allocatedBytes = partitions <= 1 && allocated >= 0 ? allocatedBytes() - allocated : -1;
+            metrics.onOperation(new OperationEvent(operation, inputRows, outputRows, columns, wallNanos, partitions, allocatedBytes,
+                    spilledBytes, spillNanos));
+        }
+    }
+}
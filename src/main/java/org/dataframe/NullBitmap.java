@@ -0,0 +1,152 @@
+package org.dataframe;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Validity of the cells of a primitive column: a bit per row, set for the null cells, in words of 64 rows.
+ * The null cells of the column hold zero so that sums run over all the cells, the other operations
+ * skip or count the null rows a word at a time. Bits are only set while the column is built
+ */
+final class NullBitmap {
+
+    private final long[] words;
+    private int count;
+
+    NullBitmap(int size) {
+        this.words = new long[(size + 63) >>> 6];
+    }
+
+    /**
+     * @param words the bits of the rows, see {@link #words()}
+     */
+    NullBitmap(long[] words) {
+        this.words = words;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+    }
+
+    /**
+     * @return the bitmap of the given rows, null if there are none
+     */
+    static NullBitmap of(RoaringBitmap rows, int size) {
+        if (rows == null || rows.isEmpty()) {
+            return null;
+        }
+        NullBitmap nulls = new NullBitmap(size);
+        rows.forEach((int row) -> nulls.set(row));
+        return nulls;
+    }
+
+    /**
+     * @return the bitmap of the rows that match, null if none does
+     */
+    static NullBitmap of(int size, IntPredicate isNull) {
+        NullBitmap nulls = null;
+        for (int row = 0; row < size; row++) {
+            if (isNull.test(row)) {
+                if (nulls == null) {
+                    nulls = new NullBitmap(size);
+                }
+                nulls.set(row);
+            }
+        }
+        return nulls;
+    }
+
+    long[] words() {
+        return words;
+    }
+
+    boolean isNull(int row) {
+        return (words[row >>> 6] & (1L << row)) != 0;
+    }
+
+    void set(int row) {
+        if (!isNull(row)) {
+            words[row >>> 6] |= 1L << row;
+            count++;
+        }
+    }
+
+    /**
+     * @return the number of null rows
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * @return the number of null rows from (inclusive) to (exclusive)
+     */
+    int count(int from, int to) {
+        if (from >= to) {
+            return 0;
+        }
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) {
+            return Long.bitCount(words[first] & firstMask & lastMask);
+        }
+        int count = Long.bitCount(words[first] & firstMask) + Long.bitCount(words[last] & lastMask);
+        for (int word = first + 1; word < last; word++) {
+            count += Long.bitCount(words[word]);
+        }
+        return count;
+    }
+
+    /**
+     * @param rows negative rows are null
+     * @return the bitmap of the gathered rows, null if none of them is null
+     */
+    static NullBitmap gather(NullBitmap nulls, int[] rows) {
+        NullBitmap gathered = null;
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] < 0 || (nulls != null && nulls.isNull(rows[i]))) {
+                if (gathered == null) {
+                    gathered = new NullBitmap(rows.length);
+                }
+                gathered.set(i);
+            }
+        }
+        return gathered;
+    }
+
+    /**
+     * Adds the null rows of the range to the bitmap
+     */
+    void addTo(RoaringBitmap rows, int from, int to) {
+        forEach(from, to, rows::add);
+    }
+
+    /**
+     * Removes the null rows of the range from the bitmap
+     */
+    void removeFrom(RoaringBitmap rows, int from, int to) {
+        forEach(from, to, rows::remove);
+    }
+
+    private void forEach(int from, int to, IntConsumer action) {
+        if (from >= to) {
+            return;
+        }
+        for (int word = from >>> 6, last = (to - 1) >>> 6; word <= last; word++) {
+            long bits = words[word];
+            if (word == from >>> 6) {
+                bits &= -1L << from;
+            }
+            if (word == last) {
+                bits &= -1L >>> -to;
+            }
+            while (bits != 0) {
+                action.accept((word << 6) + Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+    }
+}
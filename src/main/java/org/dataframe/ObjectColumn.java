@@ -0,0 +1,56 @@
+package org.dataframe;
+
+import java.lang.reflect.Array;
+
+/**
+ * Fallback column that keeps references to its cells
+ * @param <T> type of the cells
+ */
+public class ObjectColumn<T> extends Column {
+
+    private final Class<T> type;
+    private final T[] values;
+
+    public ObjectColumn(Class<T> type, T[] values) {
+        this.type = type;
+        this.values = values;
+    }
+
+    @SuppressWarnings("unchecked")
+    ObjectColumn(Class<T> type, int size) {
+        this(type, (T[]) Array.newInstance(type, size));
+    }
+
+    public T[] values() {
+        return values;
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Class<T> type() {
+        return type;
+    }
+
+    @Override
+    public T get(int row) {
+        return values[row];
+    }
+
+    @Override
+    public ObjectColumn<T> gather(int[] rows) {
+        ObjectColumn<T> gathered = new ObjectColumn<>(type, rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            gathered.values[i] = values[rows[i]];
+        }
+        return gathered;
+    }
+
+    @Override
+    void set(int row, Object value) {
+        values[row] = type.cast(value);
+    }
+}
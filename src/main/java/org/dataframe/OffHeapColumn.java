@@ -0,0 +1,555 @@
+package org.dataframe;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.dataframe.OffHeapStorage.CHUNK_MASK;
+import static org.dataframe.OffHeapStorage.CHUNK_SHIFT;
+
+/**
+ * Numeric column whose cells are kept in an {@link OffHeapStorage}. Operations read the cells in place,
+ * only the temporary arrays of sorting and grouping are allocated on the heap. The null cells hold zero
+ * and are kept in a {@link NullBitmap} on the heap, next to the chunks.
+ * Operations over many rows hold a reference to the storage while they read it, the accessors of a single
+ * cell do not and fail once the storage is released
+ */
+abstract class OffHeapColumn extends Column {
+
+    final OffHeapStorage storage;
+    final int size;
+    /**
+     * null if no cell is null
+     */
+    final NullBitmap nulls;
+
+    OffHeapColumn(OffHeapStorage storage, int size, NullBitmap nulls) {
+        this.storage = storage;
+        this.size = size;
+        this.nulls = nulls;
+    }
+
+    /**
+     * Copies a double, long or int column outside the heap with its validity bitmap, decoding an encoded column
+     * @return the copy or null for any other column
+     */
+    static OffHeapColumn copyOf(Column column) {
+        Column cells = column.materialize();
+        if (cells instanceof EncodedColumn) {
+            cells = ((EncodedColumn) cells).decoded();
+        }
+        int size = cells.size();
+        NullBitmap nulls = cells.nullBitmap();
+        if (cells instanceof DoubleColumn) {
+            Doubles copy = new Doubles(new OffHeapStorage(8), size, nulls);
+            copy.storage.ensureCapacity(size);
+            double[] values = ((DoubleColumn) cells).values();
+            for (int row = 0; row < size; row++) {
+                copy.setDouble(row, values[row]);
+            }
+            return copy;
+        } else if (cells instanceof LongColumn) {
+            Longs copy = new Longs(new OffHeapStorage(8), size, nulls);
+            copy.storage.ensureCapacity(size);
+            long[] values = ((LongColumn) cells).values();
+            for (int row = 0; row < size; row++) {
+                copy.setLong(row, values[row]);
+            }
+            return copy;
+        } else if (cells instanceof IntColumn) {
+            Ints copy = new Ints(new OffHeapStorage(4), size, nulls);
+            copy.storage.ensureCapacity(size);
+            int[] values = ((IntColumn) cells).values();
+            for (int row = 0; row < size; row++) {
+                copy.setInt(row, values[row]);
+            }
+            return copy;
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the chunk of the row
+     */
+    ByteBuffer chunk(int row) {
+        return storage.chunks()[row >>> CHUNK_SHIFT];
+    }
+
+    /**
+     * @return the position of the row in its chunk
+     */
+    int position(int row) {
+        return (row & CHUNK_MASK) * storage.width();
+    }
+
+    /**
+     * @return the first row after the chunk of the given row, or the end of the range
+     */
+    static int chunkEnd(int row, int to) {
+        return (int) Math.min(to, ((long) (row >>> CHUNK_SHIFT) + 1) << CHUNK_SHIFT);
+    }
+
+    @Override
+    public Column materialize() {
+        return this;
+    }
+
+    @Override
+    Stream<OffHeapStorage> storages() {
+        return Stream.of(storage);
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        return nulls != null && nulls.isNull(row);
+    }
+
+    @Override
+    int nullCount(int from, int to) {
+        return nulls == null ? 0 : nulls.count(from, to);
+    }
+
+    @Override
+    NullBitmap nullBitmap() {
+        return nulls;
+    }
+
+    NullBitmap gatherNulls(int[] rows) {
+        return nulls == null ? null : NullBitmap.gather(nulls, rows);
+    }
+
+    /**
+     * Removes from a selection the null rows of the range, whose zero cells may have been selected
+     */
+    void removeNulls(RoaringBitmap rows, int from, int to) {
+        if (nulls != null) {
+            nulls.removeFrom(rows, from, to);
+        }
+    }
+
+    @Override
+    void selectNull(int from, int to, RoaringBitmap rows) {
+        if (nulls != null) {
+            nulls.addTo(rows, from, to);
+        }
+    }
+
+    @Override
+    void set(int row, Object value) {
+        throw new UnsupportedOperationException("off-heap columns are written through their primitive setters");
+    }
+
+    static class Doubles extends OffHeapColumn {
+
+        Doubles(OffHeapStorage storage, int size, NullBitmap nulls) {
+            super(storage, size, nulls);
+        }
+
+        void setDouble(int row, double value) {
+            chunk(row).putDouble(position(row), value);
+        }
+
+        @Override
+        public Class<?> type() {
+            return Double.class;
+        }
+
+        @Override
+        public Double get(int row) {
+            return isNull(row) ? null : getDouble(row);
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return chunk(row).getDouble(position(row));
+        }
+
+        @Override
+        public DoubleColumn gather(int[] rows) {
+            double[] gathered = new double[rows.length];
+            ByteBuffer[] chunks = storage.acquire();
+            try {
+                for (int i = 0; i < rows.length; i++) {
+                    gathered[i] = chunks[rows[i] >>> CHUNK_SHIFT].getDouble((rows[i] & CHUNK_MASK) << 3);
+                }
+            } finally {
+                storage.release();
+            }
+            return new DoubleColumn(gathered, gatherNulls(rows));
+        }
+
+        @Override
+        long[] sortKeys() {
+            long[] keys = new long[size];
+            ByteBuffer[] chunks = storage.acquire();
+            try {
+                for (int row = 0; row < size; row++) {
+                    long bits = Double.doubleToLongBits(chunks[row >>> CHUNK_SHIFT].getDouble((row & CHUNK_MASK) << 3));
+                    keys[row] = bits ^ ((bits >> 63) & Long.MAX_VALUE);
+                }
+            } finally {
+                storage.release();
+            }
+            return keys;
+        }
+
+        @Override
+        int[] groupCodes() {
+            long[] bits = new long[size];
+            ByteBuffer[] chunks = storage.acquire();
+            try {
+                for (int row = 0; row < size; row++) {
+                    bits[row] = Double.doubleToLongBits(chunks[row >>> CHUNK_SHIFT].getDouble((row & CHUNK_MASK) << 3));
+                }
+            } finally {
+                storage.release();
+            }
+            return groupCodes(bits, nulls);
+        }
+
+        @Override
+        void selectEqual(Object value, int from, int to, RoaringBitmap rows) {
+            if (value instanceof Number) {
+                double number = ((Number) value).doubleValue();
+                selectRange(number, number, true, true, from, to, rows);
+            }
+        }
+
+        @Override
+        void selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive, int from, int to, RoaringBitmap rows) {
+            selectRange(bound(low, Double.NEGATIVE_INFINITY), bound(high, Double.POSITIVE_INFINITY),
+                    low == null || lowInclusive, high == null || highInclusive, from, to, rows);
+        }
+
+        private void selectRange(double low, double high, boolean includeLow, boolean includeHigh, int from, int to, RoaringBitmap rows) {
+            ByteBuffer[] chunks = storage.acquire();
+            try {
+                for (int row = from; row < to; ) {
+                    ByteBuffer chunk = chunks[row >>> CHUNK_SHIFT];
+                    for (int end = chunkEnd(row, to); row < end; row++) {
+                        if (inRange(chunk.getDouble((row & CHUNK_MASK) << 3), low, includeLow, high, includeHigh)) {
+                            rows.add(row);
+                        }
+                    }
+                }
+            } finally {
+                storage.release();
+            }
+            removeNulls(rows, from, to);
+        }
+
+        @Override
+        void selectIn(Set<Object> values, int from, int to, RoaringBitmap rows) {
+            double[] sorted = values.stream().filter(Number.class::isInstance)
+                    .mapToDouble(value -> ((Number) value).doubleValue()).sorted().toArray();
+            storage.retain();
+            try {
+                for (int row = from; row < to; row++) {
+                    if (Arrays.binarySearch(sorted, getDouble(row)) >= 0) {
+                        rows.add(row);
+                    }
+                }
+            } finally {
+                storage.release();
+            }
+            removeNulls(rows, from, to);
+        }
+
+        @Override
+        KahanSum sum(int from, int to) {
+            KahanSum sum = new KahanSum();
+            ByteBuffer[] chunks = storage.acquire();
+            try {
+                for (int row = from; row < to; ) {
+                    ByteBuffer chunk = chunks[row >>> CHUNK_SHIFT];
+                    for (int end = chunkEnd(row, to); row < end; row++) {
+                        sum.add(chunk.getDouble((row & CHUNK_MASK) << 3));
+                    }
+                }
+            } finally {
+                storage.release();
+            }
+            return sum;
+        }
+    }
+
+    static class Longs extends OffHeapColumn {
+
+        Longs(OffHeapStorage storage, int size, NullBitmap nulls) {
+            super(storage, size, nulls);
+        }
+
+        void setLong(int row, long value) {
+            chunk(row).putLong(position(row), value);
+        }
+
+        @Override
+        public long getLong(int row) {
+            return chunk(row).getLong(position(row));
+        }
+
+        @Override
+        public Class<?> type() {
+            return Long.class;
+        }
+
+        @Override
+        public Long get(int row) {
+            return isNull(row) ? null : getLong(row);
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return getLong(row);
+        }
+
+        @Override
+        public LongColumn gather(int[] rows) {
+            long[] gathered = new long[rows.length];
+            ByteBuffer[] chunks = storage.acquire();
+            try {
+                for (int i = 0; i < rows.length; i++) {
+                    gathered[i] = chunks[rows[i] >>> CHUNK_SHIFT].getLong((rows[i] & CHUNK_MASK) << 3);
+                }
+            } finally {
+                storage.release();
+            }
+            return new LongColumn(gathered, gatherNulls(rows));
+        }
+
+        @Override
+        long[] sortKeys() {
+            long[] keys = new long[size];
+            ByteBuffer[] chunks = storage.acquire();
+            try {
+                for (int row = 0; row < size; row++) {
+                    keys[row] = chunks[row >>> CHUNK_SHIFT].getLong((row & CHUNK_MASK) << 3);
+                }
+            } finally {
+                storage.release();
+            }
+            return keys;
+        }
+
+        @Override
+        int[] groupCodes() {
+            return groupCodes(sortKeys(), nulls);
+        }
+
+        @Override
+        void selectEqual(Object value, int from, int to, RoaringBitmap rows) {
+            if (isIntegral(value)) {
+                long number = ((Number) value).longValue();
+                ByteBuffer[] chunks = storage.acquire();
+                try {
+                    for (int row = from; row < to; ) {
+                        ByteBuffer chunk = chunks[row >>> CHUNK_SHIFT];
+                        for (int end = chunkEnd(row, to); row < end; row++) {
+                            if (chunk.getLong((row & CHUNK_MASK) << 3) == number) {
+                                rows.add(row);
+                            }
+                        }
+                    }
+                } finally {
+                    storage.release();
+                }
+                removeNulls(rows, from, to);
+            } else if (value instanceof Number) {
+                selectRange(value, true, value, true, from, to, rows);
+            }
+        }
+
+        @Override
+        void selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive, int from, int to, RoaringBitmap rows) {
+            double lowBound = bound(low, Double.NEGATIVE_INFINITY);
+            double highBound = bound(high, Double.POSITIVE_INFINITY);
+            boolean includeLow = low == null || lowInclusive;
+            boolean includeHigh = high == null || highInclusive;
+            ByteBuffer[] chunks = storage.acquire();
+            try {
+                for (int row = from; row < to; ) {
+                    ByteBuffer chunk = chunks[row >>> CHUNK_SHIFT];
+                    for (int end = chunkEnd(row, to); row < end; row++) {
+                        if (inRange(chunk.getLong((row & CHUNK_MASK) << 3), lowBound, includeLow, highBound, includeHigh)) {
+                            rows.add(row);
+                        }
+                    }
+                }
+            } finally {
+                storage.release();
+            }
+            removeNulls(rows, from, to);
+        }
+
+        @Override
+        void selectIn(Set<Object> values, int from, int to, RoaringBitmap rows) {
+            long[] sorted = integralValues(values);
+            storage.retain();
+            try {
+                for (int row = from; row < to; row++) {
+                    if (Arrays.binarySearch(sorted, getLong(row)) >= 0) {
+                        rows.add(row);
+                    }
+                }
+            } finally {
+                storage.release();
+            }
+            removeNulls(rows, from, to);
+        }
+
+        @Override
+        KahanSum sum(int from, int to) {
+            KahanSum sum = new KahanSum();
+            ByteBuffer[] chunks = storage.acquire();
+            try {
+                for (int row = from; row < to; ) {
+                    ByteBuffer chunk = chunks[row >>> CHUNK_SHIFT];
+                    for (int end = chunkEnd(row, to); row < end; row++) {
+                        sum.add(chunk.getLong((row & CHUNK_MASK) << 3));
+                    }
+                }
+            } finally {
+                storage.release();
+            }
+            return sum;
+        }
+    }
+
+    static class Ints extends OffHeapColumn {
+
+        Ints(OffHeapStorage storage, int size, NullBitmap nulls) {
+            super(storage, size, nulls);
+        }
+
+        void setInt(int row, int value) {
+            chunk(row).putInt(position(row), value);
+        }
+
+        int getInt(int row) {
+            return chunk(row).getInt(position(row));
+        }
+
+        @Override
+        public Class<?> type() {
+            return Integer.class;
+        }
+
+        @Override
+        public Integer get(int row) {
+            return isNull(row) ? null : getInt(row);
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return getInt(row);
+        }
+
+        @Override
+        public long getLong(int row) {
+            return getInt(row);
+        }
+
+        @Override
+        public IntColumn gather(int[] rows) {
+            int[] gathered = new int[rows.length];
+            ByteBuffer[] chunks = storage.acquire();
+            try {
+                for (int i = 0; i < rows.length; i++) {
+                    gathered[i] = chunks[rows[i] >>> CHUNK_SHIFT].getInt((rows[i] & CHUNK_MASK) << 2);
+                }
+            } finally {
+                storage.release();
+            }
+            return new IntColumn(gathered, gatherNulls(rows));
+        }
+
+        @Override
+        long[] sortKeys() {
+            long[] keys = new long[size];
+            ByteBuffer[] chunks = storage.acquire();
+            try {
+                for (int row = 0; row < size; row++) {
+                    keys[row] = chunks[row >>> CHUNK_SHIFT].getInt((row & CHUNK_MASK) << 2);
+                }
+            } finally {
+                storage.release();
+            }
+            return keys;
+        }
+
+        @Override
+        int[] groupCodes() {
+            return groupCodes(sortKeys(), nulls);
+        }
+
+        @Override
+        void selectEqual(Object value, int from, int to, RoaringBitmap rows) {
+            if (value instanceof Number) {
+                selectRange(value, true, value, true, from, to, rows);
+            }
+        }
+
+        @Override
+        void selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive, int from, int to, RoaringBitmap rows) {
+            double lowBound = bound(low, Double.NEGATIVE_INFINITY);
+            double highBound = bound(high, Double.POSITIVE_INFINITY);
+            boolean includeLow = low == null || lowInclusive;
+            boolean includeHigh = high == null || highInclusive;
+            ByteBuffer[] chunks = storage.acquire();
+            try {
+                for (int row = from; row < to; ) {
+                    ByteBuffer chunk = chunks[row >>> CHUNK_SHIFT];
+                    for (int end = chunkEnd(row, to); row < end; row++) {
+                        if (inRange(chunk.getInt((row & CHUNK_MASK) << 2), lowBound, includeLow, highBound, includeHigh)) {
+                            rows.add(row);
+                        }
+                    }
+                }
+            } finally {
+                storage.release();
+            }
+            removeNulls(rows, from, to);
+        }
+
+        @Override
+        void selectIn(Set<Object> values, int from, int to, RoaringBitmap rows) {
+            long[] sorted = integralValues(values);
+            storage.retain();
+            try {
+                for (int row = from; row < to; row++) {
+                    if (Arrays.binarySearch(sorted, getInt(row)) >= 0) {
+                        rows.add(row);
+                    }
+                }
+            } finally {
+                storage.release();
+            }
+            removeNulls(rows, from, to);
+        }
+
+        @Override
+        KahanSum sum(int from, int to) {
+            KahanSum sum = new KahanSum();
+            ByteBuffer[] chunks = storage.acquire();
+            try {
+                for (int row = from; row < to; ) {
+                    ByteBuffer chunk = chunks[row >>> CHUNK_SHIFT];
+                    for (int end = chunkEnd(row, to); row < end; row++) {
+                        sum.add(chunk.getInt((row & CHUNK_MASK) << 2));
+                    }
+                }
+            } finally {
+                storage.release();
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.dataframe;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed width cells kept outside the java heap, in direct buffers of {@link #CHUNK_CELLS} cells that are
+ * allocated as cells are appended, the last buffer only holds the cells up to the capacity.
+ * The buffers are freed when the last reference is released: bulk reads hold a reference through
+ * {@link #acquire()}, a single cell must not be read after the owner released the storage
+ */
+final class OffHeapStorage {
+
+    static final int CHUNK_SHIFT = 20;
+    static final int CHUNK_CELLS = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_CELLS - 1;
+
+    private static final AtomicLong ALLOCATED = new AtomicLong();
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final int width;
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private final AtomicInteger references = new AtomicInteger(1);
+    private long bytes;
+    /**
+     * cells that fit in the chunks
+     */
+    private long capacity;
+
+    /**
+     * @param width bytes per cell
+     */
+    OffHeapStorage(int width) {
+        this.width = width;
+    }
+
+    /**
+     * @return the bytes allocated by all the storages that have not been released
+     */
+    static long allocatedBytes() {
+        return ALLOCATED.get();
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    int width() {
+        return width;
+    }
+
+    /**
+     * @return the chunks of the storage
+     * @throws IllegalStateException if the storage was released
+     */
+    ByteBuffer[] chunks() {
+        ByteBuffer[] chunks = this.chunks;
+        if (chunks == null) {
+            throw new IllegalStateException("the off-heap storage of the column was released");
+        }
+        return chunks;
+    }
+
+    /**
+     * Allocates chunks until the storage holds the given number of cells, a last chunk that is
+     * not full is replaced by a larger copy
+     */
+    void ensureCapacity(long cells) {
+        ByteBuffer[] chunks = chunks();
+        if (cells <= capacity) {
+            return;
+        }
+        int count = (int) ((cells + CHUNK_MASK) >>> CHUNK_SHIFT);
+        ByteBuffer[] grown = Arrays.copyOf(chunks, count);
+        for (int chunk = Math.max(chunks.length - 1, 0); chunk < count; chunk++) {
+            int chunkBytes = (int) Math.min(CHUNK_CELLS, cells - ((long) chunk << CHUNK_SHIFT)) * width;
+            ByteBuffer previous = grown[chunk];
+            if (previous != null && previous.capacity() >= chunkBytes) {
+                continue;
+            }
+            grown[chunk] = ByteBuffer.allocateDirect(chunkBytes).order(ByteOrder.nativeOrder());
+            bytes += chunkBytes;
+            ALLOCATED.addAndGet(chunkBytes);
+            if (previous != null) {
+                ByteBuffer copied = previous.duplicate();
+                copied.clear();
+                grown[chunk].put(copied).clear();
+                bytes -= previous.capacity();
+                ALLOCATED.addAndGet(-previous.capacity());
+                CLEANER.clean(previous);
+            }
+        }
+        this.capacity = cells;
+        this.chunks = grown;
+    }
+
+    /**
+     * Holds a reference for a read, the chunks stay valid until the matching {@link #release()}
+     * @return the chunks of the storage
+     * @throws IllegalStateException if the storage was released
+     */
+    ByteBuffer[] acquire() {
+        retain();
+        return chunks;
+    }
+
+    OffHeapStorage retain() {
+        if (references.getAndIncrement() <= 0) {
+            references.decrementAndGet();
+            throw new IllegalStateException("the off-heap storage was already released");
+        }
+        return this;
+    }
+
+    /**
+     * Frees the buffers once there are no more references
+     */
+    void release() {
+        if (references.decrementAndGet() != 0) {
+            return;
+        }
+        ByteBuffer[] chunks = this.chunks;
+        this.chunks = null;
+        ALLOCATED.addAndGet(-bytes);
+        for (ByteBuffer chunk : chunks) {
+            CLEANER.clean(chunk);
+        }
+    }
+
+    boolean isReleased() {
+        return chunks == null;
+    }
+
+    /**
+     * Frees a direct buffer without waiting for it to be garbage collected, through the cleaner of the
+     * buffer on java 8 or {@code Unsafe.invokeCleaner} on later versions. When neither is accessible
+     * the buffer is left to the garbage collector
+     */
+    private static final class Cleaner {
+        private final Object unsafe;
+        private final Method invokeCleaner;
+
+        private Cleaner(Object unsafe, Method invokeCleaner) {
+            this.unsafe = unsafe;
+            this.invokeCleaner = invokeCleaner;
+        }
+
+        static Cleaner create() {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                return new Cleaner(theUnsafe.get(null), unsafeClass.getMethod("invokeCleaner", ByteBuffer.class));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return new Cleaner(null, null);
+            }
+        }
+
+        void clean(ByteBuffer buffer) {
+            try {
+                if (invokeCleaner != null) {
+                    invokeCleaner.invoke(unsafe, buffer);
+                } else {
+                    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                    cleanerMethod.setAccessible(true);
+                    Object cleaner = cleanerMethod.invoke(buffer);
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                //freed by the garbage collector
+            }
+        }
+    }
+}
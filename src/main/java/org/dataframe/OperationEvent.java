@@ -0,0 +1,102 @@
+package org.dataframe;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A completed dataframe operation, see {@link DataframeMetrics}
+ */
+public final class OperationEvent {
+    private final String operation;
+    private final long inputRows;
+    private final long outputRows;
+    private final List<String> columns;
+    private final long wallNanos;
+    private final int partitions;
+    private final long allocatedBytes;
+    private final long spilledBytes;
+    private final long spillNanos;
+
+    OperationEvent(String operation, long inputRows, long outputRows, String[] columns, long wallNanos,
+                   int partitions, long allocatedBytes, long spilledBytes, long spillNanos) {
+        this.operation = operation;
+        this.inputRows = inputRows;
+        this.outputRows = outputRows;
+        this.columns = columns == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(columns));
+        this.wallNanos = wallNanos;
+        this.partitions = partitions;
+        this.allocatedBytes = allocatedBytes;
+        this.spilledBytes = spilledBytes;
+        this.spillNanos = spillNanos;
+    }
+
+    /**
+     * @return name of the operation, e.g. {@code sort}, {@code groupBy} or {@code sql.query}
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return rows read by the operation, -1 if unknown (e.g. rows read from a query)
+     */
+    public long getInputRows() {
+        return inputRows;
+    }
+
+    /**
+     * @return rows produced by the operation, e.g. the number of groups of a group-by
+     */
+    public long getOutputRows() {
+        return outputRows;
+    }
+
+    /**
+     * @return names of the columns the operation read
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * @return number of partitions of the rows that were processed concurrently
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * @return bytes allocated on the heap by the operation, -1 if they could not be measured,
+     * which is the case of operations run on more than one partition
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return bytes written to spill files by the operation, 0 if it ran within its memory budget
+     */
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * @return time spent writing and reading spill files
+     */
+    public long getSpillNanos() {
+        return spillNanos;
+    }
+
+    @Override
+    public String toString() {
+        return operation + " rows " + inputRows + " -> " + outputRows + " columns " + columns
+                + " time " + wallNanos / 1000 + " us partitions " + partitions
+                + (allocatedBytes >= 0 ? " allocated " + allocatedBytes + " bytes" : "")
+                + (spilledBytes > 0 ? " spilled " + spilledBytes + " bytes in " + spillNanos / 1000 + " us" : "");
+    }
+}
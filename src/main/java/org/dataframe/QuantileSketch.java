@@ -0,0 +1,272 @@
+package org.dataframe;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Estimates the quantiles of a stream of numbers in bounded memory (Karnin, Lang and Liberty, KLL).
+ * The values are kept in levels of compactors, a value of level h stands for 2^h values of the stream.
+ * A full level is sorted and every other value, starting at random from the first or the second, is
+ * promoted to the next level, the lower levels get smaller capacities so that the sketch holds about
+ * {@code 3 * k} values whatever the number of values added. The rank error is about {@code 1.7 / k},
+ * under 1% with the default k, the minimum and the maximum are exact.
+ * Sketches merge into the sketch of the union of their values, and are written to bytes with
+ * {@link #toByteArray()} so that partial results can be combined elsewhere
+ */
+public final class QuantileSketch {
+
+    public static final int DEFAULT_K = 200;
+
+    private static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+    private final int k;
+    private double[][] levels = new double[0][];
+    private int[] sizes = new int[0];
+    /**
+     * number of values held by all the levels, and the number of them that triggers a compaction
+     */
+    private int retained;
+    private int capacity;
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    /**
+     * state of the xorshift generator that picks the values to promote, seeded alike in every sketch
+     * so that the results are reproducible
+     */
+    private long random = 0x9E3779B97F4A7C15L;
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    public QuantileSketch(int k) {
+        if (k < 8 || k > 65535) {
+            throw new IllegalArgumentException("k must be between 8 and 65535");
+        }
+        this.k = k;
+        grow();
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * @param value ignored if NaN
+     * @return this sketch
+     */
+    public QuantileSketch add(double value) {
+        if (Double.isNaN(value)) {
+            return this;
+        }
+        if (count++ == 0) {
+            min = max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        append(0, value);
+        if (retained >= capacity) {
+            compress();
+        }
+        return this;
+    }
+
+    private void append(int level, double value) {
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], Math.max(8, sizes[level] * 2));
+        }
+        levels[level][sizes[level]++] = value;
+        retained++;
+    }
+
+    private void grow() {
+        levels = Arrays.copyOf(levels, levels.length + 1);
+        levels[levels.length - 1] = new double[0];
+        sizes = Arrays.copyOf(sizes, sizes.length + 1);
+        capacity = 0;
+        for (int level = 0; level < levels.length; level++) {
+            capacity += capacity(level);
+        }
+    }
+
+    /**
+     * @return the number of values that makes a level full, the top level holds k values
+     */
+    private int capacity(int level) {
+        int depth = levels.length - level - 1;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, depth)));
+    }
+
+    /**
+     * Compacts the lowest full levels until the sketch holds less values than its capacity
+     */
+    private void compress() {
+        while (retained >= capacity) {
+            for (int level = 0; level < levels.length; level++) {
+                if (sizes[level] >= capacity(level)) {
+                    if (level + 1 == levels.length) {
+                        grow();
+                    }
+                    compact(level);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Promotes half of the values of a level to the next one, the smallest value stays if there is an odd
+     * number of them, so that the total weight is kept
+     */
+    private void compact(int level) {
+        double[] values = levels[level];
+        int size = sizes[level];
+        Arrays.sort(values, 0, size);
+        int kept = size & 1;
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        int offset = (int) (random & 1);
+        sizes[level] = kept;
+        retained -= size - kept;
+        for (int i = kept + offset; i < size; i += 2) {
+            append(level + 1, values[i]);
+        }
+    }
+
+    /**
+     * Adds the values of another sketch, of any k
+     * @param other
+     * @return this sketch
+     */
+    public QuantileSketch merge(QuantileSketch other) {
+        if (other.count == 0) {
+            return this;
+        }
+        while (levels.length < other.levels.length) {
+            grow();
+        }
+        for (int level = 0; level < other.levels.length; level++) {
+            for (int i = 0; i < other.sizes[level]; i++) {
+                append(level, other.levels[level][i]);
+            }
+        }
+        min = count == 0 ? other.min : Math.min(min, other.min);
+        max = count == 0 ? other.max : Math.max(max, other.max);
+        count += other.count;
+        compress();
+        return this;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the smallest value added, NaN if none
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return the largest value added, NaN if none
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @param fraction between 0 and 1, e.g. 0.95 for the 95th percentile
+     * @return the estimated value of the quantile, NaN if the sketch is empty
+     */
+    public double quantile(double fraction) {
+        return quantiles(fraction)[0];
+    }
+
+    /**
+     * @param fractions between 0 and 1
+     * @return the estimated value of every quantile, NaN if the sketch is empty
+     */
+    public double[] quantiles(double... fractions) {
+        for (double fraction : fractions) {
+            if (!(fraction >= 0 && fraction <= 1)) {
+                throw new IllegalArgumentException("quantile " + fraction + " is not between 0 and 1");
+            }
+        }
+        double[] quantiles = new double[fractions.length];
+        if (count == 0) {
+            Arrays.fill(quantiles, Double.NaN);
+            return quantiles;
+        }
+        double[] values = new double[retained];
+        int[] levelOf = new int[retained];
+        int n = 0;
+        for (int level = 0; level < levels.length; level++) {
+            for (int i = 0; i < sizes[level]; i++) {
+                values[n] = levels[level][i];
+                levelOf[n++] = level;
+            }
+        }
+        Integer[] sorted = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (left, right) -> Double.compare(values[left], values[right]));
+        //the rank of every value in the stream, a value of level h stands for 2^h values
+        long[] ranks = new long[n];
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            total += 1L << levelOf[sorted[i]];
+            ranks[i] = total;
+        }
+        for (int q = 0; q < fractions.length; q++) {
+            if (fractions[q] == 0) {
+                quantiles[q] = min;
+            } else if (fractions[q] == 1) {
+                quantiles[q] = max;
+            } else {
+                long rank = (long) Math.ceil(fractions[q] * total);
+                int position = Arrays.binarySearch(ranks, 0, n, rank);
+                quantiles[q] = values[sorted[position >= 0 ? position : -position - 1]];
+            }
+        }
+        return quantiles;
+    }
+
+    /**
+     * @return the sketch as bytes, see {@link #fromByteArray(byte[])}
+     */
+    public byte[] toByteArray() {
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 8 * 4 + 4 + 4 * levels.length + 8 * retained)
+                .putInt(k).putLong(count).putDouble(min).putDouble(max).putLong(random).putInt(levels.length);
+        for (int level = 0; level < levels.length; level++) {
+            buffer.putInt(sizes[level]);
+            for (int i = 0; i < sizes[level]; i++) {
+                buffer.putDouble(levels[level][i]);
+            }
+        }
+        return buffer.array();
+    }
+
+    public static QuantileSketch fromByteArray(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        QuantileSketch sketch = new QuantileSketch(buffer.getInt());
+        sketch.count = buffer.getLong();
+        sketch.min = buffer.getDouble();
+        sketch.max = buffer.getDouble();
+        sketch.random = buffer.getLong();
+        int levels = buffer.getInt();
+        while (sketch.levels.length < levels) {
+            sketch.grow();
+        }
+        for (int level = 0; level < levels; level++) {
+            for (int i = buffer.getInt(); i > 0; i--) {
+                sketch.append(level, buffer.getDouble());
+            }
+        }
+        return sketch;
+    }
+}
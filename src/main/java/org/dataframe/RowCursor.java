@@ -0,0 +1,156 @@
+package org.dataframe;
+
+import java.util.Map;
+
+/**
+ * Flyweight over the rows of a dataframe: a single cursor moves from row to row and reads the cells of
+ * its current row through typed accessors, so that visiting the rows allocates nothing. Columns are
+ * resolved once to a handle, see {@link #column(String)}, the accessors by name look the handle up
+ * in a precomputed map. Delta encoded columns are decoded a block of rows at a time into a buffer of the cursor.
+ * A cursor is not thread safe, every partition of a parallel operation has its own
+ */
+public final class RowCursor {
+
+    private final Column[] columns;
+    private final Map<String, Integer> indexByName;
+    private final int to;
+    private int row;
+    /**
+     * decoded cells of the current block of every delta encoded column, null for the other columns
+     */
+    private long[][] blocks;
+    /**
+     * the block held by the buffer of every delta encoded column, -1 before the first
+     */
+    private int[] blockOf;
+
+    /**
+     * @param from first row, the cursor starts before it
+     * @param to end of the rows (exclusive)
+     */
+    RowCursor(Column[] columns, Map<String, Integer> indexByName, int from, int to) {
+        this.columns = columns;
+        this.indexByName = indexByName;
+        this.row = from - 1;
+        this.to = to;
+        for (int column = 0; column < columns.length; column++) {
+            if (columns[column] instanceof EncodedColumn.Delta) {
+                if (blocks == null) {
+                    blocks = new long[columns.length][];
+                    blockOf = new int[columns.length];
+                }
+                blocks[column] = new long[EncodedColumn.Delta.BLOCK_SIZE];
+                blockOf[column] = -1;
+            }
+        }
+    }
+
+    private boolean isDelta(int column) {
+        return blocks != null && blocks[column] != null;
+    }
+
+    /**
+     * @return the cell of the current row of a delta encoded column, decoding its block if the row is past the buffer
+     */
+    private long decoded(int column) {
+        long[] block = blocks[column];
+        int index = row >>> EncodedColumn.Delta.BLOCK_SHIFT;
+        if (blockOf[column] != index) {
+            int start = index << EncodedColumn.Delta.BLOCK_SHIFT;
+            ((EncodedColumn) columns[column]).decode(start, Math.min(start + block.length, columns[column].size()), block);
+            blockOf[column] = index;
+        }
+        return block[row & (block.length - 1)];
+    }
+
+    /**
+     * Moves to the next row
+     * @return false past the last row
+     */
+    public boolean next() {
+        return ++row < to;
+    }
+
+    RowCursor moveTo(int row) {
+        this.row = row;
+        return this;
+    }
+
+    /**
+     * @return the current row
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * @param columnName
+     * @return the handle of the column for the typed accessors
+     */
+    public int column(String columnName) {
+        Integer index = indexByName.get(columnName);
+        if (index == null) {
+            throw new IllegalArgumentException("no column " + columnName);
+        }
+        return index;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public Object get(int column) {
+        if (isDelta(column)) {
+            return columns[column].isNull(row) ? null : ((EncodedColumn) columns[column]).box(decoded(column));
+        }
+        return columns[column].get(row);
+    }
+
+    public double getDouble(int column) {
+        return isDelta(column) ? decoded(column) : columns[column].getDouble(row);
+    }
+
+    public long getLong(int column) {
+        return isDelta(column) ? decoded(column) : columns[column].getLong(row);
+    }
+
+    public boolean getBoolean(int column) {
+        return (Boolean) columns[column].get(row);
+    }
+
+    /**
+     * @return the cell as a string, dictionary encoded cells are returned without copying them
+     */
+    public String getString(int column) {
+        Object cell = columns[column].get(row);
+        return cell == null || cell instanceof String ? (String) cell : cell.toString();
+    }
+
+    public boolean isNull(int column) {
+        return columns[column].isNull(row);
+    }
+
+    public Object get(String columnName) {
+        return get(column(columnName));
+    }
+
+    public double getDouble(String columnName) {
+        return getDouble(column(columnName));
+    }
+
+    public long getLong(String columnName) {
+        return getLong(column(columnName));
+    }
+
+    public boolean getBoolean(String columnName) {
+        return getBoolean(column(columnName));
+    }
+
+    public String getString(String columnName) {
+        return getString(column(columnName));
+    }
+
+    public boolean isNull(String columnName) {
+        return isNull(column(columnName));
+    }
+}
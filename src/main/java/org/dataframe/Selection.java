@@ -0,0 +1,89 @@
+package org.dataframe;
+
+import java.util.Arrays;
+
+/**
+ * Exact quantiles of an array of doubles without sorting it. Introselect: quickselect with a median of
+ * three pivot and a three way partition, so that runs of equal values end the search at once, falling
+ * back to sorting the remaining range if the partitions keep being unbalanced
+ */
+final class Selection {
+
+    private static final int SORT_THRESHOLD = 16;
+
+    private Selection() {
+    }
+
+    /**
+     * Moves the value of the given rank to its position in sorted order, the smaller values before it and
+     * the larger ones after it
+     * @param values without NaN
+     * @param size number of values at the start of the array
+     * @param rank
+     */
+    static void select(double[] values, int size, int rank) {
+        int from = 0;
+        int to = size;
+        //twice the depth of a balanced search
+        int depth = 2 * (32 - Integer.numberOfLeadingZeros(size));
+        while (to - from > SORT_THRESHOLD && depth-- > 0) {
+            double pivot = medianOfThree(values[from], values[(from + to) >>> 1], values[to - 1]);
+            int less = from;
+            int greater = to;
+            for (int i = from; i < greater; ) {
+                if (values[i] < pivot) {
+                    swap(values, less++, i++);
+                } else if (values[i] > pivot) {
+                    swap(values, i, --greater);
+                } else {
+                    i++;
+                }
+            }
+            if (rank < less) {
+                to = less;
+            } else if (rank >= greater) {
+                from = greater;
+            } else {
+                return;
+            }
+        }
+        Arrays.sort(values, from, to);
+    }
+
+    /**
+     * Interpolates linearly between the values of the ranks around {@code quantile * (size - 1)}, like the
+     * default of R and numpy. The array is reordered
+     * @param values without NaN
+     * @param size number of values at the start of the array
+     * @param quantile between 0 and 1
+     * @return the quantile, NaN if there are no values
+     */
+    static double quantile(double[] values, int size, double quantile) {
+        if (size == 0) {
+            return Double.NaN;
+        }
+        double position = quantile * (size - 1);
+        int rank = (int) Math.floor(position);
+        select(values, size, rank);
+        double value = values[rank];
+        if (position == rank) {
+            return value;
+        }
+        //the next value in sorted order is the smallest one after the rank
+        double next = Double.POSITIVE_INFINITY;
+        for (int i = rank + 1; i < size; i++) {
+            next = Math.min(next, values[i]);
+        }
+        return value + (position - rank) * (next - value);
+    }
+
+    private static double medianOfThree(double a, double b, double c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private static void swap(double[] values, int left, int right) {
+        double value = values[left];
+        values[left] = values[right];
+        values[right] = value;
+    }
+}
@@ -0,0 +1,66 @@
+package org.dataframe;
+
+/**
+ * A column to sort a {@link Dataframe} by, along with the direction and the position of nulls.
+ * Nulls are placed last unless {@link #nullsFirst()} is requested, NaN values of double columns sort
+ * above positive infinity
+ */
+public class SortKey {
+    private final int index;
+    private final String columnName;
+    private final boolean ascending;
+    private final boolean nullsFirst;
+
+    private SortKey(int index, String columnName, boolean ascending, boolean nullsFirst) {
+        this.index = index;
+        this.columnName = columnName;
+        this.ascending = ascending;
+        this.nullsFirst = nullsFirst;
+    }
+
+    public static SortKey asc(int index) {
+        return new SortKey(index, null, true, false);
+    }
+
+    public static SortKey asc(String columnName) {
+        return new SortKey(-1, columnName, true, false);
+    }
+
+    public static SortKey desc(int index) {
+        return new SortKey(index, null, false, false);
+    }
+
+    public static SortKey desc(String columnName) {
+        return new SortKey(-1, columnName, false, false);
+    }
+
+    public SortKey nullsFirst() {
+        return new SortKey(index, columnName, ascending, true);
+    }
+
+    public SortKey nullsLast() {
+        return new SortKey(index, columnName, ascending, false);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public boolean isNullsFirst() {
+        return nullsFirst;
+    }
+
+    @Override
+    public String toString() {
+        return (columnName != null ? columnName : String.valueOf(index)) + (ascending ? " ASC" : " DESC")
+                + (nullsFirst ? " NULLS FIRST" : " NULLS LAST");
+    }
+}
@@ -0,0 +1,256 @@
+package org.dataframe;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the permutation that sorts the rows of a dataframe by one or more columns.
+ * Every sort key is first encoded in a long per row that preserves the order of the column
+ * (see {@link Column#sortKeys()}), rows are then sorted in parallel runs which are merged pairwise.
+ * A single key is sorted by a LSD radix sort on the encoded values, multiple keys by a merge sort,
+ * both of them are stable
+ */
+final class Sorter {
+
+    /**
+     * Runs up to this size are never split further
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private final long[][] keys;
+    private final boolean[][] nulls;
+    private final boolean[] nullsFirst;
+
+    Sorter(Column[] columns, boolean[] ascending, boolean[] nullsFirst) {
+        this.keys = new long[columns.length][];
+        this.nulls = new boolean[columns.length][];
+        this.nullsFirst = nullsFirst;
+        for (int k = 0; k < columns.length; k++) {
+            keys[k] = columns[k].sortKeys();
+            nulls[k] = nulls(columns[k]);
+            if (!ascending[k]) {
+                long[] key = keys[k];
+                for (int row = 0; row < key.length; row++) {
+                    key[row] = ~key[row];
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts rows by keys that are already encoded in the direction of the sort
+     * @param nulls the null flags of every key, null if the key has no null
+     */
+    Sorter(long[][] keys, boolean[][] nulls, boolean[] nullsFirst) {
+        this.keys = keys;
+        this.nulls = nulls;
+        this.nullsFirst = nullsFirst;
+    }
+
+    private static boolean[] nulls(Column column) {
+        if (column.nullCount() == 0) {
+            return null;
+        }
+        boolean[] nulls = null;
+        for (int row = 0, size = column.size(); row < size; row++) {
+            if (column.isNull(row)) {
+                if (nulls == null) {
+                    nulls = new boolean[size];
+                }
+                nulls[row] = true;
+            }
+        }
+        return nulls;
+    }
+
+    /**
+     * @return bytes of working memory per sorted row for the given number of keys: the encoded keys, the
+     * null flags, the permutation and its merge buffer, and the copies of the keys of the radix sort
+     */
+    static long bytesPerRow(int keys) {
+        return 9L * keys + 8 + (keys == 1 ? 16 : 0);
+    }
+
+    /**
+     * @return the encoded key of a row, in the direction of the sort
+     */
+    long key(int k, int row) {
+        return keys[k][row];
+    }
+
+    boolean isNull(int k, int row) {
+        return nulls[k] != null && nulls[k][row];
+    }
+
+    int compare(int left, int right) {
+        for (int k = 0; k < keys.length; k++) {
+            if (nulls[k] != null && (nulls[k][left] || nulls[k][right])) {
+                if (nulls[k][left] == nulls[k][right]) {
+                    continue;
+                }
+                return nulls[k][left] == nullsFirst[k] ? -1 : 1;
+            }
+            int compare = Long.compare(keys[k][left], keys[k][right]);
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param execution
+     * @return the permutation of the rows in sorted order
+     */
+    int[] sort(Execution execution) {
+        int size = keys.length == 0 ? 0 : keys[0].length;
+        int[] permutation = new int[size];
+        for (int row = 0; row < size; row++) {
+            permutation[row] = row;
+        }
+        if (keys.length == 0) {
+            return permutation;
+        }
+        int from = 0, to = size;
+        if (keys.length == 1 && nulls[0] != null) {
+            //a stable partition of null rows leaves only values for the radix sort
+            int[] partitioned = new int[size];
+            int values = 0, nullCount = 0;
+            for (int row = 0; row < size; row++) {
+                if (!nulls[0][row]) {
+                    values++;
+                }
+            }
+            int valueIndex = nullsFirst[0] ? size - values : 0;
+            int nullIndex = nullsFirst[0] ? 0 : values;
+            for (int row = 0; row < size; row++) {
+                if (nulls[0][row]) {
+                    partitioned[nullIndex + nullCount++] = row;
+                } else {
+                    partitioned[valueIndex++] = row;
+                }
+            }
+            permutation = partitioned;
+            from = nullsFirst[0] ? size - values : 0;
+            to = from + values;
+        }
+        int threshold = Math.max(SEQUENTIAL_THRESHOLD, (to - from + execution.parallelism - 1) / execution.parallelism);
+        execution.pool.invoke(new SortTask(permutation, new int[size], from, to, threshold));
+        return permutation;
+    }
+
+    private class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] permutation;
+        private final int[] buffer;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        SortTask(int[] permutation, int[] buffer, int from, int to, int threshold) {
+            this.permutation = permutation;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                if (keys.length == 1) {
+                    radixSort(permutation, buffer, from, to);
+                } else {
+                    mergeSort(permutation, buffer, from, to);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SortTask(permutation, buffer, from, middle, threshold), new SortTask(permutation, buffer, middle, to, threshold));
+            merge(permutation, buffer, from, middle, to);
+        }
+    }
+
+    private void mergeSort(int[] permutation, int[] buffer, int from, int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int row = permutation[i];
+                int j = i - 1;
+                while (j >= from && compare(permutation[j], row) > 0) {
+                    permutation[j + 1] = permutation[j];
+                    j--;
+                }
+                permutation[j + 1] = row;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(permutation, buffer, from, middle);
+        mergeSort(permutation, buffer, middle, to);
+        merge(permutation, buffer, from, middle, to);
+    }
+
+    /**
+     * Merges two adjacent sorted runs, on equal keys the row of the left run comes first
+     */
+    private void merge(int[] permutation, int[] buffer, int from, int middle, int to) {
+        if (compare(permutation[middle - 1], permutation[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(permutation, from, buffer, from, to - from);
+        int left = from, right = middle, index = from;
+        while (left < middle && right < to) {
+            permutation[index++] = compare(buffer[right], buffer[left]) < 0 ? buffer[right++] : buffer[left++];
+        }
+        while (left < middle) {
+            permutation[index++] = buffer[left++];
+        }
+        while (right < to) {
+            permutation[index++] = buffer[right++];
+        }
+    }
+
+    /**
+     * LSD radix sort of a run on the single key, bytes that are equal for all rows of the run are skipped
+     */
+    private void radixSort(int[] permutation, int[] buffer, int from, int to) {
+        long[] key = keys[0];
+        int length = to - from;
+        if (length < 2) {
+            return;
+        }
+        long[] values = new long[length];
+        long[] valuesBuffer = new long[length];
+        long differences = 0;
+        for (int i = 0; i < length; i++) {
+            values[i] = key[permutation[from + i]] ^ Long.MIN_VALUE;
+            differences |= values[i] ^ values[0];
+        }
+        int[] rows = buffer;
+        int[] counts = new int[257];
+        for (int shift = 0; shift < Long.SIZE; shift += 8) {
+            if (((differences >>> shift) & 0xFF) == 0) {
+                continue;
+            }
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < length; i++) {
+                counts[(int) ((values[i] >>> shift) & 0xFF) + 1]++;
+            }
+            for (int i = 1; i < counts.length; i++) {
+                counts[i] += counts[i - 1];
+            }
+            for (int i = 0; i < length; i++) {
+                int bucket = (int) ((values[i] >>> shift) & 0xFF);
+                int target = counts[bucket]++;
+                valuesBuffer[target] = values[i];
+                rows[from + target] = permutation[from + i];
+            }
+            long[] swapValues = values;
+            values = valuesBuffer;
+            valuesBuffer = swapValues;
+            System.arraycopy(rows, from, permutation, from, length);
+        }
+    }
+}
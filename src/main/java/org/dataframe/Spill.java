@@ -0,0 +1,223 @@
+package org.dataframe;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Temporary files of an operation that exceeds its memory budget, see {@link Dataframe#memoryBudget(long)}.
+ * Records of primitive values are written and read sequentially through buffers of a bounded size on file
+ * channels, the files are deleted when the spill is closed. Counts the bytes written and the time spent
+ * on the files
+ */
+final class Spill implements AutoCloseable {
+
+    /**
+     * bytes written to spill files since the start of the jvm
+     */
+    private static final AtomicLong SPILLED = new AtomicLong();
+
+    private static final int MIN_BUFFER_SIZE = 1 << 12;
+    private static final int MAX_BUFFER_SIZE = 1 << 20;
+
+    private final Path directory;
+    private final List<Path> files = new ArrayList<>();
+    private long bytes;
+    private long nanos;
+
+    Spill(Path directory) {
+        this.directory = directory != null ? directory : Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    static long getSpilledBytes() {
+        return SPILLED.get();
+    }
+
+    /**
+     * @param budget bytes that the buffers of all the files open at once may take
+     * @param files number of files open at once
+     * @return the size of the buffer of every file
+     */
+    static int bufferSize(long budget, int files) {
+        return (int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, budget / Math.max(1, files)));
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    long nanos() {
+        return nanos;
+    }
+
+    /**
+     * @return a new empty file, see {@link #open(int, int)} to read it once written
+     */
+    Output create(int bufferSize) {
+        try {
+            Path file = Files.createTempFile(directory, "dataframe-spill", ".bin");
+            file.toFile().deleteOnExit();
+            files.add(file);
+            return new Output(FileChannel.open(file, StandardOpenOption.WRITE), bufferSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param file number of the file in order of creation
+     */
+    Input open(int file, int bufferSize) {
+        try {
+            return new Input(FileChannel.open(files.get(file), StandardOpenOption.READ), bufferSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Deletes the files
+     */
+    @Override
+    public void close() {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                //deleted on exit
+            }
+        }
+        files.clear();
+    }
+
+    final class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        private Output(FileChannel channel, int bufferSize) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        private void ensureRemaining(int length) {
+            if (buffer.remaining() < length) {
+                flush();
+            }
+        }
+
+        void putInt(int value) {
+            ensureRemaining(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensureRemaining(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void put(byte value) {
+            ensureRemaining(1);
+            buffer.put(value);
+        }
+
+        private void flush() {
+            long start = System.nanoTime();
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    int written = channel.write(buffer);
+                    bytes += written;
+                    SPILLED.addAndGet(written);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.clear();
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() {
+            flush();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    final class Input implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private boolean end;
+
+        private Input(FileChannel channel, int bufferSize) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+            buffer.limit(0);
+        }
+
+        /**
+         * @return false at the end of the file
+         */
+        boolean hasRemaining() {
+            if (!buffer.hasRemaining()) {
+                fill(1);
+            }
+            return buffer.hasRemaining();
+        }
+
+        private void fill(int length) {
+            if (buffer.remaining() >= length || end) {
+                return;
+            }
+            long start = System.nanoTime();
+            buffer.compact();
+            try {
+                while (buffer.position() < length) {
+                    if (channel.read(buffer) < 0) {
+                        end = true;
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            buffer.flip();
+            nanos += System.nanoTime() - start;
+        }
+
+        int getInt() {
+            fill(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        long getLong() {
+            fill(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        byte get() {
+            fill(1);
+            return buffer.get();
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package org.dataframe;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Keeps the first n rows in the order of a column: a bounded binary heap of primitive arrays whose root
+ * is the last row kept, replaced whenever a row precedes it. Rows are compared like {@link Sorter} compares
+ * them, nulls last and equal cells in row order, so that the rows kept are the first rows of the sorted
+ * dataframe. Heaps of partitions of the rows merge into the heap of all the rows
+ */
+final class TopN {
+
+    private final int capacity;
+    /**
+     * the heap, grown up to the capacity as rows are kept
+     */
+    private long[] keys;
+    private boolean[] nulls;
+    private int[] rows;
+    private int size;
+
+    TopN(int capacity) {
+        this.capacity = capacity;
+        int length = Math.min(capacity, 16);
+        this.keys = new long[length];
+        this.nulls = new boolean[length];
+        this.rows = new int[length];
+    }
+
+    /**
+     * @return whether the cells of the column are doubles, longs or ints, whatever the column holds them in
+     */
+    static boolean isPrimitive(Column column) {
+        return (column.type() == Double.class || column.type() == Long.class || column.type() == Integer.class)
+                && column.isNumeric();
+    }
+
+    /**
+     * @param ascending false to encode the cells so that larger cells come first
+     * @return the order preserving key of every row of a column, see {@link Column#sortKeys()}. Primitive
+     * cells are encoded as they are read, the keys of the other columns are computed for all the rows at once
+     */
+    static IntToLongFunction keys(Column column, boolean ascending) {
+        IntToLongFunction keys;
+        if (column.type() == Double.class && column.isNumeric()) {
+            keys = row -> {
+                long bits = Double.doubleToLongBits(column.getDouble(row));
+                return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+            };
+        } else if (isPrimitive(column)) {
+            keys = column::getLong;
+        } else {
+            long[] sortKeys = column.sortKeys();
+            keys = row -> sortKeys[row];
+        }
+        return ascending ? keys : row -> ~keys.applyAsLong(row);
+    }
+
+    /**
+     * @return true if the left entry comes after the right one
+     */
+    private static boolean after(boolean leftNull, long leftKey, int leftRow, boolean rightNull, long rightKey, int rightRow) {
+        if (leftNull != rightNull) {
+            return leftNull;
+        }
+        if (!leftNull && leftKey != rightKey) {
+            return leftKey > rightKey;
+        }
+        return leftRow > rightRow;
+    }
+
+    private boolean after(int left, int right) {
+        return after(nulls[left], keys[left], rows[left], nulls[right], keys[right], rows[right]);
+    }
+
+    void offer(boolean isNull, long key, int row) {
+        if (size < capacity) {
+            if (size == keys.length) {
+                int length = (int) Math.min(capacity, 2L * size);
+                keys = Arrays.copyOf(keys, length);
+                nulls = Arrays.copyOf(nulls, length);
+                rows = Arrays.copyOf(rows, length);
+            }
+            keys[size] = key;
+            nulls[size] = isNull;
+            rows[size] = row;
+            siftUp(size++);
+        } else if (capacity > 0 && after(nulls[0], keys[0], rows[0], isNull, key, row)) {
+            keys[0] = key;
+            nulls[0] = isNull;
+            rows[0] = row;
+            siftDown(0, size);
+        }
+    }
+
+    private void siftUp(int child) {
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (!after(child, parent)) {
+                return;
+            }
+            swap(child, parent);
+            child = parent;
+        }
+    }
+
+    private void siftDown(int parent, int size) {
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= size) {
+                return;
+            }
+            if (child + 1 < size && after(child + 1, child)) {
+                child++;
+            }
+            if (!after(child, parent)) {
+                return;
+            }
+            swap(child, parent);
+            parent = child;
+        }
+    }
+
+    private void swap(int left, int right) {
+        long key = keys[left];
+        keys[left] = keys[right];
+        keys[right] = key;
+        boolean isNull = nulls[left];
+        nulls[left] = nulls[right];
+        nulls[right] = isNull;
+        int row = rows[left];
+        rows[left] = rows[right];
+        rows[right] = row;
+    }
+
+    /**
+     * Offers the rows of a range of a column
+     * @param keys see {@link #keys(Column, boolean)}
+     */
+    TopN offer(Column column, IntToLongFunction keys, int from, int to) {
+        for (int row = from; row < to; row++) {
+            boolean isNull = column.isNull(row);
+            offer(isNull, isNull ? 0 : keys.applyAsLong(row), row);
+        }
+        return this;
+    }
+
+    TopN merge(TopN other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.nulls[i], other.keys[i], other.rows[i]);
+        }
+        return this;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Empties the heap
+     * @return the rows kept, first row first
+     */
+    int[] rows() {
+        //heap sort, the last row kept is moved at the end of the heap first
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        int[] sorted = new int[size];
+        System.arraycopy(rows, 0, sorted, 0, size);
+        size = 0;
+        return sorted;
+    }
+}
@@ -0,0 +1,245 @@
+package org.dataframe;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * A column that reads the cells of a parent column through a mapping of its rows, without copying them.
+ * Operations that need the cells in bulk (sorting, grouping, filtering) copy only the rows they visit
+ * into a compact temporary column of the parent's type
+ */
+abstract class ViewColumn extends Column {
+
+    protected final Column parent;
+
+    ViewColumn(Column parent) {
+        this.parent = parent;
+    }
+
+    Column parent() {
+        return parent;
+    }
+
+    abstract int parentRow(int row);
+
+    /**
+     * @return the rows of the parent for the given range of rows of the view
+     */
+    abstract int[] parentRows(int from, int to);
+
+    @Override
+    public Class<?> type() {
+        return parent.type();
+    }
+
+    @Override
+    public boolean isNumeric() {
+        return parent.isNumeric();
+    }
+
+    @Override
+    public Object get(int row) {
+        return parent.get(parentRow(row));
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return parent.getDouble(parentRow(row));
+    }
+
+    @Override
+    public long getLong(int row) {
+        return parent.getLong(parentRow(row));
+    }
+
+    @Override
+    public boolean isNull(int row) {
+        return parent.isNull(parentRow(row));
+    }
+
+    @Override
+    public Column gather(int[] rows) {
+        int[] parentRows = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            parentRows[i] = parentRow(rows[i]);
+        }
+        return parent.gather(parentRows);
+    }
+
+    @Override
+    public Column materialize() {
+        return parent.gather(parentRows(0, size()));
+    }
+
+    @Override
+    Stream<OffHeapStorage> storages() {
+        return parent.storages();
+    }
+
+    private Column range(int from, int to) {
+        return parent.gather(parentRows(from, to));
+    }
+
+    /**
+     * Adds the rows of the matches, relative to the start of the range, to the bitmap
+     */
+    private static void offset(RoaringBitmap matches, int from, RoaringBitmap rows) {
+        IntIterator iterator = matches.getIntIterator();
+        while (iterator.hasNext()) {
+            rows.add(from + iterator.next());
+        }
+    }
+
+    @Override
+    void set(int row, Object value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    long[] sortKeys() {
+        return materialize().sortKeys();
+    }
+
+    @Override
+    int[] groupCodes() {
+        return materialize().groupCodes();
+    }
+
+    @Override
+    Set<Object> distinct(int from, int to) {
+        Column range = range(from, to);
+        return range.distinct(0, range.size());
+    }
+
+    @Override
+    void selectEqual(Object value, int from, int to, RoaringBitmap rows) {
+        Column range = range(from, to);
+        RoaringBitmap matches = new RoaringBitmap();
+        range.selectEqual(value, 0, range.size(), matches);
+        offset(matches, from, rows);
+    }
+
+    @Override
+    void selectRange(Object low, boolean lowInclusive, Object high, boolean highInclusive, int from, int to, RoaringBitmap rows) {
+        Column range = range(from, to);
+        RoaringBitmap matches = new RoaringBitmap();
+        range.selectRange(low, lowInclusive, high, highInclusive, 0, range.size(), matches);
+        offset(matches, from, rows);
+    }
+
+    @Override
+    void selectIn(Set<Object> values, int from, int to, RoaringBitmap rows) {
+        Column range = range(from, to);
+        RoaringBitmap matches = new RoaringBitmap();
+        range.selectIn(values, 0, range.size(), matches);
+        offset(matches, from, rows);
+    }
+
+    @Override
+    void selectNull(int from, int to, RoaringBitmap rows) {
+        Column range = range(from, to);
+        RoaringBitmap matches = new RoaringBitmap();
+        range.selectNull(0, range.size(), matches);
+        offset(matches, from, rows);
+    }
+
+    /**
+     * View of the rows of a parent column listed in a selection vector or a permutation
+     */
+    static class Indexed extends ViewColumn {
+        private final int[] rows;
+
+        Indexed(Column parent, int[] rows) {
+            super(parent);
+            this.rows = rows;
+        }
+
+        int[] rows() {
+            return rows;
+        }
+
+        @Override
+        public int size() {
+            return rows.length;
+        }
+
+        @Override
+        int parentRow(int row) {
+            return rows[row];
+        }
+
+        @Override
+        int[] parentRows(int from, int to) {
+            return from == 0 && to == rows.length ? rows : Arrays.copyOfRange(rows, from, to);
+        }
+
+        @Override
+        Column slice(int from, int to) {
+            return new Indexed(parent, Arrays.copyOfRange(rows, from, to));
+        }
+
+        @Override
+        KahanSum sum(int from, int to) {
+            if (!(parent instanceof DoubleColumn)) {
+                return super.sum(from, to);
+            }
+            double[] values = ((DoubleColumn) parent).values();
+            KahanSum sum = new KahanSum();
+            for (int row = from; row < to; row++) {
+                sum.add(values[rows[row]]);
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * View of a contiguous range of rows of a parent column
+     */
+    static class Sliced extends ViewColumn {
+        private final int offset;
+        private final int length;
+
+        Sliced(Column parent, int offset, int length) {
+            super(parent);
+            this.offset = offset;
+            this.length = length;
+        }
+
+        int offset() {
+            return offset;
+        }
+
+        @Override
+        public int size() {
+            return length;
+        }
+
+        @Override
+        int parentRow(int row) {
+            return offset + row;
+        }
+
+        @Override
+        int[] parentRows(int from, int to) {
+            int[] parentRows = new int[to - from];
+            for (int i = 0; i < parentRows.length; i++) {
+                parentRows[i] = offset + from + i;
+            }
+            return parentRows;
+        }
+
+        @Override
+        KahanSum sum(int from, int to) {
+            return parent.sum(offset + from, offset + to);
+        }
+
+        @Override
+        Column slice(int from, int to) {
+            return new Sliced(parent, offset + from, to - from);
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package org.dataframe;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The rows of a dataframe in window order: grouped by the partition keys and sorted by the order keys
+ * within every partition. Window functions walk the rows in that order and write their result at the
+ * original position of every row. Ranges of rows are processed in parallel, the ranges never cross a
+ * partition unless the function only looks back a bounded number of rows (e.g. a rolling window),
+ * in which case a range starts by reading the rows that precede it
+ */
+final class Window {
+
+    /**
+     * Frames of this many rows run from the start of the partition
+     */
+    static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    /**
+     * the rows in window order
+     */
+    final int[] order;
+    /**
+     * the position of the first row of every partition in the order, followed by the size
+     */
+    final int[] starts;
+    /**
+     * compares the order keys of two rows, null without order keys
+     */
+    private final Sorter sorter;
+    private final Execution execution;
+
+    private Window(int[] order, int[] starts, Sorter sorter, Execution execution) {
+        this.order = order;
+        this.starts = starts;
+        this.sorter = sorter;
+        this.execution = execution;
+    }
+
+    static Window of(Column[] partitionBy, Column[] orderBy, boolean[] ascending, boolean[] nullsFirst, int size, Execution execution) {
+        if (partitionBy.length == 0) {
+            Sorter sorter = orderBy.length == 0 ? null : new Sorter(orderBy, ascending, nullsFirst);
+            int[] order = sorter == null ? IntStream.range(0, size).toArray() : sorter.sort(execution);
+            return new Window(order, size == 0 ? new int[]{0} : new int[]{0, size}, sorter, execution);
+        }
+        Grouping grouping = Grouping.of(partitionBy, size, execution);
+        Column[] keys = new Column[orderBy.length + 1];
+        keys[0] = new IntColumn(grouping.groupIds);
+        System.arraycopy(orderBy, 0, keys, 1, orderBy.length);
+        boolean[] keysAscending = new boolean[keys.length];
+        boolean[] keysNullsFirst = new boolean[keys.length];
+        keysAscending[0] = true;
+        System.arraycopy(ascending, 0, keysAscending, 1, orderBy.length);
+        System.arraycopy(nullsFirst, 0, keysNullsFirst, 1, orderBy.length);
+        Sorter sorter = new Sorter(keys, keysAscending, keysNullsFirst);
+        int[] order = sorter.sort(execution);
+        int[] starts = new int[grouping.groupCount + 1];
+        int partition = 0;
+        for (int i = 1; i < size; i++) {
+            if (grouping.groupIds[order[i]] != grouping.groupIds[order[i - 1]]) {
+                starts[++partition] = i;
+            }
+        }
+        starts[grouping.groupCount] = size;
+        return new Window(order, starts, orderBy.length == 0 ? null : sorter, execution);
+    }
+
+    @FunctionalInterface
+    interface RangeAction {
+        /**
+         * @param start position of the first row of the partition
+         * @param end position after the last row of the partition
+         * @param from first position of the range
+         * @param to position after the last row of the range
+         */
+        void apply(int start, int end, int from, int to);
+    }
+
+    @FunctionalInterface
+    interface FrameAggregate {
+        /**
+         * @param column a numeric column
+         * @param frame number of rows of the frame
+         */
+        Column apply(Column column, int frame);
+    }
+
+    /**
+     * Runs the action on ranges of positions in parallel, every range within a single partition
+     * @param split true to split the partitions that span several ranges, false to keep whole partitions in a range
+     */
+    void forEach(boolean split, RangeAction action) {
+        int size = order.length;
+        int[] bounds = execution.bounds(size);
+        if (!split) {
+            for (int i = 1; i < bounds.length - 1; i++) {
+                bounds[i] = starts[partition(bounds[i] - 1) + 1];
+            }
+        }
+        execution.forEach(bounds.length - 1, range -> {
+            int from = bounds[range];
+            int to = bounds[range + 1];
+            for (int partition = from < to ? partition(from) : starts.length; from < to; partition++) {
+                int end = starts[partition + 1];
+                action.apply(starts[partition], end, from, Math.min(to, end));
+                from = end;
+            }
+        });
+    }
+
+    /**
+     * @return the partition of a position
+     */
+    private int partition(int position) {
+        int partition = Arrays.binarySearch(starts, position);
+        if (partition >= 0) {
+            //the start of a partition after empty ones
+            while (starts[partition + 1] == position) {
+                partition++;
+            }
+            return partition;
+        }
+        return -partition - 2;
+    }
+
+    /**
+     * @return the cells of a numeric column in window order, zero for nulls
+     */
+    private double[] values(Column column) {
+        Column cells = cells(column);
+        double[] values = new double[order.length];
+        forEach(true, (start, end, from, to) -> {
+            for (int i = from; i < to; i++) {
+                int row = order[i];
+                values[i] = cells.isNull(row) ? 0 : cells.getDouble(row);
+            }
+        });
+        return values;
+    }
+
+    /**
+     * @return the cells of a long or int column in window order, zero for nulls
+     */
+    private long[] longs(Column column) {
+        Column cells = cells(column);
+        long[] longs = new long[order.length];
+        forEach(true, (start, end, from, to) -> {
+            for (int i = from; i < to; i++) {
+                int row = order[i];
+                longs[i] = cells.isNull(row) ? 0 : cells.getLong(row);
+            }
+        });
+        return longs;
+    }
+
+    private static Column cells(Column column) {
+        if (!column.isNumeric()) {
+            throw new IllegalArgumentException("window aggregates need a numeric column, not " + column.type().getSimpleName());
+        }
+        //delta encoded cells are decoded once instead of from the start of their block per row
+        return column instanceof EncodedColumn.Delta ? ((EncodedColumn) column).decoded() : column;
+    }
+
+    /**
+     * @return whether every cell of the column is null, in window order, null if no cell is
+     */
+    private boolean[] nulls(Column column) {
+        if (column.nullCount() == 0) {
+            return null;
+        }
+        boolean[] nulls = new boolean[order.length];
+        forEach(true, (start, end, from, to) -> {
+            for (int i = from; i < to; i++) {
+                nulls[i] = column.isNull(order[i]);
+            }
+        });
+        return nulls;
+    }
+
+    /**
+     * @return the position of every row within its partition, starting at one
+     */
+    IntColumn rowNumber() {
+        int[] numbers = new int[order.length];
+        forEach(true, (start, end, from, to) -> {
+            for (int i = from; i < to; i++) {
+                numbers[order[i]] = i - start + 1;
+            }
+        });
+        return new IntColumn(numbers);
+    }
+
+    /**
+     * @return one plus the number of rows of the partition that precede the row in the order, rows with
+     * equal order keys get the same rank
+     */
+    IntColumn rank() {
+        int[] ranks = new int[order.length];
+        forEach(true, (start, end, from, to) -> {
+            int first = from;
+            while (first > start && peers(first - 1, first)) {
+                first--;
+            }
+            for (int i = from; i < to; i++) {
+                if (i > first && !peers(i - 1, i)) {
+                    first = i;
+                }
+                ranks[order[i]] = first - start + 1;
+            }
+        });
+        return new IntColumn(ranks);
+    }
+
+    private boolean peers(int left, int right) {
+        return sorter == null || sorter.compare(order[left], order[right]) == 0;
+    }
+
+    /**
+     * @param offset number of rows to look back, negative to look ahead
+     * @return the row that many rows before every row in its partition, -1 if there is none
+     */
+    int[] shift(int offset) {
+        int[] rows = new int[order.length];
+        forEach(true, (start, end, from, to) -> {
+            for (int i = from; i < to; i++) {
+                long shifted = (long) i - offset;
+                rows[order[i]] = shifted >= start && shifted < end ? order[(int) shifted] : -1;
+            }
+        });
+        return rows;
+    }
+
+    /**
+     * Sums the non null cells of the frame of every row: the row and up to {@code frame - 1} rows before it
+     * in its partition. The sum slides, adding the entering cell and subtracting the leaving one, infinite
+     * and NaN cells are counted apart so that they only turn the sums of their frames into NaN
+     * @param column a numeric column
+     * @param mean true to divide the sums by the number of non null cells
+     * @return the sums, null for frames without values
+     */
+    DoubleColumn sum(Column column, int frame, boolean mean) {
+        double[] values = values(column);
+        boolean[] nulls = nulls(column);
+        double[] sums = new double[order.length];
+        boolean[] empty = new boolean[order.length];
+        forEach(frame != UNBOUNDED, (start, end, from, to) -> {
+            KahanSum sum = new KahanSum();
+            int count = 0;
+            int positive = 0;
+            int negative = 0;
+            int nan = 0;
+            int first = (int) Math.max(start, (long) from - frame + 1);
+            for (int i = first; i < to; i++) {
+                if (nulls == null || !nulls[i]) {
+                    double value = values[i];
+                    if (value == Double.POSITIVE_INFINITY) {
+                        positive++;
+                    } else if (value == Double.NEGATIVE_INFINITY) {
+                        negative++;
+                    } else if (Double.isNaN(value)) {
+                        nan++;
+                    } else {
+                        sum.add(value);
+                    }
+                    count++;
+                }
+                long leaving = (long) i - frame;
+                if (leaving >= first && (nulls == null || !nulls[(int) leaving])) {
+                    double left = values[(int) leaving];
+                    if (left == Double.POSITIVE_INFINITY) {
+                        positive--;
+                    } else if (left == Double.NEGATIVE_INFINITY) {
+                        negative--;
+                    } else if (Double.isNaN(left)) {
+                        nan--;
+                    } else {
+                        sum.add(-left);
+                    }
+                    count--;
+                }
+                if (i >= from) {
+                    double total = nan > 0 || positive > 0 && negative > 0 ? Double.NaN
+                            : positive > 0 ? Double.POSITIVE_INFINITY
+                            : negative > 0 ? Double.NEGATIVE_INFINITY : sum.value();
+                    if (count == 0) {
+                        empty[order[i]] = true;
+                    } else {
+                        sums[order[i]] = mean ? total / count : total;
+                    }
+                }
+            }
+        });
+        return new DoubleColumn(sums, NullBitmap.of(empty.length, row -> empty[row]));
+    }
+
+    /**
+     * Finds the minimum or maximum of the non null cells of the frame of every row with a monotonic deque:
+     * the positions of the frame whose cell is not exceeded by a later cell, the head holds the extreme.
+     * NaN cells are counted apart, the extreme of a frame with one is NaN. The cells of long and int columns
+     * are compared as longs
+     * @param column a numeric column
+     * @param frame number of rows of the frame, see {@link #sum(Column, int, boolean)}
+     * @param max true for the maximum
+     * @return the extremes with the type of the column, null for frames without values
+     */
+    Column extreme(Column column, int frame, boolean max) {
+        boolean integral = column.type() == Long.class || column.type() == Integer.class;
+        double[] values = integral ? null : values(column);
+        long[] longs = integral ? longs(column) : null;
+        boolean[] nulls = nulls(column);
+        //the position of the extreme of the frame of every row, -1 for frames without values
+        int[] positions = new int[order.length];
+        forEach(frame != UNBOUNDED, (start, end, from, to) -> {
+            int first = (int) Math.max(start, (long) from - frame + 1);
+            //a ring buffer, no more positions than the frame holds can be alive at once
+            int[] deque = new int[Math.max(1, Math.min(frame, to - first))];
+            int head = 0;
+            int count = 0;
+            int nan = 0;
+            int lastNaN = -1;
+            for (int i = first; i < to; i++) {
+                if (count > 0 && deque[head] <= (long) i - frame) {
+                    head = (head + 1) % deque.length;
+                    count--;
+                }
+                long leaving = (long) i - frame;
+                if (!integral && leaving >= first && Double.isNaN(values[(int) leaving])
+                        && (nulls == null || !nulls[(int) leaving])) {
+                    nan--;
+                }
+                boolean valid = nulls == null || !nulls[i];
+                if (valid && !integral && Double.isNaN(values[i])) {
+                    nan++;
+                    lastNaN = i;
+                } else if (valid) {
+                    while (count > 0) {
+                        int last = deque[(head + count - 1) % deque.length];
+                        boolean exceeded = integral ? (max ? longs[last] > longs[i] : longs[last] < longs[i])
+                                : (max ? values[last] > values[i] : values[last] < values[i]);
+                        if (exceeded) {
+                            break;
+                        }
+                        count--;
+                    }
+                    deque[(head + count) % deque.length] = i;
+                    count++;
+                }
+                if (i >= from) {
+                    positions[order[i]] = nan > 0 ? lastNaN : count == 0 ? -1 : deque[head];
+                }
+            }
+        });
+        NullBitmap empty = NullBitmap.of(positions.length, row -> positions[row] < 0);
+        if (column.type() == Integer.class) {
+            return new IntColumn(Arrays.stream(positions).map(position -> position < 0 ? 0 : (int) longs[position]).toArray(), empty);
+        }
+        if (integral) {
+            return new LongColumn(Arrays.stream(positions).mapToLong(position -> position < 0 ? 0 : longs[position]).toArray(), empty);
+        }
+        return new DoubleColumn(Arrays.stream(positions).mapToDouble(position -> position < 0 ? 0 : values[position]).toArray(), empty);
+    }
+}
@@ -2,22 +2,48 @@ package org.dataframe;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.*;
+import org.roaringbitmap.RoaringBitmap;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.Query;
 
+import java.io.InvalidClassException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 public class DataframeTest {
 
     private static final Logger logger = LogManager.getLogger(DataframeTest.class);
+    /**
+     * seed of the random cells, so that a failure reproduces
+     */
+    private static final long SEED = 42;
 
     @Mock
     private EntityManager entityManager;
@@ -25,6 +51,21 @@ public class DataframeTest {
     @Mock
     private Query query;
 
+    /**
+     * The calls of the tests: a country, a plan and a charge of up to 120 per row, each column drawn
+     * from a generator of its own so that the cells do not depend on the order the columns are read in
+     * @param plans the plans are mapped from uniform ints below this bound
+     * @param plan the plan of a uniform int, may be null
+     * @param nullCharge the charges below it are null
+     */
+    private static Dataframe calls(int size, int plans, IntFunction<Integer> plan, double nullCharge) {
+        return new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "UK"),
+                new Random(SEED + 1).ints(0, plans).mapToObj(plan),
+                new Random(SEED + 2).doubles(0, 120.0).mapToObj(charge -> charge < nullCharge ? null : charge)
+        ).columnNames("ORG_COUNTRY", "PLAN", "CHARGE").size(size).build().parallel(4);
+    }
+
     @Test
     public void generator() {
         Random random = new Random();
@@ -120,6 +161,1481 @@ public class DataframeTest {
 
     }
 
+    @Test
+    public void primitiveColumns() {
+        Dataframe dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "VOICE", "DATA"),
+                new Random(SEED + 1).doubles(0, 120.0),
+                new Random(SEED + 2).longs(0, 1200),
+                new Random(SEED + 3).ints(0, 10),
+                Stream.generate(new Random(SEED + 4)::nextBoolean)
+        ).columnNames("TYPE", "CHARGE", "DURATION", "UNITS", "ROAMING").size(1000).build();
+
+        Assert.assertTrue(dataframe.column("TYPE") instanceof CategoricalColumn);
+        Assert.assertTrue(dataframe.column("CHARGE") instanceof DoubleColumn);
+        //the small ranges are bit-packed by the builder
+        Assert.assertTrue(dataframe.column("DURATION") instanceof EncodedColumn.BitPacked);
+        Assert.assertEquals(Long.class, dataframe.column("DURATION").type());
+        Assert.assertTrue(dataframe.column("UNITS") instanceof EncodedColumn.BitPacked);
+        Assert.assertEquals(Integer.class, dataframe.column("UNITS").type());
+        Assert.assertTrue(dataframe.column("ROAMING") instanceof BooleanColumn);
+
+        Dataframe sorted = dataframe.sort(1, false);
+        double[] charges = ((DoubleColumn) sorted.materialize().column("CHARGE")).values();
+        for (int i = 1; i < charges.length; i++) {
+            Assert.assertTrue(charges[i-1] >= charges[i]);
+        }
+        Assert.assertEquals(dataframe.sum("DURATION"), sorted.sum("DURATION"), 0);
+    }
+
+    @Test
+    public void categoricalColumns() {
+        int maxSize = 1_000_000;
+        Dataframe dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "UK", "ALB", "EU"),
+                Dataframe.choice(new Random(SEED + 1), "RPLAN100", "RPLAN10", "RPLAN30"),
+                Dataframe.choice(new Random(SEED + 2), "VOICE", "DATA"),
+                new Random(SEED + 3).doubles(0, 120.0)
+        ).columnNames("ORG_COUNTRY", "RATE_PLAN", "TYPE", "CHARGE").size(maxSize).build();
+
+        Assert.assertTrue(dataframe.column("TYPE") instanceof CategoricalColumn);
+        Assert.assertEquals(2, dataframe.distinct(2).length);
+
+        Dataframe voice = dataframe.select("TYPE", "VOICE");
+        Assert.assertEquals(voice.count(), dataframe.selectByName(row -> row.get("TYPE").equals("VOICE")).count());
+        Assert.assertEquals(maxSize, voice.count() + dataframe.select("TYPE", "DATA").count());
+        Assert.assertEquals(0, dataframe.select("TYPE", "SMS").count());
+
+        Dataframe aggregate = dataframe.groupBy(true, "ORG_COUNTRY", "RATE_PLAN", "TYPE").sum("CHARGE");
+        Assert.assertEquals(30, aggregate.count());
+        Assert.assertEquals(dataframe.sum("CHARGE"), aggregate.sum("CHARGE"), 1e-6);
+    }
+
+    @Test
+    public void multiKeySort() {
+        int maxSize = 1_000_000;
+        Dataframe dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "UK", "ALB", "EU"),
+                new Random(SEED + 1).ints(0, 100),
+                new Random(SEED + 2).doubles(0, 120.0)
+        ).columnNames("ORG_COUNTRY", "DURATION", "CHARGE").size(maxSize).build();
+
+        Dataframe sorted = dataframe.sort(SortKey.asc("ORG_COUNTRY"), SortKey.desc("DURATION"), SortKey.asc(2)).materialize();
+        for (int row = 1; row < maxSize; row++) {
+            int compare = sorted.column(0).get(row - 1).toString().compareTo(sorted.column(0).get(row).toString());
+            Assert.assertTrue(compare <= 0);
+            if (compare == 0) {
+                int duration = ((IntColumn) sorted.column(1)).getInt(row - 1) - ((IntColumn) sorted.column(1)).getInt(row);
+                Assert.assertTrue(duration >= 0);
+                if (duration == 0) {
+                    Assert.assertTrue(sorted.column(2).getDouble(row - 1) <= sorted.column(2).getDouble(row));
+                }
+            }
+        }
+
+        int[] permutation = dataframe.sort(2).argsort(SortKey.asc(2));
+        for (int row = 0; row < maxSize; row++) {
+            Assert.assertEquals(row, permutation[row]);
+        }
+
+        Dataframe withNulls = new Dataframe.StreamDataframeBuilder(Stream.of(3.0, null, 1.0, null, 2.0))
+                .size(5).build();
+        Assert.assertArrayEquals(new int[]{2, 4, 0, 1, 3}, withNulls.argsort(SortKey.asc(0)));
+        Assert.assertArrayEquals(new int[]{1, 3, 0, 4, 2}, withNulls.argsort(SortKey.desc(0).nullsFirst()));
+    }
+
+    @Test
+    public void aggregations() {
+        int maxSize = 1_000_000;
+        Dataframe dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "UK", "ALB", "EU"),
+                new Random(SEED + 1).ints(0, 3),
+                new Random(SEED + 2).doubles(0, 120.0)
+        ).columnNames("ORG_COUNTRY", "PLAN", "CHARGE").size(maxSize).build();
+
+        Dataframe aggregate = dataframe.groupBy("ORG_COUNTRY", "PLAN").agg(
+                Aggregation.sum("CHARGE"), Aggregation.count("CHARGE"), Aggregation.min("CHARGE"),
+                Aggregation.max("CHARGE"), Aggregation.mean("CHARGE").as("AVG"), Aggregation.variance("CHARGE"),
+                Aggregation.first("CHARGE"), Aggregation.last("CHARGE"));
+
+        Assert.assertEquals(15, aggregate.count());
+        Assert.assertTrue(aggregate.column("COUNT(CHARGE)") instanceof LongColumn);
+        Assert.assertEquals(maxSize, aggregate.sum("COUNT(CHARGE)"), 0);
+        Assert.assertEquals(dataframe.sum("CHARGE"), aggregate.sum("SUM(CHARGE)"), 1e-6);
+
+        Dataframe gre = dataframe.select("ORG_COUNTRY", "GRE").select(row -> ((Integer) row[1]) == 0);
+        int group = IntStream.range(0, 15).filter(row -> aggregate.column(0).get(row).equals("GRE")
+                && aggregate.column(1).get(row).equals(0)).findFirst().getAsInt();
+        double[] charges = ((DoubleColumn) gre.materialize().column("CHARGE")).values();
+        double mean = gre.average("CHARGE");
+        double variance = DoubleStream.of(charges).map(charge -> (charge - mean) * (charge - mean)).sum() / (charges.length - 1);
+        Assert.assertEquals(DoubleStream.of(charges).min().getAsDouble(), aggregate.column("MIN(CHARGE)").getDouble(group), 0);
+        Assert.assertEquals(DoubleStream.of(charges).max().getAsDouble(), aggregate.column("MAX(CHARGE)").getDouble(group), 0);
+        Assert.assertEquals(mean, aggregate.column("AVG").getDouble(group), 1e-9);
+        Assert.assertEquals(variance, aggregate.column("VARIANCE(CHARGE)").getDouble(group), 1e-6);
+        Assert.assertEquals(charges[0], aggregate.column("FIRST(CHARGE)").getDouble(group), 0);
+        Assert.assertEquals(charges[charges.length - 1], aggregate.column("LAST(CHARGE)").getDouble(group), 0);
+    }
+
+    @Test
+    public void partitionedExecution() {
+        int maxSize = 1_000_000;
+        Dataframe dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "UK", "ALB", "EU"),
+                new Random(SEED + 1).ints(0, 50_000),
+                new Random(SEED + 2).doubles(0, 120.0)
+        ).columnNames("ORG_COUNTRY", "SUBSCRIBER", "CHARGE").size(maxSize).build();
+
+        ForkJoinPool pool = new ForkJoinPool(8);
+        Dataframe parallel = dataframe.parallel(pool);
+        Dataframe sequential = dataframe.sequential();
+        Assert.assertEquals(8, parallel.getParallelism());
+        Assert.assertEquals(sequential.sum("CHARGE"), parallel.sum("CHARGE"), 1e-6);
+        Assert.assertArrayEquals(sequential.distinct(1), parallel.distinct(1));
+        Assert.assertEquals(sequential.select(row -> ((Double) row[2]) > 60).count(), parallel.select(row -> ((Double) row[2]) > 60).count());
+
+        Dataframe parallelAggregate = parallel.groupBy("ORG_COUNTRY").agg(Aggregation.sum("CHARGE"), Aggregation.variance("CHARGE"), Aggregation.first("SUBSCRIBER"));
+        Dataframe sequentialAggregate = sequential.groupBy("ORG_COUNTRY").agg(Aggregation.sum("CHARGE"), Aggregation.variance("CHARGE"), Aggregation.first("SUBSCRIBER"));
+        Assert.assertEquals(8, parallelAggregate.getParallelism());
+        for (int group = 0; group < 5; group++) {
+            Assert.assertEquals(sequentialAggregate.column(0).get(group), parallelAggregate.column(0).get(group));
+            Assert.assertEquals(sequentialAggregate.column(1).getDouble(group), parallelAggregate.column(1).getDouble(group), 1e-6);
+            Assert.assertEquals(sequentialAggregate.column(2).getDouble(group), parallelAggregate.column(2).getDouble(group), 1e-6);
+            Assert.assertEquals(sequentialAggregate.column(3).get(group), parallelAggregate.column(3).get(group));
+        }
+
+        Assert.assertEquals(sequential.groupBy("SUBSCRIBER").getNumberOfGroups(), parallel.groupBy("SUBSCRIBER").getNumberOfGroups());
+        Assert.assertArrayEquals(sequential.argsort(SortKey.asc("CHARGE")), parallel.argsort(SortKey.asc("CHARGE")));
+        pool.shutdown();
+    }
+
+    @Test
+    public void columnPredicates() {
+        int maxSize = 1_000_000;
+        Dataframe dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "UK", "ALB", "EU"),
+                Dataframe.choice(new Random(SEED + 1), "VOICE", "DATA"),
+                new Random(SEED + 2).ints(0, 100),
+                new Random(SEED + 3).doubles(0, 120.0)
+        ).columnNames("ORG_COUNTRY", "TYPE", "DURATION", "CHARGE").size(maxSize).build();
+
+        Dataframe selected = dataframe.select(Dataframe.col("TYPE").eq("VOICE")
+                .and(Dataframe.col("CHARGE").between(10, 20).or(Dataframe.col("DURATION").in(1, 2, 3L)))
+                .and(Dataframe.col("ORG_COUNTRY").ne("GRE")));
+        Dataframe expected = dataframe.select(row -> row[1].equals("VOICE")
+                && (((Double) row[3]) >= 10 && ((Double) row[3]) <= 20 || Arrays.asList(1, 2, 3).contains(row[2]))
+                && !row[0].equals("GRE"));
+        Assert.assertEquals(expected.count(), selected.count());
+        Assert.assertEquals(expected.sum("CHARGE"), selected.sum("CHARGE"), 1e-6);
+
+        Assert.assertEquals(maxSize, dataframe.selection(Dataframe.col("DURATION").lt(50).or(Dataframe.col("DURATION").ge(50))).getCardinality());
+        Assert.assertEquals(dataframe.select(Dataframe.col("ORG_COUNTRY").gt("EU")).count(),
+                dataframe.select(Dataframe.col("ORG_COUNTRY").in("GRE", "ITA", "UK")).count());
+        Assert.assertEquals(0, dataframe.selection(Dataframe.col("CHARGE").isNull()).getCardinality());
+        Assert.assertEquals(maxSize, dataframe.selection(Dataframe.col("TYPE").eq("SMS").not()).getCardinality());
+    }
+
+    @Test
+    public void views() {
+        int maxSize = 1_000_000;
+        Dataframe dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "UK", "ALB", "EU"),
+                Dataframe.choice(new Random(SEED + 1), "VOICE", "DATA"),
+                new Random(SEED + 2).doubles(0, 120.0)
+        ).columnNames("ORG_COUNTRY", "TYPE", "CHARGE").size(maxSize).build();
+
+        Dataframe voice = dataframe.select(Dataframe.col("TYPE").eq("VOICE"));
+        Assert.assertTrue(voice.isView());
+        Dataframe expensive = voice.select(Dataframe.col("CHARGE").gt(60.0)).sort(SortKey.desc("CHARGE"));
+        Dataframe copy = expensive.materialize();
+        Assert.assertFalse(copy.isView());
+        Assert.assertEquals(copy.count(), expensive.count());
+        Assert.assertEquals(copy.sum("CHARGE"), expensive.sum("CHARGE"), 1e-6);
+        Assert.assertEquals(copy.average("CHARGE"), expensive.average("CHARGE"), 1e-9);
+        Assert.assertArrayEquals(copy.distinct(0), expensive.distinct(0));
+        Assert.assertEquals(copy.select(Dataframe.col("ORG_COUNTRY").eq("GRE")).count(), expensive.select(Dataframe.col("ORG_COUNTRY").eq("GRE")).count());
+        Dataframe groups = expensive.groupBy("ORG_COUNTRY").agg(Aggregation.sum("CHARGE"), Aggregation.count("TYPE"));
+        Assert.assertEquals(expensive.count(), groups.sum("COUNT(TYPE)"), 0);
+
+        Dataframe slice = expensive.slice(10, 20).project("CHARGE");
+        Assert.assertEquals(10, slice.count());
+        Assert.assertEquals(expensive.column("CHARGE").getDouble(10), slice.column(0).getDouble(0), 0);
+        Assert.assertEquals(copy.slice(10, 20).sum(2), slice.sum(0), 1e-9);
+        Assert.assertTrue(slice.column(0).getDouble(0) >= slice.sort(0).column(0).getDouble(9));
+    }
+
+    @Test
+    public void lazyPlans() {
+        MockitoAnnotations.initMocks(this);
+        int maxSize = 1_000_000;
+        Dataframe dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "UK", "ALB", "EU"),
+                Dataframe.choice(new Random(SEED + 1), "VOICE", "DATA"),
+                new Random(SEED + 2).doubles(0, 120.0),
+                new Random(SEED + 3).doubles(0, 1200.0)
+        ).columnNames("ORG_COUNTRY", "TYPE", "CHARGE", "DURATION").size(maxSize).build();
+
+        LazyDataframe lazy = dataframe.lazy()
+                .select(Dataframe.col("TYPE").eq("VOICE"))
+                .select(Dataframe.col("CHARGE").gt(60.0))
+                .groupBy("ORG_COUNTRY").agg(Aggregation.sum("CHARGE"), Aggregation.count("CHARGE"))
+                .sort(SortKey.desc("SUM(CHARGE)"));
+        String plan = lazy.explain();
+        Assert.assertTrue(plan, plan.contains("FusedAggregate"));
+        Assert.assertTrue(plan, plan.contains("Project[ORG_COUNTRY, TYPE, CHARGE]"));
+
+        Dataframe expected = dataframe.select(Dataframe.col("TYPE").eq("VOICE").and(Dataframe.col("CHARGE").gt(60.0)))
+                .groupBy("ORG_COUNTRY").agg(Aggregation.sum("CHARGE"), Aggregation.count("CHARGE"))
+                .sort(SortKey.desc("SUM(CHARGE)"));
+        Dataframe actual = lazy.collect();
+        Assert.assertEquals(expected.count(), actual.count());
+        for (int group = 0; group < expected.count(); group++) {
+            Assert.assertEquals(expected.column(0).get(group), actual.column(0).get(group));
+            Assert.assertEquals(expected.column(1).getDouble(group), actual.column(1).getDouble(group), 1e-6);
+            Assert.assertEquals(expected.column(2).getDouble(group), actual.column(2).getDouble(group), 0);
+        }
+
+        Dataframe sorted = dataframe.lazy().project("TYPE", "CHARGE").sort(SortKey.asc("CHARGE"))
+                .select(Dataframe.col("TYPE").ne("DATA")).collect();
+        Assert.assertEquals(2, sorted.getColumnNames().length);
+        Assert.assertEquals(dataframe.select(Dataframe.col("TYPE").eq("VOICE")).count(), sorted.count());
+        Assert.assertTrue(sorted.column("CHARGE").getDouble(0) <= sorted.column("CHARGE").getDouble(1));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        Mockito.when(entityManager.createNativeQuery(sql.capture())).thenReturn(query);
+        Mockito.when(query.getResultList()).thenReturn(new ArrayList<>());
+        Dataframe.sql(entityManager, "SELECT * FROM CDR WHERE DAY = ?1").addParameter(1)
+                .columnNames("ORG_COUNTRY", "TYPE", "CHARGE", "DURATION")
+                .types(String.class, String.class, Double.class, Double.class)
+                .lazy()
+                .select(Dataframe.col("TYPE").eq("VOICE"))
+                .project("ORG_COUNTRY", "CHARGE")
+                .groupBy("ORG_COUNTRY").sum("CHARGE")
+                .collect();
+        Assert.assertEquals("SELECT ORG_COUNTRY, CHARGE FROM (SELECT * FROM CDR WHERE DAY = ?1) q WHERE TYPE = ?2", sql.getValue());
+        Mockito.verify(query).setParameter(2, "VOICE");
+    }
+
+    @Test
+    public void streamingSql() {
+        MockitoAnnotations.initMocks(this);
+        Random random = new Random(SEED);
+
+        int maxSize = 100_000;
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < maxSize; i++) {
+            rows.add(new Object[]{i < 10 ? null : random.nextInt(100), i % 7 == 0 ? null : new Timestamp(i * 1000L),
+                    new String[]{"VOICE", "DATA"}[i % 2], i % 3 == 0 ? BigInteger.valueOf(i) : (Object) (long) i});
+        }
+        Mockito.when(entityManager.createNativeQuery(ArgumentMatchers.anyString())).thenReturn(query);
+        Mockito.when(query.getResultList()).thenReturn(rows);
+        Dataframe dataframe = Dataframe.sql(entityManager, "SELECT * FROM CDR")
+                .columnNames("DURATION", "STARTED", "TYPE", "ID").build();
+        Assert.assertEquals(maxSize, dataframe.count());
+        Assert.assertEquals(Integer.class, dataframe.column("DURATION").type());
+        Assert.assertNull(dataframe.column("DURATION").get(0));
+        Assert.assertEquals(Timestamp.class, dataframe.column("STARTED").type());
+        Assert.assertTrue(dataframe.column("TYPE") instanceof CategoricalColumn);
+        Assert.assertTrue(dataframe.column("ID") instanceof EncodedColumn.BitPacked);
+        Assert.assertEquals(Long.class, dataframe.column("ID").type());
+        Assert.assertEquals((double) maxSize * (maxSize - 1) / 2, dataframe.sum("ID"), 0);
+
+        org.hibernate.query.Query scrollable = Mockito.mock(org.hibernate.query.Query.class);
+        ScrollableResults results = Mockito.mock(ScrollableResults.class);
+        Mockito.when(query.unwrap(org.hibernate.query.Query.class)).thenReturn(scrollable);
+        Mockito.when(scrollable.scroll(ScrollMode.FORWARD_ONLY)).thenReturn(results);
+        Iterator<Object[]> cursor = rows.iterator();
+        Mockito.when(results.next()).thenAnswer(invocation -> cursor.hasNext());
+        Mockito.when(results.get()).thenAnswer(invocation -> cursor.next());
+        Dataframe streamed = Dataframe.sql(entityManager, "SELECT * FROM CDR").fetchSize(500).sampleSize(5)
+                .columnNames("DURATION", "STARTED", "TYPE", "ID").build();
+        Mockito.verify(scrollable).setFetchSize(500);
+        Mockito.verify(results).close();
+        Assert.assertEquals(maxSize, streamed.count());
+        Assert.assertEquals(Integer.class, streamed.column("DURATION").type());
+        Assert.assertEquals(dataframe.sum("DURATION"), streamed.sum("DURATION"), 0);
+        Assert.assertEquals(dataframe.sum("ID"), streamed.sum("ID"), 0);
+
+        EntityManagerFactory factory = Mockito.mock(EntityManagerFactory.class);
+        Mockito.when(entityManager.getEntityManagerFactory()).thenReturn(factory);
+        Mockito.when(factory.createEntityManager()).thenReturn(entityManager);
+        Dataframe partitioned = Dataframe.sql(entityManager, "SELECT * FROM CDR")
+                .columnNames("DURATION", "STARTED", "TYPE", "ID").partitionBy("ID", 0, maxSize, 4).build();
+        Assert.assertEquals(4 * maxSize, partitioned.count());
+        Mockito.verify(entityManager).createNativeQuery("SELECT * FROM (SELECT * FROM CDR) q WHERE (ID < ?1 OR ID IS NULL)");
+        Mockito.verify(entityManager).createNativeQuery("SELECT * FROM (SELECT * FROM CDR) q WHERE ID >= ?1");
+        Mockito.verify(entityManager, Mockito.times(4)).close();
+
+        Query empty = Mockito.mock(Query.class);
+        Mockito.when(empty.getResultList()).thenReturn(new ArrayList<>());
+        Mockito.when(entityManager.createNativeQuery("SELECT * FROM (SELECT * FROM CDR) q WHERE (ID < ?1 OR ID IS NULL)")).thenReturn(empty);
+        Dataframe unnamed = Dataframe.sql(entityManager, "SELECT * FROM CDR").partitionBy("ID", 0, maxSize, 4).build();
+        Assert.assertEquals(3 * maxSize, unnamed.count());
+        Assert.assertEquals(Integer.class, unnamed.column(0).type());
+        Assert.assertEquals(3 * dataframe.sum("ID"), unnamed.sum(3), 0);
+    }
+
+    @Test
+    public void sqlWidening() {
+        MockitoAnnotations.initMocks(this);
+        long big = (1L << 53) + 1;
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{1, 1, "VOICE", true});
+        rows.add(new Object[]{2, 2L, "DATA", false});
+        rows.add(new Object[]{big, 2.5, 3, null});
+        rows.add(new Object[]{null, 4, "DATA", "yes"});
+        Mockito.when(entityManager.createNativeQuery(ArgumentMatchers.anyString())).thenReturn(query);
+        Mockito.when(query.getResultList()).thenReturn(rows);
+
+        //the cells that do not fit the types of the two sampled rows come after them
+        Dataframe widened = Dataframe.sql(entityManager, "SELECT * FROM CDR").sampleSize(2)
+                .columnNames("ID", "CHARGE", "TYPE", "ROAMING").build();
+        Assert.assertEquals(Long.class, widened.column("ID").type());
+        Assert.assertArrayEquals(new Object[]{1L, 2L, big, null}, IntStream.range(0, 4).mapToObj(widened.column("ID")::get).toArray());
+        Assert.assertEquals(Double.class, widened.column("CHARGE").type());
+        Assert.assertArrayEquals(new Object[]{1.0, 2.0, 2.5, 4.0}, IntStream.range(0, 4).mapToObj(widened.column("CHARGE")::get).toArray());
+        Assert.assertEquals(Object.class, widened.column("TYPE").type());
+        Assert.assertEquals(3, widened.column("TYPE").get(2));
+        Assert.assertEquals(Object.class, widened.column("ROAMING").type());
+        Assert.assertArrayEquals(new Object[]{true, false, null, "yes"}, IntStream.range(0, 4).mapToObj(widened.column("ROAMING")::get).toArray());
+
+        try {
+            Dataframe.sql(entityManager, "SELECT * FROM CDR").types(Integer.class, Double.class, String.class, Boolean.class)
+                    .columnNames("ID", "CHARGE", "TYPE", "ROAMING").build();
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("row 2, column ID"));
+        }
+    }
+
+    @Test
+    public void ingestion() throws Exception {
+        int maxSize = 1_000_000;
+        Dataframe dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "VOICE", "DATA"),
+                new Random(SEED + 1).ints(0, 100),
+                new Random(SEED + 2).longs(0, 1000),
+                new Random(SEED + 3).doubles(0, 120.0)
+        ).columnNames("TYPE", "DURATION", "ID", "CHARGE").size(maxSize).parallel().build();
+        Assert.assertEquals(maxSize, dataframe.count());
+        Assert.assertEquals(Integer.class, dataframe.column("DURATION").type());
+        Assert.assertEquals(Long.class, dataframe.column("ID").type());
+        Assert.assertTrue(dataframe.column("ID") instanceof EncodedColumn);
+
+        Dataframe unsized = new Dataframe.StreamDataframeBuilder(
+                Stream.of("VOICE", "DATA", "VOICE"),
+                IntStream.range(0, 3),
+                DoubleStream.of(1.0, 2.0, 3.0)
+        ).build();
+        Assert.assertEquals(3, unsized.count());
+        Assert.assertEquals(6.0, unsized.sum(2), 0);
+        Assert.assertEquals(100, new Dataframe.StreamDataframeBuilder(IntStream.iterate(0, i -> i + 1), Stream.generate(() -> "VOICE")).build().count());
+        Assert.assertEquals(3, new Dataframe.StreamDataframeBuilder(IntStream.range(0, 3)).size(-1).build().count());
+
+        //streams that share a generator are drained one after the other unless the builder is made parallel
+        Random first = new Random(SEED);
+        Random second = new Random(SEED);
+        Dataframe once = new Dataframe.StreamDataframeBuilder(first.ints(0, 100), first.doubles(0, 120.0)).size(maxSize).build();
+        Dataframe again = new Dataframe.StreamDataframeBuilder(second.ints(0, 100), second.doubles(0, 120.0)).size(maxSize).build();
+        Assert.assertEquals(once.sum(0), again.sum(0), 0);
+        Assert.assertEquals(once.sum(1), again.sum(1), 0);
+
+        try {
+            new Dataframe.StreamDataframeBuilder(IntStream.range(0, 10), DoubleStream.of(1.0)).size(10).build();
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new Dataframe.StreamDataframeBuilder(IntStream.range(0, 10), DoubleStream.of(1.0)).build();
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        Dataframe.BatchDataframeBuilder builder = new Dataframe.BatchDataframeBuilder().columnNames("TYPE", "CHARGE");
+        Thread producer = new Thread(() -> {
+            for (int batch = 0; batch < 100; batch++) {
+                builder.add(new String[]{"VOICE", "DATA"}, new double[]{batch, 1.0});
+            }
+        });
+        producer.start();
+        producer.join();
+        Dataframe batches = builder.build();
+        Assert.assertEquals(200, batches.count());
+        Assert.assertTrue(batches.column("CHARGE") instanceof DoubleColumn);
+        Assert.assertEquals(99 * 100 / 2 + 100, batches.sum("CHARGE"), 0);
+        Assert.assertEquals(100, batches.select("TYPE", "DATA").count());
+        try {
+            builder.add(new String[]{"VOICE"}, new double[]{1.0, 2.0});
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void columnFiles() throws Exception {
+        int maxSize = 1_000_000;
+        Dataframe dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "UK", "ALB", "EU"),
+                IntStream.range(0, maxSize),
+                new Random(SEED + 1).longs(0, 1000),
+                new Random(SEED + 2).doubles(0, 120.0),
+                new Random(SEED + 3).ints(0, 2).mapToObj(i -> i == 0),
+                new Random(SEED + 4).ints(0, maxSize).mapToObj(i -> "ID" + i),
+                new Random(SEED + 5).ints(0, 100).mapToObj(i -> i == 0 ? null : new BigDecimal(i))
+        ).columnNames("ORG_COUNTRY", "SEQUENCE", "ID", "CHARGE", "ROAMING", "MSISDN", "TAX").size(maxSize).build();
+
+        Path path = Files.createTempFile("dataframe", ".df");
+        try {
+            dataframe.select(Dataframe.col("CHARGE").lt(60.0)).save(path);
+            dataframe.save(path);
+            Dataframe opened = Dataframe.open(path);
+            Assert.assertEquals(maxSize, opened.count());
+            Assert.assertFalse(((ColumnFile.MappedColumn) opened.column("CHARGE")).isLoaded());
+
+            Assert.assertEquals(1, opened.select(Dataframe.col("SEQUENCE").eq(12345)).count());
+            Assert.assertEquals(100, opened.select(Dataframe.col("SEQUENCE").between(500_000, 500_099)).count());
+            Assert.assertEquals(dataframe.select(Dataframe.col("CHARGE").lt(60.0)).count(), opened.select(Dataframe.col("CHARGE").lt(60.0)).count());
+            Assert.assertEquals(dataframe.select("ORG_COUNTRY", "GRE").count(), opened.select("ORG_COUNTRY", "GRE").count());
+            //the selections read the blocks they need from the mapping
+            Assert.assertFalse(((ColumnFile.MappedColumn) opened.column("SEQUENCE")).isLoaded());
+            Assert.assertFalse(((ColumnFile.MappedColumn) opened.column("CHARGE")).isLoaded());
+            Assert.assertFalse(((ColumnFile.MappedColumn) opened.column("ORG_COUNTRY")).isLoaded());
+
+            Assert.assertEquals(dataframe.sum("CHARGE"), opened.sum("CHARGE"), 0);
+            Assert.assertEquals(dataframe.sum("ID"), opened.sum("ID"), 0);
+            Assert.assertEquals(dataframe.select("ORG_COUNTRY", "GRE").count(), opened.select("ORG_COUNTRY", "GRE").count());
+            Assert.assertTrue(opened.column("ORG_COUNTRY").materialize() instanceof CategoricalColumn);
+            Assert.assertEquals(dataframe.select(Dataframe.col("ROAMING").eq(true)).count(), opened.select(Dataframe.col("ROAMING").eq(true)).count());
+            for (int row = 0; row < maxSize; row += 9973) {
+                Assert.assertEquals(dataframe.column("MSISDN").get(row), opened.column("MSISDN").get(row));
+                Assert.assertEquals(dataframe.column("TAX").get(row), opened.column("TAX").get(row));
+            }
+            Dataframe groups = opened.groupBy("ORG_COUNTRY").sum("CHARGE");
+            Assert.assertEquals(5, groups.count());
+            Assert.assertEquals(String.class, opened.column("MSISDN").type());
+
+        } finally {
+            Files.delete(path);
+        }
+
+        Column mixed = new ObjectColumn<>(Object.class, new Object[]{1, "GRE", null, new BigDecimal("0.5")});
+        Column dates = new ObjectColumn<>(Object.class, new Object[]{new Date(0), null, null, null});
+        Column timestamps = new ObjectColumn<>(Timestamp.class, new Timestamp[]{new Timestamp(0), null, null, null});
+        path = Files.createTempFile("dataframe", ".df");
+        try {
+            Dataframe.of(new Column[]{mixed, dates, timestamps}, new String[]{"MIXED", "DATE", "TIMESTAMP"}, 4).save(path);
+            Dataframe objects = Dataframe.open(path);
+            for (int row = 0; row < 4; row++) {
+                Assert.assertEquals(mixed.get(row), objects.column("MIXED").get(row));
+                Assert.assertEquals(timestamps.get(row), objects.column("TIMESTAMP").get(row));
+            }
+            try {
+                objects.column("DATE").get(0);
+                Assert.fail("only the declared class of the column and boxed numbers are deserialized");
+            } catch (UncheckedIOException e) {
+                Assert.assertTrue(e.getCause().getCause() instanceof InvalidClassException);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void csvFiles() throws Exception {
+        int maxSize = 1_000_000;
+        Dataframe dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "U,K", "AL\"B", ""),
+                new Random(SEED + 1).longs(-1000, 1000),
+                new Random(SEED + 2).doubles(0, 120.0).mapToObj(d -> d < 1 ? null : d),
+                new Random(SEED + 3).ints(0, 2).mapToObj(i -> i == 0)
+        ).columnNames("ORG_COUNTRY", "ID", "CHARGE", "ROAMING").size(maxSize).build();
+
+        Path path = Files.createTempFile("dataframe", ".csv");
+        try {
+            dataframe.writeCsv(path);
+            Dataframe read = Dataframe.csv(path).build();
+            Assert.assertArrayEquals(dataframe.getColumnNames(), read.getColumnNames());
+            Assert.assertEquals(maxSize, read.count());
+            Assert.assertTrue(read.column("ORG_COUNTRY") instanceof CategoricalColumn);
+            Assert.assertTrue(read.column("ID") instanceof EncodedColumn);
+            Assert.assertEquals(Long.class, read.column("ID").type());
+            Assert.assertTrue(read.column("CHARGE") instanceof DoubleColumn);
+            Assert.assertTrue(read.column("ROAMING") instanceof BooleanColumn);
+            Assert.assertEquals(dataframe.sum("CHARGE"), read.sum("CHARGE"), 0);
+            Assert.assertEquals(dataframe.sum("ID"), read.sum("ID"), 0);
+            for (int row = 0; row < maxSize; row += 997) {
+                Assert.assertEquals(dataframe.column("ORG_COUNTRY").get(row), read.column("ORG_COUNTRY").get(row));
+                Assert.assertEquals(dataframe.column("CHARGE").get(row), read.column("CHARGE").get(row));
+                Assert.assertEquals(dataframe.column("ROAMING").get(row), read.column("ROAMING").get(row));
+            }
+
+            Column[] chunked = new CsvReader(path, ',', true, 10, 1 << 16).read(
+                    new Class[]{String.class, Integer.class, Double.class, Boolean.class});
+            Assert.assertEquals(maxSize, chunked[0].size());
+            Assert.assertTrue(chunked[1] instanceof IntColumn);
+            Assert.assertEquals(dataframe.sum("ID"), chunked[1].sum(), 0);
+            Assert.assertEquals(dataframe.column("ORG_COUNTRY").get(maxSize - 1), chunked[0].get(maxSize - 1));
+
+            Files.write(path, Arrays.asList("a\tb", "1\t2.5e3", "\t-0.125", "3"));
+            Dataframe tsv = Dataframe.csv(path).delimiter('\t').build();
+            Assert.assertEquals(3, tsv.count());
+            Assert.assertNull(tsv.column("a").get(1));
+            Assert.assertEquals(2500 - 0.125, tsv.sum("b"), 0);
+            Assert.assertTrue(tsv.column("b").isNull(2));
+
+            String[] notes = {"one\ntwo", "a,\"b\"\r\nc", null, "", "plain"};
+            Dataframe multiline = new Dataframe.StreamDataframeBuilder(
+                    IntStream.range(0, 1000).mapToObj(row -> notes[row % notes.length]),
+                    IntStream.range(0, 1000).boxed()
+            ).columnNames(null, "ROW").size(1000).build();
+            multiline.writeCsv(path);
+            Column[] lines = new CsvReader(path, ',', true, 10, 64).read(null);
+            Assert.assertEquals(1000, lines[1].size());
+            for (int row = 0; row < 1000; row++) {
+                Assert.assertEquals(notes[row % notes.length], lines[0].get(row));
+                Assert.assertEquals((long) row, lines[1].get(row));
+            }
+            Assert.assertArrayEquals(new String[]{null, "ROW"}, Dataframe.csv(path).build().getColumnNames());
+
+            //the null cells of a single column are empty lines
+            Dataframe single = new Dataframe.StreamDataframeBuilder(
+                    IntStream.range(0, 1000).mapToObj(row -> notes[row % notes.length])
+            ).columnNames("NOTE").size(1000).build();
+            single.writeCsv(path);
+            Column[] singles = new CsvReader(path, ',', true, 10, 64).read(null);
+            Assert.assertEquals(1000, singles[0].size());
+            for (int row = 0; row < 1000; row++) {
+                Assert.assertEquals(notes[row % notes.length], singles[0].get(row));
+            }
+            new Dataframe.StreamDataframeBuilder(Stream.of(1.5, null, null, 4.0)).columnNames("CHARGE").build().writeCsv(path);
+            Dataframe readCharges = Dataframe.csv(path).build();
+            Assert.assertEquals(4, readCharges.count());
+            Assert.assertTrue(readCharges.column("CHARGE").isNull(2));
+            Assert.assertEquals(4.0, readCharges.column("CHARGE").get(3));
+
+            Files.write(path, Arrays.asList("ID,ROAMING", "1,true", "2,FALSE", "x,yes"));
+            try {
+                Dataframe.csv(path).types(Long.class, Boolean.class).build();
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("line 4, column ID"));
+            }
+            try {
+                Dataframe.csv(path).types(String.class, Boolean.class).build();
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                Assert.assertTrue(e.getMessage(), e.getMessage().contains("line 4, column ROAMING"));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void offHeap() {
+        int maxSize = 1_000_000;
+        Dataframe dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "UK"),
+                new Random(SEED + 1).longs(0, 100),
+                new Random(SEED + 2).ints(0, 10).boxed(),
+                new Random(SEED + 3).doubles(0, 120.0)
+        ).columnNames("ORG_COUNTRY", "ID", "PLAN", "CHARGE").size(maxSize).build();
+
+        long allocated = Dataframe.getAllocatedOffHeapBytes();
+        Dataframe offHeap = dataframe.offHeap();
+        Assert.assertTrue(offHeap.column("CHARGE") instanceof OffHeapColumn);
+        Assert.assertEquals(maxSize * (8 + 8 + 4), offHeap.getOffHeapBytes());
+        Assert.assertEquals(allocated + offHeap.getOffHeapBytes(), Dataframe.getAllocatedOffHeapBytes());
+
+        Assert.assertEquals(dataframe.sum("CHARGE"), offHeap.sum("CHARGE"), 0);
+        Assert.assertEquals(dataframe.sum("ID"), offHeap.sum("ID"), 0);
+        Assert.assertEquals(dataframe.average(3), offHeap.average(3), 0);
+        Assert.assertEquals(dataframe.select("ID", 42L).count(), offHeap.select("ID", 42L).count());
+        Assert.assertEquals(dataframe.select("PLAN", 3).sum("CHARGE"), offHeap.select("PLAN", 3).sum("CHARGE"), 0);
+
+        Dataframe sorted = offHeap.sort(3);
+        for (int row = 1; row < maxSize; row += 997) {
+            Assert.assertTrue(sorted.column("CHARGE").getDouble(row - 1) <= sorted.column("CHARGE").getDouble(row));
+        }
+        Dataframe aggregate = offHeap.groupBy("ORG_COUNTRY", "PLAN").sum("CHARGE");
+        Assert.assertEquals(30, aggregate.count());
+        Assert.assertEquals(dataframe.sum("CHARGE"), aggregate.sum("CHARGE"), 1e-6);
+
+        Dataframe shared = offHeap.retain();
+        offHeap.close();
+        offHeap.close();
+        Assert.assertEquals(dataframe.sum("ID"), shared.sum("ID"), 0);
+        shared.close();
+        Assert.assertEquals(allocated, Dataframe.getAllocatedOffHeapBytes());
+        try {
+            sorted.sum("CHARGE");
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            //released
+        }
+
+        OffHeapStorage storage = new OffHeapStorage(8);
+        storage.ensureCapacity(3);
+        Assert.assertEquals(3 * 8, storage.bytes());
+        storage.chunks()[0].putLong(2 * 8, 42);
+        storage.ensureCapacity(OffHeapStorage.CHUNK_CELLS + 5);
+        Assert.assertEquals((OffHeapStorage.CHUNK_CELLS + 5) * 8, storage.bytes());
+        Assert.assertEquals(42, storage.acquire()[0].getLong(2 * 8));
+        storage.release();
+        storage.release();
+        Assert.assertTrue(storage.isReleased());
+        Assert.assertEquals(allocated, Dataframe.getAllocatedOffHeapBytes());
+    }
+
+    @Test
+    public void closeDuringGroupBy() {
+        Dataframe calls = calls(100_000, 50, plan -> plan, 0);
+        Dataframe expected = calls.groupBy("ORG_COUNTRY", "PLAN").agg(Aggregation.count("CHARGE"), Aggregation.max("CHARGE"));
+        long allocated = Dataframe.getAllocatedOffHeapBytes();
+        Dataframe offHeap = calls.offHeap();
+        //the owner is closed once the first spilled partition is grouped, before its charges are aggregated
+        Dataframe.setMetrics(event -> {
+            if (event.getOperation().equals("groupBy")) {
+                offHeap.close();
+            }
+        });
+        try (Dataframe.DataframeGroupBy grouped = offHeap.sort(SortKey.asc("CHARGE")).memoryBudget(1 << 16).groupBy("ORG_COUNTRY", "PLAN")) {
+            Dataframe actual = grouped.agg(Aggregation.count("CHARGE"), Aggregation.max("CHARGE")).sort(SortKey.asc("ORG_COUNTRY"), SortKey.asc("PLAN"));
+            Dataframe sorted = expected.sort(SortKey.asc("ORG_COUNTRY"), SortKey.asc("PLAN"));
+            Assert.assertEquals(sorted.count(), actual.count());
+            for (int row = 0; row < actual.count(); row++) {
+                Assert.assertEquals(sorted.column(2).get(row), actual.column(2).get(row));
+                Assert.assertEquals(sorted.column(3).get(row), actual.column(3).get(row));
+            }
+        } finally {
+            Dataframe.setMetrics(null);
+        }
+        Assert.assertEquals(allocated, Dataframe.getAllocatedOffHeapBytes());
+        try {
+            offHeap.groupBy("ORG_COUNTRY").agg(Aggregation.max("CHARGE"));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            //released
+        }
+    }
+
+    @Test
+    public void joins() {
+        int maxSize = 1_000_000;
+        Dataframe calls = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "UK"),
+                new Random(SEED + 1).ints(0, 10).boxed(),
+                new Random(SEED + 2).doubles(0, 120.0)
+        ).columnNames("ORG_COUNTRY", "PLAN", "DURATION").size(maxSize).build();
+        Dataframe plans = new Dataframe.StreamDataframeBuilder(
+                IntStream.of(10, 7, 6, 5, 4, 3, 2, 1, 0).boxed(),
+                DoubleStream.of(1, 0.7, 0.6, 0.5, 0.4, 0.3, 0.2, 0.1, 0).boxed(),
+                Stream.of("X", "G", "F", "E", "D", "C", "B", "A", "Z")
+        ).columnNames("PLAN", "RATE", "NAME").build();
+
+        int matched = (int) calls.select(Dataframe.col("PLAN").lt(8)).count();
+        double rated = 0;
+        for (int row = 0; row < maxSize; row++) {
+            int plan = (Integer) calls.column("PLAN").get(row);
+            rated += plan < 8 ? plan / 10.0 : 0;
+        }
+
+        Dataframe inner = calls.join(plans, JoinType.INNER, "PLAN");
+        Assert.assertArrayEquals(new String[]{"ORG_COUNTRY", "PLAN", "DURATION", "RATE", "NAME"}, inner.getColumnNames());
+        Assert.assertEquals(matched, inner.count());
+        Assert.assertEquals(rated, inner.sum("RATE"), 1e-6);
+        Assert.assertEquals(calls.select(Dataframe.col("PLAN").lt(8)).sum("DURATION"), inner.sum("DURATION"), 1e-6);
+
+        Dataframe left = calls.join(plans, JoinType.LEFT, "PLAN");
+        Assert.assertEquals(maxSize, left.count());
+        Assert.assertEquals(maxSize - matched, left.select("NAME", null).count());
+        Dataframe right = calls.join(plans, JoinType.RIGHT, "PLAN");
+        Assert.assertEquals(matched + 1, right.count());
+        Assert.assertEquals(10, right.column("PLAN").get(matched));
+        Assert.assertNull(right.column("ORG_COUNTRY").get(matched));
+        Assert.assertEquals(maxSize + 1, calls.join(plans, JoinType.FULL, "PLAN").count());
+        Assert.assertEquals(matched, calls.join(plans, JoinType.SEMI, "PLAN").count());
+        Assert.assertEquals(maxSize - matched, calls.join(plans, JoinType.ANTI, "PLAN").count());
+
+        //a large build side is numbered by partition and keeps its order
+        Dataframe parallel = calls.parallel(4);
+        Dataframe built = plans.parallel(4).join(parallel, JoinType.INNER, "PLAN");
+        Assert.assertEquals(matched, built.count());
+        Assert.assertEquals(calls.select("PLAN", 7).column("DURATION").get(0), built.column("DURATION").get(0));
+        Dataframe mixed = new Dataframe.StreamDataframeBuilder(Stream.of("UK", 1L, "GRE")).columnNames("COUNTRY").build();
+        Dataframe boxed = mixed.parallel(4).join(parallel, new String[]{"COUNTRY"}, new String[]{"ORG_COUNTRY"}, JoinType.INNER);
+        Assert.assertEquals(calls.select("ORG_COUNTRY", "UK").count() + calls.select("ORG_COUNTRY", "GRE").count(), boxed.count());
+        Assert.assertEquals(calls.select("ORG_COUNTRY", "GRE").column("DURATION").get(0),
+                boxed.column("DURATION").get((int) calls.select("ORG_COUNTRY", "UK").count()));
+
+        //both inputs sorted on the key are merged
+        Dataframe merged = calls.sort(1).join(plans.sort(0), JoinType.INNER, "PLAN");
+        Assert.assertEquals(matched, merged.count());
+        Assert.assertEquals(rated, merged.sum("RATE"), 1e-6);
+        Assert.assertEquals(maxSize + 1, calls.sort(1).join(plans.sort(0), JoinType.FULL, "PLAN").count());
+
+        Dataframe countries = new Dataframe.StreamDataframeBuilder(
+                Stream.of("GRE", "ITA", "GRE"),
+                LongStream.of(1, 1, 2).boxed(),
+                Stream.of("Greece 1", "Italy 1", "Greece 2")
+        ).columnNames("COUNTRY", "PLAN", "PLAN").build();
+        Dataframe composite = calls.join(countries, new String[]{"ORG_COUNTRY", "PLAN"}, new String[]{"COUNTRY", "PLAN"}, JoinType.INNER);
+        Assert.assertEquals("PLAN_right", composite.getColumnNames()[3]);
+        Assert.assertEquals(calls.select("ORG_COUNTRY", "GRE").select(Dataframe.col("PLAN").in(1, 2)).count()
+                + calls.select("ORG_COUNTRY", "ITA").select("PLAN", 1).count(), composite.count());
+    }
+
+    @Test
+    public void indexes() {
+        int maxSize = 1_000_000;
+        Dataframe dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "UK", "FRA"),
+                new Random(SEED + 1).ints(0, 50).boxed(),
+                new Random(SEED + 2).doubles(0, 120.0).mapToObj(d -> d < 1 ? null : d)
+        ).columnNames("ORG_COUNTRY", "PLAN", "CHARGE").size(maxSize).build();
+        Dataframe scanned = dataframe.slice(0, maxSize);
+
+        dataframe.createIndex("ORG_COUNTRY", IndexType.BITMAP)
+                .createIndex("PLAN", IndexType.BITMAP)
+                .createIndex("CHARGE", IndexType.SORTED);
+
+        Assert.assertEquals(scanned.select("ORG_COUNTRY", "ITA").count(), dataframe.select("ORG_COUNTRY", "ITA").count());
+        Assert.assertEquals(0, dataframe.select("ORG_COUNTRY", "ESP").count());
+        Assert.assertEquals(scanned.select("PLAN", 7L).sum("CHARGE"), dataframe.select("PLAN", 7L).sum("CHARGE"), 1e-6);
+        Assert.assertEquals(scanned.select(Dataframe.col("PLAN").between(10, 19)).count(),
+                dataframe.select(Dataframe.col("PLAN").between(10, 19)).count());
+        Assert.assertEquals(scanned.select(Dataframe.col("ORG_COUNTRY").in("GRE", "UK")).count(),
+                dataframe.select(Dataframe.col("ORG_COUNTRY").in("GRE", "UK")).count());
+        Assert.assertEquals(scanned.selection(Dataframe.col("CHARGE").gt(100).and(Dataframe.col("ORG_COUNTRY").eq("GRE"))),
+                dataframe.selection(Dataframe.col("CHARGE").gt(100).and(Dataframe.col("ORG_COUNTRY").eq("GRE"))));
+        Assert.assertEquals(scanned.selection(Dataframe.col("CHARGE").between(10.5, 11)),
+                dataframe.selection(Dataframe.col("CHARGE").between(10.5, 11)));
+        Assert.assertEquals(scanned.selection(Dataframe.col("CHARGE").lt(50)),
+                dataframe.selection(Dataframe.col("CHARGE").lt(50)));
+        Assert.assertEquals(scanned.selection(Dataframe.col("CHARGE").isNull()),
+                dataframe.selection(Dataframe.col("CHARGE").isNull()));
+
+        Assert.assertArrayEquals(scanned.distinct(0), dataframe.distinct(0));
+        Assert.assertArrayEquals(scanned.distinct(1), dataframe.distinct(1));
+        Dataframe grouped = dataframe.groupBy("ORG_COUNTRY", "PLAN").sum("CHARGE");
+        Assert.assertEquals(200, grouped.count());
+        Assert.assertEquals(scanned.groupBy("ORG_COUNTRY", "PLAN").sum("CHARGE").column("CHARGE").get(17),
+                grouped.column("CHARGE").get(17));
+
+        //the index of a column is shared with projections
+        Assert.assertEquals(dataframe.select("PLAN", 3).count(), dataframe.project("PLAN").select("PLAN", 3).count());
+        dataframe.dropIndex("PLAN");
+        Assert.assertEquals(scanned.select("PLAN", 3).count(), dataframe.select("PLAN", 3).count());
+
+        long big = 1L << 53;
+        Dataframe ids = new Dataframe.StreamDataframeBuilder(LongStream.of(big, big + 1, big, big + 1, 3))
+                .columnNames("ID").size(5).build().createIndex("ID", IndexType.SORTED);
+        Assert.assertEquals(3, ids.groupBy("ID").getNumberOfGroups());
+        Assert.assertEquals(3, ids.distinct(0).length);
+        Assert.assertEquals(2, ids.select("ID", big + 1).count());
+        Assert.assertEquals(0, ids.select("ID", big + 2).count());
+        Assert.assertEquals(1, ids.select(Dataframe.col("ID").lt(big)).count());
+        Assert.assertEquals(2, ids.select(Dataframe.col("ID").gt(big)).count());
+        Assert.assertEquals(1, ids.select(Dataframe.col("ID").between(2.5, 3.5)).count());
+    }
+
+    @Test
+    public void metrics() {
+        int maxSize = 1_000_000;
+        Dataframe dataframe = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "UK"),
+                new Random(SEED + 1).doubles(0, 120.0)
+        ).columnNames("ORG_COUNTRY", "CHARGE").size(maxSize).build();
+
+        HistogramMetrics histograms = new HistogramMetrics();
+        List<OperationEvent> events = new ArrayList<>();
+        Dataframe.setMetrics(event -> {
+            histograms.onOperation(event);
+            new Log4jMetrics().onOperation(event);
+            synchronized (events) {
+                events.add(event);
+            }
+        });
+        try {
+            Dataframe grouped = dataframe.sequential().groupBy("ORG_COUNTRY").sum("CHARGE");
+            dataframe.select("ORG_COUNTRY", "GRE").sort(1).sum("CHARGE");
+            dataframe.sum("CHARGE");
+            Assert.assertEquals(3, grouped.count());
+
+            OperationEvent groupBy = events.get(0);
+            Assert.assertEquals("groupBy", groupBy.getOperation());
+            Assert.assertEquals(maxSize, groupBy.getInputRows());
+            Assert.assertEquals(3, groupBy.getOutputRows());
+            Assert.assertEquals(Arrays.asList("ORG_COUNTRY"), groupBy.getColumns());
+            Assert.assertEquals(1, groupBy.getPartitions());
+            Assert.assertTrue(groupBy.getWallNanos() > 0);
+            Assert.assertEquals("aggregate", events.get(1).getOperation());
+            Assert.assertEquals(Arrays.asList("CHARGE"), events.get(1).getColumns());
+            Assert.assertEquals("select", events.get(2).getOperation());
+            Assert.assertEquals("sort", events.get(3).getOperation());
+            Assert.assertEquals(events.get(2).getOutputRows(), events.get(3).getInputRows());
+
+            Map<String, HistogramMetrics.Snapshot> snapshot = histograms.snapshot();
+            Assert.assertEquals(2, snapshot.get("sum").getCount());
+            Assert.assertTrue(snapshot.get("sum").percentileNanos(0.5) <= snapshot.get("sum").getMaxNanos());
+            Assert.assertTrue(histograms.scrape().contains("dataframe_operation_seconds_count{operation=\"groupBy\"} 1"));
+        } finally {
+            Dataframe.setMetrics(null);
+        }
+        Assert.assertSame(DataframeMetrics.NONE, Dataframe.getMetrics());
+    }
+
+    @Test
+    public void appendable() {
+        AppendableDataframe calls = Dataframe.appendable("ORG_COUNTRY", "PLAN", "CHARGE");
+        AppendableDataframe.GroupByView byCountry = calls.createView(new String[]{"ORG_COUNTRY"},
+                Aggregation.sum("CHARGE"), Aggregation.count("CHARGE"), Aggregation.min("CHARGE"),
+                Aggregation.max("CHARGE"), Aggregation.mean("CHARGE"));
+        double total = 0;
+        for (int batch = 0; batch < 10; batch++) {
+            Dataframe rows = new Dataframe.StreamDataframeBuilder(
+                    Dataframe.choice(new Random(SEED + 3 * batch), "GRE", "ITA", "UK"),
+                    new Random(SEED + 3 * batch + 1).ints(0, 5 + batch).boxed(),
+                    new Random(SEED + 3 * batch + 2).doubles(0, 120.0)
+            ).columnNames("ORG_COUNTRY", "PLAN", "CHARGE").size(100_000).build();
+            total += rows.sum("CHARGE");
+            calls.append(rows);
+        }
+        AppendableDataframe.GroupByView byPlan = calls.createView(new String[]{"ORG_COUNTRY", "PLAN"}, Aggregation.variance("CHARGE"));
+        calls.append(new Dataframe.StreamDataframeBuilder(Stream.of("ESP"), Stream.of(100), DoubleStream.of(1.5))
+                .columnNames("ORG_COUNTRY", "PLAN", "CHARGE").build());
+
+        Dataframe snapshot = calls.snapshot();
+        Assert.assertEquals(11, calls.getNumberOfChunks());
+        Assert.assertEquals(1_000_001, snapshot.count());
+        Assert.assertTrue(snapshot.column("CHARGE") instanceof ChunkedColumn);
+        Assert.assertEquals(total + 1.5, snapshot.sum("CHARGE"), 1e-6);
+        Assert.assertEquals(1, snapshot.select("ORG_COUNTRY", "ESP").count());
+
+        Dataframe expected = snapshot.groupBy("ORG_COUNTRY").agg(Aggregation.sum("CHARGE"), Aggregation.count("CHARGE"),
+                Aggregation.min("CHARGE"), Aggregation.max("CHARGE"), Aggregation.mean("CHARGE"));
+        Dataframe maintained = byCountry.result();
+        Assert.assertEquals(4, byCountry.getNumberOfGroups());
+        Assert.assertArrayEquals(expected.getColumnNames(), maintained.getColumnNames());
+        for (int group = 0; group < 4; group++) {
+            for (int column = 0; column < 6; column++) {
+                Object value = expected.column(column).get(group);
+                if (value instanceof Double) {
+                    Assert.assertEquals((Double) value, maintained.column(column).getDouble(group), 1e-6);
+                } else {
+                    Assert.assertEquals(value, maintained.column(column).get(group));
+                }
+            }
+        }
+        Dataframe variances = snapshot.groupBy("ORG_COUNTRY", "PLAN").agg(Aggregation.variance("CHARGE"));
+        Assert.assertEquals(variances.count(), byPlan.result().count());
+        Assert.assertEquals(variances.sum(2), byPlan.result().sum(2), 1e-6);
+
+        calls.dropView(byCountry);
+        calls.append(snapshot.slice(0, 10));
+        Assert.assertEquals(maintained.sum(2), byCountry.result().sum(2), 0);
+        Assert.assertEquals(maintained.sum(2) + snapshot.slice(0, 10).count(), calls.snapshot().groupBy("ORG_COUNTRY")
+                .agg(Aggregation.count("CHARGE")).sum(1), 0);
+    }
+
+    @Test
+    public void windows() {
+        int size = 1_000_000;
+        Dataframe calls = calls(size, 50, plan -> plan, 1);
+
+        Dataframe rolling = calls.rolling(5).sum("CHARGE");
+        rolling = rolling.rolling(5).min("CHARGE");
+        rolling = rolling.rolling(5).max("CHARGE");
+        rolling = rolling.rolling(5).mean("CHARGE");
+        Assert.assertArrayEquals(new String[]{"ORG_COUNTRY", "PLAN", "CHARGE", "SUM(CHARGE)", "MIN(CHARGE)", "MAX(CHARGE)", "MEAN(CHARGE)"},
+                rolling.getColumnNames());
+        Column charges = calls.column("CHARGE");
+        for (int row : new int[]{0, 3, 4, size / 4 - 1, size / 4, size / 4 + 2, size / 2, size - 1}) {
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            int count = 0;
+            for (int previous = Math.max(0, row - 4); previous <= row; previous++) {
+                if (!charges.isNull(previous)) {
+                    double charge = charges.getDouble(previous);
+                    sum += charge;
+                    min = Math.min(min, charge);
+                    max = Math.max(max, charge);
+                    count++;
+                }
+            }
+            Assert.assertEquals(count == 0, rolling.column("SUM(CHARGE)").isNull(row));
+            Assert.assertEquals(count == 0, rolling.column("MIN(CHARGE)").isNull(row));
+            if (count > 0) {
+                Assert.assertEquals(sum, rolling.column("SUM(CHARGE)").getDouble(row), 1e-9);
+                Assert.assertEquals(min, rolling.column("MIN(CHARGE)").getDouble(row), 0);
+                Assert.assertEquals(max, rolling.column("MAX(CHARGE)").getDouble(row), 0);
+                Assert.assertEquals(sum / count, rolling.column("MEAN(CHARGE)").getDouble(row), 1e-9);
+            }
+        }
+
+        Dataframe.DataframeWindow byCountry = calls.over(new String[]{"ORG_COUNTRY"}, SortKey.asc("PLAN"));
+        Dataframe numbered = byCountry.rowNumber();
+        Dataframe ranked = byCountry.rank();
+        Dataframe lagged = byCountry.lag("CHARGE", 1);
+        Dataframe led = byCountry.lead("CHARGE", 2);
+        Dataframe running = byCountry.cumsum("CHARGE");
+        Dataframe extremes = byCountry.max("CHARGE");
+        Dataframe counts = calls.groupBy("ORG_COUNTRY").agg(Aggregation.count("CHARGE"), Aggregation.sum("CHARGE"), Aggregation.max("CHARGE"));
+        for (int group = 0; group < counts.getNumberOfRows(); group++) {
+            Object country = counts.column(0).get(group);
+            Dataframe partition = numbered.select("ORG_COUNTRY", country);
+            Assert.assertEquals(partition.count(), partition.column("ROW_NUMBER").getDouble(partition.argsort(SortKey.desc("ROW_NUMBER"))[0]), 0);
+            int last = partition.argsort(SortKey.asc("PLAN"))[(int) partition.count() - 1];
+            Assert.assertEquals(counts.column(2).getDouble(group), running.select("ORG_COUNTRY", country).column("CUMSUM(CHARGE)").getDouble(last), 1e-6);
+            Assert.assertEquals(counts.column(3).getDouble(group), extremes.select("ORG_COUNTRY", country).column("MAX(CHARGE)").getDouble(last), 0);
+        }
+        Dataframe ordered = calls.sort(SortKey.asc("ORG_COUNTRY"), SortKey.asc("PLAN"));
+        int[] order = calls.argsort(SortKey.asc("ORG_COUNTRY"), SortKey.asc("PLAN"));
+        for (int i = 1; i < size; i += 997) {
+            boolean samePartition = ordered.column("ORG_COUNTRY").get(i).equals(ordered.column("ORG_COUNTRY").get(i - 1));
+            if (samePartition) {
+                Assert.assertEquals(charges.get(order[i - 1]), lagged.column("LAG(CHARGE)").get(order[i]));
+            } else {
+                Assert.assertTrue(lagged.column("LAG(CHARGE)").isNull(order[i]));
+            }
+            Object rank = ranked.column("RANK").get(order[i]);
+            if (samePartition && ordered.column("PLAN").get(i).equals(ordered.column("PLAN").get(i - 1))) {
+                Assert.assertEquals(ranked.column("RANK").get(order[i - 1]), rank);
+            } else {
+                Assert.assertEquals(numbered.column("ROW_NUMBER").get(order[i]), rank);
+            }
+        }
+        Assert.assertTrue(led.column("LEAD(CHARGE)").isNull(order[size - 1]));
+        Assert.assertEquals(charges.get(order[size - 1]), led.column("LEAD(CHARGE)").get(order[size - 3]));
+    }
+
+    @Test
+    public void sketches() {
+        int size = 1_000_000;
+        Dataframe calls = new Dataframe.StreamDataframeBuilder(
+                Dataframe.choice(new Random(SEED), "GRE", "ITA", "UK"),
+                new Random(SEED + 1).ints(0, 300_000).mapToObj(subscriber -> "SUB" + subscriber),
+                new Random(SEED + 2).longs(0, 50_000).boxed(),
+                new Random(SEED + 3).doubles(0, 120.0)
+        ).columnNames("ORG_COUNTRY", "SUBSCRIBER", "CELL", "CHARGE").size(size).build().parallel(4);
+
+        long subscribers = calls.distinct(1).length;
+        Assert.assertEquals(subscribers, calls.approxDistinct("SUBSCRIBER"), subscribers * 0.03);
+        long cells = calls.distinct(2).length;
+        Assert.assertEquals(cells, calls.approxDistinct("CELL"), cells * 0.03);
+        Assert.assertEquals(3, calls.approxDistinct("ORG_COUNTRY"));
+
+        double[] charges = ((DoubleColumn) calls.column("CHARGE").materialize()).values().clone();
+        Arrays.sort(charges);
+        double[] quantiles = calls.approxQuantile("CHARGE", 0, 0.5, 0.95, 0.99, 1);
+        Assert.assertEquals(charges[0], quantiles[0], 0);
+        Assert.assertEquals(charges[size - 1], quantiles[4], 0);
+        double[] fractions = {0.5, 0.95, 0.99};
+        for (int q = 0; q < fractions.length; q++) {
+            int rank = Arrays.binarySearch(charges, quantiles[q + 1]);
+            Assert.assertEquals(fractions[q], (double) rank / size, 0.01);
+        }
 
+        Dataframe byCountry = calls.groupBy("ORG_COUNTRY").agg(Aggregation.approxDistinct("SUBSCRIBER"),
+                Aggregation.approxQuantile("CHARGE", 0.95), Aggregation.count("CHARGE"));
+        Assert.assertArrayEquals(new String[]{"ORG_COUNTRY", "APPROX_DISTINCT(SUBSCRIBER)", "APPROX_QUANTILE(CHARGE, 0.95)", "COUNT(CHARGE)"},
+                byCountry.getColumnNames());
+        for (int group = 0; group < 3; group++) {
+            Dataframe country = calls.select("ORG_COUNTRY", byCountry.column(0).get(group));
+            long distinct = country.distinct(1).length;
+            Assert.assertEquals(distinct, byCountry.column(1).getDouble(group), distinct * 0.03);
+            Assert.assertEquals(114.0, byCountry.column(2).getDouble(group), 1.2);
+        }
+
+        //partial sketches of two halves, combined after a round trip through bytes
+        HyperLogLog first = HyperLogLog.fromByteArray(calls.slice(0, size / 2).distinctSketch("SUBSCRIBER").toByteArray());
+        HyperLogLog second = HyperLogLog.fromByteArray(calls.slice(size / 2, size).distinctSketch("SUBSCRIBER").toByteArray());
+        Assert.assertEquals(calls.approxDistinct("SUBSCRIBER"), first.merge(second).estimate());
+        QuantileSketch lower = QuantileSketch.fromByteArray(calls.slice(0, size / 2).quantileSketch("CHARGE").toByteArray());
+        QuantileSketch upper = QuantileSketch.fromByteArray(calls.slice(size / 2, size).quantileSketch("CHARGE").toByteArray());
+        QuantileSketch merged = lower.merge(upper);
+        Assert.assertEquals(size, merged.getCount());
+        Assert.assertEquals(0.5, (double) Arrays.binarySearch(charges, merged.quantile(0.5)) / size, 0.01);
+
+        HyperLogLog small = new HyperLogLog().add("GRE").add("ITA").add(1).add(1L).add(1.0).add(null);
+        Assert.assertEquals(3, HyperLogLog.fromByteArray(small.toByteArray()).estimate());
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void topN() {
+        int size = 1_000_000;
+        Dataframe calls = calls(size, 1000, plan -> plan, 0.5);
+
+        Dataframe sorted = calls.sort(SortKey.desc("CHARGE"));
+        Dataframe top = calls.topN("CHARGE", 100, false);
+        Assert.assertEquals(100, top.count());
+        for (int row = 0; row < 100; row++) {
+            Assert.assertEquals(sorted.column("CHARGE").get(row), top.column("CHARGE").get(row));
+        }
+        //ties are kept in row order, like the stable sort does
+        Dataframe plans = calls.topN("PLAN", 50, true);
+        Dataframe sortedPlans = calls.sort(SortKey.asc("PLAN")).slice(0, 50);
+        for (int row = 0; row < 50; row++) {
+            Assert.assertEquals(sortedPlans.column("CHARGE").get(row), plans.column("CHARGE").get(row));
+        }
+        Dataframe all = calls.slice(0, 1000).topN("CHARGE", 2000, true);
+        Assert.assertEquals(1000, all.count());
+        Assert.assertEquals(calls.slice(0, 1000).nullCount("CHARGE") > 0, all.column("CHARGE").isNull(999));
+
+        Dataframe.DataframeGroupBy byCountry = calls.groupBy("ORG_COUNTRY");
+        Dataframe topPerCountry = byCountry.topN("CHARGE", 10, false);
+        Assert.assertEquals(30, topPerCountry.count());
+        for (int group = 0; group < 3; group++) {
+            Object country = topPerCountry.column("ORG_COUNTRY").get(group * 10);
+            Dataframe expected = calls.select("ORG_COUNTRY", country).sort(SortKey.desc("CHARGE"));
+            for (int row = 0; row < 10; row++) {
+                Assert.assertEquals(country, topPerCountry.column("ORG_COUNTRY").get(group * 10 + row));
+                Assert.assertEquals(expected.column("CHARGE").get(row), topPerCountry.column("CHARGE").get(group * 10 + row));
+            }
+        }
+
+        Column chargeColumn = calls.column("CHARGE");
+        double[] charges = IntStream.range(0, size).filter(row -> !chargeColumn.isNull(row))
+                .mapToDouble(chargeColumn::getDouble).sorted().toArray();
+        int n = charges.length;
+        Assert.assertEquals(n % 2 == 1 ? charges[n / 2] : (charges[n / 2 - 1] + charges[n / 2]) / 2, calls.median("CHARGE"), 1e-12);
+        double[] quantiles = calls.quantiles("CHARGE", 0, 0.95, 1);
+        Assert.assertEquals(charges[0], quantiles[0], 0);
+        double position = 0.95 * (n - 1);
+        int rank = (int) position;
+        Assert.assertEquals(charges[rank] + (position - rank) * (charges[rank + 1] - charges[rank]), quantiles[1], 1e-12);
+        Assert.assertEquals(charges[n - 1], quantiles[2], 0);
+        Assert.assertEquals(499.5, calls.quantile("PLAN", 0.5), 2);
+    }
+
+    @Test
+    public void spill() {
+        int size = 1_000_000;
+        Dataframe calls = calls(size, 10_000, plan -> plan, 0.5);
+        Dataframe budgeted = calls.memoryBudget(1 << 20);
+        Assert.assertEquals(1 << 20, budgeted.getMemoryBudget());
+
+        List<OperationEvent> events = new ArrayList<>();
+        Dataframe.setMetrics(event -> {
+            synchronized (events) {
+                events.add(event);
+            }
+        });
+        long spilledBytes = Dataframe.getSpilledBytes();
+        try {
+            SortKey[] keys = {SortKey.asc("ORG_COUNTRY"), SortKey.desc("CHARGE").nullsFirst()};
+            Assert.assertArrayEquals(calls.argsort(keys), budgeted.argsort(keys));
+            OperationEvent sort = events.get(events.size() - 1);
+            Assert.assertEquals("sort", sort.getOperation());
+            Assert.assertTrue(sort.getSpilledBytes() > 0);
+
+            //the cells of views are ranked within every run and compared by value across runs
+            Dataframe view = calls.slice(1000, size - 1000);
+            SortKey[] viewKeys = {SortKey.desc("ORG_COUNTRY"), SortKey.asc("PLAN").nullsFirst(), SortKey.asc("CHARGE")};
+            Assert.assertArrayEquals(view.argsort(viewKeys), view.memoryBudget(1 << 20).argsort(viewKeys));
+            Assert.assertTrue(events.get(events.size() - 1).getSpilledBytes() > 0);
+
+            Dataframe expected = calls.groupBy("PLAN", "ORG_COUNTRY").agg(Aggregation.count("CHARGE"), Aggregation.max("CHARGE"));
+            Dataframe.DataframeGroupBy grouped = budgeted.groupBy("PLAN", "ORG_COUNTRY");
+            Dataframe actual = grouped.agg(Aggregation.count("CHARGE"), Aggregation.max("CHARGE"));
+            OperationEvent aggregate = events.get(events.size() - 1);
+            Assert.assertEquals("aggregate", aggregate.getOperation());
+            Assert.assertTrue(aggregate.getSpilledBytes() > 0);
+            long groupedBytes = Dataframe.getSpilledBytes();
+            Assert.assertEquals(expected.count(), grouped.getNumberOfGroups());
+            Assert.assertEquals(expected.count(), actual.count());
+            for (int column = 0; column < 4; column++) {
+                for (int row = 0; row < expected.count(); row++) {
+                    Assert.assertEquals(expected.column(column).get(row), actual.column(column).get(row));
+                }
+            }
+            Dataframe top = grouped.topN("CHARGE", 2, false);
+            Assert.assertEquals(calls.groupBy("PLAN", "ORG_COUNTRY").topN("CHARGE", 2, false).column("CHARGE").get(17),
+                    top.column("CHARGE").get(17));
+            Assert.assertEquals(groupedBytes, Dataframe.getSpilledBytes());
+            grouped.close();
+        } finally {
+            Dataframe.setMetrics(null);
+        }
+        Assert.assertTrue(Dataframe.getSpilledBytes() > spilledBytes);
+    }
+
+    @Test
+    public void nulls() throws Exception {
+        int size = 1_000_000;
+        Dataframe calls = calls(size, 100, plan -> plan < 10 ? null : plan % 20, 0.5);
+
+        Column plans = calls.column("PLAN");
+        Assert.assertTrue(plans instanceof EncodedColumn);
+        Assert.assertEquals(Integer.class, plans.type());
+        int nulls = 0;
+        long sum = 0;
+        for (int row = 0; row < size; row++) {
+            if (plans.get(row) == null) {
+                nulls++;
+            } else {
+                sum += (Integer) plans.get(row);
+            }
+        }
+        Assert.assertEquals(nulls, calls.nullCount("PLAN"));
+        Assert.assertEquals(sum, calls.sum("PLAN"), 0);
+        Assert.assertEquals((double) sum / (size - nulls), calls.average("PLAN"), 1e-9);
+        Assert.assertEquals(nulls, calls.select(Dataframe.col("PLAN").isNull()).count());
+        Assert.assertEquals(size - nulls, calls.select(Dataframe.col("PLAN").isNotNull()).count());
+        Assert.assertFalse(calls.select(Dataframe.col("PLAN").eq(0)).column("PLAN").isNull(0));
+        Assert.assertEquals(calls.select(Dataframe.col("PLAN").lt(5)).count(), calls.select(Dataframe.col("PLAN").in(0, 1, 2, 3, 4)).count());
+
+        Dataframe planCounts = calls.groupBy("PLAN").agg(Aggregation.count("CHARGE"));
+        Assert.assertEquals(21, planCounts.count());
+        Dataframe nullPlan = planCounts.select(Dataframe.col("PLAN").isNull());
+        Assert.assertEquals(1, nullPlan.count());
+
+        Dataframe dropped = calls.dropNull();
+        Assert.assertEquals(calls.select(Dataframe.col("PLAN").isNotNull().and(Dataframe.col("CHARGE").isNotNull())).count(), dropped.count());
+        Assert.assertEquals(0, dropped.nullCount("PLAN") + dropped.nullCount("CHARGE"));
+        Assert.assertEquals(size - nulls, calls.dropNull("PLAN").count());
+        Dataframe filled = calls.fillNull("PLAN", -1).fillNull("CHARGE", 0.0);
+        Assert.assertEquals(0, filled.nullCount("PLAN"));
+        Assert.assertEquals(nulls, filled.select("PLAN", -1).count());
+        Assert.assertEquals(calls.sum("CHARGE"), filled.sum("CHARGE"), 1e-6);
+        Assert.assertSame(calls.column("ORG_COUNTRY"), filled.column("ORG_COUNTRY"));
+
+        Object other = Integer.valueOf(10).equals(plans.get(0)) ? 11 : 10;
+        Dataframe keys = new Dataframe.StreamDataframeBuilder(Stream.of(plans.get(0), other), Stream.of("FIRST", "OTHER"))
+                .columnNames("PLAN", "NAME").size(2).build();
+        Dataframe joined = calls.slice(0, 1000).join(keys, JoinType.INNER, "PLAN");
+        Assert.assertEquals(calls.slice(0, 1000).select(Dataframe.col("PLAN").in(plans.get(0), other)).count(), joined.count());
+
+        Path path = Files.createTempFile("dataframe", ".df");
+        try {
+            calls.save(path);
+            Dataframe opened = Dataframe.open(path);
+            Assert.assertEquals(nulls, opened.nullCount("PLAN"));
+            Assert.assertEquals(nulls, opened.select(Dataframe.col("PLAN").isNull()).count());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void cursor() {
+        int size = 1_000_000;
+        Dataframe calls = calls(size, 100, plan -> plan < 10 ? null : plan, 0);
+
+        Dataframe expensive = calls.filter(row -> row.getDouble("CHARGE") > 100 && "GRE".equals(row.getString("ORG_COUNTRY")));
+        Assert.assertEquals(calls.select(Dataframe.col("CHARGE").gt(100.0).and(Dataframe.col("ORG_COUNTRY").eq("GRE"))).count(), expensive.count());
+        Assert.assertEquals(expensive.count(), calls.selectByName(row -> (Double) row.get("CHARGE") > 100 && "GRE".equals(row.get("ORG_COUNTRY"))).count());
+
+        RowCursor cursor = calls.cursor();
+        int plan = cursor.column("PLAN");
+        long[] planSum = calls.collect(() -> new long[2], (sum, row) -> {
+            if (!row.isNull(plan)) {
+                sum[0] += row.getLong(plan);
+                sum[1]++;
+            }
+        }, (left, right) -> {
+            left[0] += right[0];
+            left[1] += right[1];
+            return left;
+        });
+        Assert.assertEquals(calls.sum("PLAN"), planSum[0], 0);
+        Assert.assertEquals(size - calls.nullCount("PLAN"), planSum[1]);
+
+        int[] rows = new int[1];
+        calls.slice(10, 20).forEachRow(row -> Assert.assertEquals(rows[0]++, row.getRow()));
+        Assert.assertEquals(10, rows[0]);
+        Assert.assertTrue(cursor.next());
+        Assert.assertEquals(calls.column("ORG_COUNTRY").get(0), cursor.getString("ORG_COUNTRY"));
+        try {
+            cursor.getDouble("MISSING");
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("no column MISSING", e.getMessage());
+        }
+    }
+
+    @Test
+    public void compression() throws Exception {
+        Random gaps = new Random(SEED + 1);
+
+        int size = 1_000_000;
+        //the builder encodes the columns, the plain columns are decoded from them
+        Dataframe compressed = new Dataframe.StreamDataframeBuilder(
+                LongStream.range(0, size).map(row -> row / 10_000).boxed(),
+                new Random(SEED).ints(0, 100).mapToObj(plan -> plan < 10 ? null : plan),
+                LongStream.iterate(1_600_000_000_000L, start -> start + gaps.nextInt(1000)).boxed(),
+                new Random(SEED + 2).doubles(0, 120.0)
+        ).columnNames("CELL", "PLAN", "START", "CHARGE").size(size).build().parallel(4);
+        Column[] plain = new Column[4];
+        for (int column = 0; column < 4; column++) {
+            Column cells = compressed.column(column);
+            plain[column] = cells instanceof EncodedColumn ? ((EncodedColumn) cells).decoded() : cells;
+        }
+        Dataframe calls = Dataframe.of(plain, compressed.getColumnNames(), size).parallel(4);
+
+        Assert.assertTrue(compressed.column("CELL") instanceof EncodedColumn.RunLength);
+        Assert.assertTrue(compressed.column("PLAN") instanceof EncodedColumn.BitPacked);
+        //delta encoding is only chosen on request
+        Assert.assertTrue(compressed.column("START") instanceof EncodedColumn.BitPacked);
+        Assert.assertTrue(compressed.column("CHARGE") instanceof DoubleColumn);
+        Column starts = calls.compress().column("START");
+        Assert.assertTrue(starts instanceof EncodedColumn.Delta);
+        Assert.assertEquals(calls.column("START").gather(new int[]{5, 5, 127, 128, 130, 129, size - 1, 0}).toString(),
+                starts.gather(new int[]{5, 5, 127, 128, 130, 129, size - 1, 0}).toString());
+        RowCursor cursor = Dataframe.of(new Column[]{starts}, new String[]{"START"}, size).cursor();
+        while (cursor.next()) {
+            Assert.assertEquals(calls.column("START").getLong(cursor.getRow()), cursor.getLong(0));
+        }
+        Assert.assertSame(calls.column("CHARGE"), calls.compress().column("CHARGE"));
+        for (String column : new String[]{"CELL", "PLAN", "START"}) {
+            Assert.assertEquals(calls.sum(column), compressed.sum(column), Math.abs(calls.sum(column)) * 1e-12);
+            Assert.assertEquals(calls.nullCount(column), compressed.nullCount(column));
+            for (int row = 0; row < size; row += 997) {
+                Assert.assertEquals(calls.column(column).get(row), compressed.column(column).get(row));
+            }
+        }
+        Assert.assertEquals(calls.sum("START"), compressed.slice(0, size / 2).sum("START") + compressed.slice(size / 2, size).sum("START"), calls.sum("START") * 1e-12);
+
+        Assert.assertEquals(calls.select("CELL", 42L).count(), compressed.select("CELL", 42L).count());
+        Assert.assertEquals(calls.select("PLAN", 42).count(), compressed.select("PLAN", 42).count());
+        Object start = calls.column("START").get(size / 3);
+        Assert.assertEquals(calls.select("START", start).count(), compressed.select("START", start).count());
+        Assert.assertEquals(calls.select(Dataframe.col("PLAN").isNull()).count(), compressed.select(Dataframe.col("PLAN").isNull()).count());
+        Assert.assertEquals(calls.select(Dataframe.col("CELL").between(10L, 20L)).count(), compressed.select(Dataframe.col("CELL").between(10L, 20L)).count());
+        Assert.assertEquals(calls.select(Dataframe.col("START").lt(start)).count(), compressed.select(Dataframe.col("START").lt(start)).count());
+        Assert.assertEquals(size / 3, compressed.select(Dataframe.col("START").lt(start)).count(), 1000);
+
+        for (String key : new String[]{"CELL", "PLAN"}) {
+            Dataframe expected = calls.groupBy(key).agg(Aggregation.count("CHARGE"), Aggregation.sum("CHARGE"));
+            Dataframe actual = compressed.groupBy(key).agg(Aggregation.count("CHARGE"), Aggregation.sum("CHARGE"));
+            Assert.assertEquals(expected.count(), actual.count());
+            for (int row = 0; row < expected.count(); row++) {
+                for (int column = 0; column < 3; column++) {
+                    Assert.assertEquals(expected.column(column).get(row), actual.column(column).get(row));
+                }
+            }
+        }
+
+        Path path = Files.createTempFile("dataframe", ".df");
+        try {
+            compressed.save(path);
+            Dataframe opened = Dataframe.open(path);
+            Assert.assertTrue(opened.column("CELL").materialize() instanceof EncodedColumn.RunLength);
+            Assert.assertEquals(calls.sum("START"), opened.sum("START"), calls.sum("START") * 1e-12);
+            Assert.assertEquals(calls.nullCount("PLAN"), opened.nullCount("PLAN"));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void chunkedNulls() {
+        AppendableDataframe calls = Dataframe.appendable("ORG_COUNTRY", "ID", "PLAN");
+        calls.append(new Dataframe.StreamDataframeBuilder(Stream.of("GRE", "ITA", "GRE"), Stream.of(3L, null, 1L), Stream.of(1, 2, null))
+                .columnNames("ORG_COUNTRY", "ID", "PLAN").build());
+        calls.append(new Dataframe.StreamDataframeBuilder(Stream.of("UK", "ITA"), Stream.of(2L, 5L), Stream.of(null, 2))
+                .columnNames("ORG_COUNTRY", "ID", "PLAN").build());
+        Dataframe snapshot = calls.snapshot();
+        Assert.assertTrue(snapshot.column("ID") instanceof ChunkedColumn);
+
+        Column ids = snapshot.column("ID").gather(new int[]{0, 1, 3});
+        Assert.assertArrayEquals(new Object[]{3L, null, 2L}, new Object[]{ids.get(0), ids.get(1), ids.get(2)});
+        Assert.assertEquals(2, snapshot.column("PLAN").materialize().nullCount());
+
+        Dataframe sorted = snapshot.sort(1);
+        Assert.assertArrayEquals(new Object[]{1L, 2L, 3L, 5L, null}, IntStream.range(0, 5).mapToObj(sorted.column("ID")::get).toArray());
+        Assert.assertArrayEquals(new Object[]{1, 2, 2, null, null}, IntStream.range(0, 5).mapToObj(snapshot.sort(2).column("PLAN")::get).toArray());
+
+        Dataframe byPlan = snapshot.groupBy("PLAN").agg(Aggregation.count("ORG_COUNTRY"), Aggregation.first("ID"));
+        Assert.assertEquals(3, byPlan.count());
+        Assert.assertArrayEquals(new Object[]{1, 2, null}, IntStream.range(0, 3).mapToObj(byPlan.column("PLAN")::get).toArray());
+        Assert.assertArrayEquals(new Object[]{3L, 5L, 1L}, IntStream.range(0, 3).mapToObj(byPlan.column(2)::get).toArray());
+        Assert.assertEquals(2L, byPlan.column(1).get(2));
+    }
+
+    @Test
+    public void emptyFrames() throws Exception {
+        Dataframe calls = new Dataframe.StreamDataframeBuilder(Stream.of("GRE", "ITA"), LongStream.of(1, 2), DoubleStream.of(1.5, 2.5))
+                .columnNames("ORG_COUNTRY", "ID", "CHARGE").build();
+        Dataframe empty = calls.select("ORG_COUNTRY", "ESP");
+        Assert.assertEquals(0, empty.count());
+        Assert.assertEquals(0, empty.sort(SortKey.asc("CHARGE")).count());
+        Assert.assertEquals(0, empty.topN("CHARGE", 10, false).count());
+        Assert.assertEquals(0, empty.sum("CHARGE"), 0);
+        Assert.assertEquals(0, empty.average("CHARGE"), 0);
+        Assert.assertTrue(Double.isNaN(empty.median("CHARGE")));
+        Assert.assertEquals(0, empty.dropNull().count());
+        Assert.assertEquals(0, empty.compress().count());
+        Assert.assertEquals(0, empty.rolling(3).sum("CHARGE").count());
+        Assert.assertEquals(0, empty.groupBy("ORG_COUNTRY").agg(Aggregation.count("ID"), Aggregation.max("CHARGE")).count());
+        Assert.assertEquals(0, empty.memoryBudget(16).groupBy("ORG_COUNTRY").agg(Aggregation.count("ID")).count());
+        Assert.assertEquals(0, empty.join(calls, JoinType.INNER, "ID").count());
+        Assert.assertEquals(2, calls.join(empty, JoinType.LEFT, "ID").count());
+        Assert.assertEquals(0, Dataframe.appendable("ORG_COUNTRY", "ID", "CHARGE").snapshot().count());
+        Assert.assertEquals(0, new Dataframe.StreamDataframeBuilder(LongStream.empty(), DoubleStream.empty()).size(0).build().count());
+
+        Path path = Files.createTempFile("dataframe", ".df");
+        try {
+            empty.save(path);
+            Dataframe opened = Dataframe.open(path);
+            Assert.assertArrayEquals(calls.getColumnNames(), opened.getColumnNames());
+            Assert.assertEquals(0, opened.count());
+            Assert.assertEquals(0, opened.sum("ID"), 0);
+
+            Files.write(path, Arrays.asList("ORG_COUNTRY,ID,CHARGE"));
+            Dataframe csv = Dataframe.csv(path).build();
+            Assert.assertArrayEquals(calls.getColumnNames(), csv.getColumnNames());
+            Assert.assertEquals(0, csv.count());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void doubleNulls() throws Exception {
+        Dataframe calls = new Dataframe.StreamDataframeBuilder(
+                Stream.of("GRE", "ITA", "GRE", "UK", "ITA"),
+                Stream.of(2.0, null, 0.0 / 0.0, 4.0, null)
+        ).columnNames("ORG_COUNTRY", "CHARGE").build();
+        Column charges = calls.column("CHARGE");
+        Assert.assertTrue(charges instanceof DoubleColumn);
+        Assert.assertEquals(2, calls.nullCount("CHARGE"));
+        Assert.assertFalse(charges.isNull(2));
+        Assert.assertTrue(Double.isNaN((Double) charges.get(2)));
+        Assert.assertNull(charges.get(4));
+        Assert.assertEquals(RoaringBitmap.bitmapOf(1, 4), calls.selection(Dataframe.col("CHARGE").isNull()));
+        Assert.assertEquals(3, calls.dropNull("CHARGE").count());
+        Assert.assertEquals(0.0, calls.fillNull("CHARGE", 0.0).column("CHARGE").get(1));
+        Assert.assertTrue(Double.isNaN(calls.fillNull("CHARGE", 0.0).column("CHARGE").getDouble(2)));
+        Assert.assertTrue(Double.isNaN(calls.sum("CHARGE")));
+        Assert.assertTrue(Double.isNaN(calls.average("CHARGE")));
+        Assert.assertEquals(4, calls.slice(3, 5).average("CHARGE"), 0);
+
+        Dataframe byCountry = calls.groupBy("ORG_COUNTRY").agg(Aggregation.count("CHARGE"), Aggregation.max("CHARGE"));
+        Assert.assertArrayEquals(new Object[]{2L, 0L, 1L}, IntStream.range(0, 3).mapToObj(byCountry.column(1)::get).toArray());
+        Assert.assertArrayEquals(new Object[]{Double.NaN, null, 4.0}, IntStream.range(0, 3).mapToObj(byCountry.column(2)::get).toArray());
+
+        //a NaN cell stays in the frames that contain it, the null cells are left out
+        Dataframe rolling = calls.rolling(2).sum("CHARGE").rolling(2).max("CHARGE");
+        Assert.assertArrayEquals(new Object[]{2.0, 2.0, Double.NaN, Double.NaN, 4.0}, IntStream.range(0, 5).mapToObj(rolling.column(2)::get).toArray());
+        Assert.assertArrayEquals(new Object[]{2.0, 2.0, Double.NaN, Double.NaN, 4.0}, IntStream.range(0, 5).mapToObj(rolling.column(3)::get).toArray());
+
+        //the validity bitmap goes along with the off-heap copy
+        try (Dataframe offHeap = calls.offHeap()) {
+            Assert.assertTrue(offHeap.column("CHARGE") instanceof OffHeapColumn);
+            Assert.assertEquals(2, offHeap.nullCount("CHARGE"));
+            Assert.assertNull(offHeap.column("CHARGE").get(1));
+            Assert.assertEquals(RoaringBitmap.bitmapOf(1, 4), offHeap.selection(Dataframe.col("CHARGE").isNull()));
+            Assert.assertEquals(1, offHeap.select(Dataframe.col("CHARGE").lt(3.0)).count());
+            Assert.assertTrue(Double.isNaN(offHeap.average("CHARGE")));
+            Assert.assertNull(offHeap.sort(SortKey.asc("CHARGE").nullsFirst()).column("CHARGE").get(0));
+        }
+
+        Path path = Files.createTempFile("dataframe", ".df");
+        try {
+            calls.save(path);
+            Assert.assertEquals(1, Dataframe.open(path).select(Dataframe.col("CHARGE").lt(3.0)).count());
+            Column opened = Dataframe.open(path).column("CHARGE");
+            Assert.assertEquals(2, opened.nullCount());
+            Assert.assertTrue(Double.isNaN(opened.getDouble(2)) && !opened.isNull(2));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void integralExtremes() {
+        long big = (1L << 53) + 1;
+        Dataframe calls = new Dataframe.StreamDataframeBuilder(
+                Stream.of("GRE", "GRE", "ITA", "UK", "UK"),
+                Stream.of(big - 1, big, null, big + 2, big + 1),
+                Stream.of(3, 1, null, 2, 5)
+        ).columnNames("ORG_COUNTRY", "ID", "PLAN").build();
+
+        Dataframe byCountry = calls.groupBy("ORG_COUNTRY").agg(Aggregation.max("ID"), Aggregation.min("PLAN"));
+        Assert.assertTrue(byCountry.column(1) instanceof LongColumn);
+        Assert.assertTrue(byCountry.column(2) instanceof IntColumn);
+        Assert.assertArrayEquals(new Object[]{big, null, big + 2}, IntStream.range(0, 3).mapToObj(byCountry.column(1)::get).toArray());
+        Assert.assertArrayEquals(new Object[]{1, null, 2}, IntStream.range(0, 3).mapToObj(byCountry.column(2)::get).toArray());
+
+        Dataframe rolling = calls.rolling(2).max("ID").rolling(2).min("PLAN");
+        Assert.assertTrue(rolling.column(3) instanceof LongColumn);
+        Assert.assertTrue(rolling.column(4) instanceof IntColumn);
+        Assert.assertArrayEquals(new Object[]{big - 1, big, big, big + 2, big + 2}, IntStream.range(0, 5).mapToObj(rolling.column(3)::get).toArray());
+        Assert.assertArrayEquals(new Object[]{3, 1, 1, 2, 2}, IntStream.range(0, 5).mapToObj(rolling.column(4)::get).toArray());
+        Assert.assertNull(calls.rolling(1).max("ID").column(3).get(2));
+    }
+
+    @Test
+    public void spilledNulls() {
+        Dataframe calls = new Dataframe.StreamDataframeBuilder(
+                Stream.of("GRE", "ITA", "GRE", "UK", "ITA", "UK", "GRE", "ESP"),
+                Stream.of(1, null, 1, 2, null, 3, 2, null),
+                Stream.of(10L, null, 12L, null, 15L, null, 17L, 18L),
+                Stream.of(1.0, 2.0, 3.0, 4.0, 5.0, 6.0, 7.0, 8.0)
+        ).columnNames("ORG_COUNTRY", "PLAN", "ID", "CHARGE").build();
+        Dataframe budgeted = calls.memoryBudget(16);
+        Aggregation[] aggregations = {Aggregation.count("ID"), Aggregation.first("ID"), Aggregation.last("ID"), Aggregation.sum("CHARGE")};
+
+        Dataframe.DataframeGroupBy grouped = budgeted.groupBy("PLAN");
+        Assert.assertTrue(grouped instanceof Dataframe.SpilledGroupBy);
+        Dataframe expected = calls.groupBy("PLAN").agg(aggregations);
+        Dataframe actual = grouped.agg(aggregations);
+        Assert.assertEquals(4, actual.count());
+        Assert.assertNull(actual.column("PLAN").get(1));
+        Assert.assertNull(actual.column(2).get(3));
+        for (int column = 0; column < 5; column++) {
+            for (int row = 0; row < expected.count(); row++) {
+                Assert.assertEquals(expected.column(column).get(row), actual.column(column).get(row));
+            }
+        }
+
+        Accumulator[] accumulators = grouped.accumulators(aggregations);
+        for (int i = 0; i < aggregations.length; i++) {
+            Column result = accumulators[i].result();
+            for (int row = 0; row < expected.count(); row++) {
+                Assert.assertEquals(expected.column(1 + i).get(row), result.get(row));
+            }
+        }
+    }
+
+    @Test
+    public void serialPredicates() {
+        int size = 100_000;
+        Dataframe ids = new Dataframe.StreamDataframeBuilder(IntStream.range(0, size)).columnNames("ID").size(size).build();
+
+        //a stateful predicate sees the rows in order unless the frame is made parallel
+        int[] previous = {-1};
+        Set<Thread> threads = new HashSet<>();
+        Dataframe increasing = ids.select(row -> {
+            threads.add(Thread.currentThread());
+            boolean next = (Integer) row[0] == previous[0] + 1;
+            previous[0] = (Integer) row[0];
+            return next;
+        });
+        Assert.assertEquals(size, increasing.count());
+        Assert.assertEquals(1, threads.size());
+        Assert.assertEquals(1, new Execution(ForkJoinPool.commonPool(), 4, false).forUserCode().parallelism);
+        Assert.assertEquals(4, new Execution(ForkJoinPool.commonPool(), 4, true).forUserCode().parallelism);
+
+        AtomicInteger tested = new AtomicInteger();
+        Assert.assertEquals(size / 2, ids.parallel(4).filter(row -> tested.incrementAndGet() > 0 && row.getLong(0) % 2 == 0).count());
+        Assert.assertEquals(size, tested.get());
+    }
+
+    @Test
+    public void mixedCells() {
+        Dataframe calls = new Dataframe.StreamDataframeBuilder(
+                Stream.of(1, 2.7, 3_000_000_000L, null),
+                Stream.of(1, 3_000_000_000L, (short) 2, null),
+                Stream.of("GRE", 1, "UK", null)
+        ).columnNames("CHARGE", "ID", "ORG_COUNTRY").size(4).build();
+        //integral cells are widened to long and mixed numeric cells to double
+        Assert.assertEquals(Double.class, calls.column("CHARGE").type());
+        Assert.assertArrayEquals(new Object[]{1.0, 2.7, 3e9, null}, IntStream.range(0, 4).mapToObj(calls.column("CHARGE")::get).toArray());
+        Assert.assertEquals(Long.class, calls.column("ID").type());
+        Assert.assertArrayEquals(new Object[]{1L, 3_000_000_000L, 2L, null}, IntStream.range(0, 4).mapToObj(calls.column("ID")::get).toArray());
+        Assert.assertArrayEquals(new Object[]{"GRE", 1, "UK", null}, IntStream.range(0, 4).mapToObj(calls.column("ORG_COUNTRY")::get).toArray());
+    }
+}